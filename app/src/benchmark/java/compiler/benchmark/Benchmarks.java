@@ -0,0 +1,80 @@
+package compiler.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.exception.CompileException;
+
+/**
+ * Runs the benchmarks of each part of the compiler and prints what they
+ * measure. These are plain timing loops: each program is warmed up for a
+ * third of the time it is then measured for.
+ *
+ * java compiler.benchmark.Benchmarks [seconds per program] [lexer|parser|interpreter|optimizer|ssa|symbols ...]
+ *
+ * or gradle benchmark --args='...'. With no names, all of them run.
+ */
+public class Benchmarks {
+    private Benchmarks() {}
+
+    private interface Benchmark {
+        void run(double seconds) throws CompileException;
+    }
+
+    private static final String[] NAMES = { "lexer", "parser", "interpreter", "optimizer", "ssa", "symbols" };
+    private static final Benchmark[] BENCHMARKS = {
+        LexerBenchmark::measure, ParserBenchmark::measure, InterpreterBenchmark::measure,
+        OptimizerBenchmark::measure, SSABenchmark::measure, SymbolTableBenchmark::measure,
+    };
+
+    public static void main(String... args) throws CompileException {
+        double seconds = 2;
+        List<String> names = new ArrayList<String>(Arrays.asList(args));
+        if (!names.isEmpty() && Character.isDigit(names.get(0).charAt(0)))
+            seconds = Double.parseDouble(names.remove(0));
+
+        for (String name : names) {
+            if (!Arrays.asList(NAMES).contains(name))
+                throw new IllegalArgumentException("no benchmark "+name+", there are "+Arrays.toString(NAMES));
+        }
+        for (int i = 0; i < NAMES.length; i++) {
+            if (names.isEmpty() || names.contains(NAMES[i]))
+                BENCHMARKS[i].run(seconds);
+        }
+    }
+
+    /**
+     * Runs program for about seconds, returns how many times a second it
+     * ran.
+     */
+    static double run(Runnable program, double seconds) {
+        long end = System.nanoTime() + (long)(seconds*1e9);
+        long start = System.nanoTime();
+        int runs = 0;
+        do {
+            program.run();
+            runs++;
+        } while (System.nanoTime() < end);
+
+        return runs / ((System.nanoTime()-start)/1e9);
+    }
+
+    /**
+     * Bytes allocated by this thread so far.
+     */
+    static long allocated() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * The heap in use, after collecting.
+     */
+    static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,30 @@
+package compiler.benchmark;
+
+import java.util.HashMap;
+
+import compiler.semantics.VarData;
+import compiler.syntax.Symbol;
+import compiler.syntax.SymbolTable;
+
+/**
+ * The variables of a {@link SymbolTable} before scopes shared their
+ * symbols: a HashMap that every new scope copies whole.
+ */
+class CopyingSymbolTable {
+    private HashMap<Symbol, VarData> vars;
+
+    CopyingSymbolTable() {
+        vars = new HashMap<Symbol, VarData>();
+    }
+    CopyingSymbolTable(CopyingSymbolTable copy) {
+        this.vars = new HashMap<Symbol, VarData>(copy.vars);
+    }
+
+    void vput(Symbol var, VarData data) {
+        vars.put(var, data);
+    }
+
+    VarData vget(Symbol var) {
+        return vars.get(var);
+    }
+}
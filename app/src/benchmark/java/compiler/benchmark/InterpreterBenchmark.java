@@ -0,0 +1,217 @@
+package compiler.benchmark;
+
+import static compiler.benchmark.Benchmarks.run;
+import static compiler.benchmark.Benchmarks.used;
+import static compiler.benchmark.Programs.HOT_PROGRAMS;
+import static compiler.benchmark.Programs.PROGRAMS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.Bytecode;
+import compiler.interpreter.BytecodeCompiler;
+import compiler.interpreter.Interpreter;
+import compiler.interpreter.SpecializingInterpreter;
+import compiler.interpreter.VM;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+
+/**
+ * Times the {@link Interpreter} and the {@link VM} on a few small programs
+ * and prints how many statements each runs a second. Each program is run
+ * once with counting on to get its statement count, then timed without it.
+ * Then compares the heap the closures and the bytecode of one program take.
+ *
+ * The same programs are run on the {@link SpecializingInterpreter}, with its
+ * nodes left generic and specializing.
+ *
+ * Programs whose time goes into a few hot functions are run on the
+ * closures, the VM, the tiered VM, and as the same code written in Java.
+ */
+class InterpreterBenchmark {
+    private InterpreterBenchmark() {}
+
+    private static final Runnable[] HOT_JAVA = { InterpreterBenchmark::fibJava, InterpreterBenchmark::stepJava, InterpreterBenchmark::collatzJava };
+
+    // functions in the program the memory use is measured on, and how many
+    // times it is loaded
+    private static final int FUNCTIONS = 2000;
+    private static final int COPIES = 10;
+
+    // what is measured, where the JIT cannot drop it early
+    private static final List<Object> kept = new ArrayList<Object>();
+
+    static void measure(double seconds) throws CompileException {
+        System.out.printf("%-12s %12s %16s %16s %8s%n", "program", "statements", "closures st/s", "bytecode st/s", "speedup");
+        for (String[] program : PROGRAMS) {
+            ASTNode<?> tree = new Parser(program[1]).parse();
+
+            Interpreter counter = new Interpreter(tree, true);
+            counter.run();
+            long statements = counter.getStatements();
+
+            Interpreter interpreter = new Interpreter(tree);
+            VM vm = new VM(BytecodeCompiler.compile(tree));
+
+            // warm up for a third of the time, then measure
+            run(interpreter::run, seconds/3);
+            double closures = run(interpreter::run, seconds);
+            run(vm::run, seconds/3);
+            double bytecode = run(vm::run, seconds);
+
+            System.out.printf("%-12s %12d %16.0f %16.0f %7.2fx%n",
+                program[0], statements, closures*statements, bytecode*statements, bytecode/closures);
+        }
+
+        specializing(seconds);
+        memory();
+        tiered(seconds);
+    }
+
+    private static void specializing(double seconds) throws CompileException {
+        System.out.printf("%n%-12s %14s %14s %14s %8s%n", "program", "generic st/s", "special st/s", "closures st/s", "nodes");
+        for (String[] program : PROGRAMS) {
+            ASTNode<?> tree = new Parser(program[1]).parse();
+
+            Interpreter counter = new Interpreter(tree, true);
+            counter.run();
+            long statements = counter.getStatements();
+
+            SpecializingInterpreter generic = new SpecializingInterpreter(tree, false);
+            SpecializingInterpreter special = new SpecializingInterpreter(tree);
+            Interpreter interpreter = new Interpreter(tree);
+
+            run(generic::run, seconds/3);
+            double slow = run(generic::run, seconds);
+            run(special::run, seconds/3);
+            double fast = run(special::run, seconds);
+            run(interpreter::run, seconds/3);
+            double closures = run(interpreter::run, seconds);
+
+            System.out.printf("%-12s %14.0f %14.0f %14.0f %8d%n",
+                program[0], slow*statements, fast*statements, closures*statements, special.getSpecialized());
+        }
+    }
+
+    private static void tiered(double seconds) throws CompileException {
+        System.out.printf("%n%-12s %12s %14s %14s %14s %14s%n", "program", "statements", "closures st/s", "bytecode st/s", "tiered st/s", "java st/s");
+        for (int p = 0; p < HOT_PROGRAMS.length; p++) {
+            ASTNode<?> tree = new Parser(HOT_PROGRAMS[p][1]).parse();
+
+            Interpreter counter = new Interpreter(tree, true);
+            counter.run();
+            long statements = counter.getStatements();
+
+            Interpreter interpreter = new Interpreter(tree);
+            Bytecode bytecode = BytecodeCompiler.compile(tree);
+            VM vm = new VM(bytecode);
+            VM tiered = new VM(bytecode, true);
+
+            run(interpreter::run, seconds/3);
+            double closures = run(interpreter::run, seconds);
+            run(vm::run, seconds/3);
+            double plain = run(vm::run, seconds);
+            run(tiered::run, seconds/3);
+            double mixed = run(tiered::run, seconds);
+            run(HOT_JAVA[p], seconds/3);
+            double java = run(HOT_JAVA[p], seconds);
+
+            System.out.printf("%-12s %12d %14.0f %14.0f %14.0f %14.0f  compiled %s%n",
+                HOT_PROGRAMS[p][0], statements, closures*statements, plain*statements, mixed*statements, java*statements, tiered.getCompiled());
+        }
+    }
+
+    /* the HOT_PROGRAMS in Java */
+
+    private static int n;
+    private static volatile Object sink;
+
+    private static void fibJava() {
+        n = 27;
+        sink = fib();
+    }
+
+    private static int fib() {
+        int k = n;
+        int r = k;
+        if (k > 1) {
+            n = k - 1;
+            r = fib();
+            n = k - 2;
+            r = r + fib();
+        }
+        return r;
+    }
+
+    private static void stepJava() {
+        float x = 0;
+        for (int k = 0; k < 1000; k++) {
+            float y = x;
+            for (int i = 0; i < 1000; i++)
+                y = 0.5f + y * 0.999f + i / 1000.0f;
+            x = y;
+        }
+        sink = x;
+    }
+
+    private static void collatzJava() {
+        int longest = 0;
+        for (int k = 1; k < 20000; k++) {
+            int m = k;
+            int s = 0;
+            while (m > 1) {
+                if (m - m / 2 * 2 == 0)
+                    m = m / 2;
+                else
+                    m = 3 * m + 1;
+                s++;
+            }
+            if (s > longest)
+                longest = s;
+        }
+        sink = longest;
+    }
+
+    /**
+     * Heap kept by each form of a program of FUNCTIONS small functions,
+     * per function.
+     */
+    private static void memory() throws CompileException {
+        StringBuilder source = new StringBuilder("int total = 0\n");
+        for (int i = 0; i < FUNCTIONS; i++) {
+            source.append("int f").append(i).append("(int a) {\n")
+                .append("    int s = 0\n")
+                .append("    for (int j = 0, j < 10, j++) {\n")
+                .append("        if (j > 5 && s < 100) {\n")
+                .append("            s += j * 2 - 1\n")
+                .append("        } else {\n")
+                .append("            s = 1 + s\n")
+                .append("        }\n")
+                .append("    }\n")
+                .append("    total += s\n")
+                .append("    return s\n")
+                .append("}\n")
+                // uncalled functions would not be kept by the closures
+                .append("int r").append(i).append(" = f").append(i).append("()\n");
+        }
+        ASTNode<?> tree = new Parser(source).parse();
+
+        long before = used();
+        for (int i = 0; i < COPIES; i++)
+            kept.add(new Interpreter(tree));
+        long closures = (used() - before)/COPIES;
+
+        kept.clear();
+        before = used();
+        for (int i = 0; i < COPIES; i++)
+            kept.add(BytecodeCompiler.compile(tree));
+        long compiled = (used() - before)/COPIES;
+
+        Bytecode bytecode = (Bytecode)kept.get(0);
+        kept.clear();
+
+        System.out.printf("%nheap per function, %d functions: closures %d bytes, bytecode %d bytes (%d ints of code)%n",
+            FUNCTIONS, closures/FUNCTIONS, compiled/FUNCTIONS, bytecode.code.length/FUNCTIONS);
+    }
+}
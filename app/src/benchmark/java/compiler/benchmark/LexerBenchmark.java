@@ -0,0 +1,150 @@
+package compiler.benchmark;
+
+import static compiler.benchmark.Benchmarks.allocated;
+import static compiler.benchmark.Benchmarks.run;
+import static compiler.benchmark.Benchmarks.used;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import compiler.exception.CompileException;
+import compiler.lexer.Lexer;
+import compiler.lexer.Token;
+import compiler.lexer.TokenList;
+import compiler.lexer.TokenSource;
+import compiler.lexer.TokenStream;
+import compiler.parser.Parser;
+
+/**
+ * Parses generated programs through the ring buffer lookahead of the
+ * {@link Lexer} and through the list it replaced. Then holds a generated
+ * program as a {@link TokenStream} and as a list of Tokens and measures the
+ * heap, scan and parse of each, and last scans it into a TokenStream on one
+ * thread, and in chunks on a ForkJoinPool.
+ */
+class LexerBenchmark {
+    private LexerBenchmark() {}
+
+    // characters in the generated program
+    private static final int LENGTH = 8 << 20;
+
+    // characters in the program held as tokens
+    private static final int HELD = 2 << 20;
+
+    // what is measured, where the collector cannot take it early
+    private static final List<Object> kept = new ArrayList<Object>();
+
+    // characters in the programs parsed through each lookahead
+    private static final int[] LOOKAHEAD_LENGTHS = { 64 << 10, 256 << 10 };
+
+    private interface Source {
+        TokenSource of(String source);
+    }
+
+    static void measure(double seconds) throws CompileException {
+        for (int length : LOOKAHEAD_LENGTHS)
+            lookahead(length, seconds);
+        stream(seconds);
+        parallel(seconds);
+    }
+
+    private static void lookahead(int length, double seconds) throws CompileException {
+        String source = Programs.generated(length);
+        int tokens = new TokenStream(source).size();
+
+        System.out.printf("%nparse of %d tokens:%n", tokens);
+        lookahead("ring buffer", source, tokens, Lexer::new, seconds);
+        lookahead("list", source, tokens, ListLookahead::new, seconds);
+    }
+
+    private static void lookahead(String name, String source, int tokens, Source lexer, double seconds) {
+        Runnable parse = () -> {
+            try {
+                new Parser(lexer.of(source)).parse();
+            } catch (CompileException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        run(parse, seconds/3);
+        double parses = run(parse, seconds);
+
+        long before = allocated();
+        parse.run();
+        long bytes = allocated() - before;
+
+        System.out.printf("  %-12s %8.2f ms, %6.1f ns and %5.1f bytes allocated a token%n",
+            name, 1000/parses, 1e9/parses/tokens, (double)bytes/tokens);
+    }
+
+    private static void stream(double seconds) throws CompileException {
+        String source = Programs.generated(HELD);
+
+        long before = used();
+        kept.add(new TokenStream(source));
+        long arrays = used() - before;
+        TokenStream stream = (TokenStream)kept.remove(0);
+
+        before = used();
+        kept.add(tokens(source));
+        long objects = used() - before;
+        TokenList list = new TokenList(tokens(source), stream.getSymbols());
+        kept.clear();
+
+        int tokens = stream.size();
+        run(() -> new TokenStream(source), seconds/3);
+        double streamScans = run(() -> new TokenStream(source), seconds);
+        run(() -> tokens(source), seconds/3);
+        double listScans = run(() -> tokens(source), seconds);
+
+        double streamParses = parses(stream, () -> stream.setPosition(0), seconds);
+        double listParses = parses(list, () -> list.setPosition(0), seconds);
+
+        System.out.printf("%n%d tokens held as a TokenStream: %.1f bytes a token, %.1f ms to scan, %.1f ms to parse%n",
+            tokens, (double)arrays/tokens, 1000/streamScans, 1000/streamParses);
+        System.out.printf("%d tokens held as Tokens in a list: %.1f bytes a token, %.1f ms to scan, %.1f ms to parse%n",
+            tokens, (double)objects/tokens, 1000/listScans, 1000/listParses);
+    }
+
+    // every token of source scanned by a Lexer
+    private static List<Token> tokens(String source) {
+        List<Token> out = new ArrayList<Token>();
+        Lexer lexer = new Lexer(source);
+        for (Token token = lexer.next(); token != null; token = lexer.next())
+            out.add(token);
+        return out;
+    }
+
+    // parses from the start of tokens, which rewind goes back to, returns
+    // parses a second
+    private static double parses(TokenSource tokens, Runnable rewind, double seconds) {
+        Runnable parse = () -> {
+            rewind.run();
+            try {
+                new Parser(tokens).parse();
+            } catch (CompileException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        run(parse, seconds/3);
+        return run(parse, seconds);
+    }
+
+    private static void parallel(double seconds) {
+        String source = Programs.generated(LENGTH);
+        int tokens = new TokenStream(source).size();
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            run(() -> new TokenStream(source), seconds/3);
+            double sequential = run(() -> new TokenStream(source), seconds);
+            run(() -> new TokenStream(source, pool), seconds/3);
+            double parallel = run(() -> new TokenStream(source, pool), seconds);
+
+            System.out.printf("%ntoken stream of %d tokens, %.1f MB: %.1f ms on one thread, %.1f ms on %d, %.2fx%n",
+                tokens, source.length()/1e6, 1000/sequential, 1000/parallel, pool.getParallelism(), parallel/sequential);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package compiler.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import compiler.lexer.Lexer;
+import compiler.lexer.Token;
+import compiler.lexer.TokenSource;
+import compiler.syntax.SymbolPool;
+import compiler.syntax.Type;
+
+/**
+ * The lookahead of the {@link Lexer} before it was a ring buffer, on top of
+ * a Lexer that is only ever asked for the next token: an ArrayList drained
+ * with remove(0), which hasNext() adds a token to on every call.
+ */
+class ListLookahead implements TokenSource {
+    private final Lexer lexer;
+    private final List<Token> tokenCache;
+
+    ListLookahead(CharSequence input) {
+        lexer = new Lexer(input);
+        tokenCache = new ArrayList<Token>();
+    }
+
+    public Token next() {
+        if (tokenCache.size() > 0)
+            return tokenCache.remove(0);
+        else
+            return lexer.next();
+    }
+
+    public Token peek() {
+        if (nextType() == null)
+            return null;
+
+        return tokenCache.get(0);
+    }
+
+    public Type nextType() {
+        return nextType(1);
+    }
+
+    public Type nextType(int lookAheadCount) {
+        if (lookAheadCount < 1)
+            return null;
+
+        if (tokenCache.size() < lookAheadCount) {
+            int max = lookAheadCount-tokenCache.size();
+            for (int i = 0; i < max; i++)
+                tokenCache.add(lexer.next());
+        }
+
+        Token out = tokenCache.get(lookAheadCount-1);
+        return out == null ? null : out.type;
+    }
+
+    public boolean hasNext() {
+        tokenCache.add(lexer.next());
+        return tokenCache.get(tokenCache.size()-1) != null;
+    }
+
+    public SymbolPool getSymbols() {
+        return lexer.getSymbols();
+    }
+}
@@ -0,0 +1,97 @@
+package compiler.benchmark;
+
+import static compiler.benchmark.Benchmarks.run;
+import static compiler.benchmark.Programs.FOLDING;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.Interpreter;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.PassManager;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+
+/**
+ * Runs a program full of literal arithmetic on the {@link Interpreter}
+ * before and after the {@link ConstantFolder}, and compiles and runs one
+ * full of dead code at each optimization level of the {@link PassManager}.
+ */
+class OptimizerBenchmark {
+    private OptimizerBenchmark() {}
+
+    private static final String DEAD_CODE =
+        "int total = 0\n"+
+        "int n = 0\n"+
+        "int step() {\n"+
+        "    int k = n\n"+
+        "    int twice = 0 + k * 2\n"+
+        "    int square = 0 + k * k\n"+
+        "    int r = 0\n"+
+        "    r = 0 + k * 3\n"+
+        "    r = 1 + k\n"+
+        "    twice = 0 + square - k\n"+
+        "    return r\n"+
+        "    total = 0\n"+
+        "    n = 0\n"+
+        "}\n"+
+        "int unused() {\n"+
+        "    int a = 1\n"+
+        "    return a\n"+
+        "}\n"+
+        "int alsoUnused() {\n"+
+        "    int b = unused()\n"+
+        "    return 0 + b * 2\n"+
+        "}\n"+
+        "for (int i = 0, i < 100000, i++) {\n"+
+        "    n = i\n"+
+        "    total = 0 + total + step() * 1\n"+
+        "    if (1 > 2) {\n"+
+        "        total = alsoUnused()\n"+
+        "    }\n"+
+        "}\n";
+
+    static void measure(double seconds) throws CompileException {
+        folding(seconds);
+        levels(seconds);
+    }
+
+    private static void folding(double seconds) throws CompileException {
+        ASTNode<?> tree = new Parser(FOLDING).parse();
+        ASTNode<?> folded = new Parser(FOLDING).parse();
+        int before = ConstantFolder.size(tree);
+        int removed = ConstantFolder.fold(folded);
+
+        Interpreter plain = new Interpreter(tree);
+        Interpreter optimized = new Interpreter(folded);
+        run(plain::run, seconds/3);
+        double slow = run(plain::run, seconds);
+        run(optimized::run, seconds/3);
+        double fast = run(optimized::run, seconds);
+
+        System.out.printf("%nconstant folding: %d nodes, %d removed (%.0f%%), closures %.2f ms a run before, %.2f ms after, %.2fx%n",
+            before, removed, 100.0*removed/before, 1000/slow, 1000/fast, fast/slow);
+    }
+
+    private static void levels(double seconds) throws CompileException {
+        System.out.printf("%n%-6s %8s %16s %16s%n", "level", "nodes", "compile ms", "closures ms");
+        for (int level = 0; level <= 2; level++) {
+            int l = level;
+            Runnable compile = () -> {
+                try {
+                    PassManager.forLevel(l).run(new Parser(DEAD_CODE).parse());
+                } catch (CompileException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            run(compile, seconds/3);
+            double compiles = run(compile, seconds);
+
+            ASTNode<?> tree = new Parser(DEAD_CODE).parse();
+            PassManager.forLevel(level).run(tree);
+            Interpreter interpreter = new Interpreter(tree);
+            run(interpreter::run, seconds/3);
+            double runs = run(interpreter::run, seconds);
+
+            System.out.printf("-O%-4d %8d %16.3f %16.2f%n", level, ConstantFolder.size(tree), 1000/compiles, 1000/runs);
+        }
+    }
+}
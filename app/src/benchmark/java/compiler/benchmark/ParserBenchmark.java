@@ -0,0 +1,182 @@
+package compiler.benchmark;
+
+import static compiler.benchmark.Benchmarks.run;
+import static compiler.benchmark.Benchmarks.used;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import compiler.exception.CompileException;
+import compiler.lexer.TokenStream;
+import compiler.optimizer.ConstantFolder;
+import compiler.parser.IncrementalParser;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.FlatAST;
+import compiler.parser.grammars.expressions.BinExp;
+import compiler.semantics.VarData;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * Parses a generated program into ASTNodes and into a {@link FlatAST}, and
+ * measures the heap each tree takes and how long a walk over all its nodes
+ * takes. Then edits one line of a program of about 50000 lines with an
+ * {@link IncrementalParser}, and last parses lines of arithmetic by
+ * precedence climbing and by the recursive grammar it replaced.
+ */
+class ParserBenchmark {
+    private ParserBenchmark() {}
+
+    // characters in the generated program
+    private static final int LENGTH = 4 << 20;
+
+    // characters in the edited program, about 50000 lines
+    private static final int EDITED = 1 << 20;
+
+    // lines of arithmetic, and how deep their parentheses go
+    private static final int EXPRESSIONS = 100000;
+    private static final int DEPTH = 3;
+
+    // what is measured, where the collector cannot take it early
+    private static final List<Object> kept = new ArrayList<Object>();
+
+    static void measure(double seconds) throws CompileException {
+        flat(seconds);
+        incremental(seconds);
+        expressions(seconds);
+    }
+
+    private static void flat(double seconds) throws CompileException {
+        String source = Programs.generated(LENGTH);
+
+        long before = used();
+        kept.add(new Parser(source).parse());
+        long nodes = used() - before;
+        ASTNode<?> tree = (ASTNode<?>)kept.remove(0);
+
+        before = used();
+        kept.add(new Parser(source).parseFlat());
+        long arrays = used() - before;
+        FlatAST flat = (FlatAST)kept.remove(0);
+
+        int size = flat.size();
+        int[] counted = new int[1];
+        run(() -> counted[0] = ConstantFolder.size(tree), seconds/3);
+        double walks = run(() -> counted[0] = ConstantFolder.size(tree), seconds);
+        run(() -> counted[0] = size(flat), seconds/3);
+        double flatWalks = run(() -> counted[0] = size(flat), seconds);
+
+        System.out.printf("%ntree of %d nodes: %.1f bytes a node and %.2f ms a walk as ASTNodes, %.1f bytes and %.2f ms as a FlatAST%n",
+            size, (double)nodes/size, 1000/walks, (double)arrays/size, 1000/flatWalks);
+    }
+
+    private static void incremental(double seconds) {
+        String source = Programs.generated(EDITED);
+        // the same statements in the body of one function
+        String nested = "void all() {\n"+source.replace("\n", "\n    ")+"}\n";
+
+        double parses = run(() -> new IncrementalParser(source), seconds/3);
+        double edits = edits(source, seconds);
+        double nestedEdits = edits(nested, seconds);
+
+        System.out.printf("%nprogram of %d lines: %.1f ms to parse, %.3f ms an edit of one line, %.3f ms with everything in one function%n",
+            source.split("\n").length, 1000/parses, 1000/edits, 1000/nestedEdits);
+    }
+
+    // edits a while loop in the middle of source, returns how many edits a
+    // second are parsed
+    private static double edits(String source, double seconds) {
+        IncrementalParser parser = new IncrementalParser(source);
+        int offset = source.indexOf("a = 0 + a - 1", source.length()/2)+12;
+
+        Runnable edit = () -> {
+            parser.edit(offset, 1, "2");
+            parser.edit(offset, 1, "1");
+        };
+        run(edit, seconds/3);
+        return 2*run(edit, seconds);
+    }
+
+    private interface Grammar {
+        ASTNode<?> parse(Parser p, SymbolTable t) throws CompileException;
+    }
+
+    private static void expressions(double seconds) {
+        StringBuilder source = new StringBuilder();
+        Random random = new Random(1);
+        for (int i = 0; i < EXPRESSIONS; i++)
+            expression(source, random, DEPTH).append('\n');
+        TokenStream tokens = new TokenStream(source.toString());
+
+        double climbed = lines(tokens, BinExp::BinaryExpression, seconds);
+        double recursive = lines(tokens, RecursiveBinExp::BinaryExpression, seconds);
+
+        System.out.printf("%n%d lines of arithmetic, %d tokens: %.1f ms by precedence climbing, %.1f ms by recursion%n",
+            EXPRESSIONS, tokens.size(), 1000/climbed, 1000/recursive);
+    }
+
+    // parses every line of tokens with grammar, returns parses of all of
+    // them a second
+    private static double lines(TokenStream tokens, Grammar grammar, double seconds) {
+        SymbolTable t = new SymbolTable();
+        t.vput(tokens.getSymbols().intern("x"), new VarData(Type.INT_ID));
+        Parser p = new Parser(tokens);
+
+        Runnable parse = () -> {
+            tokens.setPosition(0);
+            try {
+                while (tokens.hasNext()) {
+                    grammar.parse(p, t);
+                    p.eat(Type.NEWLINE);
+                }
+            } catch (CompileException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        run(parse, seconds/3);
+        return run(parse, seconds);
+    }
+
+    // a sum of products of powers, of x, numbers and expressions in
+    // parentheses up to depth deep
+    private static StringBuilder expression(StringBuilder out, Random random, int depth) {
+        String[] operators = { " + ", " - ", " * ", " / ", " ** " };
+        int operands = 1 + random.nextInt(6);
+        for (int i = 0; i < operands; i++) {
+            if (i > 0)
+                out.append(operators[random.nextInt(operators.length)]);
+
+            int kind = random.nextInt(4);
+            if (kind == 0 && depth > 0)
+                expression(out.append('('), random, depth-1).append(')');
+            else if (kind <= 1)
+                out.append('x');
+            else
+                out.append(random.nextInt(100));
+        }
+        return out;
+    }
+
+    // ConstantFolder.size on the cursor
+    private static int size(FlatAST tree) {
+        FlatAST.Cursor c = tree.cursor();
+        int out = 1;
+        while (true) {
+            if (c.firstChild() || c.nextSibling()) {
+                out++;
+                continue;
+            }
+            // up until there is a next sibling
+            while (c.parent()) {
+                if (c.nextSibling()) {
+                    out++;
+                    break;
+                }
+            }
+            if (c.getDepth() == 0)
+                return out;
+        }
+    }
+}
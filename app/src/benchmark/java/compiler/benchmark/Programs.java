@@ -0,0 +1,141 @@
+package compiler.benchmark;
+
+/**
+ * Programs more than one benchmark runs.
+ */
+class Programs {
+    private Programs() {}
+
+    static final String[][] PROGRAMS = {
+        { "int loop",
+            "int s = 0\n"+
+            "int i = 0\n"+
+            "while (i < 1000000) {\n"+
+            "    s = 0 + s + i * 3 - i / 2\n"+
+            "    i++\n"+
+            "}\n" },
+        { "float loop",
+            "float x = 0.0\n"+
+            "for (int i = 0, i < 1000000, i++) {\n"+
+            "    x = 0.5 + x * 0.999 + i / 1000.0\n"+
+            "}\n" },
+        { "nested for",
+            "int n = 0\n"+
+            "for (int i = 0, i < 1000, i++) {\n"+
+            "    for (int j = 0, j < 1000, j++) {\n"+
+            "        if (j < i && j > 10) {\n"+
+            "            n++\n"+
+            "        } else {\n"+
+            "            n += 2\n"+
+            "        }\n"+
+            "    }\n"+
+            "}\n" },
+        { "fib",
+            "int n = 25\n"+
+            "int fib() {\n"+
+            "    int k = n\n"+
+            "    int r = k\n"+
+            "    if (k > 1) {\n"+
+            "        n = 0 + k - 1\n"+
+            "        r = fib()\n"+
+            "        n = 0 + k - 2\n"+
+            "        r = 0 + r + fib()\n"+
+            "    }\n"+
+            "    return r\n"+
+            "}\n"+
+            "int result = fib()\n" },
+    };
+
+    // programs whose time goes into a few hot functions, for the tiered VM
+    static final String[][] HOT_PROGRAMS = {
+        { "fib",
+            "int n = 27\n"+
+            "int fib() {\n"+
+            "    int k = n\n"+
+            "    int r = k\n"+
+            "    if (k > 1) {\n"+
+            "        n = 0 + k - 1\n"+
+            "        r = fib()\n"+
+            "        n = 0 + k - 2\n"+
+            "        r = 0 + r + fib()\n"+
+            "    }\n"+
+            "    return r\n"+
+            "}\n"+
+            "int result = fib()\n" },
+        { "float step",
+            "float x = 0.0\n"+
+            "float step() {\n"+
+            "    float y = x\n"+
+            "    for (int i = 0, i < 1000, i++) {\n"+
+            "        y = 0.5 + y * 0.999 + i / 1000.0\n"+
+            "    }\n"+
+            "    return y\n"+
+            "}\n"+
+            "for (int k = 0, k < 1000, k++) {\n"+
+            "    x = step()\n"+
+            "}\n" },
+        { "collatz",
+            "int longest = 0\n"+
+            "int start = 0\n"+
+            "int steps() {\n"+
+            "    int m = start\n"+
+            "    int s = 0\n"+
+            "    while (m > 1) {\n"+
+            "        if (0 + m - m / 2 * 2 == 0) {\n"+
+            "            m = 0 + m / 2\n"+
+            "        } else {\n"+
+            "            m = 3 * m + 1\n"+
+            "        }\n"+
+            "        s++\n"+
+            "    }\n"+
+            "    return s\n"+
+            "}\n"+
+            "for (int k = 1, k < 20000, k++) {\n"+
+            "    start = k\n"+
+            "    int s = steps()\n"+
+            "    if (s > longest) {\n"+
+            "        longest = s\n"+
+            "    }\n"+
+            "}\n" },
+    };
+
+    static final String FOLDING =
+        "int total = 0\n"+
+        "float y = 0.0\n"+
+        "float z = 1.5\n"+
+        "for (int i = 0, i < 100000, i++) {\n"+
+        "    total = 0 + total + 60 * 60 * 24 - 86400 + i * 1 + 0\n"+
+        "    y = 0.5 * 2 ** 3 + z * 1 - 4.0\n"+
+        "    if (2 > 1 && true) {\n"+
+        "        total = 1 + total * 1\n"+
+        "    } else {\n"+
+        "        total = 0\n"+
+        "    }\n"+
+        "    while (false || 1 > 2) {\n"+
+        "        total = 0\n"+
+        "    }\n"+
+        "}\n";
+
+    /**
+     * A program of at least length characters: assignments, conditions and
+     * small functions, over and over with different numbers and names.
+     */
+    static String generated(int length) {
+        StringBuilder out = new StringBuilder("int x = 0\nfloat y = 1.5\n");
+        for (int i = 0; out.length() < length; i++) {
+            out.append("x = ").append(i).append(" + x * (2 - x) ** 2\n")
+                .append("if (x > ").append(i).append(" && x < 5) {\n")
+                .append("    y = 2.0 * y\n")
+                .append("}\n")
+                .append("str s").append(i).append(" = \"line ").append(i).append("\"\n")
+                .append("int f").append(i).append("() {\n")
+                .append("    int a = ").append(i).append("\n")
+                .append("    while (a > 0) {\n")
+                .append("        a = 0 + a - 1\n")
+                .append("    }\n")
+                .append("    return a\n")
+                .append("}\n");
+        }
+        return out.toString();
+    }
+}
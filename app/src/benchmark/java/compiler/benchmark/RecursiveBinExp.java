@@ -0,0 +1,121 @@
+package compiler.benchmark;
+
+import compiler.exception.CompileException;
+import compiler.exception.semantics.InvalidTypeException;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.expressions.BinExp;
+import compiler.parser.grammars.expressions.Expressions;
+import compiler.parser.grammars.expressions.Values;
+import compiler.syntax.Symbol;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * The arithmetic grammar of {@link BinExp} before it was parsed by
+ * precedence climbing: one method a level, each calling itself for the
+ * right hand side.
+ */
+class RecursiveBinExp {
+    private RecursiveBinExp() {}
+
+    /**
+     * binaryexpression := term addsuboperator binaryexpression
+     *                   | term
+     */
+    static ASTNode<?> BinaryExpression(Parser p, SymbolTable t) throws CompileException {
+        ASTNode<?> temp = Term(p, t);
+
+        Type nextType = p.l.nextType();
+        if (nextType != null && nextType.within(Type.PLUS, Type.MINUS)) {
+            p.eat(nextType);
+            return new ASTNode<ASTNode<?>>(
+                "BinaryExpression", nextType,
+                temp, BinaryExpression(p, t)
+            );
+        }
+
+        return temp;
+    }
+
+    /**
+     * term := exp muldivoperator term
+     *       | exp
+     */
+    static ASTNode<?> Term(Parser p, SymbolTable t) throws CompileException {
+        ASTNode<?> temp = Exp(p, t);
+
+        Type nextType = p.l.nextType();
+        if (nextType != null && nextType.within(Type.MUL, Type.DIV)) {
+            p.eat(nextType);
+            return new ASTNode<ASTNode<?>>(
+                "Term", nextType,
+                temp, Term(p, t)
+            );
+        }
+
+        return temp;
+    }
+
+    /**
+     * exp := factor EXP exp
+     *      | factor
+     */
+    static ASTNode<?> Exp(Parser p, SymbolTable t) throws CompileException {
+        ASTNode<?> temp = Factor(p, t);
+
+        if (p.l.nextType() == Type.EXP) {
+            p.eat(Type.EXP);
+            return new ASTNode<ASTNode<?>>(
+                "Exp", Type.EXP,
+                temp, Exp(p, t)
+            );
+        }
+
+        return temp;
+    }
+
+    /**
+     * BinExp.Factor, with parentheses parsed by the grammar above
+     */
+    static ASTNode<?> Factor(Parser p, SymbolTable t) throws CompileException {
+        final String name = "Factor";
+
+        Type nextType = p.l.nextType();
+        boolean preceedingMinus = false;
+
+        if (nextType == Type.MINUS) {
+            preceedingMinus = true;
+            p.eat(Type.MINUS);
+
+            nextType = p.l.nextType();
+        }
+
+        ASTNode<?> temp;
+        if (nextType != null && nextType.within(Type.INT, Type.FLOAT)) {
+            temp = Values.NumberLiteral(p);
+        } else if (nextType == Type.ID) {
+            Type assignType;
+            if (p.l.nextType(2) == Type.LPAREN) {
+                temp = Expressions.FunctionCall(p, t);
+                assignType = temp.operator;
+            } else {
+                temp = Values.Variable(p, t);
+                assignType = t.vget((Symbol)temp.fst()).type;
+            }
+
+            if (!assignType.within(Type.INT_ID, Type.FLOAT_ID))
+                throw new InvalidTypeException(p.position(), assignType, Type.INT, Type.FLOAT);
+        } else if (nextType == Type.LPAREN) {
+            p.eat(Type.LPAREN);
+            temp = BinaryExpression(p, t);
+            p.eat(Type.RPAREN);
+        } else {
+            throw p.unexpected("Variable, NumberLiteral, (BinaryExpression)");
+        }
+
+        if (preceedingMinus)
+            return new ASTNode<ASTNode<?>>(name, Type.MINUS, temp);
+        return temp;
+    }
+}
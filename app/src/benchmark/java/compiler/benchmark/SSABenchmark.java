@@ -0,0 +1,223 @@
+package compiler.benchmark;
+
+import static compiler.benchmark.Benchmarks.run;
+import static compiler.benchmark.Programs.FOLDING;
+import static compiler.benchmark.Programs.PROGRAMS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.SSAInterpreter;
+import compiler.ir.ConstantPropagation;
+import compiler.ir.CopyPropagation;
+import compiler.ir.DeadCode;
+import compiler.ir.Function;
+import compiler.ir.Inlining;
+import compiler.ir.LoopInvariants;
+import compiler.ir.Lowering;
+import compiler.ir.Passes;
+import compiler.ir.Program;
+import compiler.ir.StrengthReduction;
+import compiler.ir.ValueNumbering;
+import compiler.optimizer.PassManager;
+import compiler.parser.Parser;
+
+/**
+ * Lowers programs to SSA form and runs them on the {@link SSAInterpreter}
+ * as lowered and after the passes of -O2, programs of nested loops with
+ * each of the loop passes on its own, and programs that call small
+ * functions in their loops with and without inlining.
+ */
+class SSABenchmark {
+    private SSABenchmark() {}
+
+    // for the loop passes: invariants, powers, and induction variables times
+    // a constant
+    private static final String[][] LOOP_PROGRAMS = {
+        { "invariant",
+            "int n = 400\n"+
+            "float total = 0.0\n"+
+            "for (int i = 0, i < n, i++) {\n"+
+            "    for (int j = 0, j < n, j++) {\n"+
+            "        total = 0.0 + total + (0.0 + i * 2.5 + n / 3.0) * (0.0 + i - 1.0) + j\n"+
+            "    }\n"+
+            "}\n" },
+        { "powers",
+            "int s = 0\n"+
+            "float g = 0.0\n"+
+            "for (int i = 0, i < 400, i++) {\n"+
+            "    for (int j = 0, j < 400, j++) {\n"+
+            "        s = 0 + s + j ** 2 + i ** 3\n"+
+            "        g = 0.0 + g + j ** 2.0\n"+
+            "    }\n"+
+            "}\n" },
+        { "induction",
+            "int s = 0\n"+
+            "int i = 0\n"+
+            "while (i < 400) {\n"+
+            "    int j = 0\n"+
+            "    while (j < 400) {\n"+
+            "        s = 0 + s + i * 13 + j * 7 - j * 3\n"+
+            "        j++\n"+
+            "    }\n"+
+            "    i++\n"+
+            "}\n" },
+    };
+
+    // small functions called in loops, for inlining; calls take no
+    // arguments, values go in and out through globals
+    private static final String[][] CALL_PROGRAMS = {
+        { "helpers",
+            "int x = 0\n"+
+            "int sq() {\n"+
+            "    return 0 + x * x\n"+
+            "}\n"+
+            "int clamp() {\n"+
+            "    int r = x\n"+
+            "    if (x < 10) {\n"+
+            "        r = 10\n"+
+            "    }\n"+
+            "    if (x > 500) {\n"+
+            "        r = 500\n"+
+            "    }\n"+
+            "    return r\n"+
+            "}\n"+
+            "void bump() {\n"+
+            "    x = 0 + x + 1\n"+
+            "}\n"+
+            "int total = 0\n"+
+            "for (int i = 0, i < 100000, i++) {\n"+
+            "    x = i\n"+
+            "    total = 0 + total + sq() + clamp()\n"+
+            "    bump()\n"+
+            "    total = 0 + total - sq()\n"+
+            "}\n" },
+        { "call chain",
+            "float x = 0.0\n"+
+            "float acc = 0.0\n"+
+            "float half() {\n"+
+            "    return 0.0 + x * 0.5\n"+
+            "}\n"+
+            "float twice() {\n"+
+            "    return 0.0 + half() * 4.0\n"+
+            "}\n"+
+            "float step() {\n"+
+            "    return 0.0 + twice() + half()\n"+
+            "}\n"+
+            "for (int i = 0, i < 300, i++) {\n"+
+            "    for (int j = 0, j < 300, j++) {\n"+
+            "        x = 1.0 * j\n"+
+            "        acc = 0.0 + acc + step()\n"+
+            "    }\n"+
+            "}\n" },
+        { "fib",
+            Programs.HOT_PROGRAMS[0][1] },
+    };
+
+    static void measure(double seconds) throws CompileException {
+        ssa(seconds);
+        loops(seconds);
+        calls(seconds);
+    }
+
+    private static void ssa(double seconds) throws CompileException {
+        System.out.printf("%n%-12s %10s %10s %14s %14s %10s %10s %8s%n",
+            "program", "O0 size", "O2 size", "O0 executed", "O2 executed", "O0 ms", "O2 ms", "speedup");
+        List<String[]> programs = new ArrayList<String[]>(List.of(PROGRAMS));
+        programs.add(new String[] { "folding", FOLDING });
+        for (String[] program : programs) {
+            Program lowered = Lowering.lower(new Parser(program[1]).parse());
+            Program optimized = Lowering.lower(new Parser(program[1]).parse());
+            Passes.forLevel(2).run(optimized);
+
+            SSAInterpreter counter = new SSAInterpreter(lowered, true);
+            counter.run();
+            long before = counter.getInstructions();
+            counter = new SSAInterpreter(optimized, true);
+            counter.run();
+            long after = counter.getInstructions();
+
+            SSAInterpreter slow = new SSAInterpreter(lowered);
+            SSAInterpreter fast = new SSAInterpreter(optimized);
+            run(slow::run, seconds/3);
+            double plain = run(slow::run, seconds);
+            run(fast::run, seconds/3);
+            double passes = run(fast::run, seconds);
+
+            System.out.printf("%-12s %10d %10d %14d %14d %10.2f %10.2f %7.2fx%n",
+                program[0], lowered.size(), optimized.size(), before, after, 1000/plain, 1000/passes, passes/plain);
+        }
+    }
+
+    private static void loops(double seconds) throws CompileException {
+        String[] names = { "none", "invariants", "strength", "both" };
+        System.out.printf("%nms a run, and millions of instructions run%n%-12s", "program");
+        for (String name : names)
+            System.out.printf(" %16s", name);
+        System.out.printf("%n");
+
+        for (String[] program : LOOP_PROGRAMS) {
+            System.out.printf("%-12s", program[0]);
+            for (int set = 0; set < names.length; set++) {
+                PassManager<Program> passes = ssaPasses(false, (set & 1) != 0, (set & 2) != 0);
+                Program lowered = Lowering.lower(new Parser(program[1]).parse());
+                passes.run(lowered);
+                SSAInterpreter counter = new SSAInterpreter(lowered, true);
+                counter.run();
+                SSAInterpreter interpreter = new SSAInterpreter(lowered);
+                run(interpreter::run, seconds/3);
+                double runs = run(interpreter::run, seconds);
+                System.out.printf(" %16s", String.format("%.2f %.2fM", 1000/runs, counter.getInstructions()/1e6));
+            }
+            System.out.printf("%n");
+        }
+    }
+
+    private static void calls(double seconds) throws CompileException {
+        System.out.printf("%n%-12s %8s %12s %12s %16s %16s %10s %10s %8s%n",
+            "program", "inlined", "size before", "size after", "executed before", "executed after", "ms before", "ms after", "speedup");
+        for (String[] program : CALL_PROGRAMS) {
+            Program plain = Lowering.lower(new Parser(program[1]).parse());
+            ssaPasses(false, true, true).run(plain);
+            Program inlined = Lowering.lower(new Parser(program[1]).parse());
+            ssaPasses(true, true, true).run(inlined);
+            int calls = 0;
+            for (Function f : inlined.functions)
+                calls += f.inlined.size();
+
+            SSAInterpreter counter = new SSAInterpreter(plain, true);
+            counter.run();
+            long before = counter.getInstructions();
+            counter = new SSAInterpreter(inlined, true);
+            counter.run();
+            long after = counter.getInstructions();
+
+            SSAInterpreter slow = new SSAInterpreter(plain);
+            SSAInterpreter fast = new SSAInterpreter(inlined);
+            run(slow::run, seconds/3);
+            double calling = run(slow::run, seconds);
+            run(fast::run, seconds/3);
+            double inlining = run(fast::run, seconds);
+
+            System.out.printf("%-12s %8d %12d %12d %16d %16d %10.2f %10.2f %7.2fx%n",
+                program[0], calls, plain.size(), inlined.size(), before, after, 1000/calling, 1000/inlining, inlining/calling);
+        }
+    }
+
+    // the passes of -O2, with or without inlining and the loop passes
+    private static PassManager<Program> ssaPasses(boolean inlining, boolean invariants, boolean strength) {
+        PassManager<Program> passes = new PassManager<Program>(Program::size);
+        if (inlining)
+            passes.add("inlining", Inlining::run);
+        passes.add("copies", CopyPropagation::run);
+        passes.add("constants", ConstantPropagation::run);
+        passes.add("value numbering", ValueNumbering::run);
+        if (invariants)
+            passes.add("loop invariants", LoopInvariants::run);
+        if (strength)
+            passes.add("strength reduction", StrengthReduction::run);
+        passes.add("dead code", DeadCode::run);
+        return passes;
+    }
+}
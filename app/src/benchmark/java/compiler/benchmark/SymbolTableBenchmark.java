@@ -0,0 +1,99 @@
+package compiler.benchmark;
+
+import static compiler.benchmark.Benchmarks.run;
+
+import compiler.exception.CompileException;
+import compiler.parser.Parser;
+import compiler.semantics.VarData;
+import compiler.syntax.Symbol;
+import compiler.syntax.SymbolPool;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * Enters blocks under 10000 global variables, each block declaring a local
+ * and looking up a global and the local, with the {@link SymbolTable} and
+ * with the HashMap table it replaced. Then parses a program of 10000
+ * globals and 100000 blocks.
+ */
+class SymbolTableBenchmark {
+    private SymbolTableBenchmark() {}
+
+    private static final int GLOBALS = 10000;
+    private static final int BLOCKS = 100000;
+
+    // blocks entered in one timed run
+    private static final int BATCH = 100;
+
+    static void measure(double seconds) throws CompileException {
+        tables(seconds);
+        parse(seconds);
+    }
+
+    private static void tables(double seconds) {
+        SymbolPool pool = new SymbolPool();
+        Symbol[] globals = new Symbol[GLOBALS];
+        for (int i = 0; i < GLOBALS; i++)
+            globals[i] = pool.intern("g"+i);
+        Symbol local = pool.intern("a");
+        VarData data = new VarData(Type.INT_ID);
+
+        SymbolTable shared = new SymbolTable();
+        CopyingSymbolTable copying = new CopyingSymbolTable();
+        for (Symbol global : globals) {
+            shared.vput(global, data);
+            copying.vput(global, data);
+        }
+
+        int[] found = new int[1];
+        Runnable sharing = () -> {
+            for (int i = 0; i < BATCH; i++) {
+                SymbolTable block = new SymbolTable(shared);
+                block.vput(local, data);
+                if (block.vget(globals[i*97 % GLOBALS]) == block.vget(local))
+                    found[0]++;
+            }
+        };
+        Runnable copies = () -> {
+            for (int i = 0; i < BATCH; i++) {
+                CopyingSymbolTable block = new CopyingSymbolTable(copying);
+                block.vput(local, data);
+                if (block.vget(globals[i*97 % GLOBALS]) == block.vget(local))
+                    found[0]++;
+            }
+        };
+
+        run(sharing, seconds/3);
+        double shares = BATCH*run(sharing, seconds);
+        run(copies, seconds/3);
+        double copied = BATCH*run(copies, seconds);
+
+        System.out.printf("%n%d blocks under %d globals: %.1f ms sharing the table, %.1f ms copying it%n",
+            BLOCKS, GLOBALS, 1000*BLOCKS/shares, 1000*BLOCKS/copied);
+    }
+
+    private static void parse(double seconds) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < GLOBALS; i++)
+            source.append("int g").append(i).append(" = ").append(i).append('\n');
+        for (int i = 0; i < BLOCKS; i++) {
+            int global = i*97 % GLOBALS;
+            source.append("if (g").append(global).append(" > 0) {\n")
+                .append("    int a = g").append(global).append('\n')
+                .append("}\n");
+        }
+        String program = source.toString();
+
+        Runnable parse = () -> {
+            try {
+                new Parser(program).parse();
+            } catch (CompileException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        run(parse, seconds/3);
+        double parses = run(parse, seconds);
+
+        System.out.printf("program of %d globals and %d blocks: %.1f ms to parse%n", GLOBALS, BLOCKS, 1000/parses);
+    }
+}
@@ -1,33 +1,316 @@
 package compiler;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
 import compiler.exception.CompileException;
+import compiler.interpreter.Bytecode;
+import compiler.interpreter.BytecodeCompiler;
+import compiler.interpreter.Disassembler;
+import compiler.interpreter.Engine;
+import compiler.interpreter.ExecutionException;
+import compiler.interpreter.Interpreter;
+import compiler.interpreter.SSAInterpreter;
+import compiler.interpreter.SpecializingInterpreter;
+import compiler.interpreter.VM;
+import compiler.ir.Function;
+import compiler.ir.Inlining;
+import compiler.ir.Loops;
+import compiler.ir.Lowering;
+import compiler.ir.Passes;
+import compiler.ir.Printer;
+import compiler.ir.Program;
+import compiler.ir.Verifier;
 import compiler.lexer.Lexer;
+import compiler.optimizer.PassManager;
+import compiler.parser.IncrementalParser;
 import compiler.parser.Parser;
+import compiler.parser.Pipeline;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.FlatAST;
 
 public class Main {
+    private static final int MAX_ERRORS = 100;
+    // how often --watch looks at the file, in milliseconds
+    private static final int WATCH_INTERVAL = 200;
+
+    // set by -O0, -O1 or -O2 before the other arguments
+    private static int level = 0;
+    // set by --parallel before the other arguments, function bodies are
+    // then parsed on the common pool
+    private static boolean parallel = false;
+
     public static void main(String... args) {
         try {
+            while (args[0].matches("-O[0-9]+") || args[0].equals("--parallel")) {
+                if (args[0].equals("--parallel"))
+                    parallel = true;
+                else
+                    level = Integer.parseInt(args[0].substring(2));
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
+
             // testLexer(args[0]);
-            testParser(args[0]);
+            if (args[0].equals("--run"))
+                run(args[1]);
+            else if (args[0].equals("--bytecode"))
+                runBytecode(args[1]);
+            else if (args[0].equals("--tiered"))
+                runTiered(args[1]);
+            else if (args[0].equals("--specialize"))
+                runSpecializing(args[1]);
+            else if (args[0].equals("--ssa"))
+                runSSA(args[1]);
+            else if (args[0].equals("--optimize"))
+                testOptimizer(args[1]);
+            else if (args[0].equals("--flat"))
+                testFlat(args[1]);
+            else if (args[0].equals("--watch"))
+                watch(args[1]);
+            else
+                testParser(args[0]);
         } catch (ArrayIndexOutOfBoundsException e) {
             System.out.println("Must give a file path argument!");
+        } catch (IOException e) {
+            System.out.println("Could not read file: "+e);
         }
     }
 
-    public static void testParser(String path) {
-        Parser p = new Parser(Reader.readFile(path));
+    public static void testParser(String path) throws IOException {
+        CharSequence source = Reader.readFile(path);
+        System.out.println("Abstract Syntax Tree:\n");
+
+        // the parallel parse stops at the first error, so the tree is only
+        // printed once it is all there
+        if (parallel) {
+            try {
+                StringBuilder out = new StringBuilder();
+                parse(source).printTree(out, "", "");
+                System.out.println(out);
+            } catch (CompileException e) {
+                System.out.println(e);
+            }
+            return;
+        }
+
+        System.out.print("Program\n└── StatementList\n");
+
+        // each statement is printed as soon as the next one shows whether it
+        // was the last
+        ASTNode<?>[] pending = new ASTNode<?>[1];
         try {
-            System.out.println("Abstract Syntax Tree:\n");
-            StringBuilder out = new StringBuilder();
-            p.parse().printTree(out, "", "");
-            System.out.println(out.toString());
+            List<CompileException> errors = Pipeline.run(source, MAX_ERRORS, statement -> {
+                if (pending[0] != null)
+                    printStatement(pending[0], false);
+                pending[0] = statement;
+            });
+
+            if (pending[0] != null)
+                printStatement(pending[0], true);
+            System.out.println();
+
+            // every error in the file, not only the first
+            for (CompileException e : errors)
+                System.out.println(e);
         } catch (CompileException e) {
             System.out.println(e);
             // e.printStackTrace();
         }
     }
 
-    public static void testLexer(String path) {
+    // a branch of the StatementList, as ASTNode.printTree prints it
+    private static void printStatement(ASTNode<?> statement, boolean last) {
+        StringBuilder out = new StringBuilder();
+        if (last)
+            statement.printTree(out, "    └── ", "        ");
+        else
+            statement.printTree(out, "    ├── ", "    │   ");
+        System.out.print(out);
+    }
+
+    private static ASTNode<?> parse(CharSequence source) throws CompileException {
+        Parser parser = new Parser(source);
+        return parallel ? parser.parse(ForkJoinPool.commonPool()) : parser.parse();
+    }
+
+    // parses the program and runs the passes of the optimization level on it
+    private static ASTNode<?> parse(String path) throws IOException, CompileException {
+        ASTNode<?> program = parse(Reader.readFile(path));
+        PassManager.forLevel(level).run(program);
+        return program;
+    }
+
+    // prints the tree of the program after the passes of the optimization
+    // level, then what each pass did
+    public static void testOptimizer(String path) throws IOException {
+        try {
+            ASTNode<?> program = parse(Reader.readFile(path));
+            PassManager<ASTNode<?>> passes = PassManager.forLevel(level);
+            passes.run(program);
+
+            StringBuilder out = new StringBuilder();
+            program.printTree(out, "", "");
+            System.out.print(out);
+            System.out.print(passes.report());
+        } catch (CompileException e) {
+            System.out.println(e);
+        }
+    }
+
+    // parses the program into a FlatAST and prints its tree from there,
+    // then how many nodes it has
+    public static void testFlat(String path) throws IOException {
+        try {
+            FlatAST program = new Parser(Reader.readFile(path)).parseFlat();
+            StringBuilder out = new StringBuilder();
+            program.printTree(out, "", "");
+            System.out.print(out);
+            System.out.println(program.size()+" nodes");
+        } catch (CompileException e) {
+            System.out.println(e);
+        }
+    }
+
+    // prints the errors in the file, then again each time it changes, after
+    // parsing again only the part that changed
+    public static void watch(String path) throws IOException {
+        Path file = Paths.get(path);
+        FileTime modified = Files.getLastModifiedTime(file);
+        String source = Reader.readFile(path).toString();
+
+        IncrementalParser parser = new IncrementalParser(source);
+        System.out.println(parser.getErrors().size()+" errors");
+        for (CompileException e : parser.getErrors())
+            System.out.println(e);
+
+        while (true) {
+            try {
+                Thread.sleep(WATCH_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (Files.getLastModifiedTime(file).equals(modified))
+                continue;
+            modified = Files.getLastModifiedTime(file);
+
+            String changed = Reader.readFile(path).toString();
+            // one edit covering everything between the common start and end
+            int start = 0;
+            int length = Math.min(source.length(), changed.length());
+            while (start < length && source.charAt(start) == changed.charAt(start))
+                start++;
+            int end = 0;
+            while (end < length-start && source.charAt(source.length()-1-end) == changed.charAt(changed.length()-1-end))
+                end++;
+            if (start == source.length() && start == changed.length())
+                continue;
+
+            long time = System.nanoTime();
+            parser.edit(start, source.length()-end-start, changed.substring(start, changed.length()-end));
+            time = System.nanoTime()-time;
+            source = changed;
+
+            System.out.printf("%d statements parsed again in %.2f ms, %d errors%n",
+                parser.getReparsed(), time/1e6, parser.getErrors().size());
+            for (CompileException e : parser.getErrors())
+                System.out.println(e);
+        }
+    }
+
+    // runs the program and prints its top level variables
+    public static void run(String path) throws IOException {
+        try {
+            Interpreter interpreter = new Interpreter(parse(path));
+            interpreter.run();
+
+            printGlobals(interpreter);
+        } catch (CompileException | ExecutionException e) {
+            System.out.println(e);
+        }
+    }
+
+    // prints the bytecode of the program, then runs it on the VM
+    public static void runBytecode(String path) throws IOException {
+        try {
+            Bytecode program = BytecodeCompiler.compile(parse(path));
+            System.out.println(Disassembler.disassemble(program));
+
+            VM vm = new VM(program);
+            vm.run();
+            printGlobals(vm);
+        } catch (CompileException | ExecutionException e) {
+            System.out.println(e);
+        }
+    }
+
+    // runs the program on the VM with hot functions compiled to JVM classes,
+    // prints its top level variables and which functions were compiled
+    public static void runTiered(String path) throws IOException {
+        try {
+            VM vm = new VM(BytecodeCompiler.compile(parse(path)), true);
+            vm.run();
+
+            printGlobals(vm);
+            System.out.println("compiled: "+vm.getCompiled());
+        } catch (CompileException | ExecutionException e) {
+            System.out.println(e);
+        }
+    }
+
+    // runs the program on self-specializing nodes, prints its top level
+    // variables and how many nodes specialized
+    public static void runSpecializing(String path) throws IOException {
+        try {
+            SpecializingInterpreter interpreter = new SpecializingInterpreter(parse(path));
+            interpreter.run();
+
+            printGlobals(interpreter);
+            System.out.println("specialized: "+interpreter.getSpecialized()+", deoptimized: "+interpreter.getDeoptimized());
+        } catch (CompileException | ExecutionException e) {
+            System.out.println(e);
+        }
+    }
+
+    // lowers the program to SSA form and runs the passes of the optimization
+    // level on it, prints it, its loops, what each pass did and what was
+    // inlined, then runs it
+    public static void runSSA(String path) throws IOException {
+        try {
+            Program program = Lowering.lower(parse(path));
+            PassManager<Program> passes = Passes.forLevel(level);
+            passes.run(program);
+            System.out.println(Printer.print(program));
+            for (Function f : program.functions) {
+                Loops loops = new Loops(f);
+                if (!loops.loops.isEmpty())
+                    System.out.print("loops of "+f+":\n"+loops);
+            }
+            System.out.print(passes.report());
+            System.out.print(Inlining.report(program));
+            for (String problem : Verifier.verify(program))
+                System.out.println("problem: "+problem);
+
+            SSAInterpreter interpreter = new SSAInterpreter(program);
+            interpreter.run();
+            printGlobals(interpreter);
+        } catch (CompileException | ExecutionException e) {
+            System.out.println(e);
+        }
+    }
+
+    private static void printGlobals(Engine engine) {
+        for (Map.Entry<String, Object> global : engine.getGlobals().entrySet())
+            System.out.println(global.getKey()+" = "+global.getValue());
+    }
+
+    public static void testLexer(String path) throws IOException {
         Lexer l = new Lexer(Reader.readFile(path));
         while (l.hasNext())
             System.out.println(l.next());
@@ -1,28 +1,62 @@
 package compiler;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import compiler.lexer.SourceText;
 
 public class Reader {
-    private static final String NEWLINE = "\n";
-    public static String readFile(String path) {
-        try {
-            StringBuilder output = new StringBuilder();
-
-            File file = new File(path);
-            Scanner reader = new Scanner(file);
-
-            while (reader.hasNextLine()) {
-                output.append(reader.nextLine());
-                output.append(NEWLINE);
-            }
-
-            reader.close();
-            return output.toString();
-        } catch (FileNotFoundException e) {
-            System.out.println("Must give a valid file path!");
-            return null;
+    /**
+     * Maps the file into memory. ASCII files with only '\n' line breaks are
+     * read straight from the mapping, anything else is decoded once as UTF-8
+     * with every line break (\r\n, \r, U+0085, U+2028 and U+2029, as
+     * Scanner.nextLine splits on) turned into '\n'.
+     */
+    public static CharSequence readFile(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(path+" is too large to compile ("+size+" bytes)");
+
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (isPlainAscii(bytes))
+                return SourceText.ascii(bytes);
+
+            // throws on malformed input instead of silently replacing it
+            return normalizeLineBreaks(StandardCharsets.UTF_8.newDecoder().decode(bytes));
+        }
+    }
+
+    // ASCII without '\r', the only line break left to normalise in ASCII
+    private static boolean isPlainAscii(MappedByteBuffer bytes) {
+        for (int i = 0; i < bytes.limit(); i++) {
+            byte b = bytes.get(i);
+            if (b < 0 || b == '\r')
+                return false;
         }
+        return true;
+    }
+
+    // rewrites the decoded chars in place, \r\n shrinks to one '\n'
+    private static CharBuffer normalizeLineBreaks(CharBuffer text) {
+        int length = text.limit();
+        int out = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.get(i);
+            if (c == '\r' && i+1 < length && text.get(i+1) == '\n')
+                continue;
+            if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+                c = '\n';
+            text.put(out++, c);
+        }
+
+        text.limit(out);
+        return text;
     }
 }
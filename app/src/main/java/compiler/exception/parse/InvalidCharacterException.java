@@ -0,0 +1,28 @@
+package compiler.exception.parse;
+
+import compiler.exception.CompileException;
+
+public class InvalidCharacterException extends CompileException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String string;
+
+    public InvalidCharacterException(String given, int[] pos) {
+        StringBuilder sb = new StringBuilder();
+        // an unterminated comment or string is one token
+        sb.append(given.codePointCount(0, given.length()) == 1 ? "Invalid character '" : "Invalid text '");
+        sb.append(given);
+        sb.append("' at line ");
+        sb.append(pos[0]);
+        sb.append(", index ");
+        sb.append(pos[1]);
+
+        this.string = sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return string;
+    }
+}
@@ -0,0 +1,86 @@
+package compiler.interpreter;
+
+import java.util.List;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.semantics.Resolution.Local;
+import compiler.syntax.Type;
+
+/**
+ * A program compiled by {@link BytecodeCompiler}: the instructions of the
+ * top level and of every function in one int[], see {@link Opcodes}, and
+ * the strings they use. The top level starts at 0 and ends with HALT.
+ */
+public class Bytecode {
+    public final int[] code;
+    public final Object[] constants;
+    public final Function[] functions;
+    // the tree it was compiled from
+    public final ASTNode<?> tree;
+
+    public final int globalSize;
+    public final boolean globalRefs;
+    // top level variables, for VM.getGlobals()
+    public final List<Local> globals;
+
+    // most values and strings one function has on its stacks at once
+    public final int maxStack;
+
+    public Bytecode(int[] code, Object[] constants, Function[] functions, ASTNode<?> tree, int globalSize, boolean globalRefs, List<Local> globals, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.functions = functions;
+        this.tree = tree;
+        this.globalSize = globalSize;
+        this.globalRefs = globalRefs;
+        this.globals = globals;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * Ints in code, constants counted as one each.
+     */
+    public int size() {
+        return code.length + constants.length;
+    }
+
+    public static class Function {
+        public final String name;
+        public final Type returnType;
+        // where the body starts in code
+        public final int entry;
+
+        public final int size;
+        public final boolean refs;
+        // functions without variables run in the frame they are declared in
+        public final boolean hasFrame;
+
+        public final int[] paramSlots;
+        public final Type[] paramTypes;
+
+        public final ASTNode<?> declaration;
+        // the scopes around the declaration, innermost first, and which of
+        // them have frames
+        public final ASTNode<?>[] outerScopes;
+        public final boolean[] outerFrames;
+
+        public Function(String name, Type returnType, int entry, int size, boolean refs, boolean hasFrame, int[] paramSlots, Type[] paramTypes,
+                ASTNode<?> declaration, ASTNode<?>[] outerScopes, boolean[] outerFrames) {
+            this.name = name;
+            this.returnType = returnType;
+            this.entry = entry;
+            this.size = size;
+            this.refs = refs;
+            this.hasFrame = hasFrame;
+            this.paramSlots = paramSlots;
+            this.paramTypes = paramTypes;
+            this.declaration = declaration;
+            this.outerScopes = outerScopes;
+            this.outerFrames = outerFrames;
+        }
+
+        public String toString() {
+            return "("+name+", "+returnType+", "+entry+")";
+        }
+    }
+}
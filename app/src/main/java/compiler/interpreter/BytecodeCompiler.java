@@ -0,0 +1,691 @@
+package compiler.interpreter;
+
+import static compiler.interpreter.Opcodes.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.ForParts;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolution.Slot;
+import compiler.syntax.Type;
+
+/**
+ * Lowers a parsed program to {@link Bytecode}. Frames, slots and types are
+ * the same as for the {@link Interpreter}: every expression is compiled for
+ * the type it is used as, with I2F and F2I where ints and floats meet.
+ *
+ * A function's body is put right after its declaration, behind a JUMP over
+ * it, so a call can name a function whose body is still being compiled.
+ */
+public class BytecodeCompiler {
+    private final ASTNode<?> program;
+    private final Resolution res;
+    private final Set<ASTNode<?>> stringScopes;
+
+    private int[] code;
+    private int size;
+    private final List<Object> constants;
+    private final HashMap<Object, Integer> constantIndex;
+
+    private final List<Bytecode.Function> functions;
+    private final IdentityHashMap<ASTNode<?>, Integer> functionIndex;
+    // scope each function is declared in, by index
+    private final List<ASTNode<?>> functionScopes;
+    private final List<Bytecode.Function> functionStack;
+
+    private final List<ASTNode<?>> scopes;
+    private final List<Boolean> frames;
+
+    // stack height here, and the most seen
+    private int depth;
+    private int maxDepth;
+
+    private BytecodeCompiler(ASTNode<?> program) {
+        this.program = program;
+
+        res = Nodes.resolve(program);
+        stringScopes = Nodes.stringScopes(res);
+
+        code = new int[256];
+        constants = new ArrayList<Object>();
+        constantIndex = new HashMap<Object, Integer>();
+        functions = new ArrayList<Bytecode.Function>();
+        functionIndex = new IdentityHashMap<ASTNode<?>, Integer>();
+        functionScopes = new ArrayList<ASTNode<?>>();
+        functionStack = new ArrayList<Bytecode.Function>();
+        scopes = new ArrayList<ASTNode<?>>();
+        frames = new ArrayList<Boolean>();
+    }
+
+    public static Bytecode compile(ASTNode<?> program) {
+        BytecodeCompiler c = new BytecodeCompiler(program);
+
+        c.push(program, true);
+        c.statements((ASTNode<?>)program.fst());
+        c.emit(HALT);
+        c.pop();
+
+        return new Bytecode(
+            Arrays.copyOf(c.code, c.size),
+            c.constants.toArray(),
+            c.functions.toArray(new Bytecode.Function[0]),
+            program,
+            c.res.getFrameSize(program),
+            c.stringScopes.contains(program),
+            Nodes.globals(c.res, program),
+            c.maxDepth
+        );
+    }
+
+    /* statements */
+
+    private void statements(ASTNode<?> list) {
+        for (Object branch : list.branches)
+            statement((ASTNode<?>)branch);
+    }
+
+    private void statement(ASTNode<?> node) {
+        // every statement leaves the stacks as it found them
+        depth = 0;
+
+        switch (node.name) {
+            case "DeclareStatement":
+                declareStatement(node);
+                break;
+            case "AssignStatement":
+                if (node.branches.size() > 1)
+                    store((ASTNode<?>)node.fst(), (ASTNode<?>)node.snd());
+                break;
+            case "IfStatement":
+                ifStatement(node);
+                break;
+            case "WhileExpression":
+                whileStatement(node);
+                break;
+            case "ForStatement":
+                forStatement(node);
+                break;
+            case "FunctionCall":
+                call(node);
+                if (node.operator == Type.STR_ID)
+                    emit(SPOP);
+                else if (node.operator != Type.VOID)
+                    emit(POP);
+                break;
+            case "FunctionDeclaration":
+                functionDeclaration(node);
+                break;
+            case "ReturnStatement":
+                returnStatement(node);
+                break;
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    private void block(ASTNode<?> node) {
+        int frameSize = res.getFrameSize(node);
+        boolean hasFrame = frameSize > 0;
+
+        if (hasFrame)
+            emit(ENTER, frameSize, stringScopes.contains(node) ? 1 : 0);
+
+        push(node, hasFrame);
+        statements(node);
+        pop();
+
+        if (hasFrame)
+            emit(LEAVE);
+    }
+
+    /**
+     * VarTypeLiteral Identifier, then more declared Identifiers or the value
+     * of the first one
+     */
+    private void declareStatement(ASTNode<?> node) {
+        ASTNode<?> declared = (ASTNode<?>)node.snd();
+
+        for (int i = 1; i < node.branches.size(); i++) {
+            ASTNode<?> branch = (ASTNode<?>)node.branches.get(i);
+            Slot slot = res.getSlot(branch);
+            boolean isDeclaration = slot != null && slot.local.declaration == branch;
+
+            // the value comes right after the one variable it is for
+            if (isDeclaration && i+1 < node.branches.size() && !isDeclared((ASTNode<?>)node.branches.get(i+1)))
+                continue;
+
+            if (isDeclaration)
+                storeDefault(branch);
+            else
+                store(declared, branch);
+        }
+    }
+
+    private boolean isDeclared(ASTNode<?> node) {
+        Slot slot = res.getSlot(node);
+        return slot != null && slot.local.declaration == node;
+    }
+
+    /**
+     * BoolExpression BlockStatementList (IfStatement | BlockStatementList)?
+     */
+    private void ifStatement(ASTNode<?> node) {
+        bool((ASTNode<?>)node.fst());
+        int toElse = jump(JUMP_FALSE);
+        block((ASTNode<?>)node.snd());
+
+        if (node.branches.size() < 3) {
+            land(toElse);
+            return;
+        }
+
+        int toEnd = jump(JUMP);
+        land(toElse);
+
+        ASTNode<?> elseNode = (ASTNode<?>)node.thrd();
+        if (elseNode.name.equals("IfStatement"))
+            ifStatement(elseNode);
+        else
+            block(elseNode);
+        land(toEnd);
+    }
+
+    /**
+     * BoolExpression BlockStatementList
+     */
+    private void whileStatement(ASTNode<?> node) {
+        int start = size;
+        bool((ASTNode<?>)node.fst());
+        int toEnd = jump(JUMP_FALSE);
+        block((ASTNode<?>)node.snd());
+        jumpBack(start);
+        land(toEnd);
+    }
+
+    private void forStatement(ASTNode<?> node) {
+        ForParts parts = new ForParts(node);
+        if (parts.declaration != null)
+            declareStatement(parts.declaration);
+        ASTNode<?> condition = parts.condition;
+        ASTNode<?> update = parts.update;
+        ASTNode<?> body = parts.body;
+
+        int start = size;
+        int toEnd = -1;
+        if (condition != null) {
+            bool(condition);
+            toEnd = jump(JUMP_FALSE);
+        }
+
+        block(body);
+        if (update != null)
+            statement(update);
+        jumpBack(start);
+
+        if (toEnd >= 0)
+            land(toEnd);
+    }
+
+    /**
+     * ReturnTypeLiteral Function DeclareStatement... BlockStatementList, the
+     * parameters and the body share the function's scope
+     */
+    private void functionDeclaration(ASTNode<?> node) {
+        int toEnd = jump(JUMP);
+
+        List<Local> params = new ArrayList<Local>();
+        for (int i = 2; i < node.branches.size()-1; i++) {
+            ASTNode<?> param = (ASTNode<?>)node.branches.get(i);
+            params.add(res.getSlot((ASTNode<?>)param.snd()).local);
+        }
+        int[] paramSlots = new int[params.size()];
+        Type[] paramTypes = new Type[params.size()];
+        for (int i = 0; i < params.size(); i++) {
+            paramSlots[i] = params.get(i).slot;
+            paramTypes[i] = params.get(i).type;
+        }
+
+        ASTNode<?>[] outerScopes = new ASTNode<?>[scopes.size()];
+        boolean[] outerFrames = new boolean[scopes.size()];
+        for (int i = 0; i < scopes.size(); i++) {
+            outerScopes[i] = scopes.get(scopes.size()-1-i);
+            outerFrames[i] = frames.get(scopes.size()-1-i);
+        }
+
+        int frameSize = res.getFrameSize(node);
+        Bytecode.Function fn = new Bytecode.Function(
+            ((ASTNode<?>)node.snd()).fst().toString(),
+            ((ASTNode<?>)node.fst()).operator,
+            size,
+            frameSize, stringScopes.contains(node), frameSize > 0,
+            paramSlots, paramTypes,
+            node, outerScopes, outerFrames
+        );
+        functionIndex.put(node, functions.size());
+        functions.add(fn);
+        functionScopes.add(scopes.get(scopes.size()-1));
+
+        push(node, fn.hasFrame);
+        functionStack.add(fn);
+        statements((ASTNode<?>)node.branches.get(node.branches.size()-1));
+
+        // falling off the end returns the default
+        depth = 0;
+        returnDefault(fn.returnType);
+        emit(RET);
+
+        functionStack.remove(functionStack.size()-1);
+        pop();
+
+        land(toEnd);
+    }
+
+    private void returnStatement(ASTNode<?> node) {
+        Bytecode.Function fn = functionStack.get(functionStack.size()-1);
+        ASTNode<?> value = (ASTNode<?>)node.fst();
+
+        switch (fn.returnType) {
+            case INT_ID:
+                intExpr(value);
+                break;
+            case FLOAT_ID:
+                floatExpr(value);
+                break;
+            case BOOL_ID:
+                bool(value);
+                break;
+            case STR_ID:
+                str(value);
+                break;
+            default:
+                throw new ExecutionException("Cannot return a value from a "+fn.returnType+" function");
+        }
+        emit(RET);
+    }
+
+    private void returnDefault(Type type) {
+        if (type == Type.STR_ID)
+            emit(SCONST, constant(""));
+        else if (type != Type.VOID)
+            emit(ICONST, 0);
+    }
+
+    /* variables */
+
+    private void storeDefault(ASTNode<?> identifier) {
+        Local l = res.getSlot(identifier).local;
+        returnDefault(l.type);
+        storeTo(l);
+    }
+
+    private void store(ASTNode<?> identifier, ASTNode<?> value) {
+        Local l = res.getSlot(identifier).local;
+        switch (l.type) {
+            case INT_ID:
+                intExpr(value);
+                break;
+            case FLOAT_ID:
+                floatExpr(value);
+                break;
+            case BOOL_ID:
+                bool(value);
+                break;
+            default:
+                str(value);
+        }
+        storeTo(l);
+    }
+
+    private void storeTo(Local l) {
+        int hops = hops(l.scope);
+        boolean isStr = l.type == Type.STR_ID;
+
+        if (hops == 0)
+            emit(isStr ? SSTORE : STORE, l.slot);
+        else
+            emit(isStr ? SSTORE_UP : STORE_UP, hops, l.slot);
+    }
+
+    private void load(ASTNode<?> identifier) {
+        Local l = res.getSlot(identifier).local;
+        int hops = hops(l.scope);
+        boolean isStr = l.type == Type.STR_ID;
+
+        if (hops == 0)
+            emit(isStr ? SLOAD : LOAD, l.slot);
+        else
+            emit(isStr ? SLOAD_UP : LOAD_UP, hops, l.slot);
+    }
+
+    // frames between the current scope and scope
+    private int hops(ASTNode<?> scope) {
+        int out = 0;
+        for (int i = scopes.size()-1; i >= 0 && scopes.get(i) != scope; i--) {
+            if (frames.get(i))
+                out++;
+        }
+        return out;
+    }
+
+    private void push(ASTNode<?> scope, boolean hasFrame) {
+        scopes.add(scope);
+        frames.add(hasFrame);
+    }
+
+    private void pop() {
+        scopes.remove(scopes.size()-1);
+        frames.remove(frames.size()-1);
+    }
+
+    /* expressions */
+
+    private void intExpr(ASTNode<?> node) {
+        Type type = Nodes.typeOf(res, node);
+        if (type == Type.FLOAT_ID) {
+            floatExpr(node);
+            emit(F2I);
+            return;
+        }
+        if (type != Type.INT_ID)
+            throw new ExecutionException("Expected a number, got "+Nodes.describe(node));
+
+        switch (node.name) {
+            case "IntLiteral":
+                emit(ICONST, (Integer)node.fst());
+                return;
+            case "Identifier":
+                load(node);
+                return;
+            case "FunctionCall":
+                call(node);
+                return;
+            case "Factor":
+                intExpr((ASTNode<?>)node.fst());
+                emit(INEG);
+                return;
+            default:
+                break;
+        }
+
+        intExpr((ASTNode<?>)node.fst());
+        intExpr((ASTNode<?>)node.snd());
+        switch (node.operator) {
+            case PLUS:
+                emit(IADD);
+                break;
+            case MINUS:
+                emit(ISUB);
+                break;
+            case MUL:
+                emit(IMUL);
+                break;
+            case DIV:
+                emit(IDIV);
+                break;
+            case EXP:
+                emit(IPOW);
+                break;
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    private void floatExpr(ASTNode<?> node) {
+        Type type = Nodes.typeOf(res, node);
+        if (type == Type.INT_ID) {
+            intExpr(node);
+            emit(I2F);
+            return;
+        }
+        if (type != Type.FLOAT_ID)
+            throw new ExecutionException("Expected a number, got "+Nodes.describe(node));
+
+        switch (node.name) {
+            case "FloatLiteral":
+                emit(FCONST, Float.floatToRawIntBits((Float)node.fst()));
+                return;
+            case "Identifier":
+                load(node);
+                return;
+            case "FunctionCall":
+                call(node);
+                return;
+            case "Factor":
+                floatExpr((ASTNode<?>)node.fst());
+                emit(FNEG);
+                return;
+            default:
+                break;
+        }
+
+        floatExpr((ASTNode<?>)node.fst());
+        floatExpr((ASTNode<?>)node.snd());
+        switch (node.operator) {
+            case PLUS:
+                emit(FADD);
+                break;
+            case MINUS:
+                emit(FSUB);
+                break;
+            case MUL:
+                emit(FMUL);
+                break;
+            case DIV:
+                emit(FDIV);
+                break;
+            case EXP:
+                emit(FPOW);
+                break;
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    private void bool(ASTNode<?> node) {
+        switch (node.name) {
+            case "TrueFalseLiteral":
+                emit(ICONST, node.operator == Type.TRUE ? 1 : 0);
+                return;
+            case "Identifier":
+            case "FunctionCall":
+                if (Nodes.typeOf(res, node) != Type.BOOL_ID)
+                    break;
+
+                if (node.name.equals("Identifier"))
+                    load(node);
+                else
+                    call(node);
+                return;
+            case "BoolFactor":
+                bool((ASTNode<?>)node.fst());
+                emit(BNOT);
+                return;
+            case "BoolExpression": {
+                // a || b: a JUMP_TRUE(t) b JUMP(end) t: 1 end:
+                boolean isOr = node.operator == Type.OR;
+                bool((ASTNode<?>)node.fst());
+                int shortCut = jump(isOr ? JUMP_TRUE : JUMP_FALSE);
+                bool((ASTNode<?>)node.snd());
+                int toEnd = jump(JUMP);
+                land(shortCut);
+                emit(ICONST, isOr ? 1 : 0);
+                // only one of b and the constant is on the stack
+                depth--;
+                land(toEnd);
+                return;
+            }
+            case "BoolTerm":
+                compare(node);
+                return;
+            default:
+                break;
+        }
+
+        throw new ExecutionException("Expected a bool, got "+Nodes.describe(node));
+    }
+
+    private void compare(ASTNode<?> node) {
+        ASTNode<?> left = (ASTNode<?>)node.fst();
+        ASTNode<?> right = (ASTNode<?>)node.snd();
+        Type l = Nodes.typeOf(res, left);
+        Type r = Nodes.typeOf(res, right);
+        Type op = node.operator;
+
+        if (l == Type.FLOAT_ID || r == Type.FLOAT_ID) {
+            if (!l.within(Type.INT_ID, Type.FLOAT_ID) || !r.within(Type.INT_ID, Type.FLOAT_ID))
+                throw new ExecutionException("Cannot compare "+l+" and "+r);
+
+            floatExpr(left);
+            floatExpr(right);
+            emit(FEQ + compareIndex(op));
+            return;
+        }
+
+        if (l == Type.INT_ID && r == Type.INT_ID) {
+            intExpr(left);
+            intExpr(right);
+            emit(IEQ + compareIndex(op));
+            return;
+        }
+
+        if (l == r && op == Type.EQUIVALENT) {
+            if (l == Type.BOOL_ID) {
+                bool(left);
+                bool(right);
+                emit(BEQ);
+                return;
+            }
+            if (l == Type.STR_ID) {
+                str(left);
+                str(right);
+                emit(SEQ);
+                return;
+            }
+        }
+
+        throw new ExecutionException("Cannot compare "+l+" and "+r+" with "+op);
+    }
+
+    // IEQ, ILT, IGT, ILE, IGE and the F ones are in the same order
+    private static int compareIndex(Type op) {
+        switch (op) {
+            case EQUIVALENT:
+                return 0;
+            case LESS:
+                return 1;
+            case GREATER:
+                return 2;
+            case LESS_EQUAL:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    private void str(ASTNode<?> node) {
+        switch (node.name) {
+            case "StringLiteral": {
+                // the token keeps its quotes
+                String text = (String)node.fst();
+                emit(SCONST, constant(text.substring(1, text.length()-1)));
+                return;
+            }
+            case "Identifier":
+            case "FunctionCall":
+                if (Nodes.typeOf(res, node) != Type.STR_ID)
+                    break;
+
+                if (node.name.equals("Identifier"))
+                    load(node);
+                else
+                    call(node);
+                return;
+            default:
+                break;
+        }
+
+        throw new ExecutionException("Expected a str, got "+Nodes.describe(node));
+    }
+
+    /* functions */
+
+    /**
+     * Function value..., the arguments are pushed in order and the result is
+     * left on the stack
+     */
+    private void call(ASTNode<?> node) {
+        ASTNode<?> declaration = res.getFunction((ASTNode<?>)node.fst());
+        int index = functionIndex.get(declaration);
+        Bytecode.Function fn = functions.get(index);
+
+        int argCount = Math.min(node.branches.size()-1, fn.paramTypes.length);
+        for (int i = 0; i < argCount; i++) {
+            ASTNode<?> value = (ASTNode<?>)node.branches.get(i+1);
+            switch (fn.paramTypes[i]) {
+                case INT_ID:
+                    intExpr(value);
+                    break;
+                case FLOAT_ID:
+                    floatExpr(value);
+                    break;
+                case BOOL_ID:
+                    bool(value);
+                    break;
+                default:
+                    str(value);
+            }
+        }
+
+        emit(CALL, index, hops(functionScopes.get(index)), argCount);
+        depth -= argCount;
+        if (fn.returnType != Type.VOID)
+            depth++;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /* code */
+
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private void emit(int op, int... operands) {
+        if (size + 1 + operands.length > code.length)
+            code = Arrays.copyOf(code, code.length*2 + operands.length);
+
+        code[size++] = op;
+        for (int operand : operands)
+            code[size++] = operand;
+
+        depth += EFFECT[op];
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    // a jump to be pointed somewhere by land(), returns where its offset is
+    private int jump(int op) {
+        emit(op, 0);
+        return size-1;
+    }
+
+    // points the jump at the next instruction
+    private void land(int offset) {
+        code[offset] = size - (offset+1);
+    }
+
+    private void jumpBack(int target) {
+        emit(JUMP, target - (size+2));
+    }
+}
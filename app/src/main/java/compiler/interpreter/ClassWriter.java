@@ -0,0 +1,298 @@
+package compiler.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Just enough of the class file format to write a class with methods: the
+ * constant pool, methods with a Code attribute and jumps to labels.
+ *
+ * Classes are written as version 49, which has no StackMapTable, so the
+ * verifier works the stack and local types out itself.
+ */
+final class ClassWriter {
+    static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream pool;
+    private final DataOutputStream poolOut;
+    private int poolSize;
+    private final HashMap<String, Integer> entries;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces;
+    private final List<byte[]> methods;
+
+    ClassWriter(String name, String superName, String... interfaceNames) {
+        pool = new ByteArrayOutputStream();
+        poolOut = new DataOutputStream(pool);
+        poolSize = 1;
+        entries = new HashMap<String, Integer>();
+
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new ArrayList<Integer>();
+        for (String i : interfaceNames)
+            interfaces.add(classRef(i));
+        methods = new ArrayList<byte[]>();
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int i : interfaces)
+                out.writeShort(i);
+
+            // no fields
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods)
+                out.write(method);
+            // no attributes
+            out.writeShort(0);
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* constant pool */
+
+    // each kind of entry gets its own key prefix
+    private int entry(String key, int tag, int slots, Writer write) {
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+
+        try {
+            poolOut.writeByte(tag);
+            write.write(poolOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        index = poolSize;
+        poolSize += slots;
+        if (poolSize > 0xFFFF)
+            throw new ExecutionException("Constant pool too large");
+        entries.put(key, index);
+        return index;
+    }
+
+    private interface Writer { void write(DataOutputStream out) throws IOException; }
+
+    int utf8(String value) {
+        return entry("U"+value, 1, 1, out -> out.writeUTF(value));
+    }
+
+    int integer(int value) {
+        return entry("I"+value, 3, 1, out -> out.writeInt(value));
+    }
+
+    int floating(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        return entry("F"+bits, 4, 1, out -> out.writeInt(bits));
+    }
+
+    int classRef(String name) {
+        int utf = utf8(name);
+        return entry("C"+name, 7, 1, out -> out.writeShort(utf));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        return entry("N"+name+" "+descriptor, 12, 1, out -> {
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int c = classRef(owner);
+        int nt = nameAndType(name, descriptor);
+        return entry(tag+owner+"."+name+" "+descriptor, tag, 1, out -> {
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    int field(String owner, String name, String descriptor) {
+        return member(9, owner, name, descriptor);
+    }
+
+    int method(String owner, String name, String descriptor) {
+        return member(10, owner, name, descriptor);
+    }
+
+    int interfaceMethod(String owner, String name, String descriptor) {
+        return member(11, owner, name, descriptor);
+    }
+
+    /* methods */
+
+    Code method(int access, String name, String descriptor) {
+        return new Code(access, name, descriptor);
+    }
+
+    static final class Label {
+        int position = -1;
+        boolean listed;
+        // where the jumps to it are, and where their offsets go
+        final List<int[]> uses = new ArrayList<int[]>();
+    }
+
+    /**
+     * The instructions of one method. Stack height is tracked as written,
+     * which is enough for max_stack as long as every jump leaves the stack
+     * at the height its label expects.
+     */
+    final class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+
+        private final ByteArrayOutputStream bytes;
+        private final List<Label> labels;
+        private int depth;
+        private int maxDepth;
+        int maxLocals;
+
+        Code(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+            bytes = new ByteArrayOutputStream();
+            labels = new ArrayList<Label>();
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        /**
+         * One instruction, effect is what it does to the stack height.
+         */
+        Code op(int opcode, int effect) {
+            bytes.write(opcode);
+            stack(effect);
+            return this;
+        }
+
+        Code op(int opcode, int operand, int effect) {
+            bytes.write(opcode);
+            bytes.write(operand);
+            stack(effect);
+            return this;
+        }
+
+        Code op2(int opcode, int operand, int effect) {
+            bytes.write(opcode);
+            bytes.write(operand >> 8);
+            bytes.write(operand);
+            stack(effect);
+            return this;
+        }
+
+        void stack(int effect) {
+            depth += effect;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        // the stack height at a label reached only by jumps
+        void setDepth(int depth) {
+            this.depth = depth;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        void jump(int opcode, Label target, int effect) {
+            int at = bytes.size();
+            bytes.write(opcode);
+            target.uses.add(new int[] { at, bytes.size() });
+            bytes.write(0);
+            bytes.write(0);
+            stack(effect);
+            list(target);
+        }
+
+        void place(Label label) {
+            label.position = bytes.size();
+            list(label);
+        }
+
+        private void list(Label label) {
+            if (!label.listed)
+                labels.add(label);
+            label.listed = true;
+        }
+
+        byte[] toByteArray() {
+            byte[] code = bytes.toByteArray();
+            if (code.length > 0xFFFF)
+                throw new ExecutionException("Method too large");
+
+            for (Label label : labels) {
+                for (int[] use : label.uses) {
+                    int offset = label.position - use[0];
+                    if (label.position < 0 || offset != (short)offset)
+                        throw new ExecutionException("Jump out of range");
+                    code[use[1]] = (byte)(offset >> 8);
+                    code[use[1]+1] = (byte)offset;
+                }
+            }
+
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(out);
+
+                data.writeShort(access);
+                data.writeShort(name);
+                data.writeShort(descriptor);
+                data.writeShort(1);
+
+                data.writeShort(utf8("Code"));
+                data.writeInt(12 + code.length);
+                data.writeShort(maxDepth);
+                data.writeShort(maxLocals);
+                data.writeInt(code.length);
+                data.write(code);
+                // no exception table, no attributes
+                data.writeShort(0);
+                data.writeShort(0);
+
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void end() {
+            methods.add(toByteArray());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package compiler.interpreter;
+
+/**
+ * A function the {@link VM} has compiled to a JVM class, see
+ * {@link JvmCompiler}. args has a value for every parameter, in the VM's
+ * representation, and so has the result.
+ */
+interface CompiledFunction {
+    long call(VM vm, Frame outer, long[] args);
+}
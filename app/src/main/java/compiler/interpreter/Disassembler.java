@@ -0,0 +1,78 @@
+package compiler.interpreter;
+
+import static compiler.interpreter.Opcodes.*;
+
+/**
+ * Lists {@link Bytecode} one instruction a line, with jumps shown as the
+ * address they go to and constants and functions by value and name.
+ *
+ *   fib:
+ *   0012  LOAD 0
+ *   0014  ICONST 1
+ *   0016  IGT
+ *   0017  JUMP_FALSE -> 0040
+ */
+public class Disassembler {
+    public static String disassemble(Bytecode program) {
+        StringBuilder out = new StringBuilder();
+        int[] code = program.code;
+
+        out.append("main:\n");
+        for (int pc = 0; pc < code.length; ) {
+            for (Bytecode.Function fn : program.functions) {
+                if (fn.entry == pc)
+                    out.append(fn.name).append(":\n");
+            }
+
+            pc = instruction(program, pc, out);
+            out.append('\n');
+        }
+
+        if (program.constants.length > 0) {
+            out.append("constants:\n");
+            for (int i = 0; i < program.constants.length; i++)
+                out.append(String.format("%4d  \"%s\"%n", i, program.constants[i]));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends the instruction at pc to out and returns where the next one
+     * starts.
+     */
+    public static int instruction(Bytecode program, int pc, StringBuilder out) {
+        int[] code = program.code;
+        int op = code[pc];
+
+        out.append(String.format("%04d  ", pc));
+        if (op < 0 || op >= NAMES.length) {
+            out.append("?? ").append(op);
+            return pc+1;
+        }
+        out.append(NAMES[op]);
+
+        int next = pc + 1 + OPERANDS[op];
+        switch (op) {
+            case FCONST:
+                out.append(' ').append(Float.intBitsToFloat(code[pc+1]));
+                break;
+            case SCONST:
+                out.append(" \"").append(program.constants[code[pc+1]]).append('"');
+                break;
+            case JUMP:
+            case JUMP_FALSE:
+            case JUMP_TRUE:
+                out.append(String.format(" -> %04d", next + code[pc+1]));
+                break;
+            case CALL:
+                out.append(' ').append(program.functions[code[pc+1]].name)
+                    .append(", ").append(code[pc+2]).append(" up")
+                    .append(", ").append(code[pc+3]).append(" args");
+                break;
+            default:
+                for (int i = 1; i <= OPERANDS[op]; i++)
+                    out.append(i == 1 ? " " : ", ").append(code[pc+i]);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,57 @@
+package compiler.interpreter;
+
+import java.util.Map;
+
+/**
+ * Runs a program in one of its compiled forms: the closures of the
+ * {@link Interpreter}, the nodes of the {@link SpecializingInterpreter},
+ * the bytecode of the {@link VM} or the SSA form of the
+ * {@link SSAInterpreter}.
+ */
+public interface Engine {
+    /**
+     * Runs the program from the start with fresh globals.
+     */
+    void run();
+
+    /**
+     * Top level variables after the last run, by name in declaration order.
+     */
+    Map<String, Object> getGlobals();
+
+    /**
+     * Runs body on a thread of its own with a large stack, so deep recursion
+     * in the program has room, and waits for it. Running out of stack
+     * anyway is an ExecutionException, and anything else body throws,
+     * errors included, is thrown here. If the wait is interrupted, the
+     * thread is interrupted too.
+     */
+    static void runOnBigStack(Runnable body) {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                body.run();
+            } catch (StackOverflowError e) {
+                failure[0] = new ExecutionException("Recursion too deep");
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "interpreter", 1L << 28);
+
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new ExecutionException("Interrupted");
+        }
+
+        if (failure[0] instanceof RuntimeException)
+            throw (RuntimeException) failure[0];
+        if (failure[0] instanceof Error)
+            throw (Error) failure[0];
+        if (failure[0] != null)
+            throw new IllegalStateException(failure[0]);
+    }
+}
@@ -0,0 +1,18 @@
+package compiler.interpreter;
+
+/**
+ * A program that cannot be run, either found while converting the tree
+ * (an Error node, an unsupported operator) or while running it (division by
+ * zero, recursion too deep).
+ */
+public class ExecutionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ExecutionException(String message) {
+        super(message);
+    }
+
+    public String toString() {
+        return getMessage();
+    }
+}
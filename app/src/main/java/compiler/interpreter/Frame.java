@@ -0,0 +1,59 @@
+package compiler.interpreter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import compiler.semantics.Resolution.Local;
+import compiler.syntax.Type;
+
+/**
+ * Variables of one scope while it runs, at the slots given by the
+ * {@link compiler.semantics.Resolver}. Ints and bools (0 or 1) are kept as
+ * they are and floats as their bits, strings go in refs, which is only there
+ * if the scope has string variables.
+ */
+final class Frame {
+    final long[] values;
+    final Object[] refs;
+    final Frame parent;
+
+    Frame(int size, boolean hasRefs, Frame parent) {
+        values = new long[size];
+        refs = hasRefs ? new Object[size] : null;
+        this.parent = parent;
+    }
+
+    // the value at slot as an Integer, Float, Boolean or String
+    Object get(int slot, Type type) {
+        long value = values[slot];
+        switch (type) {
+            case INT_ID:
+                return (int)value;
+            case FLOAT_ID:
+                return Float.intBitsToFloat((int)value);
+            case BOOL_ID:
+                return value != 0;
+            default:
+                return refs[slot];
+        }
+    }
+
+    // the values of locals by name, none before the frame exists
+    static Map<String, Object> byName(Frame frame, List<Local> locals) {
+        Map<String, Object> out = new LinkedHashMap<String, Object>();
+        if (frame == null)
+            return out;
+
+        for (Local l : locals)
+            out.put(l.name.name, frame.get(l.slot, l.type));
+        return out;
+    }
+
+    Frame up(int hops) {
+        Frame out = this;
+        while (hops-- > 0)
+            out = out.parent;
+        return out;
+    }
+}
@@ -0,0 +1,684 @@
+package compiler.interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import compiler.interpreter.Scopes.Function;
+import compiler.interpreter.Scopes.Scope;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.ForParts;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolution.Slot;
+import compiler.syntax.Arithmetic;
+import compiler.syntax.Type;
+
+/**
+ * Runs a parsed program. The tree is converted once into nested lambdas, one
+ * per node, with the operator, the operand types and the frame slots already
+ * picked, so running it does no dispatch on node names or Types and no name
+ * lookups.
+ *
+ * Every expression is converted for the type it is used as (int, float,
+ * bool or str) and ints are widened to floats where the two meet, as the
+ * parser lets them mix. A float stored in an int variable is truncated.
+ */
+public class Interpreter implements Engine {
+    static final int NORMAL = 0;
+    static final int RETURN = 1;
+
+    interface Stmt { int exec(Frame f); }
+    interface IntExpr { int eval(Frame f); }
+    interface FloatExpr { float eval(Frame f); }
+    interface BoolExpr { boolean eval(Frame f); }
+    interface StrExpr { String eval(Frame f); }
+
+    // only while converting
+    private Resolution res;
+    private Scopes<Stmt> scopes;
+    private final boolean counting;
+
+    private final Stmt main;
+    private final int globalSize;
+    private final boolean globalRefs;
+    private final List<Local> globalLocals;
+    private Frame globals;
+
+    // value of the last return, floats as bits and strings in retRef
+    private long ret;
+    private Object retRef;
+
+    private long statements;
+
+    public Interpreter(ASTNode<?> program) {
+        this(program, false);
+    }
+
+    /**
+     * With counting, every statement run is counted, see getStatements().
+     */
+    public Interpreter(ASTNode<?> program, boolean counting) {
+        this.counting = counting;
+
+        res = Nodes.resolve(program);
+        scopes = new Scopes<Stmt>(program, res);
+
+        Scope global = scopes.enter(program);
+        globalSize = global.size;
+        globalRefs = global.refs;
+        main = sequence(statements((ASTNode<?>)program.fst()));
+        scopes.exit();
+
+        globalLocals = Nodes.globals(res, program);
+        res = null;
+        scopes = null;
+    }
+
+    public void run() {
+        Engine.runOnBigStack(() -> {
+            globals = new Frame(globalSize, globalRefs, null);
+            statements = 0;
+            main.exec(globals);
+        });
+    }
+
+    public Map<String, Object> getGlobals() {
+        return Frame.byName(globals, globalLocals);
+    }
+
+    /**
+     * Statements run by the last run, 0 unless counting.
+     */
+    public long getStatements() {
+        return statements;
+    }
+
+    /* statements */
+
+    private List<Stmt> statements(ASTNode<?> list) {
+        List<Stmt> out = new ArrayList<Stmt>();
+        for (Object branch : list.branches) {
+            Stmt s = statement((ASTNode<?>)branch);
+            if (s == null)
+                continue;
+
+            if (counting) {
+                Stmt inner = s;
+                s = f -> {
+                    statements++;
+                    return inner.exec(f);
+                };
+            }
+            out.add(s);
+        }
+        return out;
+    }
+
+    private Stmt statement(ASTNode<?> node) {
+        switch (node.name) {
+            case "DeclareStatement":
+                return declareStatement(node);
+            case "AssignStatement":
+                return assignStatement(node);
+            case "IfStatement":
+                return ifStatement(node);
+            case "WhileExpression":
+                return whileStatement(node);
+            case "ForStatement":
+                return forStatement(node);
+            case "FunctionCall": {
+                Stmt call = call(node);
+                return f -> {
+                    call.exec(f);
+                    return NORMAL;
+                };
+            }
+            case "FunctionDeclaration":
+                functionDeclaration(node);
+                return null;
+            case "ReturnStatement":
+                return returnStatement(node);
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    private static Stmt sequence(List<Stmt> statements) {
+        if (statements.isEmpty())
+            return f -> NORMAL;
+        if (statements.size() == 1)
+            return statements.get(0);
+
+        Stmt[] array = statements.toArray(new Stmt[0]);
+        return f -> {
+            for (Stmt s : array) {
+                if (s.exec(f) != NORMAL)
+                    return RETURN;
+            }
+            return NORMAL;
+        };
+    }
+
+    // a block with its own scope, which gets a frame if it has variables
+    private Stmt block(ASTNode<?> node) {
+        Scope scope = scopes.enter(node);
+        Stmt body = sequence(statements(node));
+        scopes.exit();
+
+        if (!scope.hasFrame)
+            return body;
+
+        final int size = scope.size;
+        final boolean refs = scope.refs;
+        return f -> body.exec(new Frame(size, refs, f));
+    }
+
+    /**
+     * VarTypeLiteral Identifier, then more declared Identifiers or the value
+     * of the first one
+     */
+    private Stmt declareStatement(ASTNode<?> node) {
+        List<Stmt> out = new ArrayList<Stmt>();
+        ASTNode<?> declared = (ASTNode<?>)node.snd();
+
+        for (int i = 1; i < node.branches.size(); i++) {
+            ASTNode<?> branch = (ASTNode<?>)node.branches.get(i);
+            Slot slot = res.getSlot(branch);
+
+            if (slot != null && slot.local.declaration == branch)
+                out.add(storeDefault(slot.local));
+            else
+                // the value, there is only the one variable then
+                out.set(0, store(declared, branch));
+        }
+
+        return sequence(out);
+    }
+
+    /**
+     * Identifier alone (str +=, which does nothing), Identifier value or
+     * Identifier BinaryExpression(Identifier, value) for +=, ++, ...
+     */
+    private Stmt assignStatement(ASTNode<?> node) {
+        if (node.branches.size() < 2)
+            return f -> NORMAL;
+
+        return store((ASTNode<?>)node.fst(), (ASTNode<?>)node.snd());
+    }
+
+    /**
+     * BoolExpression BlockStatementList (IfStatement | BlockStatementList)?
+     */
+    private Stmt ifStatement(ASTNode<?> node) {
+        BoolExpr condition = bool((ASTNode<?>)node.fst());
+        Stmt then = block((ASTNode<?>)node.snd());
+
+        if (node.branches.size() < 3)
+            return f -> condition.eval(f) ? then.exec(f) : NORMAL;
+
+        ASTNode<?> elseNode = (ASTNode<?>)node.thrd();
+        Stmt otherwise = elseNode.name.equals("IfStatement") ? ifStatement(elseNode) : block(elseNode);
+        return f -> condition.eval(f) ? then.exec(f) : otherwise.exec(f);
+    }
+
+    /**
+     * BoolExpression BlockStatementList
+     */
+    private Stmt whileStatement(ASTNode<?> node) {
+        BoolExpr condition = bool((ASTNode<?>)node.fst());
+        Stmt body = block((ASTNode<?>)node.snd());
+
+        return f -> {
+            while (condition.eval(f)) {
+                if (body.exec(f) != NORMAL)
+                    return RETURN;
+            }
+            return NORMAL;
+        };
+    }
+
+    private Stmt forStatement(ASTNode<?> node) {
+        ForParts parts = new ForParts(node);
+        Stmt first = parts.declaration == null ? f -> NORMAL : declareStatement(parts.declaration);
+        BoolExpr test = parts.condition == null ? f -> true : bool(parts.condition);
+        Stmt step = parts.update == null ? f -> NORMAL : assignStatement(parts.update);
+        Stmt loop = block(parts.body);
+        return f -> {
+            first.exec(f);
+            while (test.eval(f)) {
+                if (loop.exec(f) != NORMAL)
+                    return RETURN;
+                step.exec(f);
+            }
+            return NORMAL;
+        };
+    }
+
+    /**
+     * ReturnTypeLiteral Function DeclareStatement... BlockStatementList, the
+     * parameters and the body share the function's scope
+     */
+    private void functionDeclaration(ASTNode<?> node) {
+        Function<Stmt> fn = scopes.enterFunction(node);
+        fn.body = sequence(statements((ASTNode<?>)node.branches.get(node.branches.size()-1)));
+        scopes.exitFunction();
+    }
+
+    private Stmt returnStatement(ASTNode<?> node) {
+        Function<Stmt> fn = scopes.current();
+        ASTNode<?> value = (ASTNode<?>)node.fst();
+
+        switch (fn.returnType) {
+            case INT_ID: {
+                IntExpr e = intExpr(value);
+                return f -> {
+                    ret = e.eval(f);
+                    return RETURN;
+                };
+            }
+            case FLOAT_ID: {
+                FloatExpr e = floatExpr(value);
+                return f -> {
+                    ret = Float.floatToRawIntBits(e.eval(f));
+                    return RETURN;
+                };
+            }
+            case BOOL_ID: {
+                BoolExpr e = bool(value);
+                return f -> {
+                    ret = e.eval(f) ? 1 : 0;
+                    return RETURN;
+                };
+            }
+            case STR_ID: {
+                StrExpr e = str(value);
+                return f -> {
+                    retRef = e.eval(f);
+                    return RETURN;
+                };
+            }
+            default:
+                throw new ExecutionException("Cannot return a value from a "+fn.returnType+" function");
+        }
+    }
+
+    /* variables */
+
+    private Stmt storeDefault(Local l) {
+        final int slot = l.slot;
+        if (l.type == Type.STR_ID) {
+            return f -> {
+                f.refs[slot] = "";
+                return NORMAL;
+            };
+        }
+        return f -> {
+            f.values[slot] = 0;
+            return NORMAL;
+        };
+    }
+
+    private Stmt store(ASTNode<?> identifier, ASTNode<?> value) {
+        Slot s = res.getSlot(identifier);
+        final int hops = scopes.hops(s.local.scope);
+        final int slot = s.slot;
+
+        switch (s.local.type) {
+            case INT_ID: {
+                IntExpr e = intExpr(value);
+                if (hops == 0)
+                    return f -> {
+                        f.values[slot] = e.eval(f);
+                        return NORMAL;
+                    };
+                return f -> {
+                    long v = e.eval(f);
+                    f.up(hops).values[slot] = v;
+                    return NORMAL;
+                };
+            }
+            case FLOAT_ID: {
+                FloatExpr e = floatExpr(value);
+                return f -> {
+                    long v = Float.floatToRawIntBits(e.eval(f));
+                    f.up(hops).values[slot] = v;
+                    return NORMAL;
+                };
+            }
+            case BOOL_ID: {
+                BoolExpr e = bool(value);
+                return f -> {
+                    long v = e.eval(f) ? 1 : 0;
+                    f.up(hops).values[slot] = v;
+                    return NORMAL;
+                };
+            }
+            default: {
+                StrExpr e = str(value);
+                return f -> {
+                    Object v = e.eval(f);
+                    f.up(hops).refs[slot] = v;
+                    return NORMAL;
+                };
+            }
+        }
+    }
+
+    /* expressions */
+
+    private IntExpr intExpr(ASTNode<?> node) {
+        Type type = Nodes.typeOf(res, node);
+        if (type == Type.FLOAT_ID) {
+            FloatExpr e = floatExpr(node);
+            return f -> (int)e.eval(f);
+        }
+        if (type != Type.INT_ID)
+            throw new ExecutionException("Expected a number, got "+Nodes.describe(node));
+
+        switch (node.name) {
+            case "IntLiteral": {
+                final int value = (Integer)node.fst();
+                return f -> value;
+            }
+            case "Identifier": {
+                Slot s = res.getSlot(node);
+                final int hops = scopes.hops(s.local.scope);
+                final int slot = s.slot;
+                if (hops == 0)
+                    return f -> (int)f.values[slot];
+                if (hops == 1)
+                    return f -> (int)f.parent.values[slot];
+                return f -> (int)f.up(hops).values[slot];
+            }
+            case "FunctionCall": {
+                Stmt call = call(node);
+                return f -> {
+                    call.exec(f);
+                    return (int)ret;
+                };
+            }
+            case "Factor": {
+                IntExpr e = intExpr((ASTNode<?>)node.fst());
+                return f -> -e.eval(f);
+            }
+            default:
+                break;
+        }
+
+        IntExpr a = intExpr((ASTNode<?>)node.fst());
+        IntExpr b = intExpr((ASTNode<?>)node.snd());
+        switch (node.operator) {
+            case PLUS:
+                return f -> a.eval(f) + b.eval(f);
+            case MINUS:
+                return f -> a.eval(f) - b.eval(f);
+            case MUL:
+                return f -> a.eval(f) * b.eval(f);
+            case DIV:
+                return f -> {
+                    int x = a.eval(f);
+                    int y = b.eval(f);
+                    if (y == 0)
+                        throw new ExecutionException("Division by zero");
+                    return x / y;
+                };
+            case EXP:
+                return f -> Arithmetic.power(a.eval(f), b.eval(f));
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    private FloatExpr floatExpr(ASTNode<?> node) {
+        Type type = Nodes.typeOf(res, node);
+        if (type == Type.INT_ID) {
+            IntExpr e = intExpr(node);
+            return f -> e.eval(f);
+        }
+        if (type != Type.FLOAT_ID)
+            throw new ExecutionException("Expected a number, got "+Nodes.describe(node));
+
+        switch (node.name) {
+            case "FloatLiteral": {
+                final float value = (Float)node.fst();
+                return f -> value;
+            }
+            case "Identifier": {
+                Slot s = res.getSlot(node);
+                final int hops = scopes.hops(s.local.scope);
+                final int slot = s.slot;
+                if (hops == 0)
+                    return f -> Float.intBitsToFloat((int)f.values[slot]);
+                return f -> Float.intBitsToFloat((int)f.up(hops).values[slot]);
+            }
+            case "FunctionCall": {
+                Stmt call = call(node);
+                return f -> {
+                    call.exec(f);
+                    return Float.intBitsToFloat((int)ret);
+                };
+            }
+            case "Factor": {
+                FloatExpr e = floatExpr((ASTNode<?>)node.fst());
+                return f -> -e.eval(f);
+            }
+            default:
+                break;
+        }
+
+        FloatExpr a = floatExpr((ASTNode<?>)node.fst());
+        FloatExpr b = floatExpr((ASTNode<?>)node.snd());
+        switch (node.operator) {
+            case PLUS:
+                return f -> a.eval(f) + b.eval(f);
+            case MINUS:
+                return f -> a.eval(f) - b.eval(f);
+            case MUL:
+                return f -> a.eval(f) * b.eval(f);
+            case DIV:
+                return f -> a.eval(f) / b.eval(f);
+            case EXP:
+                return f -> Arithmetic.power(a.eval(f), b.eval(f));
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    private BoolExpr bool(ASTNode<?> node) {
+        switch (node.name) {
+            case "TrueFalseLiteral": {
+                final boolean value = node.operator == Type.TRUE;
+                return f -> value;
+            }
+            case "Identifier": {
+                if (Nodes.typeOf(res, node) != Type.BOOL_ID)
+                    break;
+
+                Slot s = res.getSlot(node);
+                final int hops = scopes.hops(s.local.scope);
+                final int slot = s.slot;
+                return f -> f.up(hops).values[slot] != 0;
+            }
+            case "FunctionCall": {
+                if (Nodes.typeOf(res, node) != Type.BOOL_ID)
+                    break;
+
+                Stmt call = call(node);
+                return f -> {
+                    call.exec(f);
+                    return ret != 0;
+                };
+            }
+            case "BoolFactor": {
+                BoolExpr e = bool((ASTNode<?>)node.fst());
+                return f -> !e.eval(f);
+            }
+            case "BoolExpression": {
+                BoolExpr a = bool((ASTNode<?>)node.fst());
+                BoolExpr b = bool((ASTNode<?>)node.snd());
+                if (node.operator == Type.OR)
+                    return f -> a.eval(f) || b.eval(f);
+                return f -> a.eval(f) && b.eval(f);
+            }
+            case "BoolTerm":
+                return compare(node);
+            default:
+                break;
+        }
+
+        throw new ExecutionException("Expected a bool, got "+Nodes.describe(node));
+    }
+
+    private BoolExpr compare(ASTNode<?> node) {
+        ASTNode<?> left = (ASTNode<?>)node.fst();
+        ASTNode<?> right = (ASTNode<?>)node.snd();
+        Type l = Nodes.typeOf(res, left);
+        Type r = Nodes.typeOf(res, right);
+        Type op = node.operator;
+
+        if (l == Type.FLOAT_ID || r == Type.FLOAT_ID) {
+            if (!l.within(Type.INT_ID, Type.FLOAT_ID) || !r.within(Type.INT_ID, Type.FLOAT_ID))
+                throw new ExecutionException("Cannot compare "+l+" and "+r);
+
+            FloatExpr a = floatExpr(left);
+            FloatExpr b = floatExpr(right);
+            switch (op) {
+                case EQUIVALENT:
+                    return f -> a.eval(f) == b.eval(f);
+                case LESS:
+                    return f -> a.eval(f) < b.eval(f);
+                case GREATER:
+                    return f -> a.eval(f) > b.eval(f);
+                case LESS_EQUAL:
+                    return f -> a.eval(f) <= b.eval(f);
+                default:
+                    return f -> a.eval(f) >= b.eval(f);
+            }
+        }
+
+        if (l == Type.INT_ID && r == Type.INT_ID) {
+            IntExpr a = intExpr(left);
+            IntExpr b = intExpr(right);
+            switch (op) {
+                case EQUIVALENT:
+                    return f -> a.eval(f) == b.eval(f);
+                case LESS:
+                    return f -> a.eval(f) < b.eval(f);
+                case GREATER:
+                    return f -> a.eval(f) > b.eval(f);
+                case LESS_EQUAL:
+                    return f -> a.eval(f) <= b.eval(f);
+                default:
+                    return f -> a.eval(f) >= b.eval(f);
+            }
+        }
+
+        if (l == r && op == Type.EQUIVALENT) {
+            if (l == Type.BOOL_ID) {
+                BoolExpr a = bool(left);
+                BoolExpr b = bool(right);
+                return f -> a.eval(f) == b.eval(f);
+            }
+            if (l == Type.STR_ID) {
+                StrExpr a = str(left);
+                StrExpr b = str(right);
+                return f -> a.eval(f).equals(b.eval(f));
+            }
+        }
+
+        throw new ExecutionException("Cannot compare "+l+" and "+r+" with "+op);
+    }
+
+    private StrExpr str(ASTNode<?> node) {
+        switch (node.name) {
+            case "StringLiteral": {
+                // the token keeps its quotes
+                String text = (String)node.fst();
+                final String value = text.substring(1, text.length()-1);
+                return f -> value;
+            }
+            case "Identifier": {
+                if (Nodes.typeOf(res, node) != Type.STR_ID)
+                    break;
+
+                Slot s = res.getSlot(node);
+                final int hops = scopes.hops(s.local.scope);
+                final int slot = s.slot;
+                return f -> (String)f.up(hops).refs[slot];
+            }
+            case "FunctionCall": {
+                if (Nodes.typeOf(res, node) != Type.STR_ID)
+                    break;
+
+                Stmt call = call(node);
+                return f -> {
+                    call.exec(f);
+                    return (String)retRef;
+                };
+            }
+            default:
+                break;
+        }
+
+        throw new ExecutionException("Expected a str, got "+Nodes.describe(node));
+    }
+
+    /* functions */
+
+    /**
+     * Function value..., runs the function and leaves its result in ret or
+     * retRef. Parameters without a value start at their default.
+     */
+    private Stmt call(ASTNode<?> node) {
+        Function<Stmt> fn = scopes.called(node);
+        final int hops = scopes.hops(fn.scope);
+
+        int argCount = Math.min(node.branches.size()-1, fn.params.length);
+        Argument[] args = new Argument[argCount];
+        for (int i = 0; i < argCount; i++)
+            args[i] = argument(fn.params[i], (ASTNode<?>)node.branches.get(i+1));
+
+        final Local[] strParams = fn.strParams;
+        final Type returnType = fn.returnType;
+        return f -> {
+            Frame callee = fn.hasFrame ? new Frame(fn.size, fn.refs, f.up(hops)) : f.up(hops);
+            for (Local param : strParams)
+                callee.refs[param.slot] = "";
+            for (Argument arg : args)
+                arg.pass(f, callee);
+
+            ret = 0;
+            retRef = returnType == Type.STR_ID ? "" : null;
+            fn.body.exec(callee);
+            return NORMAL;
+        };
+    }
+
+    private interface Argument { void pass(Frame caller, Frame callee); }
+
+    // worked out in the caller's frame, stored in the callee's
+    private Argument argument(Local param, ASTNode<?> value) {
+        final int slot = param.slot;
+        switch (param.type) {
+            case INT_ID: {
+                IntExpr e = intExpr(value);
+                return (caller, callee) -> callee.values[slot] = e.eval(caller);
+            }
+            case FLOAT_ID: {
+                FloatExpr e = floatExpr(value);
+                return (caller, callee) -> callee.values[slot] = Float.floatToRawIntBits(e.eval(caller));
+            }
+            case BOOL_ID: {
+                BoolExpr e = bool(value);
+                return (caller, callee) -> callee.values[slot] = e.eval(caller) ? 1 : 0;
+            }
+            default: {
+                StrExpr e = str(value);
+                return (caller, callee) -> callee.refs[slot] = e.eval(caller);
+            }
+        }
+    }
+
+
+}
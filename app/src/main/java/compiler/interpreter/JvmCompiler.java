@@ -0,0 +1,780 @@
+package compiler.interpreter;
+
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.Collections;
+
+import compiler.interpreter.ClassWriter.Code;
+import compiler.interpreter.ClassWriter.Label;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.ForParts;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolver;
+import compiler.syntax.Type;
+
+/**
+ * Compiles one function of a {@link Bytecode} program to a JVM class, for
+ * the {@link VM}'s second tier. The class has
+ *
+ *   static T run(VM vm, Frame outer, params...)
+ *
+ * where outer is the frame the function is declared in, and implements
+ * {@link CompiledFunction} by calling it. The function's own variables,
+ * those of the blocks in it too, become JVM locals, anything further out
+ * is read and written in outer and its parents. Calls to itself call run
+ * directly, other calls go back through VM.call().
+ *
+ * Only numbers and bools are compiled. A function with strings or
+ * functions declared in it is refused with an ExecutionException and
+ * stays in the VM.
+ */
+class JvmCompiler {
+    private static final String VM = "compiler/interpreter/VM";
+    private static final String FRAME = "compiler/interpreter/Frame";
+    private static final String NAME = "compiler/interpreter/Compiled";
+
+    // JVM opcodes used
+    private static final int ICONST_0 = 0x03;
+    private static final int LCONST_0 = 0x09;
+    private static final int FCONST_0 = 0x0b;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int FLOAD = 0x17;
+    private static final int ALOAD = 0x19;
+    private static final int LALOAD = 0x2f;
+    private static final int ISTORE = 0x36;
+    private static final int FSTORE = 0x38;
+    private static final int LASTORE = 0x50;
+    private static final int POP = 0x57;
+    private static final int POP2 = 0x58;
+    private static final int DUP = 0x59;
+    private static final int IADD = 0x60;
+    private static final int FADD = 0x62;
+    private static final int ISUB = 0x64;
+    private static final int FSUB = 0x66;
+    private static final int IMUL = 0x68;
+    private static final int FMUL = 0x6a;
+    private static final int FDIV = 0x6e;
+    private static final int INEG = 0x74;
+    private static final int FNEG = 0x76;
+    private static final int I2L = 0x85;
+    private static final int I2F = 0x86;
+    private static final int L2I = 0x88;
+    private static final int F2I = 0x8b;
+    private static final int F2D = 0x8d;
+    private static final int D2F = 0x90;
+    private static final int FCMPL = 0x95;
+    private static final int FCMPG = 0x96;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int LRETURN = 0xad;
+    private static final int FRETURN = 0xae;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int NEWARRAY = 0xbc;
+    private static final int WIDE = 0xc4;
+    private static final int T_LONG = 11;
+
+    private final Bytecode program;
+    private final Resolution res;
+    private final IdentityHashMap<ASTNode<?>, Integer> functionIndex;
+
+    // the function being compiled
+    private Bytecode.Function fn;
+    private int index;
+    private ClassWriter writer;
+    private Code code;
+    private String descriptor;
+    private Set<ASTNode<?>> inside;
+    private IdentityHashMap<Local, Integer> jvmLocals;
+
+    JvmCompiler(Bytecode program) {
+        this.program = program;
+
+        // the same tree resolves to the same slots
+        res = Resolver.resolve(program.tree);
+        functionIndex = new IdentityHashMap<ASTNode<?>, Integer>();
+        for (int i = 0; i < program.functions.length; i++)
+            functionIndex.put(program.functions[i].declaration, i);
+    }
+
+    /**
+     * The class file for function index of the program.
+     */
+    byte[] compile(int index) {
+        this.index = index;
+        fn = program.functions[index];
+        inside = Collections.newSetFromMap(new IdentityHashMap<ASTNode<?>, Boolean>());
+        jvmLocals = new IdentityHashMap<Local, Integer>();
+
+        descriptor = descriptor(fn);
+        writer = new ClassWriter(NAME, "java/lang/Object", "compiler/interpreter/CompiledFunction");
+
+        constructor();
+        bridge();
+        body();
+
+        return writer.toByteArray();
+    }
+
+    private static String descriptor(Bytecode.Function fn) {
+        StringBuilder out = new StringBuilder("(L"+VM+";L"+FRAME+";");
+        for (Type t : fn.paramTypes)
+            out.append(jvmType(t));
+        return out.append(')').append(fn.returnType == Type.VOID ? "V" : jvmType(fn.returnType)).toString();
+    }
+
+    private static String jvmType(Type t) {
+        switch (t) {
+            case INT_ID:
+            case BOOL_ID:
+                return "I";
+            case FLOAT_ID:
+                return "F";
+            default:
+                throw new ExecutionException("Cannot compile "+t+" values");
+        }
+    }
+
+    private void constructor() {
+        Code c = writer.method(ClassWriter.ACC_PUBLIC, "<init>", "()V");
+        c.op(ALOAD, 0, 1);
+        c.op2(INVOKESPECIAL, writer.method("java/lang/Object", "<init>", "()V"), -1);
+        c.op(RETURN, 0);
+        c.maxLocals = 1;
+        c.end();
+    }
+
+    // call(vm, outer, args) unpacks args for run and packs its result
+    private void bridge() {
+        Code c = writer.method(ClassWriter.ACC_PUBLIC, "call", "(L"+VM+";L"+FRAME+";[J)J");
+        c.op(ALOAD, 1, 1);
+        c.op(ALOAD, 2, 1);
+        for (int i = 0; i < fn.paramTypes.length; i++) {
+            c.op(ALOAD, 3, 1);
+            push(c, i);
+            c.op(LALOAD, 0);
+            fromLong(c, fn.paramTypes[i]);
+        }
+        invoke(c, INVOKESTATIC, NAME, "run", descriptor);
+
+        if (fn.returnType == Type.VOID)
+            c.op(LCONST_0, 2);
+        else
+            toLong(c, fn.returnType);
+        c.op(LRETURN, -2);
+        c.maxLocals = 4;
+        c.end();
+    }
+
+    private void body() {
+        code = writer.method(ClassWriter.ACC_STATIC, "run", descriptor);
+        ASTNode<?> declaration = fn.declaration;
+        inside.add(declaration);
+
+        // vm, outer, then the parameters
+        int next = 2;
+        for (int i = 2; i < declaration.branches.size()-1; i++) {
+            ASTNode<?> param = (ASTNode<?>)declaration.branches.get(i);
+            jvmLocals.put(res.getSlot((ASTNode<?>)param.snd()).local, next++);
+        }
+        code.maxLocals = next;
+
+        statements((ASTNode<?>)declaration.branches.get(declaration.branches.size()-1));
+
+        // falling off the end returns the default
+        if (fn.returnType == Type.VOID) {
+            code.op(RETURN, 0);
+        } else {
+            code.setDepth(0);
+            if (fn.returnType == Type.FLOAT_ID)
+                code.op(FCONST_0, 1).op(FRETURN, -1);
+            else
+                code.op(ICONST_0, 1).op(IRETURN, -1);
+        }
+        code.end();
+    }
+
+    /* statements */
+
+    private void statements(ASTNode<?> list) {
+        for (Object branch : list.branches)
+            statement((ASTNode<?>)branch);
+    }
+
+    private void statement(ASTNode<?> node) {
+        switch (node.name) {
+            case "DeclareStatement":
+                declareStatement(node);
+                break;
+            case "AssignStatement":
+                if (node.branches.size() > 1)
+                    store((ASTNode<?>)node.fst(), (ASTNode<?>)node.snd());
+                break;
+            case "IfStatement":
+                ifStatement(node);
+                break;
+            case "WhileExpression": {
+                Label start = new Label();
+                Label end = new Label();
+                code.place(start);
+                branch((ASTNode<?>)node.fst(), end, false);
+                block((ASTNode<?>)node.snd());
+                code.jump(GOTO, start, 0);
+                code.place(end);
+                break;
+            }
+            case "ForStatement":
+                forStatement(node);
+                break;
+            case "FunctionCall": {
+                Type type = call(node);
+                if (type == Type.INT_ID || type == Type.BOOL_ID || type == Type.FLOAT_ID)
+                    code.op(POP, -1);
+                break;
+            }
+            case "ReturnStatement": {
+                Type type = fn.returnType;
+                value((ASTNode<?>)node.fst(), type);
+                code.op(type == Type.FLOAT_ID ? FRETURN : IRETURN, -1);
+                break;
+            }
+            default:
+                throw new ExecutionException("Cannot compile "+Nodes.describe(node));
+        }
+    }
+
+    private void block(ASTNode<?> node) {
+        inside.add(node);
+        statements(node);
+    }
+
+    private void declareStatement(ASTNode<?> node) {
+        ASTNode<?> declared = (ASTNode<?>)node.snd();
+
+        for (int i = 1; i < node.branches.size(); i++) {
+            ASTNode<?> branch = (ASTNode<?>)node.branches.get(i);
+            boolean isDeclaration = isDeclared(branch);
+
+            // the value comes right after the one variable it is for
+            if (isDeclaration && i+1 < node.branches.size() && !isDeclared((ASTNode<?>)node.branches.get(i+1)))
+                continue;
+
+            if (isDeclaration) {
+                Local l = res.getSlot(branch).local;
+                pushDefault(l.type);
+                storeLocal(l);
+            } else {
+                store(declared, branch);
+            }
+        }
+    }
+
+    private boolean isDeclared(ASTNode<?> node) {
+        Resolution.Slot slot = res.getSlot(node);
+        return slot != null && slot.local.declaration == node;
+    }
+
+    private void ifStatement(ASTNode<?> node) {
+        Label otherwise = new Label();
+        branch((ASTNode<?>)node.fst(), otherwise, false);
+        block((ASTNode<?>)node.snd());
+
+        if (node.branches.size() < 3) {
+            code.place(otherwise);
+            return;
+        }
+
+        Label end = new Label();
+        code.jump(GOTO, end, 0);
+        code.place(otherwise);
+
+        ASTNode<?> elseNode = (ASTNode<?>)node.thrd();
+        if (elseNode.name.equals("IfStatement"))
+            ifStatement(elseNode);
+        else
+            block(elseNode);
+        code.place(end);
+    }
+
+    private void forStatement(ASTNode<?> node) {
+        ForParts parts = new ForParts(node);
+        if (parts.declaration != null)
+            declareStatement(parts.declaration);
+        ASTNode<?> condition = parts.condition;
+        ASTNode<?> update = parts.update;
+        ASTNode<?> body = parts.body;
+
+        Label start = new Label();
+        Label end = new Label();
+        code.place(start);
+        if (condition != null)
+            branch(condition, end, false);
+        block(body);
+        if (update != null)
+            statement(update);
+        code.jump(GOTO, start, 0);
+        code.place(end);
+    }
+
+    /* variables */
+
+    private void store(ASTNode<?> identifier, ASTNode<?> value) {
+        Local l = res.getSlot(identifier).local;
+        jvmType(l.type);
+
+        if (inside.contains(l.scope)) {
+            value(value, l.type);
+            storeLocal(l);
+            return;
+        }
+
+        // outer.up(hops).values[slot] = value
+        frame(hops(l.scope));
+        code.op2(GETFIELD, writer.field(FRAME, "values", "[J"), 0);
+        push(code, l.slot);
+        value(value, l.type);
+        toLong(code, l.type);
+        code.op(LASTORE, -4);
+    }
+
+    private void storeLocal(Local l) {
+        Integer slot = jvmLocals.get(l);
+        if (slot == null) {
+            slot = code.maxLocals++;
+            jvmLocals.put(l, slot);
+        }
+        local(l.type == Type.FLOAT_ID ? FSTORE : ISTORE, slot, -1);
+    }
+
+    private void load(ASTNode<?> identifier) {
+        Local l = res.getSlot(identifier).local;
+        jvmType(l.type);
+
+        if (inside.contains(l.scope)) {
+            local(l.type == Type.FLOAT_ID ? FLOAD : ILOAD, jvmLocals.get(l), 1);
+            return;
+        }
+
+        frame(hops(l.scope));
+        code.op2(GETFIELD, writer.field(FRAME, "values", "[J"), 0);
+        push(code, l.slot);
+        code.op(LALOAD, 0);
+        fromLong(code, l.type);
+    }
+
+    private void local(int opcode, int slot, int effect) {
+        if (slot < 256) {
+            code.op(opcode, slot, effect);
+        } else {
+            code.op(WIDE, 0);
+            code.op2(opcode, slot, effect);
+        }
+    }
+
+    // pushes outer.parent... hops times
+    private void frame(int hops) {
+        code.op(ALOAD, 1, 1);
+        for (int i = 0; i < hops; i++)
+            code.op2(GETFIELD, writer.field(FRAME, "parent", "L"+FRAME+";"), 0);
+    }
+
+    // frames from outer to the frame of scope, which is around the function
+    private int hops(ASTNode<?> scope) {
+        int out = 0;
+        for (int i = 0; i < fn.outerScopes.length; i++) {
+            if (fn.outerScopes[i] == scope)
+                return out;
+            if (fn.outerFrames[i])
+                out++;
+        }
+        throw new ExecutionException("Cannot compile a variable from outside the function's scopes");
+    }
+
+    /* expressions */
+
+    // the value of node as type, which is a number or bool type
+    private void value(ASTNode<?> node, Type type) {
+        switch (type) {
+            case INT_ID:
+                intExpr(node);
+                break;
+            case FLOAT_ID:
+                floatExpr(node);
+                break;
+            case BOOL_ID:
+                bool(node);
+                break;
+            default:
+                throw new ExecutionException("Cannot compile "+type+" values");
+        }
+    }
+
+    private void intExpr(ASTNode<?> node) {
+        Type type = Nodes.typeOf(res, node);
+        if (type == Type.FLOAT_ID) {
+            floatExpr(node);
+            code.op(F2I, 0);
+            return;
+        }
+        if (type != Type.INT_ID)
+            throw new ExecutionException("Expected a number, got "+Nodes.describe(node));
+
+        switch (node.name) {
+            case "IntLiteral":
+                push(code, (Integer)node.fst());
+                return;
+            case "Identifier":
+                load(node);
+                return;
+            case "FunctionCall":
+                call(node);
+                return;
+            case "Factor":
+                intExpr((ASTNode<?>)node.fst());
+                code.op(INEG, 0);
+                return;
+            default:
+                break;
+        }
+
+        intExpr((ASTNode<?>)node.fst());
+        intExpr((ASTNode<?>)node.snd());
+        switch (node.operator) {
+            case PLUS:
+                code.op(IADD, -1);
+                break;
+            case MINUS:
+                code.op(ISUB, -1);
+                break;
+            case MUL:
+                code.op(IMUL, -1);
+                break;
+            case DIV:
+                invoke(code, INVOKESTATIC, VM, "divide", "(II)I");
+                break;
+            case EXP:
+                invoke(code, INVOKESTATIC, "compiler/syntax/Arithmetic", "power", "(II)I");
+                break;
+            default:
+                throw new ExecutionException("Cannot compile "+Nodes.describe(node));
+        }
+    }
+
+    private void floatExpr(ASTNode<?> node) {
+        Type type = Nodes.typeOf(res, node);
+        if (type == Type.INT_ID) {
+            intExpr(node);
+            code.op(I2F, 0);
+            return;
+        }
+        if (type != Type.FLOAT_ID)
+            throw new ExecutionException("Expected a number, got "+Nodes.describe(node));
+
+        switch (node.name) {
+            case "FloatLiteral": {
+                float value = (Float)node.fst();
+                if (Float.floatToRawIntBits(value) == 0 || value == 1 || value == 2)
+                    code.op(FCONST_0 + (int)value, 1);
+                else
+                    ldc(code, writer.floating(value));
+                return;
+            }
+            case "Identifier":
+                load(node);
+                return;
+            case "FunctionCall":
+                call(node);
+                return;
+            case "Factor":
+                floatExpr((ASTNode<?>)node.fst());
+                code.op(FNEG, 0);
+                return;
+            default:
+                break;
+        }
+
+        if (node.operator == Type.EXP) {
+            floatExpr((ASTNode<?>)node.fst());
+            code.op(F2D, 1);
+            floatExpr((ASTNode<?>)node.snd());
+            code.op(F2D, 1);
+            invoke(code, INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+            code.op(D2F, -1);
+            return;
+        }
+
+        floatExpr((ASTNode<?>)node.fst());
+        floatExpr((ASTNode<?>)node.snd());
+        switch (node.operator) {
+            case PLUS:
+                code.op(FADD, -1);
+                break;
+            case MINUS:
+                code.op(FSUB, -1);
+                break;
+            case MUL:
+                code.op(FMUL, -1);
+                break;
+            case DIV:
+                code.op(FDIV, -1);
+                break;
+            default:
+                throw new ExecutionException("Cannot compile "+Nodes.describe(node));
+        }
+    }
+
+    // a bool as 0 or 1
+    private void bool(ASTNode<?> node) {
+        if (node.name.equals("Identifier") || node.name.equals("FunctionCall")) {
+            if (Nodes.typeOf(res, node) != Type.BOOL_ID)
+                throw new ExecutionException("Expected a bool, got "+Nodes.describe(node));
+            if (node.name.equals("Identifier"))
+                load(node);
+            else
+                call(node);
+            return;
+        }
+
+        if (node.name.equals("TrueFalseLiteral")) {
+            code.op(node.operator == Type.TRUE ? ICONST_0+1 : ICONST_0, 1);
+            return;
+        }
+
+        Label no = new Label();
+        Label end = new Label();
+        int depth = code.getDepth();
+        branch(node, no, false);
+        code.op(ICONST_0+1, 1);
+        code.jump(GOTO, end, 0);
+        code.place(no);
+        code.setDepth(depth);
+        code.op(ICONST_0, 1);
+        code.place(end);
+    }
+
+    /**
+     * Jumps to target if node is when, goes on otherwise.
+     */
+    private void branch(ASTNode<?> node, Label target, boolean when) {
+        switch (node.name) {
+            case "TrueFalseLiteral":
+                if ((node.operator == Type.TRUE) == when)
+                    code.jump(GOTO, target, 0);
+                return;
+            case "BoolFactor":
+                branch((ASTNode<?>)node.fst(), target, !when);
+                return;
+            case "BoolExpression": {
+                ASTNode<?> a = (ASTNode<?>)node.fst();
+                ASTNode<?> b = (ASTNode<?>)node.snd();
+                // a && b jumps when false if either is, a || b when true
+                boolean either = node.operator == Type.OR ? when : !when;
+                if (either) {
+                    branch(a, target, when);
+                    branch(b, target, when);
+                } else {
+                    Label skip = new Label();
+                    branch(a, skip, !when);
+                    branch(b, target, when);
+                    code.place(skip);
+                }
+                return;
+            }
+            case "BoolTerm":
+                compare(node, target, when);
+                return;
+            default:
+                bool(node);
+                code.jump(when ? IFNE : IFEQ, target, -1);
+        }
+    }
+
+    private void compare(ASTNode<?> node, Label target, boolean when) {
+        ASTNode<?> left = (ASTNode<?>)node.fst();
+        ASTNode<?> right = (ASTNode<?>)node.snd();
+        Type l = Nodes.typeOf(res, left);
+        Type r = Nodes.typeOf(res, right);
+        Type op = node.operator;
+
+        if (l == Type.FLOAT_ID || r == Type.FLOAT_ID) {
+            if (!l.within(Type.INT_ID, Type.FLOAT_ID) || !r.within(Type.INT_ID, Type.FLOAT_ID))
+                throw new ExecutionException("Cannot compare "+l+" and "+r);
+
+            floatExpr(left);
+            floatExpr(right);
+            // NaN makes every comparison false, so it compares as whatever
+            // fails the test
+            boolean less = op == Type.LESS || op == Type.LESS_EQUAL;
+            code.op(less ? FCMPG : FCMPL, -1);
+            code.jump(test(op, when, IFEQ), target, -1);
+            return;
+        }
+
+        if (l == Type.INT_ID && r == Type.INT_ID || l == Type.BOOL_ID && r == Type.BOOL_ID && op == Type.EQUIVALENT) {
+            value(left, l);
+            value(right, r);
+            code.jump(test(op, when, IF_ICMPEQ), target, -2);
+            return;
+        }
+
+        throw new ExecutionException("Cannot compile a comparison of "+l+" and "+r);
+    }
+
+    // the jump for op, or for its opposite if not when, base is IFEQ or
+    // IF_ICMPEQ, which are both followed by NE, LT, GE, GT, LE
+    private static int test(Type op, boolean when, int base) {
+        int eq = 0, ne = 1, lt = 2, ge = 3, gt = 4, le = 5;
+        int out;
+        switch (op) {
+            case EQUIVALENT:
+                out = when ? eq : ne;
+                break;
+            case LESS:
+                out = when ? lt : ge;
+                break;
+            case GREATER:
+                out = when ? gt : le;
+                break;
+            case LESS_EQUAL:
+                out = when ? le : gt;
+                break;
+            default:
+                out = when ? ge : lt;
+        }
+        return base + out;
+    }
+
+    /* calls */
+
+    /**
+     * Function value..., leaves the result as its JVM type, nothing for
+     * void and str functions. Returns the function's type.
+     */
+    private Type call(ASTNode<?> node) {
+        ASTNode<?> declaration = res.getFunction((ASTNode<?>)node.fst());
+        int target = functionIndex.get(declaration);
+        Bytecode.Function callee = program.functions[target];
+        int argCount = Math.min(node.branches.size()-1, callee.paramTypes.length);
+
+        if (target == index) {
+            // itself, straight to run
+            code.op(ALOAD, 0, 1);
+            code.op(ALOAD, 1, 1);
+            for (int i = 0; i < callee.paramTypes.length; i++) {
+                if (i < argCount)
+                    value((ASTNode<?>)node.branches.get(i+1), callee.paramTypes[i]);
+                else
+                    pushDefault(callee.paramTypes[i]);
+            }
+            invoke(code, INVOKESTATIC, NAME, "run", descriptor);
+            return callee.returnType;
+        }
+
+        // vm.call(target, outer, args)
+        code.op(ALOAD, 0, 1);
+        push(code, target);
+        frame(hops(callee.outerScopes[0]));
+        push(code, callee.paramTypes.length);
+        code.op(NEWARRAY, T_LONG, 0);
+        for (int i = 0; i < argCount; i++) {
+            code.op(DUP, 1);
+            push(code, i);
+            value((ASTNode<?>)node.branches.get(i+1), callee.paramTypes[i]);
+            toLong(code, callee.paramTypes[i]);
+            code.op(LASTORE, -4);
+        }
+        invoke(code, INVOKEVIRTUAL, VM, "call", "(IL"+FRAME+";[J)J");
+
+        if (callee.returnType == Type.INT_ID || callee.returnType == Type.BOOL_ID || callee.returnType == Type.FLOAT_ID)
+            fromLong(code, callee.returnType);
+        else
+            code.op(POP2, -2);
+        return callee.returnType;
+    }
+
+    /* helpers */
+
+    private void pushDefault(Type type) {
+        if (type == Type.FLOAT_ID)
+            code.op(FCONST_0, 1);
+        else if (type == Type.INT_ID || type == Type.BOOL_ID)
+            code.op(ICONST_0, 1);
+        else
+            throw new ExecutionException("Cannot compile "+type+" values");
+    }
+
+    // a long from the VM's representation to the JVM type
+    private void fromLong(Code c, Type type) {
+        c.op(L2I, -1);
+        if (type == Type.FLOAT_ID)
+            invoke(c, INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F");
+        else
+            jvmType(type);
+    }
+
+    private void toLong(Code c, Type type) {
+        if (type == Type.FLOAT_ID)
+            invoke(c, INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I");
+        c.op(I2L, 1);
+    }
+
+    private void push(Code c, int value) {
+        if (value >= -1 && value <= 5)
+            c.op(ICONST_0 + value, 1);
+        else if (value == (byte)value)
+            c.op(BIPUSH, value & 0xFF, 1);
+        else if (value == (short)value)
+            c.op2(SIPUSH, value, 1);
+        else
+            ldc(c, writer.integer(value));
+    }
+
+    private void ldc(Code c, int constant) {
+        if (constant < 256)
+            c.op(LDC, constant, 1);
+        else
+            c.op2(LDC_W, constant, 1);
+    }
+
+    private void invoke(Code c, int opcode, String owner, String name, String desc) {
+        int effect = opcode == INVOKESTATIC ? 0 : -1;
+        int i = 1;
+        while (desc.charAt(i) != ')') {
+            char ch = desc.charAt(i);
+            effect -= ch == 'J' || ch == 'D' ? 2 : 1;
+            if (ch == 'L')
+                i = desc.indexOf(';', i);
+            else if (ch == '[') {
+                while (desc.charAt(i) == '[')
+                    i++;
+                if (desc.charAt(i) == 'L')
+                    i = desc.indexOf(';', i);
+            }
+            i++;
+        }
+        char ret = desc.charAt(i+1);
+        effect += ret == 'V' ? 0 : (ret == 'J' || ret == 'D' ? 2 : 1);
+
+        c.op2(opcode, writer.method(owner, name, desc), effect);
+    }
+}
@@ -0,0 +1,63 @@
+package compiler.interpreter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolver;
+import compiler.syntax.Type;
+
+/**
+ * What the engines and the {@link BytecodeCompiler} need to know about a
+ * resolved tree and its nodes.
+ */
+final class Nodes {
+    private Nodes() {}
+
+    // Resolver.resolve(), failing on names that are not declared
+    static Resolution resolve(ASTNode<?> program) {
+        Resolution res = Resolver.resolve(program);
+        if (!res.unresolved.isEmpty())
+            throw new ExecutionException("Cannot run, unknown name \""+res.unresolved.get(0).fst()+"\"");
+        return res;
+    }
+
+    // variables declared at the top level, in declaration order
+    static List<Local> globals(Resolution res, ASTNode<?> program) {
+        List<Local> out = new ArrayList<Local>();
+        for (Local l : res.locals) {
+            if (l.scope == program)
+                out.add(l);
+        }
+        return out;
+    }
+
+    // Resolution.typeOf(), failing on nodes that are not expressions
+    static Type typeOf(Resolution res, ASTNode<?> node) {
+        Type out = res.typeOf(node);
+        if (out == null)
+            throw new ExecutionException("Cannot run "+describe(node));
+        return out;
+    }
+
+    // scopes whose frames need room for strings
+    static Set<ASTNode<?>> stringScopes(Resolution res) {
+        Set<ASTNode<?>> out = Collections.newSetFromMap(new IdentityHashMap<ASTNode<?>, Boolean>());
+        for (Local l : res.locals) {
+            if (l.type == Type.STR_ID)
+                out.add(l.scope);
+        }
+        return out;
+    }
+
+    static String describe(ASTNode<?> node) {
+        if (node.operator == Type.ERROR)
+            return "a statement that did not parse: "+node.fst();
+        return node.name;
+    }
+}
@@ -0,0 +1,134 @@
+package compiler.interpreter;
+
+/**
+ * Instructions of {@link Bytecode}. Each is an opcode followed by its
+ * operands in the same int[]. Numbers and bools (0 or 1) are on the value
+ * stack, floats as their bits, strings on a stack of their own.
+ *
+ * Jump offsets count from the instruction after the jump.
+ */
+public final class Opcodes {
+    private Opcodes() {}
+
+    public static final int HALT = 0;
+
+    // value
+    public static final int ICONST = 1;
+    // float bits
+    public static final int FCONST = 2;
+    // constant pool index
+    public static final int SCONST = 3;
+
+    // slot, in the current frame
+    public static final int LOAD = 4;
+    // frames up, slot
+    public static final int LOAD_UP = 5;
+    public static final int STORE = 6;
+    public static final int STORE_UP = 7;
+    public static final int SLOAD = 8;
+    public static final int SLOAD_UP = 9;
+    public static final int SSTORE = 10;
+    public static final int SSTORE_UP = 11;
+
+    public static final int IADD = 12;
+    public static final int ISUB = 13;
+    public static final int IMUL = 14;
+    public static final int IDIV = 15;
+    public static final int IPOW = 16;
+    public static final int INEG = 17;
+
+    public static final int FADD = 18;
+    public static final int FSUB = 19;
+    public static final int FMUL = 20;
+    public static final int FDIV = 21;
+    public static final int FPOW = 22;
+    public static final int FNEG = 23;
+
+    public static final int I2F = 24;
+    public static final int F2I = 25;
+
+    public static final int IEQ = 26;
+    public static final int ILT = 27;
+    public static final int IGT = 28;
+    public static final int ILE = 29;
+    public static final int IGE = 30;
+
+    public static final int FEQ = 31;
+    public static final int FLT = 32;
+    public static final int FGT = 33;
+    public static final int FLE = 34;
+    public static final int FGE = 35;
+
+    public static final int BEQ = 36;
+    public static final int BNOT = 37;
+    public static final int SEQ = 38;
+
+    // offset
+    public static final int JUMP = 39;
+    // pops a bool, offset
+    public static final int JUMP_FALSE = 40;
+    public static final int JUMP_TRUE = 41;
+
+    // frame size, 1 if it has strings: a block's frame
+    public static final int ENTER = 42;
+    public static final int LEAVE = 43;
+
+    // function index, frames up to the scope it is declared in, arguments
+    public static final int CALL = 44;
+    // the result, if any, is left on its stack
+    public static final int RET = 45;
+
+    public static final int POP = 46;
+    public static final int SPOP = 47;
+
+    public static final String[] NAMES = {
+        "HALT", "ICONST", "FCONST", "SCONST",
+        "LOAD", "LOAD_UP", "STORE", "STORE_UP", "SLOAD", "SLOAD_UP", "SSTORE", "SSTORE_UP",
+        "IADD", "ISUB", "IMUL", "IDIV", "IPOW", "INEG",
+        "FADD", "FSUB", "FMUL", "FDIV", "FPOW", "FNEG",
+        "I2F", "F2I",
+        "IEQ", "ILT", "IGT", "ILE", "IGE",
+        "FEQ", "FLT", "FGT", "FLE", "FGE",
+        "BEQ", "BNOT", "SEQ",
+        "JUMP", "JUMP_FALSE", "JUMP_TRUE",
+        "ENTER", "LEAVE",
+        "CALL", "RET",
+        "POP", "SPOP",
+    };
+
+    public static final int[] OPERANDS = {
+        0, 1, 1, 1,
+        1, 2, 1, 2, 1, 2, 1, 2,
+        0, 0, 0, 0, 0, 0,
+        0, 0, 0, 0, 0, 0,
+        0, 0,
+        0, 0, 0, 0, 0,
+        0, 0, 0, 0, 0,
+        0, 0, 0,
+        1, 1, 1,
+        2, 0,
+        3, 0,
+        0, 0,
+    };
+
+    // change in stack height, values and strings counted together
+    static final int[] EFFECT = {
+        0, 1, 1, 1,
+        1, 1, -1, -1, 1, 1, -1, -1,
+        -1, -1, -1, -1, -1, 0,
+        -1, -1, -1, -1, -1, 0,
+        0, 0,
+        -1, -1, -1, -1, -1,
+        -1, -1, -1, -1, -1,
+        -1, 0, -1,
+        0, -1, -1,
+        0, 0,
+        // CALL and RET are counted by the compiler
+        0, 0,
+        -1, -1,
+    };
+
+    static boolean isJump(int op) {
+        return op == JUMP || op == JUMP_FALSE || op == JUMP_TRUE;
+    }
+}
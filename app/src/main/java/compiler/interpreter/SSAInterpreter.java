@@ -0,0 +1,551 @@
+package compiler.interpreter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import compiler.ir.Block;
+import compiler.ir.Constant;
+import compiler.ir.Function;
+import compiler.ir.Instruction;
+import compiler.ir.Op;
+import compiler.ir.Program;
+import compiler.ir.Value;
+import compiler.syntax.Arithmetic;
+import compiler.syntax.Type;
+
+/**
+ * Runs a {@link Program} in SSA form, to check the passes over it and see
+ * what they save. Each function is flattened into an int[] of instructions
+ * with the types picked, every value gets a register, and the phis of a
+ * block are moves done on the edges into it, all at once.
+ *
+ * Registers hold ints and bools (0 or 1) as they are and floats as their
+ * bits, as in {@link Frame}, strings have registers of their own.
+ */
+public class SSAInterpreter implements Engine {
+    private static final int PARAM = 0, PARAM_REF = 1, COPY = 2, COPY_REF = 3;
+    private static final int IADD = 4, ISUB = 5, IMUL = 6, IDIV = 7, IPOW = 8, INEG = 9;
+    private static final int FADD = 10, FSUB = 11, FMUL = 12, FDIV = 13, FPOW = 14, FNEG = 15;
+    private static final int TO_FLOAT = 16, TO_INT = 17, NOT = 18;
+    private static final int IEQ = 19, ILT = 20, IGT = 21, ILE = 22, IGE = 23;
+    private static final int FEQ = 24, FLT = 25, FGT = 26, FLE = 27, FGE = 28, SEQ = 29;
+    private static final int LOAD = 30, LOAD_REF = 31, STORE = 32, STORE_REF = 33;
+    private static final int CALL = 34, JUMP = 35, BRANCH = 36;
+    private static final int RETURN = 37, RETURN_REF = 38, RETURN_VOID = 39, RETURN_MAIN = 40;
+
+    private final Program program;
+    private final Code main;
+    private final IdentityHashMap<Function, Code> functions;
+
+    // value of the last return, strings in retRef
+    private Object retRef;
+    private Map<String, Object> globals;
+    private long instructions;
+    private final boolean counting;
+
+    public SSAInterpreter(Program program) {
+        this(program, false);
+    }
+
+    /**
+     * With counting, every instruction run is counted, phis as one move
+     * each, see getInstructions().
+     */
+    public SSAInterpreter(Program program, boolean counting) {
+        this.program = program;
+        this.counting = counting;
+        functions = new IdentityHashMap<Function, Code>();
+        for (Function f : program.functions)
+            functions.put(f, new Code(f));
+        for (Code c : functions.values())
+            c.flatten();
+        main = functions.get(program.main);
+    }
+
+    public void run() {
+        Engine.runOnBigStack(() -> {
+            globals = null;
+            instructions = 0;
+            exec(main, new long[0], new Object[0], null);
+        });
+    }
+
+    public Map<String, Object> getGlobals() {
+        return globals == null ? new LinkedHashMap<String, Object>() : globals;
+    }
+
+    /**
+     * Instructions run by the last run, 0 unless counting.
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Cells of one call of a function, and the call of the function it is
+     * declared in.
+     */
+    private static final class Activation {
+        final long[] values;
+        final Object[] refs;
+        final Activation parent;
+
+        Activation(int size, Activation parent) {
+            values = new long[size];
+            refs = new Object[size];
+            this.parent = parent;
+        }
+
+        Activation up(int hops) {
+            Activation out = this;
+            while (hops-- > 0)
+                out = out.parent;
+            return out;
+        }
+    }
+
+    private long exec(Code fn, long[] args, Object[] argRefs, Activation link) {
+        final int[] code = fn.code;
+        final long[] r = fn.values.clone();
+        final Object[] refs = fn.refs.clone();
+        final Activation cells = new Activation(fn.cells, link);
+        final Edge[] edges = fn.edges;
+
+        int pc = 0;
+        while (true) {
+            if (counting)
+                instructions++;
+            switch (code[pc]) {
+                case PARAM:
+                    r[code[pc+1]] = args[code[pc+2]];
+                    pc += 3;
+                    break;
+                case PARAM_REF:
+                    refs[code[pc+1]] = argRefs[code[pc+2]];
+                    pc += 3;
+                    break;
+                case COPY:
+                    r[code[pc+1]] = r[code[pc+2]];
+                    pc += 3;
+                    break;
+                case COPY_REF:
+                    refs[code[pc+1]] = refs[code[pc+2]];
+                    pc += 3;
+                    break;
+                case IADD:
+                    r[code[pc+1]] = (int)r[code[pc+2]] + (int)r[code[pc+3]];
+                    pc += 4;
+                    break;
+                case ISUB:
+                    r[code[pc+1]] = (int)r[code[pc+2]] - (int)r[code[pc+3]];
+                    pc += 4;
+                    break;
+                case IMUL:
+                    r[code[pc+1]] = (int)r[code[pc+2]] * (int)r[code[pc+3]];
+                    pc += 4;
+                    break;
+                case IDIV: {
+                    int y = (int)r[code[pc+3]];
+                    if (y == 0)
+                        throw new ExecutionException("Division by zero");
+                    r[code[pc+1]] = (int)r[code[pc+2]] / y;
+                    pc += 4;
+                    break;
+                }
+                case IPOW:
+                    r[code[pc+1]] = Arithmetic.power((int)r[code[pc+2]], (int)r[code[pc+3]]);
+                    pc += 4;
+                    break;
+                case INEG:
+                    r[code[pc+1]] = -(int)r[code[pc+2]];
+                    pc += 3;
+                    break;
+                case FADD:
+                    r[code[pc+1]] = bits(f(r[code[pc+2]]) + f(r[code[pc+3]]));
+                    pc += 4;
+                    break;
+                case FSUB:
+                    r[code[pc+1]] = bits(f(r[code[pc+2]]) - f(r[code[pc+3]]));
+                    pc += 4;
+                    break;
+                case FMUL:
+                    r[code[pc+1]] = bits(f(r[code[pc+2]]) * f(r[code[pc+3]]));
+                    pc += 4;
+                    break;
+                case FDIV:
+                    r[code[pc+1]] = bits(f(r[code[pc+2]]) / f(r[code[pc+3]]));
+                    pc += 4;
+                    break;
+                case FPOW:
+                    r[code[pc+1]] = bits(Arithmetic.power(f(r[code[pc+2]]), f(r[code[pc+3]])));
+                    pc += 4;
+                    break;
+                case FNEG:
+                    r[code[pc+1]] = bits(-f(r[code[pc+2]]));
+                    pc += 3;
+                    break;
+                case TO_FLOAT:
+                    r[code[pc+1]] = bits((int)r[code[pc+2]]);
+                    pc += 3;
+                    break;
+                case TO_INT:
+                    r[code[pc+1]] = (int)f(r[code[pc+2]]);
+                    pc += 3;
+                    break;
+                case NOT:
+                    r[code[pc+1]] = r[code[pc+2]] ^ 1;
+                    pc += 3;
+                    break;
+                case IEQ:
+                    r[code[pc+1]] = r[code[pc+2]] == r[code[pc+3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case ILT:
+                    r[code[pc+1]] = r[code[pc+2]] < r[code[pc+3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case IGT:
+                    r[code[pc+1]] = r[code[pc+2]] > r[code[pc+3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case ILE:
+                    r[code[pc+1]] = r[code[pc+2]] <= r[code[pc+3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case IGE:
+                    r[code[pc+1]] = r[code[pc+2]] >= r[code[pc+3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case FEQ:
+                    r[code[pc+1]] = f(r[code[pc+2]]) == f(r[code[pc+3]]) ? 1 : 0;
+                    pc += 4;
+                    break;
+                case FLT:
+                    r[code[pc+1]] = f(r[code[pc+2]]) < f(r[code[pc+3]]) ? 1 : 0;
+                    pc += 4;
+                    break;
+                case FGT:
+                    r[code[pc+1]] = f(r[code[pc+2]]) > f(r[code[pc+3]]) ? 1 : 0;
+                    pc += 4;
+                    break;
+                case FLE:
+                    r[code[pc+1]] = f(r[code[pc+2]]) <= f(r[code[pc+3]]) ? 1 : 0;
+                    pc += 4;
+                    break;
+                case FGE:
+                    r[code[pc+1]] = f(r[code[pc+2]]) >= f(r[code[pc+3]]) ? 1 : 0;
+                    pc += 4;
+                    break;
+                case SEQ:
+                    r[code[pc+1]] = refs[code[pc+2]].equals(refs[code[pc+3]]) ? 1 : 0;
+                    pc += 4;
+                    break;
+                case LOAD:
+                    r[code[pc+1]] = cells.up(code[pc+2]).values[code[pc+3]];
+                    pc += 4;
+                    break;
+                case LOAD_REF:
+                    refs[code[pc+1]] = cells.up(code[pc+2]).refs[code[pc+3]];
+                    pc += 4;
+                    break;
+                case STORE:
+                    cells.up(code[pc+2]).values[code[pc+3]] = r[code[pc+1]];
+                    pc += 4;
+                    break;
+                case STORE_REF:
+                    cells.up(code[pc+2]).refs[code[pc+3]] = refs[code[pc+1]];
+                    pc += 4;
+                    break;
+                case CALL: {
+                    // dest, callee, hops to its parent's cells, arguments
+                    Code callee = fn.callees[code[pc+2]];
+                    int count = callee.params.length;
+                    long[] values = new long[count];
+                    Object[] strings = new Object[count];
+                    for (int k = 0; k < count; k++) {
+                        int reg = code[pc+4+k];
+                        values[k] = r[reg];
+                        strings[k] = refs[reg];
+                    }
+                    long value = exec(callee, values, strings, cells.up(code[pc+3]));
+                    if (code[pc+1] >= 0) {
+                        r[code[pc+1]] = value;
+                        refs[code[pc+1]] = retRef;
+                    }
+                    pc += 4+count;
+                    break;
+                }
+                case JUMP: {
+                    Edge e = edges[code[pc+1]];
+                    if (counting)
+                        instructions += e.from.length;
+                    pc = e.take(r, refs);
+                    break;
+                }
+                case BRANCH: {
+                    Edge e = edges[code[pc + (r[code[pc+1]] != 0 ? 2 : 3)]];
+                    if (counting)
+                        instructions += e.from.length;
+                    pc = e.take(r, refs);
+                    break;
+                }
+                case RETURN:
+                    retRef = null;
+                    return r[code[pc+1]];
+                case RETURN_REF:
+                    retRef = refs[code[pc+1]];
+                    return 0;
+                case RETURN_VOID:
+                    retRef = null;
+                    return 0;
+                case RETURN_MAIN: {
+                    globals = new LinkedHashMap<String, Object>();
+                    for (int k = 0; k < program.globals.size(); k++) {
+                        int reg = code[pc+1+k];
+                        globals.put(program.globals.get(k), box(fn.types[reg], r[reg], refs[reg]));
+                    }
+                    return 0;
+                }
+                default:
+                    throw new ExecutionException("Bad instruction "+code[pc]);
+            }
+        }
+    }
+
+    private static float f(long bits) {
+        return Float.intBitsToFloat((int)bits);
+    }
+
+    private static long bits(float f) {
+        return Float.floatToRawIntBits(f);
+    }
+
+    private static Object box(Type type, long value, Object ref) {
+        switch (type) {
+            case INT_ID:
+                return (int)value;
+            case FLOAT_ID:
+                return f(value);
+            case BOOL_ID:
+                return value != 0;
+            default:
+                return ref;
+        }
+    }
+
+    /**
+     * The phis of the block an edge goes into, as moves done all at once,
+     * then where the block starts.
+     */
+    private static final class Edge {
+        int target;
+        int[] from;
+        int[] to;
+        boolean[] isRef;
+        long[] values;
+        Object[] refs;
+
+        int take(long[] r, Object[] refRegs) {
+            int n = from.length;
+            for (int k = 0; k < n; k++) {
+                if (isRef[k])
+                    refs[k] = refRegs[from[k]];
+                else
+                    values[k] = r[from[k]];
+            }
+            for (int k = 0; k < n; k++) {
+                if (isRef[k])
+                    refRegs[to[k]] = refs[k];
+                else
+                    r[to[k]] = values[k];
+            }
+            return target;
+        }
+    }
+
+    /**
+     * A function flattened: registers for all its values, constants already
+     * in them, and its instructions.
+     */
+    private final class Code {
+        final Function function;
+        Code[] callees;
+        Type[] params;
+        int cells;
+
+        int[] code;
+        Edge[] edges;
+        long[] values;
+        Object[] refs;
+        Type[] types;
+
+        private final IdentityHashMap<Value, Integer> registers;
+        private final List<Type> registerTypes;
+
+        Code(Function function) {
+            this.function = function;
+            registers = new IdentityHashMap<Value, Integer>();
+            registerTypes = new ArrayList<Type>();
+        }
+
+        int register(Value v) {
+            Integer r = registers.get(v);
+            if (r == null) {
+                r = registerTypes.size();
+                registers.put(v, r);
+                registerTypes.add(v.type);
+            }
+            return r;
+        }
+
+        void flatten() {
+            params = function.params.toArray(new Type[0]);
+            cells = function.cells.size();
+
+            List<Block> blocks = function.reversePostorder();
+            IdentityHashMap<Block, Integer> starts = new IdentityHashMap<Block, Integer>();
+            List<Code> calls = new ArrayList<Code>();
+            List<Edge> edgeList = new ArrayList<Edge>();
+            List<Integer> out = new ArrayList<Integer>();
+            // edges and the blocks they go to, targets are known at the end
+            List<Block> edgeTargets = new ArrayList<Block>();
+
+            for (Block b : blocks) {
+                starts.put(b, out.size());
+                for (Instruction i : b.instructions)
+                    instruction(i, b, out, calls, edgeList, edgeTargets);
+            }
+
+            for (int k = 0; k < edgeList.size(); k++)
+                edgeList.get(k).target = starts.get(edgeTargets.get(k));
+
+            code = new int[out.size()];
+            for (int k = 0; k < code.length; k++)
+                code[k] = out.get(k);
+            edges = edgeList.toArray(new Edge[0]);
+            callees = calls.toArray(new Code[0]);
+
+            types = registerTypes.toArray(new Type[0]);
+            values = new long[types.length];
+            refs = new Object[types.length];
+            for (Map.Entry<Value, Integer> e : registers.entrySet()) {
+                if (!(e.getKey() instanceof Constant))
+                    continue;
+                Object value = ((Constant)e.getKey()).value;
+                int reg = e.getValue();
+                if (value instanceof Integer)
+                    values[reg] = (Integer)value;
+                else if (value instanceof Float)
+                    values[reg] = bits((Float)value);
+                else if (value instanceof Boolean)
+                    values[reg] = (Boolean)value ? 1 : 0;
+                else
+                    refs[reg] = value;
+            }
+        }
+
+        private void instruction(Instruction i, Block b, List<Integer> out, List<Code> calls, List<Edge> edges, List<Block> targets) {
+            boolean ref = i.type == Type.STR_ID;
+            switch (i.op) {
+                case PARAM:
+                    add(out, ref ? PARAM_REF : PARAM, register(i), i.index);
+                    return;
+                case COPY:
+                    add(out, ref ? COPY_REF : COPY, register(i), register(i.operand(0)));
+                    return;
+                case NEG:
+                case TO_FLOAT:
+                case TO_INT:
+                case NOT: {
+                    int op = i.op == Op.NEG ? (i.type == Type.FLOAT_ID ? FNEG : INEG)
+                        : i.op == Op.TO_FLOAT ? TO_FLOAT : (i.op == Op.TO_INT ? TO_INT : NOT);
+                    add(out, op, register(i), register(i.operand(0)));
+                    return;
+                }
+                case LOAD:
+                    add(out, ref ? LOAD_REF : LOAD, register(i), function.depth-i.cell.owner.depth, i.cell.index);
+                    return;
+                case STORE: {
+                    boolean refCell = i.cell.type == Type.STR_ID;
+                    add(out, refCell ? STORE_REF : STORE, register(i.operand(0)), function.depth-i.cell.owner.depth, i.cell.index);
+                    return;
+                }
+                case CALL: {
+                    calls.add(functions.get(i.callee));
+                    int dest = i.type == Type.VOID ? -1 : register(i);
+                    add(out, CALL, dest, calls.size()-1, function.depth-i.callee.parent.depth);
+                    for (Value v : i.operands)
+                        out.add(register(v));
+                    return;
+                }
+                case JUMP:
+                    add(out, JUMP, edge(b, b.successors.get(0), edges, targets));
+                    return;
+                case BRANCH:
+                    add(out, BRANCH, register(i.operand(0)), edge(b, b.successors.get(0), edges, targets), edge(b, b.successors.get(1), edges, targets));
+                    return;
+                case RETURN:
+                    if (function.parent == null) {
+                        out.add(RETURN_MAIN);
+                        for (Value v : i.operands)
+                            out.add(register(v));
+                    } else if (i.operands.isEmpty()) {
+                        out.add(RETURN_VOID);
+                    } else {
+                        add(out, i.operand(0).type == Type.STR_ID ? RETURN_REF : RETURN, register(i.operand(0)));
+                    }
+                    return;
+                default:
+                    break;
+            }
+
+            // two operands
+            Type t = i.operand(0).type;
+            boolean isFloat = t == Type.FLOAT_ID;
+            int op;
+            switch (i.op) {
+                case ADD: op = isFloat ? FADD : IADD; break;
+                case SUB: op = isFloat ? FSUB : ISUB; break;
+                case MUL: op = isFloat ? FMUL : IMUL; break;
+                case DIV: op = isFloat ? FDIV : IDIV; break;
+                case POW: op = isFloat ? FPOW : IPOW; break;
+                case EQ: op = isFloat ? FEQ : (t == Type.STR_ID ? SEQ : IEQ); break;
+                case LT: op = isFloat ? FLT : ILT; break;
+                case GT: op = isFloat ? FGT : IGT; break;
+                case LE: op = isFloat ? FLE : ILE; break;
+                case GE: op = isFloat ? FGE : IGE; break;
+                default:
+                    throw new ExecutionException("Cannot run "+i.op);
+            }
+            add(out, op, register(i), register(i.operand(0)), register(i.operand(1)));
+        }
+
+        private int edge(Block from, Block to, List<Edge> edges, List<Block> targets) {
+            int k = to.predecessors.indexOf(from);
+            Edge e = new Edge();
+            int n = to.phis.size();
+            e.from = new int[n];
+            e.to = new int[n];
+            e.isRef = new boolean[n];
+            e.values = new long[n];
+            e.refs = new Object[n];
+            for (int p = 0; p < n; p++) {
+                Instruction phi = to.phis.get(p);
+                e.from[p] = register(phi.operand(k));
+                e.to[p] = register(phi);
+                e.isRef[p] = phi.type == Type.STR_ID;
+            }
+            edges.add(e);
+            targets.add(to);
+            return edges.size()-1;
+        }
+
+        private void add(List<Integer> out, int... ints) {
+            for (int x : ints)
+                out.add(x);
+        }
+    }
+}
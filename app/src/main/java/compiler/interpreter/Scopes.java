@@ -0,0 +1,139 @@
+package compiler.interpreter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.syntax.Type;
+
+/**
+ * What {@link Interpreter} and {@link SpecializingInterpreter} keep track of
+ * while they convert a resolved program: the scopes around the node being
+ * converted and the functions declared so far. B is what a function body
+ * is converted to.
+ */
+final class Scopes<B> {
+    private final ASTNode<?> program;
+    private final Resolution res;
+    private final Set<ASTNode<?>> stringScopes;
+
+    private final List<Scope> scopes;
+    private final List<Function<B>> functionStack;
+    private final IdentityHashMap<ASTNode<?>, Function<B>> functions;
+
+    Scopes(ASTNode<?> program, Resolution res) {
+        this.program = program;
+        this.res = res;
+        stringScopes = Nodes.stringScopes(res);
+
+        scopes = new ArrayList<Scope>();
+        functionStack = new ArrayList<Function<B>>();
+        functions = new IdentityHashMap<ASTNode<?>, Function<B>>();
+    }
+
+    Scope enter(ASTNode<?> node) {
+        int size = res.getFrameSize(node);
+        // the program always has a frame, other scopes only with variables
+        Scope scope = new Scope(node, size, stringScopes.contains(node), node == program || size > 0);
+        scopes.add(scope);
+        return scope;
+    }
+
+    void exit() {
+        scopes.remove(scopes.size()-1);
+    }
+
+    /**
+     * Frames between the current scope and the one of scope, only scopes with
+     * variables have frames.
+     */
+    int hops(ASTNode<?> scope) {
+        int out = 0;
+        for (int i = scopes.size()-1; i >= 0 && scopes.get(i).node != scope; i--) {
+            if (scopes.get(i).hasFrame)
+                out++;
+        }
+        return out;
+    }
+
+    /**
+     * Declares the function and enters its scope, which the parameters and
+     * the body share. The caller converts the body into it and then calls
+     * exitFunction().
+     */
+    Function<B> enterFunction(ASTNode<?> node) {
+        Function<B> fn = new Function<B>(node, scopes.get(scopes.size()-1).node);
+        functions.put(node, fn);
+
+        Scope scope = enter(node);
+        functionStack.add(fn);
+
+        List<Local> params = new ArrayList<Local>();
+        List<Local> strParams = new ArrayList<Local>();
+        for (int i = 2; i < node.branches.size()-1; i++) {
+            ASTNode<?> param = (ASTNode<?>)node.branches.get(i);
+            Local l = res.getSlot((ASTNode<?>)param.snd()).local;
+            params.add(l);
+            if (l.type == Type.STR_ID)
+                strParams.add(l);
+        }
+        fn.params = params.toArray(new Local[0]);
+        fn.strParams = strParams.toArray(new Local[0]);
+        fn.size = scope.size;
+        fn.refs = scope.refs;
+        fn.hasFrame = scope.hasFrame;
+        return fn;
+    }
+
+    void exitFunction() {
+        functionStack.remove(functionStack.size()-1);
+        exit();
+    }
+
+    // the function whose body is being converted
+    Function<B> current() {
+        return functionStack.get(functionStack.size()-1);
+    }
+
+    // the function a FunctionCall calls
+    Function<B> called(ASTNode<?> call) {
+        return functions.get(res.getFunction((ASTNode<?>)call.fst()));
+    }
+
+    static final class Scope {
+        final ASTNode<?> node;
+        final int size;
+        final boolean refs;
+        final boolean hasFrame;
+
+        private Scope(ASTNode<?> node, int size, boolean refs, boolean hasFrame) {
+            this.node = node;
+            this.size = size;
+            this.refs = refs;
+            this.hasFrame = hasFrame;
+        }
+    }
+
+    static final class Function<B> {
+        // scope the function is declared in
+        final ASTNode<?> scope;
+        final Type returnType;
+
+        Local[] params;
+        // cleared to "" on every call
+        Local[] strParams;
+        int size;
+        boolean refs;
+        boolean hasFrame;
+        B body;
+
+        private Function(ASTNode<?> node, ASTNode<?> scope) {
+            this.scope = scope;
+            returnType = ((ASTNode<?>)node.fst()).operator;
+        }
+    }
+}
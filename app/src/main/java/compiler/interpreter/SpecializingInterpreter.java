@@ -0,0 +1,1810 @@
+package compiler.interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import compiler.interpreter.Scopes.Function;
+import compiler.interpreter.Scopes.Scope;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.ForParts;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolution.Slot;
+import compiler.syntax.Arithmetic;
+import compiler.syntax.Type;
+
+/**
+ * Runs a parsed program as a tree of nodes that rewrite themselves. Unlike
+ * the {@link Interpreter} it does not use the types the parser worked out:
+ * arithmetic, comparisons, variable reads and stores start generic, working
+ * on boxed values, and the first time one runs it replaces itself with a
+ * node for the kinds of value it saw, an int add or a float compare. Those
+ * ask their operands for an int or a float directly, so the common path does
+ * no boxing and no checks on kinds.
+ *
+ * A specialized node whose operand gives something else gets an
+ * UnexpectedResult instead. It puts the generic node back in its place,
+ * finishes the operation with the boxed values and passes the result on,
+ * as an UnexpectedResult again if its parent did not expect it. The
+ * language fixes the type of every variable and function, so this does
+ * not happen with programs the parser takes.
+ */
+public class SpecializingInterpreter implements Engine {
+    private static final int NORMAL = 0;
+    private static final int RETURN = 1;
+
+    // only while converting
+    private Resolution res;
+    private Scopes<Stmt> scopes;
+    // off, nodes stay generic
+    private final boolean specializing;
+
+    private final Stmt main;
+    private final int globalSize;
+    private final boolean globalRefs;
+    private final List<Local> globalLocals;
+    private Frame globals;
+
+    // slot 0 has the value of the last return
+    private final Frame result;
+
+    private int specialized;
+    private int deoptimized;
+
+    public SpecializingInterpreter(ASTNode<?> program) {
+        this(program, true);
+    }
+
+    public SpecializingInterpreter(ASTNode<?> program, boolean specializing) {
+        this.specializing = specializing;
+
+        res = Nodes.resolve(program);
+        scopes = new Scopes<Stmt>(program, res);
+        result = new Frame(1, true, null);
+
+        Scope global = scopes.enter(program);
+        globalSize = global.size;
+        globalRefs = global.refs;
+        main = sequence(statements((ASTNode<?>)program.fst()));
+        scopes.exit();
+
+        globalLocals = Nodes.globals(res, program);
+        res = null;
+        scopes = null;
+    }
+
+    /**
+     * {@inheritDoc} Nodes stay as the earlier runs left them.
+     */
+    public void run() {
+        Engine.runOnBigStack(() -> {
+            globals = new Frame(globalSize, globalRefs, null);
+            main.exec(globals);
+        });
+    }
+
+    public Map<String, Object> getGlobals() {
+        return Frame.byName(globals, globalLocals);
+    }
+
+    /**
+     * Nodes that replaced themselves with a specialized one so far.
+     */
+    public int getSpecialized() {
+        return specialized;
+    }
+
+    /**
+     * Specialized nodes that had to go back to the generic one so far.
+     */
+    public int getDeoptimized() {
+        return deoptimized;
+    }
+
+    /* conversion, statements */
+
+    private List<Stmt> statements(ASTNode<?> list) {
+        List<Stmt> out = new ArrayList<Stmt>();
+        for (Object branch : list.branches) {
+            Stmt s = statement((ASTNode<?>)branch);
+            if (s != null)
+                out.add(s);
+        }
+        return out;
+    }
+
+    private Stmt statement(ASTNode<?> node) {
+        switch (node.name) {
+            case "DeclareStatement":
+                return declareStatement(node);
+            case "AssignStatement":
+                if (node.branches.size() < 2)
+                    return new Sequence(new Stmt[0]);
+                return new Assign(store((ASTNode<?>)node.fst(), (ASTNode<?>)node.snd()));
+            case "IfStatement":
+                return ifStatement(node);
+            case "WhileExpression":
+                return new While(bool((ASTNode<?>)node.fst()), block((ASTNode<?>)node.snd()));
+            case "ForStatement":
+                return forStatement(node);
+            case "FunctionCall":
+                return new CallStatement(call(node));
+            case "FunctionDeclaration":
+                functionDeclaration(node);
+                return null;
+            case "ReturnStatement": {
+                Function<Stmt> fn = scopes.current();
+                if (fn.returnType == Type.VOID)
+                    throw new ExecutionException("Cannot return a value from a "+fn.returnType+" function");
+                return new Return(new GenericWrite(fn.returnType, 0, 0, expression((ASTNode<?>)node.fst())));
+            }
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    private static Stmt sequence(List<Stmt> statements) {
+        if (statements.size() == 1)
+            return statements.get(0);
+        return new Sequence(statements.toArray(new Stmt[0]));
+    }
+
+    // a block with its own scope, which gets a frame if it has variables
+    private Stmt block(ASTNode<?> node) {
+        Scope scope = scopes.enter(node);
+        Stmt body = sequence(statements(node));
+        scopes.exit();
+
+        if (!scope.hasFrame)
+            return body;
+        return new Block(scope.size, scope.refs, body);
+    }
+
+    /**
+     * VarTypeLiteral Identifier, then more declared Identifiers or the value
+     * of the first one
+     */
+    private Stmt declareStatement(ASTNode<?> node) {
+        List<Stmt> out = new ArrayList<Stmt>();
+        ASTNode<?> declared = (ASTNode<?>)node.snd();
+
+        for (int i = 1; i < node.branches.size(); i++) {
+            ASTNode<?> branch = (ASTNode<?>)node.branches.get(i);
+            Slot slot = res.getSlot(branch);
+
+            if (slot != null && slot.local.declaration == branch)
+                out.add(new Default(slot.local.slot, slot.local.type == Type.STR_ID));
+            else
+                // the value, there is only the one variable then
+                out.set(0, new Assign(store(declared, branch)));
+        }
+
+        return sequence(out);
+    }
+
+    /**
+     * BoolExpression BlockStatementList (IfStatement | BlockStatementList)?
+     */
+    private Stmt ifStatement(ASTNode<?> node) {
+        Expr condition = bool((ASTNode<?>)node.fst());
+        Stmt then = block((ASTNode<?>)node.snd());
+
+        if (node.branches.size() < 3)
+            return new If(condition, then, null);
+
+        ASTNode<?> elseNode = (ASTNode<?>)node.thrd();
+        return new If(condition, then, elseNode.name.equals("IfStatement") ? ifStatement(elseNode) : block(elseNode));
+    }
+
+    private Stmt forStatement(ASTNode<?> node) {
+        ForParts parts = new ForParts(node);
+        Stmt init = parts.declaration == null ? new Sequence(new Stmt[0]) : declareStatement(parts.declaration);
+        Expr condition = parts.condition == null ? new Literal(Boolean.TRUE) : bool(parts.condition);
+        Stmt update = parts.update == null ? new Sequence(new Stmt[0]) : statement(parts.update);
+        Stmt body = block(parts.body);
+
+        return new For(init, condition, update, body);
+    }
+
+    /**
+     * ReturnTypeLiteral Function DeclareStatement... BlockStatementList, the
+     * parameters and the body share the function's scope
+     */
+    private void functionDeclaration(ASTNode<?> node) {
+        Function<Stmt> fn = scopes.enterFunction(node);
+        fn.body = sequence(statements((ASTNode<?>)node.branches.get(node.branches.size()-1)));
+        scopes.exitFunction();
+    }
+
+    private Write store(ASTNode<?> identifier, ASTNode<?> value) {
+        Slot s = res.getSlot(identifier);
+        return new GenericWrite(s.local.type, scopes.hops(s.local.scope), s.slot, expression(value));
+    }
+
+    /* conversion, expressions */
+
+    private Expr expression(ASTNode<?> node) {
+        switch (node.name) {
+            case "IntLiteral":
+            case "FloatLiteral":
+                return new Literal(node.fst());
+            case "StringLiteral": {
+                // the token keeps its quotes
+                String text = (String)node.fst();
+                return new Literal(text.substring(1, text.length()-1));
+            }
+            case "TrueFalseLiteral":
+                return new Literal(node.operator == Type.TRUE);
+            case "Identifier": {
+                Slot s = res.getSlot(node);
+                return new GenericRead(s.local.type, scopes.hops(s.local.scope), s.slot);
+            }
+            case "FunctionCall":
+                return call(node);
+            case "Factor":
+                return new GenericNegate(expression((ASTNode<?>)node.fst()));
+            case "BinaryExpression":
+            case "Term":
+            case "Exp":
+                return new GenericBinary(node.operator, expression((ASTNode<?>)node.fst()), expression((ASTNode<?>)node.snd()));
+            default:
+                return bool(node);
+        }
+    }
+
+    private Expr bool(ASTNode<?> node) {
+        switch (node.name) {
+            case "BoolFactor":
+                return new Not(bool((ASTNode<?>)node.fst()));
+            case "BoolExpression":
+                return new Logic(node.operator == Type.OR, bool((ASTNode<?>)node.fst()), bool((ASTNode<?>)node.snd()));
+            case "BoolTerm":
+                return new GenericBinary(node.operator, expression((ASTNode<?>)node.fst()), expression((ASTNode<?>)node.snd()));
+            case "TrueFalseLiteral":
+            case "Identifier":
+            case "FunctionCall":
+                return expression(node);
+            default:
+                throw new ExecutionException("Cannot run "+Nodes.describe(node));
+        }
+    }
+
+    /**
+     * Function value..., parameters without a value start at their default
+     */
+    private Call call(ASTNode<?> node) {
+        Function<Stmt> fn = scopes.called(node);
+
+        int argCount = Math.min(node.branches.size()-1, fn.params.length);
+        Write[] args = new Write[argCount];
+        for (int i = 0; i < argCount; i++) {
+            Local param = fn.params[i];
+            args[i] = new GenericWrite(param.type, 0, param.slot, expression((ASTNode<?>)node.branches.get(i+1)));
+        }
+        return new Call(fn, scopes.hops(fn.scope), args);
+    }
+
+
+
+    /* values */
+
+    /**
+     * What a specialized node got from an operand instead of the kind it
+     * asked for.
+     */
+    static final class UnexpectedResult extends Exception {
+        private static final long serialVersionUID = 1L;
+        final Object result;
+
+        UnexpectedResult(Object result) {
+            // thrown only to be caught, no stack trace needed
+            super(null, null, false, false);
+            this.result = result;
+        }
+    }
+
+    private static int expectInt(Object value) throws UnexpectedResult {
+        if (value instanceof Integer)
+            return (Integer)value;
+        throw new UnexpectedResult(value);
+    }
+
+    private static float expectFloat(Object value) throws UnexpectedResult {
+        if (value instanceof Float)
+            return (Float)value;
+        throw new UnexpectedResult(value);
+    }
+
+    private static boolean expectBool(Object value) throws UnexpectedResult {
+        if (value instanceof Boolean)
+            return (Boolean)value;
+        throw new UnexpectedResult(value);
+    }
+
+    private static boolean isNumber(Object value) {
+        return value instanceof Integer || value instanceof Float;
+    }
+
+    private static int toInt(Object value) {
+        if (value instanceof Integer)
+            return (Integer)value;
+        if (value instanceof Float)
+            return (int)(float)(Float)value;
+        throw new ExecutionException("Expected a number, got "+kind(value));
+    }
+
+    private static float toFloat(Object value) {
+        if (value instanceof Float)
+            return (Float)value;
+        if (value instanceof Integer)
+            return (Integer)value;
+        throw new ExecutionException("Expected a number, got "+kind(value));
+    }
+
+    private static boolean toBool(Object value) {
+        if (value instanceof Boolean)
+            return (Boolean)value;
+        throw new ExecutionException("Expected a bool, got "+kind(value));
+    }
+
+    private static String kind(Object value) {
+        return value == null ? "nothing" : value.getClass().getSimpleName();
+    }
+
+    private static int divide(int a, int b) {
+        if (b == 0)
+            throw new ExecutionException("Division by zero");
+        return a / b;
+    }
+
+    /**
+     * a op b on boxed values, what every generic node does.
+     */
+    private static Object operate(Type op, Object a, Object b) {
+        if (a instanceof Integer && b instanceof Integer) {
+            int x = (Integer)a;
+            int y = (Integer)b;
+            switch (op) {
+                case PLUS:
+                    return x + y;
+                case MINUS:
+                    return x - y;
+                case MUL:
+                    return x * y;
+                case DIV:
+                    return divide(x, y);
+                case EXP:
+                    return Arithmetic.power(x, y);
+                case EQUIVALENT:
+                    return x == y;
+                case LESS:
+                    return x < y;
+                case GREATER:
+                    return x > y;
+                case LESS_EQUAL:
+                    return x <= y;
+                case GREATER_EQUAL:
+                    return x >= y;
+                default:
+                    break;
+            }
+        } else if (isNumber(a) && isNumber(b)) {
+            float x = toFloat(a);
+            float y = toFloat(b);
+            switch (op) {
+                case PLUS:
+                    return x + y;
+                case MINUS:
+                    return x - y;
+                case MUL:
+                    return x * y;
+                case DIV:
+                    return x / y;
+                case EXP:
+                    return Arithmetic.power(x, y);
+                case EQUIVALENT:
+                    return x == y;
+                case LESS:
+                    return x < y;
+                case GREATER:
+                    return x > y;
+                case LESS_EQUAL:
+                    return x <= y;
+                case GREATER_EQUAL:
+                    return x >= y;
+                default:
+                    break;
+            }
+        } else if (op == Type.EQUIVALENT && a != null && b != null && a.getClass() == b.getClass() && !isNumber(a)) {
+            // bools and strs
+            return a.equals(b);
+        }
+
+        throw new ExecutionException("Cannot run "+op+" on "+kind(a)+" and "+kind(b));
+    }
+
+    private static boolean isComparison(Type op) {
+        return op.within(Type.EQUIVALENT, Type.LESS, Type.GREATER, Type.LESS_EQUAL, Type.GREATER_EQUAL);
+    }
+
+    /* nodes */
+
+    abstract static class Node {
+        Node parent;
+
+        <T extends Node> T adopt(T child) {
+            child.parent = this;
+            return child;
+        }
+
+        void replaceChild(Node child, Node replacement) {
+            throw new IllegalStateException(getClass().getSimpleName()+" has no child to replace");
+        }
+
+        // puts replacement where this is in the tree
+        <T extends Node> T replace(T replacement) {
+            parent.replaceChild(this, replacement);
+            replacement.parent = parent;
+            return replacement;
+        }
+    }
+
+    /**
+     * An expression. execute() gives the value boxed, the others give it
+     * as they say or throw an UnexpectedResult with the boxed value.
+     */
+    abstract static class Expr extends Node {
+        abstract Object execute(Frame f);
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            return expectInt(execute(f));
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            return expectFloat(execute(f));
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            return expectBool(execute(f));
+        }
+    }
+
+    // a condition, which has to be a bool
+    private static boolean test(Expr condition, Frame f) {
+        try {
+            return condition.executeBool(f);
+        } catch (UnexpectedResult e) {
+            return toBool(e.result);
+        }
+    }
+
+    static final class Literal extends Expr {
+        private final Object value;
+        private final int intValue;
+        private final float floatValue;
+        private final boolean boolValue;
+
+        Literal(Object value) {
+            this.value = value;
+            intValue = value instanceof Integer ? (Integer)value : 0;
+            floatValue = value instanceof Float ? (Float)value : 0;
+            boolValue = value instanceof Boolean && (Boolean)value;
+        }
+
+        Object execute(Frame f) {
+            return value;
+        }
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            if (value instanceof Integer)
+                return intValue;
+            throw new UnexpectedResult(value);
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            if (value instanceof Float)
+                return floatValue;
+            throw new UnexpectedResult(value);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            if (value instanceof Boolean)
+                return boolValue;
+            throw new UnexpectedResult(value);
+        }
+    }
+
+    abstract static class Unary extends Expr {
+        Expr child;
+
+        Unary(Expr child) {
+            this.child = adopt(child);
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (child == old)
+                child = (Expr)replacement;
+        }
+    }
+
+    // the child, with ToInt or ToFloat taken off
+    private static Expr unwrap(Expr e) {
+        return e instanceof ToInt || e instanceof ToFloat ? ((Unary)e).child : e;
+    }
+
+    /**
+     * Where an int is used as a float, put in when a node specializes. If
+     * the child gives floats after all it takes itself out.
+     */
+    final class ToFloat extends Unary {
+        ToFloat(Expr child) {
+            super(child);
+        }
+
+        Object execute(Frame f) {
+            return toFloat(child.execute(f));
+        }
+
+        float executeFloat(Frame f) {
+            try {
+                return child.executeInt(f);
+            } catch (UnexpectedResult e) {
+                if (e.result instanceof Float) {
+                    deoptimized++;
+                    replace(child);
+                }
+                return toFloat(e.result);
+            }
+        }
+    }
+
+    /**
+     * Where a float is stored as an int, truncating it, or takes itself out
+     * like ToFloat.
+     */
+    final class ToInt extends Unary {
+        ToInt(Expr child) {
+            super(child);
+        }
+
+        Object execute(Frame f) {
+            return toInt(child.execute(f));
+        }
+
+        int executeInt(Frame f) {
+            try {
+                return (int)child.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                if (e.result instanceof Integer) {
+                    deoptimized++;
+                    replace(child);
+                }
+                return toInt(e.result);
+            }
+        }
+    }
+
+    /* variables */
+
+    final class GenericRead extends Expr {
+        final Type type;
+        final int hops;
+        final int slot;
+
+        GenericRead(Type type, int hops, int slot) {
+            this.type = type;
+            this.hops = hops;
+            this.slot = slot;
+        }
+
+        Object execute(Frame f) {
+            Object value = f.up(hops).get(slot, type);
+            if (specializing) {
+                specialized++;
+                if (value instanceof Integer)
+                    replace(new IntRead(hops, slot));
+                else if (value instanceof Float)
+                    replace(new FloatRead(hops, slot));
+                else if (value instanceof Boolean)
+                    replace(new BoolRead(hops, slot));
+                else
+                    replace(new StrRead(hops, slot));
+            }
+            return value;
+        }
+    }
+
+    // a variable's kind is fixed by its declaration, so these stay
+    static final class IntRead extends Expr {
+        final int hops;
+        final int slot;
+
+        IntRead(int hops, int slot) {
+            this.hops = hops;
+            this.slot = slot;
+        }
+
+        Object execute(Frame f) {
+            return executeInt(f);
+        }
+
+        int executeInt(Frame f) {
+            return (int)f.up(hops).values[slot];
+        }
+    }
+
+    static final class FloatRead extends Expr {
+        final int hops;
+        final int slot;
+
+        FloatRead(int hops, int slot) {
+            this.hops = hops;
+            this.slot = slot;
+        }
+
+        Object execute(Frame f) {
+            return executeFloat(f);
+        }
+
+        float executeFloat(Frame f) {
+            return Float.intBitsToFloat((int)f.up(hops).values[slot]);
+        }
+    }
+
+    static final class BoolRead extends Expr {
+        final int hops;
+        final int slot;
+
+        BoolRead(int hops, int slot) {
+            this.hops = hops;
+            this.slot = slot;
+        }
+
+        Object execute(Frame f) {
+            return executeBool(f);
+        }
+
+        boolean executeBool(Frame f) {
+            return f.up(hops).values[slot] != 0;
+        }
+    }
+
+    static final class StrRead extends Expr {
+        final int hops;
+        final int slot;
+
+        StrRead(int hops, int slot) {
+            this.hops = hops;
+            this.slot = slot;
+        }
+
+        Object execute(Frame f) {
+            return f.up(hops).refs[slot];
+        }
+    }
+
+    /**
+     * Works value out in from and stores it in a variable of the declared
+     * type, hops frames up from base.
+     */
+    abstract class Write extends Node {
+        final Type type;
+        final int hops;
+        final int slot;
+        Expr value;
+
+        Write(Type type, int hops, int slot, Expr value) {
+            this.type = type;
+            this.hops = hops;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        abstract void write(Frame from, Frame base);
+
+        void replaceChild(Node old, Node replacement) {
+            if (value == old)
+                value = (Expr)replacement;
+        }
+
+        // back to the generic store, which stores the value from the operand
+        void deoptimize(Frame base, Object value) {
+            deoptimized++;
+            replace(new GenericWrite(type, hops, slot, unwrap(this.value))).store(base, value);
+        }
+    }
+
+    final class GenericWrite extends Write {
+        GenericWrite(Type type, int hops, int slot, Expr value) {
+            super(type, hops, slot, value);
+        }
+
+        void write(Frame from, Frame base) {
+            Object v = value.execute(from);
+            if (specializing)
+                specialize(v);
+            store(base, v);
+        }
+
+        private void specialize(Object v) {
+            specialized++;
+            switch (type) {
+                case INT_ID:
+                    replace(new IntWrite(hops, slot, v instanceof Float ? new ToInt(value) : value));
+                    break;
+                case FLOAT_ID:
+                    replace(new FloatWrite(hops, slot, v instanceof Integer ? new ToFloat(value) : value));
+                    break;
+                case BOOL_ID:
+                    replace(new BoolWrite(hops, slot, value));
+                    break;
+                default:
+                    replace(new StrWrite(hops, slot, value));
+            }
+        }
+
+        void store(Frame base, Object v) {
+            Frame to = base.up(hops);
+            switch (type) {
+                case INT_ID:
+                    to.values[slot] = toInt(v);
+                    break;
+                case FLOAT_ID:
+                    to.values[slot] = Float.floatToRawIntBits(toFloat(v));
+                    break;
+                case BOOL_ID:
+                    to.values[slot] = toBool(v) ? 1 : 0;
+                    break;
+                default:
+                    to.refs[slot] = v;
+            }
+        }
+    }
+
+    final class IntWrite extends Write {
+        IntWrite(int hops, int slot, Expr value) {
+            super(Type.INT_ID, hops, slot, value);
+        }
+
+        void write(Frame from, Frame base) {
+            int v;
+            try {
+                v = value.executeInt(from);
+            } catch (UnexpectedResult e) {
+                deoptimize(base, e.result);
+                return;
+            }
+            base.up(hops).values[slot] = v;
+        }
+    }
+
+    final class FloatWrite extends Write {
+        FloatWrite(int hops, int slot, Expr value) {
+            super(Type.FLOAT_ID, hops, slot, value);
+        }
+
+        void write(Frame from, Frame base) {
+            float v;
+            try {
+                v = value.executeFloat(from);
+            } catch (UnexpectedResult e) {
+                deoptimize(base, e.result);
+                return;
+            }
+            base.up(hops).values[slot] = Float.floatToRawIntBits(v);
+        }
+    }
+
+    final class BoolWrite extends Write {
+        BoolWrite(int hops, int slot, Expr value) {
+            super(Type.BOOL_ID, hops, slot, value);
+        }
+
+        void write(Frame from, Frame base) {
+            boolean v;
+            try {
+                v = value.executeBool(from);
+            } catch (UnexpectedResult e) {
+                deoptimize(base, e.result);
+                return;
+            }
+            base.up(hops).values[slot] = v ? 1 : 0;
+        }
+    }
+
+    final class StrWrite extends Write {
+        StrWrite(int hops, int slot, Expr value) {
+            super(Type.STR_ID, hops, slot, value);
+        }
+
+        void write(Frame from, Frame base) {
+            Object v = value.execute(from);
+            if (!(v instanceof String)) {
+                deoptimize(base, v);
+                return;
+            }
+            base.up(hops).refs[slot] = v;
+        }
+    }
+
+    /* arithmetic and comparisons */
+
+    abstract class Binary extends Expr {
+        final Type op;
+        Expr left;
+        Expr right;
+
+        Binary(Type op, Expr left, Expr right) {
+            this.op = op;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (left == old)
+                left = (Expr)replacement;
+            else if (right == old)
+                right = (Expr)replacement;
+        }
+
+        /**
+         * Back to the generic node after left gave a, an unexpected kind.
+         * Works out the rest of the operation.
+         */
+        Object deoptimize(Frame f, Object a) {
+            GenericBinary generic = generalize();
+            return operate(op, a, generic.right.execute(f));
+        }
+
+        // after right gave b
+        Object deoptimize(Object a, Object b) {
+            generalize();
+            return operate(op, a, b);
+        }
+
+        private GenericBinary generalize() {
+            deoptimized++;
+            return replace(new GenericBinary(op, unwrap(left), unwrap(right)));
+        }
+    }
+
+    final class GenericBinary extends Binary {
+        GenericBinary(Type op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        Object execute(Frame f) {
+            Object a = left.execute(f);
+            Object b = right.execute(f);
+            if (specializing)
+                specialize(a, b);
+            return operate(op, a, b);
+        }
+
+        private void specialize(Object a, Object b) {
+            Expr replacement = null;
+            if (a instanceof Integer && b instanceof Integer) {
+                replacement = intNode(left, right);
+            } else if (isNumber(a) && isNumber(b)) {
+                replacement = floatNode(a instanceof Integer ? new ToFloat(left) : left, b instanceof Integer ? new ToFloat(right) : right);
+            } else if (op == Type.EQUIVALENT && a instanceof Boolean && b instanceof Boolean) {
+                replacement = new BoolEqual(left, right);
+            } else if (op == Type.EQUIVALENT && a instanceof String && b instanceof String) {
+                replacement = new StrEqual(left, right);
+            }
+
+            if (replacement != null) {
+                specialized++;
+                replace(replacement);
+            }
+        }
+
+        private Expr intNode(Expr a, Expr b) {
+            switch (op) {
+                case PLUS:
+                    return new IntAdd(a, b);
+                case MINUS:
+                    return new IntSub(a, b);
+                case MUL:
+                    return new IntMul(a, b);
+                case DIV:
+                    return new IntDiv(a, b);
+                case EXP:
+                    return new IntPow(a, b);
+                case EQUIVALENT:
+                    return new IntEqual(a, b);
+                case LESS:
+                    return new IntLess(a, b);
+                case GREATER:
+                    return new IntGreater(a, b);
+                case LESS_EQUAL:
+                    return new IntLessEqual(a, b);
+                default:
+                    return new IntGreaterEqual(a, b);
+            }
+        }
+
+        private Expr floatNode(Expr a, Expr b) {
+            switch (op) {
+                case PLUS:
+                    return new FloatAdd(a, b);
+                case MINUS:
+                    return new FloatSub(a, b);
+                case MUL:
+                    return new FloatMul(a, b);
+                case DIV:
+                    return new FloatDiv(a, b);
+                case EXP:
+                    return new FloatPow(a, b);
+                case EQUIVALENT:
+                    return new FloatEqual(a, b);
+                case LESS:
+                    return new FloatLess(a, b);
+                case GREATER:
+                    return new FloatGreater(a, b);
+                case LESS_EQUAL:
+                    return new FloatLessEqual(a, b);
+                default:
+                    return new FloatGreaterEqual(a, b);
+            }
+        }
+    }
+
+    /*
+     * The specialized nodes. Each gets its operands as the kind it was made
+     * for, and goes back to GenericBinary if one gives something else. They
+     * are written out one by one rather than sharing an execute method, so
+     * the JIT sees one operation per method.
+     */
+
+    abstract class IntBinary extends Binary {
+        IntBinary(Type op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        Object execute(Frame f) {
+            try {
+                return executeInt(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+    }
+
+    final class IntAdd extends IntBinary {
+        IntAdd(Expr left, Expr right) {
+            super(Type.PLUS, left, right);
+        }
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(f, e.result));
+            }
+            try {
+                return a + right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntSub extends IntBinary {
+        IntSub(Expr left, Expr right) {
+            super(Type.MINUS, left, right);
+        }
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(f, e.result));
+            }
+            try {
+                return a - right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntMul extends IntBinary {
+        IntMul(Expr left, Expr right) {
+            super(Type.MUL, left, right);
+        }
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(f, e.result));
+            }
+            try {
+                return a * right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntDiv extends IntBinary {
+        IntDiv(Expr left, Expr right) {
+            super(Type.DIV, left, right);
+        }
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(f, e.result));
+            }
+            try {
+                return divide(a, right.executeInt(f));
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntPow extends IntBinary {
+        IntPow(Expr left, Expr right) {
+            super(Type.EXP, left, right);
+        }
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(f, e.result));
+            }
+            try {
+                return Arithmetic.power(a, right.executeInt(f));
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    abstract class FloatBinary extends Binary {
+        FloatBinary(Type op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        Object execute(Frame f) {
+            try {
+                return executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+    }
+
+    final class FloatAdd extends FloatBinary {
+        FloatAdd(Expr left, Expr right) {
+            super(Type.PLUS, left, right);
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(f, e.result));
+            }
+            try {
+                return a + right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatSub extends FloatBinary {
+        FloatSub(Expr left, Expr right) {
+            super(Type.MINUS, left, right);
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(f, e.result));
+            }
+            try {
+                return a - right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatMul extends FloatBinary {
+        FloatMul(Expr left, Expr right) {
+            super(Type.MUL, left, right);
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(f, e.result));
+            }
+            try {
+                return a * right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatDiv extends FloatBinary {
+        FloatDiv(Expr left, Expr right) {
+            super(Type.DIV, left, right);
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(f, e.result));
+            }
+            try {
+                return a / right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatPow extends FloatBinary {
+        FloatPow(Expr left, Expr right) {
+            super(Type.EXP, left, right);
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(f, e.result));
+            }
+            try {
+                return Arithmetic.power(a, right.executeFloat(f));
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    abstract class Comparison extends Binary {
+        Comparison(Type op, Expr left, Expr right) {
+            super(op, left, right);
+        }
+
+        Object execute(Frame f) {
+            try {
+                return executeBool(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+    }
+
+    final class IntEqual extends Comparison {
+        IntEqual(Expr left, Expr right) {
+            super(Type.EQUIVALENT, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a == right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntLess extends Comparison {
+        IntLess(Expr left, Expr right) {
+            super(Type.LESS, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a < right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntGreater extends Comparison {
+        IntGreater(Expr left, Expr right) {
+            super(Type.GREATER, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a > right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntLessEqual extends Comparison {
+        IntLessEqual(Expr left, Expr right) {
+            super(Type.LESS_EQUAL, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a <= right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class IntGreaterEqual extends Comparison {
+        IntGreaterEqual(Expr left, Expr right) {
+            super(Type.GREATER_EQUAL, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            int a;
+            try {
+                a = left.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a >= right.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatEqual extends Comparison {
+        FloatEqual(Expr left, Expr right) {
+            super(Type.EQUIVALENT, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a == right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatLess extends Comparison {
+        FloatLess(Expr left, Expr right) {
+            super(Type.LESS, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a < right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatGreater extends Comparison {
+        FloatGreater(Expr left, Expr right) {
+            super(Type.GREATER, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a > right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatLessEqual extends Comparison {
+        FloatLessEqual(Expr left, Expr right) {
+            super(Type.LESS_EQUAL, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a <= right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class FloatGreaterEqual extends Comparison {
+        FloatGreaterEqual(Expr left, Expr right) {
+            super(Type.GREATER_EQUAL, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            float a;
+            try {
+                a = left.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a >= right.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class BoolEqual extends Comparison {
+        BoolEqual(Expr left, Expr right) {
+            super(Type.EQUIVALENT, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            boolean a;
+            try {
+                a = left.executeBool(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(f, e.result));
+            }
+            try {
+                return a == right.executeBool(f);
+            } catch (UnexpectedResult e) {
+                return expectBool(deoptimize(a, e.result));
+            }
+        }
+    }
+
+    final class StrEqual extends Comparison {
+        StrEqual(Expr left, Expr right) {
+            super(Type.EQUIVALENT, left, right);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            Object a = left.execute(f);
+            if (!(a instanceof String))
+                return expectBool(deoptimize(f, a));
+            Object b = right.execute(f);
+            if (!(b instanceof String))
+                return expectBool(deoptimize(a, b));
+            return a.equals(b);
+        }
+    }
+
+    /* negation */
+
+    final class GenericNegate extends Unary {
+        GenericNegate(Expr child) {
+            super(child);
+        }
+
+        Object execute(Frame f) {
+            Object value = child.execute(f);
+            if (specializing && isNumber(value)) {
+                specialized++;
+                replace(value instanceof Integer ? new IntNegate(child) : new FloatNegate(child));
+            }
+            return negate(value);
+        }
+    }
+
+    private static Object negate(Object value) {
+        if (value instanceof Integer)
+            return -(Integer)value;
+        return -toFloat(value);
+    }
+
+    abstract class SpecializedNegate extends Unary {
+        SpecializedNegate(Expr child) {
+            super(child);
+        }
+
+        Object deoptimize(Object value) {
+            deoptimized++;
+            replace(new GenericNegate(child));
+            return negate(value);
+        }
+    }
+
+    final class IntNegate extends SpecializedNegate {
+        IntNegate(Expr child) {
+            super(child);
+        }
+
+        Object execute(Frame f) {
+            try {
+                return executeInt(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            try {
+                return -child.executeInt(f);
+            } catch (UnexpectedResult e) {
+                return expectInt(deoptimize(e.result));
+            }
+        }
+    }
+
+    final class FloatNegate extends SpecializedNegate {
+        FloatNegate(Expr child) {
+            super(child);
+        }
+
+        Object execute(Frame f) {
+            try {
+                return executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return e.result;
+            }
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            try {
+                return -child.executeFloat(f);
+            } catch (UnexpectedResult e) {
+                return expectFloat(deoptimize(e.result));
+            }
+        }
+    }
+
+    /* bools, which are only ever bools */
+
+    static final class Not extends Unary {
+        Not(Expr child) {
+            super(child);
+        }
+
+        Object execute(Frame f) {
+            return executeBool(f);
+        }
+
+        boolean executeBool(Frame f) {
+            return !test(child, f);
+        }
+    }
+
+    static final class Logic extends Expr {
+        final boolean or;
+        Expr left;
+        Expr right;
+
+        Logic(boolean or, Expr left, Expr right) {
+            this.or = or;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (left == old)
+                left = (Expr)replacement;
+            else if (right == old)
+                right = (Expr)replacement;
+        }
+
+        Object execute(Frame f) {
+            return executeBool(f);
+        }
+
+        boolean executeBool(Frame f) {
+            if (or)
+                return test(left, f) || test(right, f);
+            return test(left, f) && test(right, f);
+        }
+    }
+
+    /* calls */
+
+    final class Call extends Expr {
+        private final Function<Stmt> fn;
+        private final int hops;
+        private final Write[] args;
+
+        Call(Function<Stmt> fn, int hops, Write[] args) {
+            this.fn = fn;
+            this.hops = hops;
+            this.args = args;
+            for (Write arg : args)
+                adopt(arg);
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] == old)
+                    args[i] = (Write)replacement;
+            }
+        }
+
+        // leaves the function's value in result
+        void call(Frame f) {
+            Frame outer = f.up(hops);
+            Frame callee = fn.hasFrame ? new Frame(fn.size, fn.refs, outer) : outer;
+            for (Local param : fn.strParams)
+                callee.refs[param.slot] = "";
+            // worked out in the caller's frame, stored in the callee's
+            for (Write arg : args)
+                arg.write(f, callee);
+
+            result.values[0] = 0;
+            result.refs[0] = fn.returnType == Type.STR_ID ? "" : null;
+            fn.body.exec(callee);
+        }
+
+        Object execute(Frame f) {
+            call(f);
+            return fn.returnType == Type.VOID ? null : result.get(0, fn.returnType);
+        }
+
+        // the declared type decides, so these do not need to specialize
+
+        int executeInt(Frame f) throws UnexpectedResult {
+            if (fn.returnType != Type.INT_ID)
+                return expectInt(execute(f));
+            call(f);
+            return (int)result.values[0];
+        }
+
+        float executeFloat(Frame f) throws UnexpectedResult {
+            if (fn.returnType != Type.FLOAT_ID)
+                return expectFloat(execute(f));
+            call(f);
+            return Float.intBitsToFloat((int)result.values[0]);
+        }
+
+        boolean executeBool(Frame f) throws UnexpectedResult {
+            if (fn.returnType != Type.BOOL_ID)
+                return expectBool(execute(f));
+            call(f);
+            return result.values[0] != 0;
+        }
+    }
+
+    /* statements, exec() gives NORMAL or RETURN */
+
+    abstract static class Stmt extends Node {
+        abstract int exec(Frame f);
+    }
+
+    static final class Sequence extends Stmt {
+        private final Stmt[] statements;
+
+        Sequence(Stmt[] statements) {
+            this.statements = statements;
+        }
+
+        int exec(Frame f) {
+            for (Stmt s : statements) {
+                if (s.exec(f) != NORMAL)
+                    return RETURN;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class Block extends Stmt {
+        private final int size;
+        private final boolean refs;
+        private final Stmt body;
+
+        Block(int size, boolean refs, Stmt body) {
+            this.size = size;
+            this.refs = refs;
+            this.body = body;
+        }
+
+        int exec(Frame f) {
+            return body.exec(new Frame(size, refs, f));
+        }
+    }
+
+    // a declared variable's starting value
+    static final class Default extends Stmt {
+        private final int slot;
+        private final boolean isStr;
+
+        Default(int slot, boolean isStr) {
+            this.slot = slot;
+            this.isStr = isStr;
+        }
+
+        int exec(Frame f) {
+            if (isStr)
+                f.refs[slot] = "";
+            else
+                f.values[slot] = 0;
+            return NORMAL;
+        }
+    }
+
+    static final class Assign extends Stmt {
+        private Write write;
+
+        Assign(Write write) {
+            this.write = adopt(write);
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (write == old)
+                write = (Write)replacement;
+        }
+
+        int exec(Frame f) {
+            write.write(f, f);
+            return NORMAL;
+        }
+    }
+
+    static final class CallStatement extends Stmt {
+        private final Call call;
+
+        CallStatement(Call call) {
+            this.call = adopt(call);
+        }
+
+        int exec(Frame f) {
+            call.call(f);
+            return NORMAL;
+        }
+    }
+
+    final class Return extends Stmt {
+        private Write write;
+
+        Return(Write write) {
+            this.write = adopt(write);
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (write == old)
+                write = (Write)replacement;
+        }
+
+        int exec(Frame f) {
+            write.write(f, result);
+            return RETURN;
+        }
+    }
+
+    static final class If extends Stmt {
+        private Expr condition;
+        private final Stmt then;
+        // null without an else
+        private final Stmt otherwise;
+
+        If(Expr condition, Stmt then, Stmt otherwise) {
+            this.condition = adopt(condition);
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (condition == old)
+                condition = (Expr)replacement;
+        }
+
+        int exec(Frame f) {
+            if (test(condition, f))
+                return then.exec(f);
+            return otherwise == null ? NORMAL : otherwise.exec(f);
+        }
+    }
+
+    static final class While extends Stmt {
+        private Expr condition;
+        private final Stmt body;
+
+        While(Expr condition, Stmt body) {
+            this.condition = adopt(condition);
+            this.body = body;
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (condition == old)
+                condition = (Expr)replacement;
+        }
+
+        int exec(Frame f) {
+            while (test(condition, f)) {
+                if (body.exec(f) != NORMAL)
+                    return RETURN;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class For extends Stmt {
+        private final Stmt init;
+        private Expr condition;
+        private final Stmt update;
+        private final Stmt body;
+
+        For(Stmt init, Expr condition, Stmt update, Stmt body) {
+            this.init = init;
+            this.condition = adopt(condition);
+            this.update = update;
+            this.body = body;
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (condition == old)
+                condition = (Expr)replacement;
+        }
+
+        int exec(Frame f) {
+            init.exec(f);
+            while (test(condition, f)) {
+                if (body.exec(f) != NORMAL)
+                    return RETURN;
+                update.exec(f);
+            }
+            return NORMAL;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package compiler.interpreter;
+
+import static compiler.interpreter.Opcodes.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import compiler.syntax.Arithmetic;
+import compiler.syntax.Type;
+
+/**
+ * Runs {@link Bytecode} with one switch over the opcodes in a loop. Calls do
+ * not recurse in Java: the return address and the caller's frame go on a
+ * call stack of their own, and the value stack is shared by all calls.
+ *
+ * Tiered, the VM also counts the calls of each function and the backward
+ * jumps of the loops in it. A function that gets to HOT is compiled to a
+ * JVM class by {@link JvmCompiler}, and every later call runs that instead.
+ * There is no switching over in the middle of a call, so a function that
+ * is hot from a single long loop goes faster from its next call on.
+ */
+public class VM implements Engine {
+    // calls deep at most, as the interpreter's thread stack allows
+    public static final int MAX_CALLS = 1 << 20;
+    // calls plus loop iterations before a function is compiled
+    public static final int HOT = 1000;
+
+    private final Bytecode program;
+    private Frame globals;
+
+    private final boolean tiered;
+    private final int[] counters;
+    private final CompiledFunction[] compiled;
+    // functions JvmCompiler could not take
+    private final boolean[] rejected;
+    private JvmCompiler jit;
+
+    public VM(Bytecode program) {
+        this(program, false);
+    }
+
+    public VM(Bytecode program, boolean tiered) {
+        this.program = program;
+        this.tiered = tiered;
+
+        int functions = program.functions.length;
+        counters = new int[functions];
+        compiled = new CompiledFunction[functions];
+        rejected = new boolean[functions];
+    }
+
+    /**
+     * {@inheritDoc} Functions compiled by earlier runs stay compiled.
+     */
+    public void run() {
+        Engine.runOnBigStack(() -> {
+            globals = new Frame(program.globalSize, program.globalRefs, null);
+            execute(0, globals, -1);
+        });
+    }
+
+    /**
+     * Names of the functions running as JVM classes.
+     */
+    public List<String> getCompiled() {
+        List<String> out = new ArrayList<String>();
+        for (int i = 0; i < compiled.length; i++) {
+            if (compiled[i] != null)
+                out.add(program.functions[i].name);
+        }
+        return out;
+    }
+
+    /**
+     * Calls a function from compiled code, args has a value for every
+     * parameter. The result is in the VM's representation, 0 for void and
+     * str functions.
+     */
+    long call(int function, Frame outer, long[] args) {
+        CompiledFunction target = compiled[function];
+        if (target == null && ++counters[function] >= HOT && !rejected[function])
+            target = promote(function);
+        if (target != null)
+            return target.call(this, outer, args);
+
+        Bytecode.Function fn = program.functions[function];
+        // compiled code only passes numbers and bools
+        Frame callee = enter(fn, outer, 0);
+        for (int i = 0; i < args.length; i++) {
+            if (fn.paramTypes[i] != Type.STR_ID)
+                callee.values[fn.paramSlots[i]] = args[i];
+        }
+        return execute(fn.entry, callee, function);
+    }
+
+    // the frame a call runs in, string parameters from argCount on set to ""
+    private static Frame enter(Bytecode.Function fn, Frame outer, int argCount) {
+        Frame callee = fn.hasFrame ? new Frame(fn.size, fn.refs, outer) : outer;
+        for (int i = argCount; i < fn.paramSlots.length; i++) {
+            if (fn.paramTypes[i] == Type.STR_ID)
+                callee.refs[fn.paramSlots[i]] = "";
+        }
+        return callee;
+    }
+
+    private CompiledFunction promote(int function) {
+        try {
+            if (jit == null)
+                jit = new JvmCompiler(program);
+
+            byte[] bytes = jit.compile(function);
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            compiled[function] = (CompiledFunction)lookup
+                .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                .invoke();
+        } catch (ExecutionException | LinkageError | ReflectiveOperationException e) {
+            // stays in the VM
+            rejected[function] = true;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return compiled[function];
+    }
+
+    /**
+     * Runs from start in frame until HALT, or until the function it is in
+     * returns, giving its result.
+     */
+    private long execute(int start, Frame frame, int function) {
+        final int[] code = program.code;
+        final Object[] constants = program.constants;
+        final Bytecode.Function[] functions = program.functions;
+        final int maxStack = program.maxStack;
+
+        long[] stack = new long[Math.max(16, maxStack*2)];
+        Object[] refs = new Object[stack.length];
+        int sp = 0;
+        int rsp = 0;
+
+        int[] returns = new int[16];
+        Frame[] callers = new Frame[16];
+        // which function each call returns to, for counting its loops
+        int[] returnFunctions = new int[16];
+        int calls = 0;
+
+        // frame.values, kept in step with frame
+        long[] locals = frame.values;
+        int pc = start;
+
+        while (true) {
+            switch (code[pc++]) {
+                case HALT:
+                    return 0;
+
+                case ICONST:
+                case FCONST:
+                    stack[sp++] = code[pc++];
+                    break;
+                case SCONST:
+                    refs[rsp++] = constants[code[pc++]];
+                    break;
+
+                case LOAD:
+                    stack[sp++] = locals[code[pc++]];
+                    break;
+                case LOAD_UP: {
+                    Frame f = frame.up(code[pc++]);
+                    stack[sp++] = f.values[code[pc++]];
+                    break;
+                }
+                case STORE:
+                    locals[code[pc++]] = stack[--sp];
+                    break;
+                case STORE_UP: {
+                    Frame f = frame.up(code[pc++]);
+                    f.values[code[pc++]] = stack[--sp];
+                    break;
+                }
+                case SLOAD:
+                    refs[rsp++] = frame.refs[code[pc++]];
+                    break;
+                case SLOAD_UP: {
+                    Frame f = frame.up(code[pc++]);
+                    refs[rsp++] = f.refs[code[pc++]];
+                    break;
+                }
+                case SSTORE:
+                    frame.refs[code[pc++]] = refs[--rsp];
+                    refs[rsp] = null;
+                    break;
+                case SSTORE_UP: {
+                    Frame f = frame.up(code[pc++]);
+                    f.refs[code[pc++]] = refs[--rsp];
+                    refs[rsp] = null;
+                    break;
+                }
+
+                case IADD:
+                    sp--;
+                    stack[sp-1] = (int)stack[sp-1] + (int)stack[sp];
+                    break;
+                case ISUB:
+                    sp--;
+                    stack[sp-1] = (int)stack[sp-1] - (int)stack[sp];
+                    break;
+                case IMUL:
+                    sp--;
+                    stack[sp-1] = (int)stack[sp-1] * (int)stack[sp];
+                    break;
+                case IDIV:
+                    sp--;
+                    if ((int)stack[sp] == 0)
+                        throw new ExecutionException("Division by zero");
+                    stack[sp-1] = (int)stack[sp-1] / (int)stack[sp];
+                    break;
+                case IPOW:
+                    sp--;
+                    stack[sp-1] = Arithmetic.power((int)stack[sp-1], (int)stack[sp]);
+                    break;
+                case INEG:
+                    stack[sp-1] = -(int)stack[sp-1];
+                    break;
+
+                case FADD:
+                    sp--;
+                    stack[sp-1] = bits(f(stack[sp-1]) + f(stack[sp]));
+                    break;
+                case FSUB:
+                    sp--;
+                    stack[sp-1] = bits(f(stack[sp-1]) - f(stack[sp]));
+                    break;
+                case FMUL:
+                    sp--;
+                    stack[sp-1] = bits(f(stack[sp-1]) * f(stack[sp]));
+                    break;
+                case FDIV:
+                    sp--;
+                    stack[sp-1] = bits(f(stack[sp-1]) / f(stack[sp]));
+                    break;
+                case FPOW:
+                    sp--;
+                    stack[sp-1] = bits(Arithmetic.power(f(stack[sp-1]), f(stack[sp])));
+                    break;
+                case FNEG:
+                    stack[sp-1] = bits(-f(stack[sp-1]));
+                    break;
+
+                case I2F:
+                    stack[sp-1] = bits((int)stack[sp-1]);
+                    break;
+                case F2I:
+                    stack[sp-1] = (int)f(stack[sp-1]);
+                    break;
+
+                case IEQ:
+                case BEQ:
+                    sp--;
+                    stack[sp-1] = stack[sp-1] == stack[sp] ? 1 : 0;
+                    break;
+                case ILT:
+                    sp--;
+                    stack[sp-1] = (int)stack[sp-1] < (int)stack[sp] ? 1 : 0;
+                    break;
+                case IGT:
+                    sp--;
+                    stack[sp-1] = (int)stack[sp-1] > (int)stack[sp] ? 1 : 0;
+                    break;
+                case ILE:
+                    sp--;
+                    stack[sp-1] = (int)stack[sp-1] <= (int)stack[sp] ? 1 : 0;
+                    break;
+                case IGE:
+                    sp--;
+                    stack[sp-1] = (int)stack[sp-1] >= (int)stack[sp] ? 1 : 0;
+                    break;
+
+                case FEQ:
+                    sp--;
+                    stack[sp-1] = f(stack[sp-1]) == f(stack[sp]) ? 1 : 0;
+                    break;
+                case FLT:
+                    sp--;
+                    stack[sp-1] = f(stack[sp-1]) < f(stack[sp]) ? 1 : 0;
+                    break;
+                case FGT:
+                    sp--;
+                    stack[sp-1] = f(stack[sp-1]) > f(stack[sp]) ? 1 : 0;
+                    break;
+                case FLE:
+                    sp--;
+                    stack[sp-1] = f(stack[sp-1]) <= f(stack[sp]) ? 1 : 0;
+                    break;
+                case FGE:
+                    sp--;
+                    stack[sp-1] = f(stack[sp-1]) >= f(stack[sp]) ? 1 : 0;
+                    break;
+
+                case BNOT:
+                    stack[sp-1] ^= 1;
+                    break;
+                case SEQ: {
+                    rsp -= 2;
+                    stack[sp++] = refs[rsp].equals(refs[rsp+1]) ? 1 : 0;
+                    refs[rsp] = refs[rsp+1] = null;
+                    break;
+                }
+
+                case JUMP:
+                    // a loop going round again
+                    if (code[pc] < 0 && tiered && function >= 0)
+                        counters[function]++;
+                    pc += code[pc] + 1;
+                    break;
+                case JUMP_FALSE:
+                    pc += stack[--sp] == 0 ? code[pc] + 1 : 1;
+                    break;
+                case JUMP_TRUE:
+                    pc += stack[--sp] != 0 ? code[pc] + 1 : 1;
+                    break;
+
+                case ENTER:
+                    frame = new Frame(code[pc], code[pc+1] != 0, frame);
+                    locals = frame.values;
+                    pc += 2;
+                    break;
+                case LEAVE:
+                    frame = frame.parent;
+                    locals = frame.values;
+                    break;
+
+                case CALL: {
+                    int index = code[pc];
+                    Bytecode.Function fn = functions[index];
+                    Frame outer = frame.up(code[pc+1]);
+                    int argCount = code[pc+2];
+                    pc += 3;
+
+                    if (tiered) {
+                        CompiledFunction target = compiled[index];
+                        if (target == null && ++counters[index] >= HOT && !rejected[index])
+                            target = promote(index);
+
+                        if (target != null) {
+                            // compiled functions have no string parameters
+                            long[] args = new long[fn.paramSlots.length];
+                            sp -= argCount;
+                            System.arraycopy(stack, sp, args, 0, argCount);
+
+                            long result = target.call(this, outer, args);
+                            if (fn.returnType != Type.VOID)
+                                stack[sp++] = result;
+                            break;
+                        }
+                    }
+
+                    // parameters without an argument start at their default
+                    Frame callee = enter(fn, outer, argCount);
+                    // arguments were pushed in order
+                    for (int i = argCount-1; i >= 0; i--) {
+                        if (fn.paramTypes[i] == Type.STR_ID) {
+                            callee.refs[fn.paramSlots[i]] = refs[--rsp];
+                            refs[rsp] = null;
+                        } else {
+                            callee.values[fn.paramSlots[i]] = stack[--sp];
+                        }
+                    }
+
+                    if (calls == returns.length) {
+                        if (calls == MAX_CALLS)
+                            throw new ExecutionException("Recursion too deep");
+                        returns = Arrays.copyOf(returns, calls*2);
+                        callers = Arrays.copyOf(callers, calls*2);
+                        returnFunctions = Arrays.copyOf(returnFunctions, calls*2);
+                    }
+                    returns[calls] = pc;
+                    callers[calls] = frame;
+                    returnFunctions[calls] = function;
+                    calls++;
+
+                    // room for what the callee pushes
+                    if (sp + maxStack >= stack.length || rsp + maxStack >= refs.length) {
+                        stack = Arrays.copyOf(stack, stack.length*2 + maxStack);
+                        refs = Arrays.copyOf(refs, stack.length);
+                    }
+
+                    frame = callee;
+                    locals = frame.values;
+                    function = index;
+                    pc = fn.entry;
+                    break;
+                }
+                case RET:
+                    // the function execute() was called for
+                    if (calls == 0)
+                        return functions[function].returnType == Type.STR_ID || sp == 0 ? 0 : stack[sp-1];
+
+                    calls--;
+                    pc = returns[calls];
+                    frame = callers[calls];
+                    locals = frame.values;
+                    function = returnFunctions[calls];
+                    callers[calls] = null;
+                    break;
+
+                case POP:
+                    sp--;
+                    break;
+                case SPOP:
+                    refs[--rsp] = null;
+                    break;
+
+                default:
+                    throw new ExecutionException("Bad opcode "+code[pc-1]+" at "+(pc-1));
+            }
+        }
+    }
+
+    public Map<String, Object> getGlobals() {
+        return Frame.byName(globals, program.globals);
+    }
+
+    // int / from compiled code
+    static int divide(int a, int b) {
+        if (b == 0)
+            throw new ExecutionException("Division by zero");
+        return a / b;
+    }
+
+    private static float f(long bits) {
+        return Float.intBitsToFloat((int)bits);
+    }
+
+    private static long bits(float value) {
+        return Float.floatToRawIntBits(value);
+    }
+}
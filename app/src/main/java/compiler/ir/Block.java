@@ -0,0 +1,90 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import compiler.syntax.Type;
+
+/**
+ * A basic block: phis, then instructions that run in order, the last of them
+ * a JUMP, BRANCH or RETURN. The successors are the targets of that last
+ * instruction, and every edge is listed at both of its ends.
+ */
+public class Block {
+    public final Function function;
+    // set by Function.number(), for printing
+    public int id;
+
+    public final List<Instruction> phis;
+    public final List<Instruction> instructions;
+    public final List<Block> predecessors;
+    public final List<Block> successors;
+
+    Block(Function function) {
+        this.function = function;
+        phis = new ArrayList<Instruction>();
+        instructions = new ArrayList<Instruction>();
+        predecessors = new ArrayList<Block>();
+        successors = new ArrayList<Block>();
+    }
+
+    public Instruction add(Instruction i) {
+        i.block = this;
+        instructions.add(i);
+        return i;
+    }
+
+    /**
+     * A phi of type with no operands yet, they go in in the order of the
+     * predecessors.
+     */
+    public Instruction addPhi(Type type) {
+        Instruction phi = new Instruction(Op.PHI, type);
+        phi.block = this;
+        phis.add(phi);
+        return phi;
+    }
+
+    public Instruction getTerminator() {
+        if (instructions.isEmpty())
+            return null;
+        Instruction last = instructions.get(instructions.size()-1);
+        return last.op.isTerminator() ? last : null;
+    }
+
+    public void jump(Block target) {
+        add(new Instruction(Op.JUMP, Type.VOID));
+        link(target);
+    }
+
+    public void branch(Value condition, Block ifTrue, Block ifFalse) {
+        add(new Instruction(Op.BRANCH, Type.VOID, condition));
+        link(ifTrue);
+        link(ifFalse);
+    }
+
+    public void ret(Value... values) {
+        add(new Instruction(Op.RETURN, Type.VOID, values));
+    }
+
+    private void link(Block target) {
+        successors.add(target);
+        target.predecessors.add(this);
+    }
+
+    /**
+     * Takes out the edge to target, and the phi operands in target that
+     * came from here. The terminator is left for the caller to change.
+     */
+    public void unlink(Block target) {
+        successors.remove(target);
+        int i = target.predecessors.indexOf(this);
+        target.predecessors.remove(i);
+        for (Instruction phi : target.phis)
+            phi.operands.remove(i);
+    }
+
+    public String toString() {
+        return "b"+id;
+    }
+}
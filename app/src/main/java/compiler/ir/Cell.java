@@ -0,0 +1,27 @@
+package compiler.ir;
+
+import compiler.syntax.Type;
+
+/**
+ * A variable that a function declared inside the one it belongs to uses.
+ * These are not in SSA form: they live in the activation of their function,
+ * and LOAD and STORE them, from their own function or from inner ones.
+ */
+public class Cell {
+    public final String name;
+    public final Type type;
+    public final Function owner;
+    // in the owner's cells
+    public final int index;
+
+    Cell(String name, Type type, Function owner, int index) {
+        this.name = name;
+        this.type = type;
+        this.owner = owner;
+        this.index = index;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
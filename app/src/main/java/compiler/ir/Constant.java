@@ -0,0 +1,22 @@
+package compiler.ir;
+
+import compiler.syntax.Type;
+
+/**
+ * An Integer, Float, Boolean or String. There is one of each value in a
+ * {@link Program}, so constants can be compared by identity.
+ */
+public class Constant extends Value {
+    public final Object value;
+
+    Constant(Type type, Object value) {
+        super(type);
+        this.value = value;
+    }
+
+    public String toString() {
+        if (value instanceof String)
+            return "\""+value+"\"";
+        return value.toString();
+    }
+}
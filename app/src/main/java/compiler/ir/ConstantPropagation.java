@@ -0,0 +1,298 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.syntax.Arithmetic;
+import compiler.syntax.Type;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck): works out
+ * which values are constant while working out which edges can be taken, so
+ * a phi only meets the values of edges that can be taken. Then uses the
+ * constants in place of the values and turns branches on them into jumps.
+ *
+ * Folds the way the interpreter runs: ints wrap, an int division by zero is
+ * left for the run to fail on, and NaN is neither less, greater nor equal.
+ */
+public class ConstantPropagation {
+    // a value that is not a constant, the bottom of the lattice; no entry
+    // is the top, a value not worked out yet
+    private static final Object VARYING = new Object();
+
+    private final Program program;
+    private final Function function;
+    private final IdentityHashMap<Instruction, List<Instruction>> users;
+
+    private final IdentityHashMap<Instruction, Object> values;
+    private final Set<Block> reached;
+    private final IdentityHashMap<Block, Set<Block>> taken;
+    private final List<Block> blockWork;
+    private final List<Instruction> work;
+
+    private ConstantPropagation(Program program, Function function) {
+        this.program = program;
+        this.function = function;
+        users = function.users();
+        values = new IdentityHashMap<Instruction, Object>();
+        reached = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+        taken = new IdentityHashMap<Block, Set<Block>>();
+        blockWork = new ArrayList<Block>();
+        work = new ArrayList<Instruction>();
+    }
+
+    /**
+     * Returns the values made constants, and the branches and blocks
+     * removed.
+     */
+    public static int run(Program program) {
+        int changes = 0;
+        for (Function f : program.functions)
+            changes += new ConstantPropagation(program, f).run();
+        return changes;
+    }
+
+    private int run() {
+        reached.add(function.getEntry());
+        blockWork.add(function.getEntry());
+        while (!blockWork.isEmpty() || !work.isEmpty()) {
+            if (!blockWork.isEmpty()) {
+                Block b = blockWork.remove(blockWork.size()-1);
+                for (Instruction i : b.phis)
+                    visit(i);
+                for (Instruction i : b.instructions)
+                    visit(i);
+            } else {
+                Instruction i = work.remove(work.size()-1);
+                if (reached.contains(i.block))
+                    visit(i);
+            }
+        }
+        return rewrite();
+    }
+
+    private void visit(Instruction i) {
+        switch (i.op) {
+            case JUMP:
+                take(i.block, i.block.successors.get(0));
+                return;
+            case BRANCH: {
+                Object c = value(i.operand(0));
+                if (c == VARYING) {
+                    take(i.block, i.block.successors.get(0));
+                    take(i.block, i.block.successors.get(1));
+                } else if (c != null) {
+                    take(i.block, i.block.successors.get((Boolean)((Constant)c).value ? 0 : 1));
+                }
+                return;
+            }
+            case RETURN:
+            case STORE:
+                return;
+            case PARAM:
+            case LOAD:
+            case CALL:
+                set(i, VARYING);
+                return;
+            case PHI: {
+                Object out = null;
+                for (int k = 0; k < i.operands.size(); k++) {
+                    if (isTaken(i.block.predecessors.get(k), i.block))
+                        out = meet(out, value(i.operand(k)));
+                }
+                set(i, out);
+                return;
+            }
+            case COPY:
+                set(i, value(i.operand(0)));
+                return;
+            default:
+                break;
+        }
+
+        Constant[] operands = new Constant[i.operands.size()];
+        for (int k = 0; k < operands.length; k++) {
+            Object v = value(i.operand(k));
+            if (v == VARYING) {
+                set(i, VARYING);
+                return;
+            }
+            if (v == null)
+                return;
+            operands[k] = (Constant)v;
+        }
+        Object folded = fold(i, operands);
+        set(i, folded == null ? VARYING : program.constant(folded));
+    }
+
+    private Object value(Value v) {
+        if (v instanceof Constant)
+            return v;
+        return values.get(v);
+    }
+
+    private static Object meet(Object a, Object b) {
+        if (a == null)
+            return b;
+        if (b == null || a == b)
+            return a;
+        return VARYING;
+    }
+
+    // values only go down, so the work is bounded
+    private void set(Instruction i, Object value) {
+        if (value == null)
+            return;
+        Object old = values.get(i);
+        if (old == value || old == VARYING)
+            return;
+        values.put(i, old == null ? value : VARYING);
+        List<Instruction> used = users.get(i);
+        if (used != null)
+            work.addAll(used);
+    }
+
+    private void take(Block from, Block to) {
+        if (!taken.computeIfAbsent(from, k -> Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>())).add(to))
+            return;
+        if (reached.add(to)) {
+            blockWork.add(to);
+        } else {
+            // a new way in, the phis meet one more value
+            work.addAll(to.phis);
+        }
+    }
+
+    private boolean isTaken(Block from, Block to) {
+        Set<Block> out = taken.get(from);
+        return out != null && out.contains(to);
+    }
+
+    private int rewrite() {
+        int changes = 0;
+        IdentityHashMap<Value, Value> with = new IdentityHashMap<Value, Value>();
+        for (Block b : function.blocks) {
+            if (!reached.contains(b))
+                continue;
+            for (Instruction i : b.phis) {
+                if (values.get(i) instanceof Constant)
+                    with.put(i, (Constant)values.get(i));
+            }
+            for (Instruction i : b.instructions) {
+                if (values.get(i) instanceof Constant)
+                    with.put(i, (Constant)values.get(i));
+            }
+        }
+        function.replace(with);
+        for (Block b : function.blocks) {
+            b.phis.removeIf(with::containsKey);
+            b.instructions.removeIf(i -> with.containsKey(i) && !i.hasEffects());
+        }
+        changes += with.size();
+
+        for (Block b : function.blocks) {
+            Instruction last = b.getTerminator();
+            if (!reached.contains(b) || last == null || last.op != Op.BRANCH)
+                continue;
+            Block ifTrue = b.successors.get(0);
+            Block ifFalse = b.successors.get(1);
+            if (isTaken(b, ifTrue) != isTaken(b, ifFalse)) {
+                DeadCode.jump(b, isTaken(b, ifTrue) ? ifTrue : ifFalse);
+                changes++;
+            }
+        }
+        return changes + function.removeUnreachable();
+    }
+
+    /**
+     * The value of i with these operands, an Integer, Float, Boolean or
+     * String, or null where the run would fail.
+     */
+    private static Object fold(Instruction i, Constant... operands) {
+        Object a = operands.length > 0 ? operands[0].value : null;
+        Object b = operands.length > 1 ? operands[1].value : null;
+        switch (i.op) {
+            case COPY:
+                return a;
+            case TO_FLOAT:
+                return (float)(Integer)a;
+            case TO_INT:
+                return (int)(float)(Float)a;
+            case NOT:
+                return !(Boolean)a;
+            case NEG:
+                if (a instanceof Integer)
+                    return -(Integer)a;
+                return -(Float)a;
+            default:
+                break;
+        }
+
+        if (i.op.isComparison()) {
+            if (a instanceof Integer)
+                return compare(i.op, Integer.compare((Integer)a, (Integer)b), ((Integer)a).intValue() == (Integer)b);
+            if (a instanceof Float) {
+                float x = (Float)a;
+                float y = (Float)b;
+                // NaN is neither less, greater nor equal
+                if (Float.isNaN(x) || Float.isNaN(y))
+                    return false;
+                return compare(i.op, x < y ? -1 : (x > y ? 1 : 0), x == y);
+            }
+            return a.equals(b);
+        }
+
+        if (i.type == Type.INT_ID) {
+            int x = (Integer)a;
+            int y = (Integer)b;
+            switch (i.op) {
+                case ADD:
+                    return x + y;
+                case SUB:
+                    return x - y;
+                case MUL:
+                    return x * y;
+                case DIV:
+                    return y == 0 ? null : x / y;
+                case POW:
+                    return Arithmetic.power(x, y);
+                default:
+                    return null;
+            }
+        }
+        float x = (Float)a;
+        float y = (Float)b;
+        switch (i.op) {
+            case ADD:
+                return x + y;
+            case SUB:
+                return x - y;
+            case MUL:
+                return x * y;
+            case DIV:
+                return x / y;
+            case POW:
+                return Arithmetic.power(x, y);
+            default:
+                return null;
+        }
+    }
+
+    private static boolean compare(Op op, int order, boolean equal) {
+        switch (op) {
+            case EQ:
+                return equal;
+            case LT:
+                return order < 0;
+            case GT:
+                return order > 0;
+            case LE:
+                return order <= 0;
+            default:
+                return order >= 0;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package compiler.ir;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Takes out copies and phis that only pass a value along. A phi is one of
+ * those when every operand is the same value or the phi itself, as the phis
+ * lowering puts in the header of a loop that never changes the variable.
+ */
+public class CopyPropagation {
+    private CopyPropagation() {}
+
+    /**
+     * Returns the copies and phis removed.
+     */
+    public static int run(Program program) {
+        int removed = 0;
+        for (Function f : program.functions)
+            removed += run(f);
+        return removed;
+    }
+
+    public static int run(Function f) {
+        int removed = 0;
+        while (true) {
+            IdentityHashMap<Value, Value> with = new IdentityHashMap<Value, Value>();
+            for (Block b : f.blocks) {
+                for (Instruction phi : b.phis) {
+                    Value same = same(phi, with);
+                    if (same != null)
+                        with.put(phi, same);
+                }
+                for (Instruction i : b.instructions) {
+                    if (i.op == Op.COPY)
+                        with.put(i, find(i.operand(0), with));
+                }
+            }
+            if (with.isEmpty())
+                return removed;
+
+            f.replace(with);
+            for (Block b : f.blocks) {
+                b.phis.removeIf(with::containsKey);
+                b.instructions.removeIf(with::containsKey);
+            }
+            removed += with.size();
+        }
+    }
+
+    // the one value phi can be, or null
+    private static Value same(Instruction phi, IdentityHashMap<Value, Value> with) {
+        Value same = null;
+        for (Value v : phi.operands) {
+            v = find(v, with);
+            if (v == phi || v == same)
+                continue;
+            if (same != null)
+                return null;
+            same = v;
+        }
+        return same;
+    }
+
+    private static Value find(Value v, IdentityHashMap<Value, Value> with) {
+        while (with.containsKey(v))
+            v = with.get(v);
+        return v;
+    }
+}
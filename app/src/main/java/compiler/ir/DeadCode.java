@@ -0,0 +1,157 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.syntax.Type;
+
+/**
+ * Takes out what cannot change what a program does: instructions nothing
+ * uses that have no effects, branches on a constant, the blocks those leave
+ * unreachable, blocks with only a jump in them, and the split between a
+ * block and the one block it jumps to when nothing else jumps there.
+ */
+public class DeadCode {
+    private DeadCode() {}
+
+    /**
+     * Returns the instructions and blocks removed.
+     */
+    public static int run(Program program) {
+        int removed = 0;
+        for (Function f : program.functions)
+            removed += run(f);
+        return removed;
+    }
+
+    public static int run(Function f) {
+        int removed = foldBranches(f);
+        removed += f.removeUnreachable();
+        removed += sweep(f);
+        removed += skipEmpty(f);
+        removed += merge(f);
+        return removed;
+    }
+
+    private static int foldBranches(Function f) {
+        int folded = 0;
+        for (Block b : f.blocks) {
+            Instruction last = b.getTerminator();
+            if (last != null && last.op == Op.BRANCH && last.operand(0) instanceof Constant) {
+                boolean taken = (Boolean)((Constant)last.operand(0)).value;
+                jump(b, b.successors.get(taken ? 0 : 1));
+                folded++;
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * Makes b, which ends in a branch, jump to target, one of its
+     * successors.
+     */
+    static void jump(Block b, Block target) {
+        Block other = b.successors.get(b.successors.get(0) == target ? 1 : 0);
+        b.instructions.remove(b.instructions.size()-1);
+        b.unlink(other);
+        b.add(new Instruction(Op.JUMP, Type.VOID));
+    }
+
+    // marks what has effects and all it uses, takes out the rest
+    private static int sweep(Function f) {
+        Set<Instruction> live = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        List<Instruction> work = new ArrayList<Instruction>();
+        for (Block b : f.blocks) {
+            for (Instruction i : b.instructions) {
+                if (i.hasEffects() && live.add(i))
+                    work.add(i);
+            }
+        }
+        while (!work.isEmpty()) {
+            Instruction i = work.remove(work.size()-1);
+            for (Value v : i.operands) {
+                if (v instanceof Instruction && live.add((Instruction)v))
+                    work.add((Instruction)v);
+            }
+        }
+
+        int removed = 0;
+        for (Block b : f.blocks) {
+            int before = b.phis.size() + b.instructions.size();
+            b.phis.removeIf(i -> !live.contains(i));
+            b.instructions.removeIf(i -> !live.contains(i));
+            removed += before - b.phis.size() - b.instructions.size();
+        }
+        return removed;
+    }
+
+    // a block that only jumps on is left out of the paths through it, when
+    // that does not put two edges between the same blocks
+    private static int skipEmpty(Function f) {
+        int removed = 0;
+        for (Block b : new ArrayList<Block>(f.blocks)) {
+            if (b == f.getEntry() || !b.phis.isEmpty() || b.instructions.size() != 1 || b.getTerminator().op != Op.JUMP)
+                continue;
+            Block target = b.successors.get(0);
+            if (target == b)
+                continue;
+            boolean shared = false;
+            for (Block p : b.predecessors)
+                shared |= p == b || target.predecessors.contains(p) || b.predecessors.indexOf(p) != b.predecessors.lastIndexOf(p);
+            if (shared)
+                continue;
+
+            int from = target.predecessors.indexOf(b);
+            for (Block p : b.predecessors) {
+                for (int k = 0; k < p.successors.size(); k++) {
+                    if (p.successors.get(k) == b)
+                        p.successors.set(k, target);
+                }
+                target.predecessors.add(p);
+                for (Instruction phi : target.phis)
+                    phi.operands.add(phi.operand(from));
+            }
+            b.predecessors.clear();
+            b.unlink(target);
+            f.blocks.remove(b);
+            removed++;
+        }
+        return removed;
+    }
+
+    // a block that jumps to a block only it jumps to becomes one with it
+    private static int merge(Function f) {
+        int removed = 0;
+        for (Block b : new ArrayList<Block>(f.blocks)) {
+            if (!f.blocks.contains(b))
+                continue;
+            while (b.successors.size() == 1) {
+                Block next = b.successors.get(0);
+                if (next == b || next == f.getEntry() || next.predecessors.size() != 1)
+                    break;
+
+                IdentityHashMap<Value, Value> with = new IdentityHashMap<Value, Value>();
+                for (Instruction phi : next.phis)
+                    with.put(phi, phi.operand(0));
+                f.replace(with);
+
+                b.instructions.remove(b.instructions.size()-1);
+                b.successors.clear();
+                for (Instruction i : next.instructions) {
+                    i.block = b;
+                    b.instructions.add(i);
+                }
+                for (Block s : next.successors) {
+                    b.successors.add(s);
+                    Collections.replaceAll(s.predecessors, next, b);
+                }
+                f.blocks.remove(next);
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
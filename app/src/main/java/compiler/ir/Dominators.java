@@ -0,0 +1,123 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The dominator tree of a function: a block dominates another if every path
+ * from the entry to the other goes through it. Worked out as in Cooper,
+ * Harvey and Kennedy, "A Simple, Fast Dominance Algorithm", over the blocks
+ * the entry reaches.
+ */
+public class Dominators {
+    // reverse postorder, the entry first
+    public final List<Block> blocks;
+
+    private final IdentityHashMap<Block, Integer> order;
+    private final IdentityHashMap<Block, Block> idom;
+    private final IdentityHashMap<Block, List<Block>> children;
+    // when a walk of the tree enters and leaves each block
+    private final IdentityHashMap<Block, int[]> interval;
+
+    public Dominators(Function function) {
+        blocks = function.reversePostorder();
+        order = new IdentityHashMap<Block, Integer>();
+        for (int i = 0; i < blocks.size(); i++)
+            order.put(blocks.get(i), i);
+
+        idom = new IdentityHashMap<Block, Block>();
+        Block entry = blocks.get(0);
+        idom.put(entry, entry);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < blocks.size(); i++) {
+                Block b = blocks.get(i);
+                Block dom = null;
+                for (Block p : b.predecessors) {
+                    if (!idom.containsKey(p))
+                        continue;
+                    dom = dom == null ? p : intersect(p, dom);
+                }
+                if (idom.get(b) != dom) {
+                    idom.put(b, dom);
+                    changed = true;
+                }
+            }
+        }
+        idom.put(entry, null);
+
+        children = new IdentityHashMap<Block, List<Block>>();
+        for (Block b : blocks)
+            children.put(b, new ArrayList<Block>());
+        for (int i = 1; i < blocks.size(); i++)
+            children.get(idom.get(blocks.get(i))).add(blocks.get(i));
+
+        interval = new IdentityHashMap<Block, int[]>();
+        number(entry);
+    }
+
+    private Block intersect(Block a, Block b) {
+        while (a != b) {
+            while (order.get(a) > order.get(b))
+                a = idom.get(a);
+            while (order.get(b) > order.get(a))
+                b = idom.get(b);
+        }
+        return a;
+    }
+
+    // a walk of the tree with a stack of its own
+    private void number(Block entry) {
+        int clock = 0;
+        List<Block> stack = new ArrayList<Block>();
+        List<Integer> next = new ArrayList<Integer>();
+        stack.add(entry);
+        next.add(0);
+        interval.put(entry, new int[] { clock++, 0 });
+
+        while (!stack.isEmpty()) {
+            int top = stack.size()-1;
+            Block b = stack.get(top);
+            int i = next.get(top);
+            if (i < children.get(b).size()) {
+                next.set(top, i+1);
+                Block child = children.get(b).get(i);
+                interval.put(child, new int[] { clock++, 0 });
+                stack.add(child);
+                next.add(0);
+            } else {
+                interval.get(b)[1] = clock++;
+                stack.remove(top);
+                next.remove(top);
+            }
+        }
+    }
+
+    /**
+     * The block that dominates b and every other block that does, null for
+     * the entry.
+     */
+    public Block getIdom(Block b) {
+        return idom.get(b);
+    }
+
+    public List<Block> getChildren(Block b) {
+        return children.get(b);
+    }
+
+    /**
+     * True if a dominates b, every block dominates itself.
+     */
+    public boolean dominates(Block a, Block b) {
+        int[] x = interval.get(a);
+        int[] y = interval.get(b);
+        return x[0] <= y[0] && y[1] <= x[1];
+    }
+
+    public boolean isReachable(Block b) {
+        return order.containsKey(b);
+    }
+}
@@ -0,0 +1,200 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.syntax.Type;
+
+/**
+ * A function of the program, or the top level, as blocks of SSA
+ * instructions. The first block is the entry, which has no predecessors.
+ */
+public class Function {
+    public final String name;
+    public final Type returnType;
+    // the function it is declared in, null for the top level
+    public final Function parent;
+    public final int depth;
+    public final List<Type> params;
+    // the FunctionDeclaration, null for the top level
+    public final ASTNode<?> declaration;
+
+    public final List<Block> blocks;
+    public final List<Cell> cells;
+
+    // the functions inlined into this one, once for every call, and the
+    // instructions that added, see Inlining
+    public final List<Function> inlined;
+    public int growth;
+
+    Function(String name, Type returnType, Function parent, List<Type> params, ASTNode<?> declaration) {
+        this.name = name;
+        this.returnType = returnType;
+        this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth+1;
+        this.params = params;
+        this.declaration = declaration;
+        blocks = new ArrayList<Block>();
+        cells = new ArrayList<Cell>();
+        inlined = new ArrayList<Function>();
+    }
+
+    public Block getEntry() {
+        return blocks.get(0);
+    }
+
+    public Block newBlock() {
+        Block b = new Block(this);
+        blocks.add(b);
+        return b;
+    }
+
+    Cell newCell(String name, Type type) {
+        Cell c = new Cell(name, type, this, cells.size());
+        cells.add(c);
+        return c;
+    }
+
+    /**
+     * Instructions and phis in all blocks.
+     */
+    public int size() {
+        int out = 0;
+        for (Block b : blocks)
+            out += b.phis.size() + b.instructions.size();
+        return out;
+    }
+
+    /**
+     * The blocks reachable from the entry, each before its successors
+     * unless the edge closes a loop.
+     */
+    public List<Block> reversePostorder() {
+        List<Block> out = new ArrayList<Block>();
+        Set<Block> seen = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+        postorder(getEntry(), seen, out);
+        Collections.reverse(out);
+        return out;
+    }
+
+    // with a stack of its own, loops nest deeper than the JVM's would let
+    private static void postorder(Block entry, Set<Block> seen, List<Block> out) {
+        List<Block> stack = new ArrayList<Block>();
+        List<Integer> next = new ArrayList<Integer>();
+        seen.add(entry);
+        stack.add(entry);
+        next.add(0);
+
+        while (!stack.isEmpty()) {
+            int top = stack.size()-1;
+            Block b = stack.get(top);
+            int i = next.get(top);
+            if (i < b.successors.size()) {
+                next.set(top, i+1);
+                Block s = b.successors.get(i);
+                if (seen.add(s)) {
+                    stack.add(s);
+                    next.add(0);
+                }
+            } else {
+                out.add(b);
+                stack.remove(top);
+                next.remove(top);
+            }
+        }
+    }
+
+    /**
+     * Takes out the blocks the entry cannot reach, returns how many.
+     */
+    public int removeUnreachable() {
+        Set<Block> reachable = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+        reachable.addAll(reversePostorder());
+        if (reachable.size() == blocks.size())
+            return 0;
+
+        int removed = 0;
+        for (Block b : new ArrayList<Block>(blocks)) {
+            if (reachable.contains(b))
+                continue;
+            for (Block s : new ArrayList<Block>(b.successors)) {
+                if (reachable.contains(s))
+                    b.unlink(s);
+            }
+            blocks.remove(b);
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * What uses each instruction's value.
+     */
+    public IdentityHashMap<Instruction, List<Instruction>> users() {
+        IdentityHashMap<Instruction, List<Instruction>> out = new IdentityHashMap<Instruction, List<Instruction>>();
+        for (Block b : blocks) {
+            for (Instruction i : b.phis)
+                addUser(out, i);
+            for (Instruction i : b.instructions)
+                addUser(out, i);
+        }
+        return out;
+    }
+
+    private static void addUser(IdentityHashMap<Instruction, List<Instruction>> users, Instruction user) {
+        for (Value v : user.operands) {
+            if (v instanceof Instruction)
+                users.computeIfAbsent((Instruction)v, k -> new ArrayList<Instruction>()).add(user);
+        }
+    }
+
+    /**
+     * Changes every use of a key of with to its value, following chains
+     * (a to b, b to c makes uses of a use c).
+     */
+    public void replace(IdentityHashMap<Value, Value> with) {
+        if (with.isEmpty())
+            return;
+        for (Block b : blocks) {
+            for (Instruction i : b.phis)
+                replaceOperands(i, with);
+            for (Instruction i : b.instructions)
+                replaceOperands(i, with);
+        }
+    }
+
+    private static void replaceOperands(Instruction i, IdentityHashMap<Value, Value> with) {
+        for (int k = 0; k < i.operands.size(); k++) {
+            Value v = i.operands.get(k);
+            Value to = with.get(v);
+            if (to == null)
+                continue;
+            while (with.containsKey(to) && with.get(to) != to)
+                to = with.get(to);
+            i.operands.set(k, to);
+        }
+    }
+
+    /**
+     * Numbers the blocks and instructions in order, for printing.
+     */
+    public void number() {
+        int block = 0;
+        int value = 0;
+        for (Block b : blocks) {
+            b.id = block++;
+            for (Instruction i : b.phis)
+                i.id = value++;
+            for (Instruction i : b.instructions)
+                i.id = value++;
+        }
+    }
+
+    public String toString() {
+        return name;
+    }
+}
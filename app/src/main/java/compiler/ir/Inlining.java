@@ -0,0 +1,257 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import compiler.syntax.Type;
+
+/**
+ * Puts the body of a small function in place of calls to it, so the call
+ * does not set up an activation and copy the arguments. Parameters become
+ * the arguments themselves, the values of the callee get values of their
+ * own in the caller, and each return jumps to where the call was, with a
+ * phi for the value when there is more than one.
+ *
+ * A function is only inlined if it has at most MAX_SIZE instructions, is
+ * not recursive, and has no cells or functions declared in it: what it
+ * stores to and calls is then in scope wherever it can be called from.
+ * Calls in the deepest loops go first, then calls to the smallest
+ * functions, until the caller has grown by MAX_GROWTH instructions.
+ *
+ * Functions nothing calls any more are taken out.
+ */
+public class Inlining {
+    // the most instructions a function can have to be inlined
+    public static final int MAX_SIZE = 30;
+    // the most instructions inlining can add to one function
+    public static final int MAX_GROWTH = 400;
+
+    private final Program program;
+    private final Set<Function> recursive;
+    // functions other functions are declared in
+    private final Set<Function> parents;
+
+    private Inlining(Program program) {
+        this.program = program;
+        recursive = Collections.newSetFromMap(new IdentityHashMap<Function, Boolean>());
+        parents = Collections.newSetFromMap(new IdentityHashMap<Function, Boolean>());
+
+        IdentityHashMap<Function, List<Function>> calls = calls(program);
+        for (Function f : program.functions) {
+            if (reaches(calls, f, f))
+                recursive.add(f);
+            if (f.parent != null)
+                parents.add(f.parent);
+        }
+    }
+
+    /**
+     * Returns the calls inlined and the functions taken out.
+     */
+    public static int run(Program program) {
+        Inlining inlining = new Inlining(program);
+        int changes = 0;
+        for (Function f : program.functions)
+            changes += inlining.inline(f);
+        return changes + inlining.removeUncalled();
+    }
+
+    /**
+     * A line for every function others were inlined into: which, how many
+     * times, and the instructions that added.
+     */
+    public static String report(Program program) {
+        StringBuilder out = new StringBuilder();
+        for (Function f : program.functions) {
+            if (f.inlined.isEmpty())
+                continue;
+            out.append("into ").append(f).append(':');
+            List<Function> seen = new ArrayList<Function>();
+            for (Function g : f.inlined) {
+                if (seen.contains(g))
+                    continue;
+                seen.add(g);
+                out.append(' ').append(g).append(" x").append(Collections.frequency(f.inlined, g));
+            }
+            out.append(", +").append(f.growth).append(" instructions\n");
+        }
+        return out.toString();
+    }
+
+    private static IdentityHashMap<Function, List<Function>> calls(Program program) {
+        IdentityHashMap<Function, List<Function>> out = new IdentityHashMap<Function, List<Function>>();
+        for (Function f : program.functions) {
+            List<Function> callees = new ArrayList<Function>();
+            for (Block b : f.blocks) {
+                for (Instruction i : b.instructions) {
+                    if (i.op == Op.CALL && !callees.contains(i.callee))
+                        callees.add(i.callee);
+                }
+            }
+            out.put(f, callees);
+        }
+        return out;
+    }
+
+    // a call from from leads, call by call, to to
+    private static boolean reaches(IdentityHashMap<Function, List<Function>> calls, Function from, Function to) {
+        Set<Function> seen = Collections.newSetFromMap(new IdentityHashMap<Function, Boolean>());
+        List<Function> work = new ArrayList<Function>(calls.get(from));
+        while (!work.isEmpty()) {
+            Function f = work.remove(work.size()-1);
+            if (f == to)
+                return true;
+            if (seen.add(f) && calls.containsKey(f))
+                work.addAll(calls.get(f));
+        }
+        return false;
+    }
+
+    private boolean canInline(Function callee, Function into) {
+        return callee != into && !recursive.contains(callee) && !parents.contains(callee)
+            && callee.cells.isEmpty() && callee.size() <= MAX_SIZE;
+    }
+
+    private int inline(Function f) {
+        // how many loops each block is in
+        IdentityHashMap<Block, Integer> depths = new IdentityHashMap<Block, Integer>();
+        for (Loops.Loop loop : new Loops(f).loops) {
+            for (Block b : loop.blocks)
+                depths.merge(b, loop.getDepth(), Math::max);
+        }
+
+        List<Instruction> calls = new ArrayList<Instruction>();
+        for (Block b : f.blocks) {
+            for (Instruction i : b.instructions) {
+                if (i.op == Op.CALL && canInline(i.callee, f))
+                    calls.add(i);
+            }
+        }
+        calls.sort((a, b) -> {
+            int depth = depths.getOrDefault(b.block, 0)-depths.getOrDefault(a.block, 0);
+            return depth != 0 ? depth : a.callee.size()-b.callee.size();
+        });
+
+        int inlined = 0;
+        for (Instruction call : calls) {
+            int size = call.callee.size();
+            if (f.growth+size > MAX_GROWTH)
+                continue;
+            inline(f, call);
+            f.growth += size;
+            f.inlined.add(call.callee);
+            inlined++;
+        }
+        if (inlined > 0)
+            f.removeUnreachable();
+        return inlined;
+    }
+
+    private void inline(Function f, Instruction call) {
+        Function callee = call.callee;
+
+        // the block is split after the call, the rest goes on in after
+        Block before = call.block;
+        Block after = f.newBlock();
+        List<Instruction> rest = before.instructions.subList(before.instructions.indexOf(call), before.instructions.size());
+        rest.remove(0);
+        for (Instruction i : rest)
+            after.add(i);
+        rest.clear();
+        for (Block s : before.successors) {
+            after.successors.add(s);
+            Collections.replaceAll(s.predecessors, before, after);
+        }
+        before.successors.clear();
+
+        IdentityHashMap<Block, Block> blocks = new IdentityHashMap<Block, Block>();
+        for (Block b : callee.blocks)
+            blocks.put(b, f.newBlock());
+
+        IdentityHashMap<Value, Value> values = new IdentityHashMap<Value, Value>();
+        IdentityHashMap<Instruction, Instruction> copies = new IdentityHashMap<Instruction, Instruction>();
+        List<Instruction> returns = new ArrayList<Instruction>();
+        for (Block b : callee.blocks) {
+            Block copy = blocks.get(b);
+            for (Instruction phi : b.phis) {
+                Instruction p = copy.addPhi(phi.type);
+                values.put(phi, p);
+                copies.put(phi, p);
+            }
+            for (Instruction i : b.instructions) {
+                if (i.op == Op.PARAM) {
+                    values.put(i, call.operand(i.index));
+                    continue;
+                }
+                if (i.op == Op.RETURN) {
+                    returns.add(i);
+                    continue;
+                }
+                Instruction c = copy.add(new Instruction(i.op, i.type));
+                c.callee = i.callee;
+                c.cell = i.cell;
+                c.index = i.index;
+                values.put(i, c);
+                copies.put(i, c);
+            }
+            for (Block s : b.successors)
+                copy.successors.add(blocks.get(s));
+            for (Block p : b.predecessors)
+                copy.predecessors.add(blocks.get(p));
+        }
+        for (Map.Entry<Instruction, Instruction> e : copies.entrySet()) {
+            for (Value v : e.getKey().operands)
+                e.getValue().operands.add(values.getOrDefault(v, v));
+        }
+
+        // every return jumps to after, with its value
+        List<Value> results = new ArrayList<Value>();
+        for (Instruction r : returns) {
+            Block copy = blocks.get(r.block);
+            copy.jump(after);
+            if (!r.operands.isEmpty())
+                results.add(values.getOrDefault(r.operand(0), r.operand(0)));
+        }
+        if (callee.returnType != Type.VOID) {
+            Value result;
+            if (results.isEmpty()) {
+                // never returns, what uses the value is not reached
+                result = program.defaultValue(callee.returnType);
+            } else if (results.size() == 1) {
+                result = results.get(0);
+            } else {
+                Instruction phi = after.addPhi(callee.returnType);
+                phi.operands.addAll(results);
+                result = phi;
+            }
+            IdentityHashMap<Value, Value> with = new IdentityHashMap<Value, Value>();
+            with.put(call, result);
+            f.replace(with);
+        }
+
+        before.jump(blocks.get(callee.getEntry()));
+    }
+
+    // keeps what main calls, and what that calls, and so on
+    private int removeUncalled() {
+        IdentityHashMap<Function, List<Function>> calls = calls(program);
+        Set<Function> called = Collections.newSetFromMap(new IdentityHashMap<Function, Boolean>());
+        List<Function> work = new ArrayList<Function>();
+        called.add(program.main);
+        work.add(program.main);
+        while (!work.isEmpty()) {
+            for (Function g : calls.get(work.remove(work.size()-1))) {
+                if (called.add(g))
+                    work.add(g);
+            }
+        }
+
+        int before = program.functions.size();
+        program.functions.removeIf(g -> !called.contains(g));
+        return before-program.functions.size();
+    }
+}
@@ -0,0 +1,81 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.syntax.Type;
+
+/**
+ * One operation in a {@link Block}, and the value it computes.
+ */
+public class Instruction extends Value {
+    public final Op op;
+    public final List<Value> operands;
+    public Block block;
+
+    // CALL
+    public Function callee;
+    // LOAD and STORE
+    public Cell cell;
+    // PARAM
+    public int index;
+
+    public Instruction(Op op, Type type, Value... operands) {
+        super(type);
+        this.op = op;
+        this.operands = new ArrayList<Value>(Arrays.asList(operands));
+    }
+
+    public Value operand(int i) {
+        return operands.get(i);
+    }
+
+    /**
+     * True if removing the instruction could change what the program does,
+     * even with nothing using its value: calls, stores, jumps and int
+     * divisions that may fail.
+     */
+    public boolean hasEffects() {
+        switch (op) {
+            case CALL:
+            case STORE:
+            case JUMP:
+            case BRANCH:
+            case RETURN:
+                return true;
+            case DIV:
+                return type == Type.INT_ID && !isNonZero(operand(1));
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isNonZero(Value v) {
+        return v instanceof Constant && !((Constant)v).value.equals(0);
+    }
+
+    /**
+     * True if the value only depends on the operands, so two instructions
+     * with the same op, type and operands compute the same.
+     */
+    public boolean isPure() {
+        switch (op) {
+            case PARAM:
+            case PHI:
+            case LOAD:
+            case STORE:
+            case CALL:
+            case JUMP:
+            case BRANCH:
+            case RETURN:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    public String toString() {
+        return "%"+id;
+    }
+}
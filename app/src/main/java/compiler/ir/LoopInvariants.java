@@ -0,0 +1,75 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves what a loop works out the same every time round to before the
+ * loop: pure instructions whose operands come from outside it, and loads of
+ * cells the loop never stores to when it makes no calls. Inner loops go
+ * first, so what leaves one can leave the loop around it as well.
+ *
+ * An instruction that may fail, an int division by a value that could be 0,
+ * stays where it is: the loop may not run at all.
+ */
+public class LoopInvariants {
+    private LoopInvariants() {}
+
+    /**
+     * Returns the instructions moved.
+     */
+    public static int run(Program program) {
+        int moved = 0;
+        for (Function f : program.functions)
+            moved += run(f);
+        return moved;
+    }
+
+    public static int run(Function f) {
+        Loops loops = new Loops(f);
+        int moved = 0;
+        for (Loops.Loop loop : loops.loops)
+            moved += hoist(f, loops, loop);
+        return moved;
+    }
+
+    private static int hoist(Function f, Loops loops, Loops.Loop loop) {
+        Set<Cell> stored = Collections.newSetFromMap(new IdentityHashMap<Cell, Boolean>());
+        boolean calls = false;
+        List<Block> blocks = new ArrayList<Block>();
+        for (Block b : f.reversePostorder()) {
+            if (!loop.contains(b))
+                continue;
+            blocks.add(b);
+            for (Instruction i : b.instructions) {
+                if (i.op == Op.STORE)
+                    stored.add(i.cell);
+                calls |= i.op == Op.CALL;
+            }
+        }
+
+        // in order, so an instruction is only looked at after what it uses
+        Block preheader = null;
+        int moved = 0;
+        for (Block b : blocks) {
+            for (Instruction i : new ArrayList<Instruction>(b.instructions)) {
+                boolean invariant = i.op == Op.LOAD ? !calls && !stored.contains(i.cell) : i.isPure() && !i.hasEffects();
+                for (Value v : i.operands)
+                    invariant &= loop.isInvariant(v);
+                if (!invariant)
+                    continue;
+
+                if (preheader == null)
+                    preheader = loops.getPreheader(loop);
+                b.instructions.remove(i);
+                i.block = preheader;
+                preheader.instructions.add(preheader.instructions.size()-1, i);
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,235 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.syntax.Type;
+
+/**
+ * The natural loops of a function: for every edge to a block that dominates
+ * where the edge comes from, the header it goes to and the blocks that reach
+ * the edge without going through the header. Loops with the same header are
+ * one loop. The while and for loops of the language each make one, with the
+ * condition in the header.
+ */
+public class Loops {
+    // inner loops before the loops they are in
+    public final List<Loop> loops;
+
+    private final Function function;
+
+    public Loops(Function function) {
+        this.function = function;
+        loops = new ArrayList<Loop>();
+        Dominators dominators = new Dominators(function);
+
+        IdentityHashMap<Block, Loop> byHeader = new IdentityHashMap<Block, Loop>();
+        for (Block b : dominators.blocks) {
+            for (Block s : b.successors) {
+                if (!dominators.dominates(s, b))
+                    continue;
+                Loop loop = byHeader.get(s);
+                if (loop == null) {
+                    loop = new Loop(s);
+                    byHeader.put(s, loop);
+                    loops.add(loop);
+                }
+                loop.latches.add(b);
+                loop.fill(b);
+            }
+        }
+
+        // a loop inside another has fewer blocks
+        loops.sort((a, b) -> a.blocks.size()-b.blocks.size());
+        for (int i = 0; i < loops.size(); i++) {
+            for (int j = i+1; j < loops.size(); j++) {
+                if (loops.get(j).contains(loops.get(i).header)) {
+                    loops.get(i).parent = loops.get(j);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The block the loop is entered from, made if there is none yet: the
+     * only predecessor of the header from outside the loop, which only
+     * goes to the header. Phis of the header that took several values from
+     * outside get a phi in it.
+     */
+    public Block getPreheader(Loop loop) {
+        Block header = loop.header;
+        List<Block> outside = new ArrayList<Block>();
+        for (Block p : header.predecessors) {
+            if (!loop.contains(p))
+                outside.add(p);
+        }
+        if (outside.size() == 1 && outside.get(0).successors.size() == 1)
+            return outside.get(0);
+
+        Block preheader = function.newBlock();
+        // what each phi of the header takes from outside, in order
+        List<List<Value>> entering = new ArrayList<List<Value>>();
+        for (int k = 0; k < header.phis.size(); k++)
+            entering.add(new ArrayList<Value>());
+        for (int n = header.predecessors.size()-1; n >= 0; n--) {
+            Block p = header.predecessors.get(n);
+            if (loop.contains(p))
+                continue;
+            for (int k = 0; k < header.phis.size(); k++)
+                entering.get(k).add(0, header.phis.get(k).operands.remove(n));
+            header.predecessors.remove(n);
+            p.successors.set(p.successors.indexOf(header), preheader);
+            preheader.predecessors.add(0, p);
+        }
+
+        for (int k = 0; k < header.phis.size(); k++) {
+            List<Value> values = entering.get(k);
+            Value value = values.get(0);
+            if (Collections.frequency(values, value) != values.size()) {
+                Instruction phi = preheader.addPhi(header.phis.get(k).type);
+                phi.operands.addAll(values);
+                value = phi;
+            }
+            header.phis.get(k).operands.add(value);
+        }
+        preheader.jump(header);
+
+        for (Loop l = loop.parent; l != null; l = l.parent)
+            l.blocks.add(preheader);
+        return preheader;
+    }
+
+    /**
+     * The basic induction variables of the loop: phis of the header that
+     * start at some value and go up or down by the same amount every time
+     * round, i = phi(start, i + step) with a step the loop does not change.
+     */
+    public List<Induction> getInductions(Loop loop) {
+        List<Induction> out = new ArrayList<Induction>();
+        for (Instruction phi : loop.header.phis) {
+            if (phi.type != Type.INT_ID)
+                continue;
+            Value start = null;
+            Value next = null;
+            boolean same = true;
+            for (int k = 0; k < phi.operands.size(); k++) {
+                Value v = phi.operand(k);
+                if (!loop.contains(loop.header.predecessors.get(k))) {
+                    same &= start == null || start == v;
+                    start = v;
+                } else {
+                    same &= next == null || next == v;
+                    next = v;
+                }
+            }
+            if (start == null || next == null || !same || !(next instanceof Instruction))
+                continue;
+
+            Instruction step = (Instruction)next;
+            if (!loop.contains(step.block))
+                continue;
+            if (step.op == Op.ADD && step.operand(0) == phi && loop.isInvariant(step.operand(1)))
+                out.add(new Induction(phi, start, step, step.operand(1)));
+            else if (step.op == Op.ADD && step.operand(1) == phi && loop.isInvariant(step.operand(0)))
+                out.add(new Induction(phi, start, step, step.operand(0)));
+            else if (step.op == Op.SUB && step.operand(0) == phi && loop.isInvariant(step.operand(1)))
+                out.add(new Induction(phi, start, step, step.operand(1)));
+        }
+        return out;
+    }
+
+    /**
+     * A line for every loop, with its induction variables.
+     */
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        function.number();
+        for (Loop loop : loops)
+            out.append(loop).append(" inductions ").append(getInductions(loop)).append('\n');
+        return out.toString();
+    }
+
+    public static class Loop {
+        public final Block header;
+        public final Set<Block> blocks;
+        // the blocks with an edge back to the header
+        public final List<Block> latches;
+        // the loop it is in, null if none
+        public Loop parent;
+
+        Loop(Block header) {
+            this.header = header;
+            blocks = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+            blocks.add(header);
+            latches = new ArrayList<Block>();
+        }
+
+        // adds latch and what reaches it without the header
+        private void fill(Block latch) {
+            List<Block> work = new ArrayList<Block>();
+            if (blocks.add(latch))
+                work.add(latch);
+            while (!work.isEmpty()) {
+                Block b = work.remove(work.size()-1);
+                for (Block p : b.predecessors) {
+                    if (blocks.add(p))
+                        work.add(p);
+                }
+            }
+        }
+
+        public boolean contains(Block b) {
+            return blocks.contains(b);
+        }
+
+        /**
+         * True if v is the same every time round: a constant, or worked
+         * out outside the loop.
+         */
+        public boolean isInvariant(Value v) {
+            return !(v instanceof Instruction) || !contains(((Instruction)v).block);
+        }
+
+        public int getDepth() {
+            int depth = 1;
+            for (Loop l = parent; l != null; l = l.parent)
+                depth++;
+            return depth;
+        }
+
+        public String toString() {
+            List<Block> sorted = new ArrayList<Block>(blocks);
+            sorted.sort((a, b) -> a.id-b.id);
+            return "loop "+header+" depth "+getDepth()+" "+sorted;
+        }
+    }
+
+    /**
+     * i = phi(start, i + step), or i - step when op is SUB.
+     */
+    public static class Induction {
+        public final Instruction phi;
+        public final Value start;
+        public final Instruction next;
+        public final Value step;
+
+        Induction(Instruction phi, Value start, Instruction next, Value step) {
+            this.phi = phi;
+            this.start = start;
+            this.next = next;
+            this.step = step;
+        }
+
+        public Op getOp() {
+            return next.op;
+        }
+
+        public String toString() {
+            return phi+" = "+start+(next.op == Op.ADD ? " + " : " - ")+step;
+        }
+    }
+}
@@ -0,0 +1,610 @@
+package compiler.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import compiler.interpreter.ExecutionException;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.ForParts;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolver;
+import compiler.syntax.Type;
+
+/**
+ * Turns a parsed program into a {@link Program} in SSA form, with the
+ * types and conversions {@link compiler.interpreter.Interpreter} uses.
+ *
+ * SSA is built straight from the tree, as in Braun et al., "Simple and
+ * Efficient Construction of Static Single Assignment Form": each block
+ * keeps the last value of each variable written in it, a read in a block
+ * without one asks its predecessors, and a block whose predecessors are
+ * not all known yet (a loop header) gets a phi that is filled in once they
+ * are. Phis that turn out to pick the same value on every edge, and the
+ * COPY left by every assignment of a value that was already there (x = y,
+ * x = 1), are for {@link CopyPropagation} to take out.
+ *
+ * && and || become branches, so their right side only runs when the
+ * interpreters would run it. Variables that a function declared inside
+ * their own uses are captured and become {@link Cell}s.
+ */
+public class Lowering {
+    private final Resolution res;
+    private final Program out;
+    private final IdentityHashMap<ASTNode<?>, Function> functions;
+    private final IdentityHashMap<Local, Cell> cells;
+    // FunctionDeclarations whose bodies are not lowered yet
+    private final Queue<ASTNode<?>> pending;
+
+    private Lowering(ASTNode<?> program) {
+        res = Resolver.resolve(program);
+        if (!res.unresolved.isEmpty())
+            throw new ExecutionException("Cannot run, unknown name \""+res.unresolved.get(0).fst()+"\"");
+
+        out = new Program();
+        functions = new IdentityHashMap<ASTNode<?>, Function>();
+        cells = new IdentityHashMap<Local, Cell>();
+        pending = new ArrayDeque<ASTNode<?>>();
+    }
+
+    public static Program lower(ASTNode<?> program) {
+        Lowering l = new Lowering(program);
+
+        List<Local> globals = new ArrayList<Local>();
+        for (Local local : l.res.locals) {
+            if (local.scope == program) {
+                globals.add(local);
+                l.out.globals.add(local.name.name);
+            }
+        }
+        l.new Builder(l.out.main).main((ASTNode<?>)program.fst(), globals);
+
+        while (!l.pending.isEmpty()) {
+            ASTNode<?> declaration = l.pending.remove();
+            l.new Builder(l.functions.get(declaration)).function(declaration);
+        }
+        return l.out;
+    }
+
+    private static String describe(ASTNode<?> node) {
+        if (node.operator == Type.ERROR)
+            return "a statement that did not parse: "+node.fst();
+        return node.name;
+    }
+
+    private Type typeOf(ASTNode<?> node) {
+        Type out = res.typeOf(node);
+        if (out == null)
+            throw new ExecutionException("Cannot run "+describe(node));
+        return out;
+    }
+
+    /**
+     * Lowers one function, and keeps the SSA state while it does.
+     */
+    private class Builder {
+        final Function function;
+        // where instructions go, null after a return
+        Block block;
+
+        // the value each variable last got in each block
+        final IdentityHashMap<Block, IdentityHashMap<Local, Value>> defs;
+        final Set<Block> sealed;
+        // phis of blocks that are not sealed yet, filled in when they are
+        final IdentityHashMap<Block, IdentityHashMap<Local, Instruction>> incomplete;
+
+        Builder(Function function) {
+            this.function = function;
+            defs = new IdentityHashMap<Block, IdentityHashMap<Local, Value>>();
+            sealed = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+            incomplete = new IdentityHashMap<Block, IdentityHashMap<Local, Instruction>>();
+        }
+
+        void main(ASTNode<?> statements, List<Local> globals) {
+            block = newBlock();
+            seal(block);
+            statements(statements);
+
+            Value[] values = new Value[globals.size()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = read(globals.get(i));
+            block.ret(values);
+            function.removeUnreachable();
+        }
+
+        /**
+         * ReturnTypeLiteral Function DeclareStatement... BlockStatementList,
+         * the parameters and the body share the function's scope
+         */
+        void function(ASTNode<?> node) {
+            block = newBlock();
+            seal(block);
+
+            for (int i = 2; i < node.branches.size()-1; i++) {
+                ASTNode<?> param = (ASTNode<?>)node.branches.get(i);
+                Local local = res.getSlot((ASTNode<?>)param.snd()).local;
+
+                Instruction value = block.add(new Instruction(Op.PARAM, local.type));
+                value.index = i-2;
+                declare(local);
+                assign(local, value);
+            }
+
+            statements((ASTNode<?>)node.branches.get(node.branches.size()-1));
+            // the end of the body without a return
+            if (block != null) {
+                if (function.returnType == Type.VOID)
+                    block.ret();
+                else
+                    block.ret(out.defaultValue(function.returnType));
+            }
+            function.removeUnreachable();
+        }
+
+        Block newBlock() {
+            Block b = function.newBlock();
+            defs.put(b, new IdentityHashMap<Local, Value>());
+            return b;
+        }
+
+        /* statements */
+
+        void statements(ASTNode<?> list) {
+            for (Object branch : list.branches) {
+                // after a return, which is only ever at the top of a body
+                if (block == null)
+                    return;
+                statement((ASTNode<?>)branch);
+            }
+        }
+
+        void statement(ASTNode<?> node) {
+            switch (node.name) {
+                case "DeclareStatement":
+                    declareStatement(node);
+                    break;
+                case "AssignStatement":
+                    // str += does nothing
+                    if (node.branches.size() > 1) {
+                        Local local = res.getSlot((ASTNode<?>)node.fst()).local;
+                        assign(local, assigned((ASTNode<?>)node.snd(), local.type));
+                    }
+                    break;
+                case "IfStatement":
+                    ifStatement(node);
+                    break;
+                case "WhileExpression":
+                    whileStatement(node);
+                    break;
+                case "ForStatement":
+                    forStatement(node);
+                    break;
+                case "FunctionCall":
+                    call(node);
+                    break;
+                case "FunctionDeclaration":
+                    functionDeclaration(node);
+                    break;
+                case "ReturnStatement":
+                    returnStatement(node);
+                    break;
+                default:
+                    throw new ExecutionException("Cannot run "+describe(node));
+            }
+        }
+
+        /**
+         * VarTypeLiteral Identifier, then more declared Identifiers or the
+         * value of the first one
+         */
+        void declareStatement(ASTNode<?> node) {
+            for (int i = 1; i < node.branches.size(); i++) {
+                ASTNode<?> branch = (ASTNode<?>)node.branches.get(i);
+                Resolution.Slot slot = res.getSlot(branch);
+
+                if (slot != null && slot.local.declaration == branch) {
+                    declare(slot.local);
+                    assign(slot.local, out.defaultValue(slot.local.type));
+                } else {
+                    Local declared = res.getSlot((ASTNode<?>)node.snd()).local;
+                    assign(declared, assigned(branch, declared.type));
+                }
+            }
+        }
+
+        /**
+         * BoolExpression BlockStatementList (IfStatement | BlockStatementList)?
+         */
+        void ifStatement(ASTNode<?> node) {
+            Block then = newBlock();
+            Block join = newBlock();
+            Block otherwise = node.branches.size() > 2 ? newBlock() : join;
+
+            condition((ASTNode<?>)node.fst(), then, otherwise);
+            seal(then);
+            block = then;
+            statements((ASTNode<?>)node.snd());
+            block.jump(join);
+
+            if (otherwise != join) {
+                seal(otherwise);
+                block = otherwise;
+                ASTNode<?> rest = (ASTNode<?>)node.thrd();
+                if (rest.name.equals("IfStatement"))
+                    ifStatement(rest);
+                else
+                    statements(rest);
+                block.jump(join);
+            }
+
+            seal(join);
+            block = join;
+        }
+
+        void whileStatement(ASTNode<?> node) {
+            Block header = newBlock();
+            Block body = newBlock();
+            Block exit = newBlock();
+
+            block.jump(header);
+            block = header;
+            condition((ASTNode<?>)node.fst(), body, exit);
+
+            seal(body);
+            block = body;
+            statements((ASTNode<?>)node.snd());
+            block.jump(header);
+
+            seal(header);
+            seal(exit);
+            block = exit;
+        }
+
+        void forStatement(ASTNode<?> node) {
+            ForParts parts = new ForParts(node);
+            if (parts.declaration != null)
+                declareStatement(parts.declaration);
+            ASTNode<?> condition = parts.condition;
+            ASTNode<?> update = parts.update;
+            ASTNode<?> body = parts.body;
+
+            Block header = newBlock();
+            Block loop = newBlock();
+            Block step = newBlock();
+            Block exit = newBlock();
+
+            block.jump(header);
+            block = header;
+            if (condition != null)
+                condition(condition, loop, exit);
+            else
+                block.jump(loop);
+
+            seal(loop);
+            block = loop;
+            statements(body);
+            block.jump(step);
+
+            seal(step);
+            block = step;
+            if (update != null)
+                statement(update);
+            block.jump(header);
+
+            seal(header);
+            seal(exit);
+            block = exit;
+        }
+
+        void functionDeclaration(ASTNode<?> node) {
+            List<Type> params = new ArrayList<Type>();
+            for (int i = 2; i < node.branches.size()-1; i++) {
+                ASTNode<?> param = (ASTNode<?>)node.branches.get(i);
+                params.add(res.getSlot((ASTNode<?>)param.snd()).local.type);
+            }
+
+            String name = ((ASTNode<?>)node.snd()).fst().toString();
+            Type returnType = ((ASTNode<?>)node.fst()).operator;
+            functions.put(node, out.newFunction(name, returnType, function, params, node));
+            pending.add(node);
+        }
+
+        void returnStatement(ASTNode<?> node) {
+            if (function.returnType == Type.VOID)
+                throw new ExecutionException("Cannot return a value from a "+function.returnType+" function");
+
+            block.ret(typed((ASTNode<?>)node.fst(), function.returnType));
+            block = null;
+        }
+
+        /* variables */
+
+        void declare(Local local) {
+            if (local.captured)
+                cells.put(local, function.newCell(local.name.name, local.type));
+        }
+
+        void assign(Local local, Value value) {
+            if (local.captured) {
+                Instruction store = block.add(new Instruction(Op.STORE, Type.VOID, value));
+                store.cell = cells.get(local);
+            } else {
+                defs.get(block).put(local, value);
+            }
+        }
+
+        Value read(Local local) {
+            if (local.captured) {
+                Instruction load = block.add(new Instruction(Op.LOAD, local.type));
+                load.cell = cells.get(local);
+                return load;
+            }
+            return read(local, block);
+        }
+
+        Value read(Local local, Block b) {
+            Value v = defs.get(b).get(local);
+            if (v != null)
+                return v;
+
+            if (!sealed.contains(b)) {
+                Instruction phi = b.addPhi(local.type);
+                incomplete.computeIfAbsent(b, k -> new IdentityHashMap<Local, Instruction>()).put(local, phi);
+                v = phi;
+            } else if (b.predecessors.size() == 1) {
+                v = read(local, b.predecessors.get(0));
+            } else if (b.predecessors.isEmpty()) {
+                // a block nothing jumps to, its value does not matter
+                v = out.defaultValue(local.type);
+            } else {
+                Instruction phi = b.addPhi(local.type);
+                defs.get(b).put(local, phi);
+                addPhiOperands(local, phi);
+                v = phi;
+            }
+            defs.get(b).put(local, v);
+            return v;
+        }
+
+        void addPhiOperands(Local local, Instruction phi) {
+            for (Block p : phi.block.predecessors)
+                phi.operands.add(read(local, p));
+        }
+
+        // no more predecessors will be added to b
+        void seal(Block b) {
+            IdentityHashMap<Local, Instruction> phis = incomplete.remove(b);
+            if (phis != null) {
+                for (Local local : phis.keySet())
+                    addPhiOperands(local, phis.get(local));
+            }
+            sealed.add(b);
+        }
+
+        // the value of an assignment, a COPY if it is a value worked out
+        // before, as in x = y
+        Value assigned(ASTNode<?> node, Type type) {
+            Block start = block;
+            int before = block.instructions.size();
+            Value v = typed(node, type);
+            if (block == start && block.instructions.size() == before)
+                return block.add(new Instruction(Op.COPY, v.type, v));
+            return v;
+        }
+
+        /* expressions */
+
+        /**
+         * The value of node as a type, numbers converted the way a store
+         * converts them.
+         */
+        Value typed(ASTNode<?> node, Type type) {
+            switch (type) {
+                case INT_ID:
+                case FLOAT_ID:
+                    return convert(number(node), type);
+                case BOOL_ID:
+                    return bool(node);
+                default:
+                    return str(node);
+            }
+        }
+
+        Value convert(Value v, Type type) {
+            if (v.type == type)
+                return v;
+            Op op = type == Type.FLOAT_ID ? Op.TO_FLOAT : Op.TO_INT;
+            return block.add(new Instruction(op, type, v));
+        }
+
+        Value number(ASTNode<?> node) {
+            Type type = typeOf(node);
+            if (type != Type.INT_ID && type != Type.FLOAT_ID)
+                throw new ExecutionException("Expected a number, got "+describe(node));
+
+            switch (node.name) {
+                case "IntLiteral":
+                case "FloatLiteral":
+                    return out.constant(node.fst());
+                case "Identifier":
+                    return read(res.getSlot(node).local);
+                case "FunctionCall":
+                    return call(node);
+                case "Factor":
+                    return block.add(new Instruction(Op.NEG, type, convert(number((ASTNode<?>)node.fst()), type)));
+                default:
+                    break;
+            }
+
+            Value a = convert(number((ASTNode<?>)node.fst()), type);
+            Value b = convert(number((ASTNode<?>)node.snd()), type);
+            switch (node.operator) {
+                case PLUS:
+                    return block.add(new Instruction(Op.ADD, type, a, b));
+                case MINUS:
+                    return block.add(new Instruction(Op.SUB, type, a, b));
+                case MUL:
+                    return block.add(new Instruction(Op.MUL, type, a, b));
+                case DIV:
+                    return block.add(new Instruction(Op.DIV, type, a, b));
+                case EXP:
+                    return block.add(new Instruction(Op.POW, type, a, b));
+                default:
+                    throw new ExecutionException("Cannot run "+describe(node));
+            }
+        }
+
+        Value bool(ASTNode<?> node) {
+            switch (node.name) {
+                case "TrueFalseLiteral":
+                    return out.constant(node.operator == Type.TRUE);
+                case "Identifier":
+                    if (typeOf(node) != Type.BOOL_ID)
+                        break;
+                    return read(res.getSlot(node).local);
+                case "FunctionCall":
+                    if (typeOf(node) != Type.BOOL_ID)
+                        break;
+                    return call(node);
+                case "BoolFactor":
+                    return block.add(new Instruction(Op.NOT, Type.BOOL_ID, bool((ASTNode<?>)node.fst())));
+                case "BoolExpression": {
+                    Block ifTrue = newBlock();
+                    Block ifFalse = newBlock();
+                    Block join = newBlock();
+                    condition(node, ifTrue, ifFalse);
+
+                    seal(ifTrue);
+                    seal(ifFalse);
+                    ifTrue.jump(join);
+                    ifFalse.jump(join);
+                    seal(join);
+                    block = join;
+
+                    Instruction phi = join.addPhi(Type.BOOL_ID);
+                    phi.operands.add(out.constant(true));
+                    phi.operands.add(out.constant(false));
+                    return phi;
+                }
+                case "BoolTerm":
+                    return compare(node);
+                default:
+                    break;
+            }
+            throw new ExecutionException("Expected a bool, got "+describe(node));
+        }
+
+        /**
+         * Ends the block with jumps to ifTrue or ifFalse, && and || only
+         * work out their right side if it decides
+         */
+        void condition(ASTNode<?> node, Block ifTrue, Block ifFalse) {
+            if (node.name.equals("BoolExpression")) {
+                Block right = newBlock();
+                if (node.operator == Type.OR)
+                    condition((ASTNode<?>)node.fst(), ifTrue, right);
+                else
+                    condition((ASTNode<?>)node.fst(), right, ifFalse);
+
+                seal(right);
+                block = right;
+                condition((ASTNode<?>)node.snd(), ifTrue, ifFalse);
+            } else if (node.name.equals("BoolFactor")) {
+                condition((ASTNode<?>)node.fst(), ifFalse, ifTrue);
+            } else {
+                block.branch(bool(node), ifTrue, ifFalse);
+            }
+        }
+
+        Value compare(ASTNode<?> node) {
+            ASTNode<?> left = (ASTNode<?>)node.fst();
+            ASTNode<?> right = (ASTNode<?>)node.snd();
+            Type l = typeOf(left);
+            Type r = typeOf(right);
+            Op op = comparison(node.operator);
+
+            Value a;
+            Value b;
+            if (l == Type.FLOAT_ID || r == Type.FLOAT_ID) {
+                if (!l.within(Type.INT_ID, Type.FLOAT_ID) || !r.within(Type.INT_ID, Type.FLOAT_ID))
+                    throw new ExecutionException("Cannot compare "+l+" and "+r);
+                a = convert(number(left), Type.FLOAT_ID);
+                b = convert(number(right), Type.FLOAT_ID);
+            } else if (l == Type.INT_ID && r == Type.INT_ID) {
+                a = number(left);
+                b = number(right);
+            } else if (l == r && op == Op.EQ && l == Type.BOOL_ID) {
+                a = bool(left);
+                b = bool(right);
+            } else if (l == r && op == Op.EQ && l == Type.STR_ID) {
+                a = str(left);
+                b = str(right);
+            } else {
+                throw new ExecutionException("Cannot compare "+l+" and "+r+" with "+node.operator);
+            }
+            return block.add(new Instruction(op, Type.BOOL_ID, a, b));
+        }
+
+        Op comparison(Type operator) {
+            switch (operator) {
+                case EQUIVALENT:
+                    return Op.EQ;
+                case LESS:
+                    return Op.LT;
+                case GREATER:
+                    return Op.GT;
+                case LESS_EQUAL:
+                    return Op.LE;
+                default:
+                    return Op.GE;
+            }
+        }
+
+        Value str(ASTNode<?> node) {
+            switch (node.name) {
+                case "StringLiteral": {
+                    // the token keeps its quotes
+                    String text = (String)node.fst();
+                    return out.constant(text.substring(1, text.length()-1));
+                }
+                case "Identifier":
+                    if (typeOf(node) != Type.STR_ID)
+                        break;
+                    return read(res.getSlot(node).local);
+                case "FunctionCall":
+                    if (typeOf(node) != Type.STR_ID)
+                        break;
+                    return call(node);
+                default:
+                    break;
+            }
+            throw new ExecutionException("Expected a str, got "+describe(node));
+        }
+
+        /**
+         * Function value..., parameters without a value get their default
+         * and values past the last parameter are not worked out
+         */
+        Value call(ASTNode<?> node) {
+            Function callee = functions.get(res.getFunction((ASTNode<?>)node.fst()));
+
+            Value[] args = new Value[callee.params.size()];
+            for (int i = 0; i < args.length; i++) {
+                Type type = callee.params.get(i);
+                if (i+1 < node.branches.size())
+                    args[i] = typed((ASTNode<?>)node.branches.get(i+1), type);
+                else
+                    args[i] = out.defaultValue(type);
+            }
+
+            Instruction call = block.add(new Instruction(Op.CALL, callee.returnType, args));
+            call.callee = callee;
+            return call;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package compiler.ir;
+
+/**
+ * What an {@link Instruction} does. Arithmetic works on ints or floats, the
+ * instruction's type says which, and its operands are always of that type:
+ * the lowering puts in TO_FLOAT and TO_INT where the source mixes them.
+ */
+public enum Op {
+    // the value of the parameter at index
+    PARAM,
+    // one operand per predecessor of the block, in the same order
+    PHI,
+    COPY,
+
+    ADD,
+    SUB,
+    MUL,
+    // an int division by zero fails the run
+    DIV,
+    POW,
+    NEG,
+    TO_FLOAT,
+    // truncates
+    TO_INT,
+
+    NOT,
+    // compare two operands of the same type, bools and strs only with EQ
+    EQ,
+    LT,
+    GT,
+    LE,
+    GE,
+
+    // a captured variable, see Cell
+    LOAD,
+    STORE,
+    CALL,
+
+    JUMP,
+    // bool, to the first successor if true
+    BRANCH,
+    // the value of the function, none for void, the top level variables
+    // for the top level
+    RETURN;
+
+    public boolean isTerminator() {
+        return this == JUMP || this == BRANCH || this == RETURN;
+    }
+
+    public boolean isCommutative() {
+        return this == ADD || this == MUL || this == EQ;
+    }
+
+    public boolean isComparison() {
+        return this == EQ || this == LT || this == GT || this == LE || this == GE;
+    }
+
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
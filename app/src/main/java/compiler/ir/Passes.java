@@ -0,0 +1,32 @@
+package compiler.ir;
+
+import compiler.optimizer.PassManager;
+
+/**
+ * The passes over the SSA form at each optimization level.
+ */
+public class Passes {
+    private Passes() {}
+
+    /**
+     * 0 runs none, 1 takes out copies and dead code, 2 adds inlining,
+     * constant propagation, value numbering, and moving invariants out of
+     * loops and strength reduction. Levels above 2 are 2.
+     */
+    public static PassManager<Program> forLevel(int level) {
+        PassManager<Program> out = new PassManager<Program>(Program::size);
+        if (level >= 2)
+            out.add("inlining", Inlining::run);
+        if (level >= 1)
+            out.add("copies", CopyPropagation::run);
+        if (level >= 2) {
+            out.add("constants", ConstantPropagation::run);
+            out.add("value numbering", ValueNumbering::run);
+            out.add("loop invariants", LoopInvariants::run);
+            out.add("strength reduction", StrengthReduction::run);
+        }
+        if (level >= 1)
+            out.add("dead code", DeadCode::run);
+        return out;
+    }
+}
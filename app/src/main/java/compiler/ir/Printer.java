@@ -0,0 +1,126 @@
+package compiler.ir;
+
+import java.util.List;
+
+import compiler.syntax.Type;
+
+/**
+ * Text for a {@link Program}, one function after another:
+ *
+ * <pre>
+ * int fib(int) in main
+ * b0:
+ *     %0 = param int 0
+ *     %1 = lt bool %0, 2
+ *     branch %1, b1, b2
+ * b1: b0
+ *     ...
+ * </pre>
+ *
+ * A block lists its predecessors after the colon, a phi gives each operand
+ * with the block it comes from.
+ */
+public class Printer {
+    private Printer() {}
+
+    public static String print(Program program) {
+        StringBuilder out = new StringBuilder();
+        for (Function f : program.functions) {
+            if (f != program.main)
+                out.append('\n');
+            print(f, out);
+        }
+        return out.toString();
+    }
+
+    public static String print(Function function) {
+        StringBuilder out = new StringBuilder();
+        print(function, out);
+        return out.toString();
+    }
+
+    private static void print(Function function, StringBuilder out) {
+        function.number();
+
+        out.append(type(function.returnType)).append(' ').append(function.name).append('(');
+        for (int i = 0; i < function.params.size(); i++) {
+            if (i > 0)
+                out.append(", ");
+            out.append(type(function.params.get(i)));
+        }
+        out.append(')');
+        if (function.parent != null)
+            out.append(" in ").append(function.parent.name);
+        if (!function.cells.isEmpty())
+            out.append(" cells ").append(function.cells);
+        out.append('\n');
+
+        for (Block b : function.blocks) {
+            out.append(b).append(':');
+            if (!b.predecessors.isEmpty())
+                list(b.predecessors, out.append(' '));
+            out.append('\n');
+
+            for (Instruction i : b.phis)
+                instruction(i, out);
+            for (Instruction i : b.instructions)
+                instruction(i, out);
+        }
+    }
+
+    private static void instruction(Instruction i, StringBuilder out) {
+        out.append("    ");
+        if (i.type != Type.VOID)
+            out.append(i).append(" = ");
+        out.append(i.op);
+        if (i.type != Type.VOID)
+            out.append(' ').append(type(i.type));
+
+        switch (i.op) {
+            case PARAM:
+                out.append(' ').append(i.index);
+                break;
+            case PHI:
+                for (int k = 0; k < i.operands.size(); k++) {
+                    out.append(k == 0 ? " " : ", ");
+                    out.append(i.operand(k)).append(' ').append(i.block.predecessors.get(k));
+                }
+                break;
+            case LOAD:
+                out.append(' ').append(i.cell);
+                break;
+            case STORE:
+                out.append(' ').append(i.cell).append(", ").append(i.operand(0));
+                break;
+            case CALL:
+                out.append(' ').append(i.callee.name).append('(');
+                list(i.operands, out);
+                out.append(')');
+                break;
+            case JUMP:
+                out.append(' ').append(i.block.successors.get(0));
+                break;
+            case BRANCH:
+                out.append(' ').append(i.operand(0));
+                out.append(", ").append(i.block.successors.get(0));
+                out.append(", ").append(i.block.successors.get(1));
+                break;
+            default:
+                if (!i.operands.isEmpty())
+                    list(i.operands, out.append(' '));
+        }
+        out.append('\n');
+    }
+
+    private static void list(List<?> items, StringBuilder out) {
+        for (int k = 0; k < items.size(); k++) {
+            if (k > 0)
+                out.append(", ");
+            out.append(items.get(k));
+        }
+    }
+
+    private static String type(Type type) {
+        return type.getLiteral();
+    }
+}
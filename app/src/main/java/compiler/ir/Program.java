@@ -0,0 +1,85 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.syntax.Type;
+
+/**
+ * A whole program in SSA form, made by {@link Lowering}. The top level is a
+ * function of its own, main, which returns the values of the top level
+ * variables in the order of globals.
+ */
+public class Program {
+    public final Function main;
+    // main first, then in the order they are declared
+    public final List<Function> functions;
+    public final List<String> globals;
+
+    private final HashMap<String, Constant> constants;
+
+    Program() {
+        functions = new ArrayList<Function>();
+        globals = new ArrayList<String>();
+        constants = new HashMap<String, Constant>();
+        main = new Function("main", Type.VOID, null, new ArrayList<Type>(), null);
+        functions.add(main);
+    }
+
+    /**
+     * The one constant for value, an Integer, Float, Boolean or String.
+     */
+    public Constant constant(Object value) {
+        String key;
+        Type type;
+        if (value instanceof Integer) {
+            key = "i"+value;
+            type = Type.INT_ID;
+        } else if (value instanceof Float) {
+            // by bits, so -0.0 and 0.0 are two constants
+            key = "f"+Float.floatToRawIntBits((Float)value);
+            type = Type.FLOAT_ID;
+        } else if (value instanceof Boolean) {
+            key = "b"+value;
+            type = Type.BOOL_ID;
+        } else {
+            key = "s"+value;
+            type = Type.STR_ID;
+        }
+        return constants.computeIfAbsent(key, k -> new Constant(type, value));
+    }
+
+    /**
+     * The value a variable of type starts at.
+     */
+    public Constant defaultValue(Type type) {
+        switch (type) {
+            case INT_ID:
+                return constant(0);
+            case FLOAT_ID:
+                return constant(0f);
+            case BOOL_ID:
+                return constant(false);
+            default:
+                return constant("");
+        }
+    }
+
+    Function newFunction(String name, Type returnType, Function parent, List<Type> params, ASTNode<?> declaration) {
+        Function f = new Function(name, returnType, parent, params, declaration);
+        functions.add(f);
+        return f;
+    }
+
+    /**
+     * Instructions and phis in all functions.
+     */
+    public int size() {
+        int out = 0;
+        for (Function f : functions)
+            out += f.size();
+        return out;
+    }
+}
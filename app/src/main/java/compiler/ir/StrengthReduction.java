@@ -0,0 +1,199 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import compiler.syntax.Type;
+
+/**
+ * Puts cheaper operations in place of dearer ones that give the same value.
+ *
+ * A power with a small constant exponent becomes multiplications: x ** 2 is
+ * x * x, x ** 4 is (x * x) * (x * x). For a float only ** 0, 1 and 2, the
+ * others round differently from Math.pow.
+ *
+ * In a loop, an int induction variable times a value the loop does not
+ * change becomes an induction variable of its own, which goes up by step
+ * times that value every time round. ints wrap, so this holds even when the
+ * products overflow.
+ */
+public class StrengthReduction {
+    // the largest int exponent made into multiplications
+    public static final int MAX_EXPONENT = 4;
+
+    private final Program program;
+
+    private StrengthReduction(Program program) {
+        this.program = program;
+    }
+
+    /**
+     * Returns the powers and multiplications replaced.
+     */
+    public static int run(Program program) {
+        StrengthReduction s = new StrengthReduction(program);
+        int changes = 0;
+        for (Function f : program.functions) {
+            changes += s.powers(f);
+            changes += s.inductions(f);
+        }
+        return changes;
+    }
+
+    private int powers(Function f) {
+        IdentityHashMap<Value, Value> with = new IdentityHashMap<Value, Value>();
+        for (Block b : f.blocks) {
+            List<Instruction> out = new ArrayList<Instruction>();
+            for (Instruction i : b.instructions) {
+                Integer exponent = i.op == Op.POW ? exponent(i) : null;
+                if (exponent == null) {
+                    out.add(i);
+                    continue;
+                }
+                with.put(i, power(i.operand(0), exponent, b, out));
+            }
+            b.instructions.clear();
+            b.instructions.addAll(out);
+        }
+        f.replace(with);
+        return with.size();
+    }
+
+    // the exponent of a power that is better done as multiplications
+    private static Integer exponent(Instruction pow) {
+        if (!(pow.operand(1) instanceof Constant))
+            return null;
+        Object e = ((Constant)pow.operand(1)).value;
+        if (pow.type == Type.INT_ID) {
+            int n = (Integer)e;
+            return n >= 0 && n <= MAX_EXPONENT ? n : null;
+        }
+        float x = (Float)e;
+        return x == 0 || x == 1 || x == 2 ? (int)x : null;
+    }
+
+    // base ** exponent, by squaring, adding the multiplications to out
+    private Value power(Value base, int exponent, Block b, List<Instruction> out) {
+        if (exponent == 0)
+            return program.constant(base.type == Type.INT_ID ? (Object)1 : (Object)1f);
+        Value result = null;
+        Value square = base;
+        while (true) {
+            if ((exponent & 1) != 0)
+                result = result == null ? square : multiply(result, square, b, out);
+            exponent >>= 1;
+            if (exponent == 0)
+                return result;
+            square = multiply(square, square, b, out);
+        }
+    }
+
+    private static Instruction multiply(Value x, Value y, Block b, List<Instruction> out) {
+        Instruction mul = new Instruction(Op.MUL, x.type, x, y);
+        mul.block = b;
+        out.add(mul);
+        return mul;
+    }
+
+    private int inductions(Function f) {
+        Loops loops = new Loops(f);
+        int changes = 0;
+        for (Loops.Loop loop : loops.loops) {
+            List<Loops.Induction> inductions = loops.getInductions(loop);
+            if (inductions.isEmpty())
+                continue;
+            Block preheader = null;
+
+            // i * k for each induction variable i and k, made once
+            HashMap<List<Value>, Instruction> made = new HashMap<List<Value>, Instruction>();
+            IdentityHashMap<Value, Value> with = new IdentityHashMap<Value, Value>();
+            List<Instruction> muls = new ArrayList<Instruction>();
+            for (Block b : f.blocks) {
+                for (Instruction i : b.instructions) {
+                    if (i.op == Op.MUL && i.type == Type.INT_ID && loop.contains(b))
+                        muls.add(i);
+                }
+            }
+            for (Instruction i : muls) {
+                for (Loops.Induction iv : inductions) {
+                    Value k = other(i, iv.phi, loop);
+                    boolean next = false;
+                    if (k == null) {
+                        k = other(i, iv.next, loop);
+                        next = true;
+                    }
+                    if (k == null)
+                        continue;
+
+                    List<Value> key = new ArrayList<Value>();
+                    key.add(iv.phi);
+                    key.add(k);
+                    Instruction derived = made.get(key);
+                    if (derived == null) {
+                        if (preheader == null)
+                            preheader = loops.getPreheader(loop);
+                        derived = derive(iv, k, loop, preheader);
+                        made.put(key, derived);
+                    }
+                    with.put(i, next ? nextOf(derived, loop) : derived);
+                    break;
+                }
+            }
+            for (Block b : loop.blocks)
+                b.instructions.removeIf(with::containsKey);
+            f.replace(with);
+            changes += with.size();
+        }
+        return changes;
+    }
+
+    // k if mul is iv * k or k * iv with k the same every time round
+    private static Value other(Instruction mul, Value iv, Loops.Loop loop) {
+        if (mul.operand(0) == iv && loop.isInvariant(mul.operand(1)))
+            return mul.operand(1);
+        if (mul.operand(1) == iv && loop.isInvariant(mul.operand(0)))
+            return mul.operand(0);
+        return null;
+    }
+
+    /**
+     * j = phi(start * k, j + step * k), next to iv in the header; j + step
+     * * k goes right after iv's own step, so it is worked out on the same
+     * paths.
+     */
+    private Instruction derive(Loops.Induction iv, Value k, Loops.Loop loop, Block preheader) {
+        Value start = product(iv.start, k, preheader);
+        Value step = product(iv.step, k, preheader);
+
+        Instruction j = loop.header.addPhi(Type.INT_ID);
+        Instruction next = new Instruction(iv.getOp(), Type.INT_ID, j, step);
+        next.block = iv.next.block;
+        List<Instruction> in = iv.next.block.instructions;
+        in.add(in.indexOf(iv.next)+1, next);
+
+        for (Block p : loop.header.predecessors)
+            j.operands.add(p == preheader ? start : next);
+        return j;
+    }
+
+    // the j + step * k of j
+    private static Instruction nextOf(Instruction j, Loops.Loop loop) {
+        for (int n = 0; n < j.operands.size(); n++) {
+            if (loop.contains(loop.header.predecessors.get(n)))
+                return (Instruction)j.operand(n);
+        }
+        throw new IllegalStateException("no way round "+loop);
+    }
+
+    // x * y before the end of preheader, folded when both are constants
+    private Value product(Value x, Value y, Block preheader) {
+        if (x instanceof Constant && y instanceof Constant)
+            return program.constant((Integer)((Constant)x).value * (Integer)((Constant)y).value);
+        Instruction mul = new Instruction(Op.MUL, Type.INT_ID, x, y);
+        mul.block = preheader;
+        preheader.instructions.add(preheader.instructions.size()-1, mul);
+        return mul;
+    }
+}
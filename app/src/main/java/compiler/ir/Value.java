@@ -0,0 +1,18 @@
+package compiler.ir;
+
+import compiler.syntax.Type;
+
+/**
+ * Something an instruction can use: a {@link Constant} or the result of an
+ * {@link Instruction}. Types are INT_ID, FLOAT_ID, BOOL_ID and STR_ID,
+ * instructions with no value are VOID.
+ */
+public abstract class Value {
+    public final Type type;
+    // set by Function.number(), for printing
+    public int id;
+
+    protected Value(Type type) {
+        this.type = type;
+    }
+}
@@ -0,0 +1,144 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Global value numbering over the dominator tree: an instruction that
+ * computes what one in a block dominating it already did is left out, and
+ * its uses take the first one. Two instructions compute the same when they
+ * have the same op, type and operands, with the operands of +, * and == in
+ * either order. Only pure instructions count, and phis in the same block.
+ *
+ * Within a block, a load of a cell takes the value last stored to it or
+ * loaded from it, until a call, which may store to any cell.
+ */
+public class ValueNumbering {
+    private final Function function;
+    private final Dominators dominators;
+
+    // what each removed value is replaced with
+    private final IdentityHashMap<Value, Value> with;
+    // of values and blocks, for the keys
+    private final IdentityHashMap<Object, Integer> numbers;
+    private final HashMap<String, Instruction> available;
+
+    private ValueNumbering(Function function) {
+        this.function = function;
+        dominators = new Dominators(function);
+        with = new IdentityHashMap<Value, Value>();
+        numbers = new IdentityHashMap<Object, Integer>();
+        available = new HashMap<String, Instruction>();
+    }
+
+    /**
+     * Returns the instructions removed.
+     */
+    public static int run(Program program) {
+        int removed = 0;
+        for (Function f : program.functions)
+            removed += new ValueNumbering(f).run();
+        return removed;
+    }
+
+    private int run() {
+        // the keys each block on the stack added, taken out when it is left
+        List<Block> stack = new ArrayList<Block>();
+        List<Integer> next = new ArrayList<Integer>();
+        List<List<String>> added = new ArrayList<List<String>>();
+        Block entry = function.getEntry();
+        stack.add(entry);
+        next.add(0);
+        added.add(block(entry));
+
+        while (!stack.isEmpty()) {
+            int top = stack.size()-1;
+            Block b = stack.get(top);
+            int i = next.get(top);
+            List<Block> children = dominators.getChildren(b);
+            if (i < children.size()) {
+                next.set(top, i+1);
+                Block child = children.get(i);
+                stack.add(child);
+                next.add(0);
+                added.add(block(child));
+            } else {
+                for (String key : added.get(top))
+                    available.remove(key);
+                stack.remove(top);
+                next.remove(top);
+                added.remove(top);
+            }
+        }
+
+        if (with.isEmpty())
+            return 0;
+        function.replace(with);
+        for (Block b : function.blocks) {
+            b.phis.removeIf(with::containsKey);
+            b.instructions.removeIf(with::containsKey);
+        }
+        return with.size();
+    }
+
+    private List<String> block(Block b) {
+        List<String> added = new ArrayList<String>();
+        for (Instruction phi : b.phis)
+            number(phi, "b"+number(b)+" ", added);
+
+        IdentityHashMap<Cell, Value> cells = new IdentityHashMap<Cell, Value>();
+        for (Instruction i : b.instructions) {
+            if (i.op == Op.COPY) {
+                with.put(i, find(i.operand(0)));
+            } else if (i.op == Op.LOAD) {
+                Value known = cells.get(i.cell);
+                if (known != null)
+                    with.put(i, known);
+                else
+                    cells.put(i.cell, i);
+            } else if (i.op == Op.STORE) {
+                cells.put(i.cell, find(i.operand(0)));
+            } else if (i.op == Op.CALL) {
+                cells.clear();
+            } else if (i.isPure()) {
+                number(i, "", added);
+            }
+        }
+        return added;
+    }
+
+    private void number(Instruction i, String prefix, List<String> added) {
+        int[] operands = new int[i.operands.size()];
+        for (int k = 0; k < operands.length; k++)
+            operands[k] = number(find(i.operand(k)));
+        if (i.op.isCommutative() && operands[0] > operands[1]) {
+            int t = operands[0];
+            operands[0] = operands[1];
+            operands[1] = t;
+        }
+
+        StringBuilder key = new StringBuilder(prefix).append(i.op).append(' ').append(i.type);
+        for (int n : operands)
+            key.append(' ').append(n);
+        String k = key.toString();
+
+        Instruction first = available.get(k);
+        if (first != null) {
+            with.put(i, first);
+        } else {
+            available.put(k, i);
+            added.add(k);
+        }
+    }
+
+    private Value find(Value v) {
+        Value to = with.get(v);
+        return to == null ? v : to;
+    }
+
+    private int number(Object o) {
+        return numbers.computeIfAbsent(o, k -> numbers.size());
+    }
+}
@@ -0,0 +1,283 @@
+package compiler.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.syntax.Type;
+
+/**
+ * Checks that a {@link Program} is well formed: blocks end in exactly one
+ * terminator, edges are listed at both ends, phis have an operand per
+ * predecessor, operands have the types their op takes, and every value is
+ * defined before it is used, in a block that dominates the use.
+ *
+ * Meant to run after lowering and after each pass while working on them, a
+ * problem here is a bug in the compiler, not in the program.
+ */
+public class Verifier {
+    private final Program program;
+    private final List<String> problems;
+
+    private Function function;
+    private Dominators dominators;
+    // where each instruction is in its block, phis first
+    private final IdentityHashMap<Instruction, Integer> positions;
+
+    private Verifier(Program program) {
+        this.program = program;
+        problems = new ArrayList<String>();
+        positions = new IdentityHashMap<Instruction, Integer>();
+    }
+
+    /**
+     * Everything wrong with program, empty if nothing is.
+     */
+    public static List<String> verify(Program program) {
+        Verifier v = new Verifier(program);
+        for (Function f : program.functions)
+            v.function(f);
+        return v.problems;
+    }
+
+    private void problem(Block b, Instruction i, String what) {
+        function.number();
+        String where = function.name+" "+b+(i == null ? "" : " "+(i.type == Type.VOID ? i.op.toString() : i.toString()));
+        problems.add(where+": "+what);
+    }
+
+    private void function(Function f) {
+        function = f;
+        if (f.blocks.isEmpty()) {
+            problems.add(f.name+": no blocks");
+            return;
+        }
+        if (!f.getEntry().predecessors.isEmpty())
+            problem(f.getEntry(), null, "the entry has predecessors");
+
+        dominators = new Dominators(f);
+        positions.clear();
+        for (Block b : f.blocks) {
+            int position = 0;
+            for (Instruction i : b.phis)
+                positions.put(i, position++);
+            for (Instruction i : b.instructions)
+                positions.put(i, position++);
+        }
+
+        for (Block b : f.blocks) {
+            if (!dominators.isReachable(b))
+                problem(b, null, "not reachable from the entry");
+            block(b);
+        }
+    }
+
+    private void block(Block b) {
+        if (b.function != function)
+            problem(b, null, "belongs to "+b.function);
+
+        Instruction last = b.getTerminator();
+        if (last == null) {
+            problem(b, null, "does not end in a jump, branch or return");
+        } else {
+            int expected = last.op == Op.JUMP ? 1 : (last.op == Op.BRANCH ? 2 : 0);
+            if (b.successors.size() != expected)
+                problem(b, last, b.successors.size()+" successors");
+        }
+
+        for (Block s : b.successors) {
+            if (Collections.frequency(s.predecessors, b) != Collections.frequency(b.successors, s))
+                problem(b, null, "edge to "+s+" is not in its predecessors");
+        }
+        for (Block p : b.predecessors) {
+            if (Collections.frequency(p.successors, b) != Collections.frequency(b.predecessors, p))
+                problem(b, null, "edge from "+p+" is not in its successors");
+        }
+
+        for (Instruction phi : b.phis) {
+            if (phi.op != Op.PHI)
+                problem(b, phi, "with the phis");
+            if (phi.operands.size() != b.predecessors.size())
+                problem(b, phi, phi.operands.size()+" operands for "+b.predecessors.size()+" predecessors");
+            instruction(b, phi);
+        }
+        for (int k = 0; k < b.instructions.size(); k++) {
+            Instruction i = b.instructions.get(k);
+            if (i.op == Op.PHI)
+                problem(b, i, "phi with the instructions");
+            if (i.op.isTerminator() && k != b.instructions.size()-1)
+                problem(b, i, "in the middle of the block");
+            instruction(b, i);
+        }
+    }
+
+    private void instruction(Block b, Instruction i) {
+        if (i.block != b)
+            problem(b, i, "thinks it is in "+i.block);
+
+        for (int k = 0; k < i.operands.size(); k++)
+            defined(b, i, k);
+        types(b, i);
+    }
+
+    // the operand is worked out on every path to its use
+    private void defined(Block b, Instruction i, int k) {
+        Value v = i.operand(k);
+        if (v == null) {
+            problem(b, i, "operand "+k+" is missing");
+            return;
+        }
+        if (!(v instanceof Instruction))
+            return;
+
+        Instruction def = (Instruction)v;
+        if (def.block == null || def.block.function != function || !positions.containsKey(def)) {
+            problem(b, i, "uses "+def+", which is not in the function");
+            return;
+        }
+
+        if (i.op == Op.PHI) {
+            // at the end of the predecessor it comes from
+            if (k < b.predecessors.size() && !dominates(def, b.predecessors.get(k), Integer.MAX_VALUE))
+                problem(b, i, "uses "+def+", which is not defined at the end of "+b.predecessors.get(k));
+        } else if (!dominates(def, b, positions.get(i))) {
+            problem(b, i, "uses "+def+" before it is defined");
+        }
+    }
+
+    // def is worked out before position in b
+    private boolean dominates(Instruction def, Block b, int position) {
+        if (def.block == b)
+            return positions.get(def) < position;
+        return dominators.isReachable(def.block) && dominators.isReachable(b) && dominators.dominates(def.block, b);
+    }
+
+    private void types(Block b, Instruction i) {
+        switch (i.op) {
+            case PARAM:
+                if (b != function.getEntry())
+                    problem(b, i, "outside of the entry");
+                else if (i.index < 0 || i.index >= function.params.size() || function.params.get(i.index) != i.type)
+                    problem(b, i, "no "+i.type+" parameter "+i.index);
+                break;
+            case PHI:
+            case COPY:
+                all(b, i, i.type);
+                break;
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case POW:
+            case NEG:
+                if (!i.type.within(Type.INT_ID, Type.FLOAT_ID))
+                    problem(b, i, "is "+i.type);
+                count(b, i, i.op == Op.NEG ? 1 : 2);
+                all(b, i, i.type);
+                break;
+            case TO_FLOAT:
+                count(b, i, 1);
+                all(b, i, Type.INT_ID);
+                result(b, i, Type.FLOAT_ID);
+                break;
+            case TO_INT:
+                count(b, i, 1);
+                all(b, i, Type.FLOAT_ID);
+                result(b, i, Type.INT_ID);
+                break;
+            case NOT:
+                count(b, i, 1);
+                all(b, i, Type.BOOL_ID);
+                result(b, i, Type.BOOL_ID);
+                break;
+            case EQ:
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+                count(b, i, 2);
+                result(b, i, Type.BOOL_ID);
+                if (i.operands.size() == 2) {
+                    Type t = i.operand(0).type;
+                    all(b, i, t);
+                    if (i.op != Op.EQ && !t.within(Type.INT_ID, Type.FLOAT_ID))
+                        problem(b, i, "compares "+t);
+                }
+                break;
+            case LOAD:
+            case STORE:
+                if (i.cell == null || !encloses(i.cell.owner, function)) {
+                    problem(b, i, "cell "+i.cell+" is not in scope");
+                    break;
+                }
+                if (i.op == Op.LOAD) {
+                    count(b, i, 0);
+                    result(b, i, i.cell.type);
+                } else {
+                    count(b, i, 1);
+                    all(b, i, i.cell.type);
+                }
+                break;
+            case CALL:
+                if (i.callee == null || !program.functions.contains(i.callee) || i.callee.parent == null || !encloses(i.callee.parent, function)) {
+                    problem(b, i, "calls "+i.callee+", which is not in scope");
+                    break;
+                }
+                result(b, i, i.callee.returnType);
+                count(b, i, i.callee.params.size());
+                for (int k = 0; k < i.operands.size() && k < i.callee.params.size(); k++) {
+                    if (i.operand(k).type != i.callee.params.get(k))
+                        problem(b, i, "argument "+k+" is "+i.operand(k).type);
+                }
+                break;
+            case JUMP:
+                count(b, i, 0);
+                break;
+            case BRANCH:
+                count(b, i, 1);
+                all(b, i, Type.BOOL_ID);
+                break;
+            case RETURN:
+                if (function == program.main) {
+                    count(b, i, program.globals.size());
+                } else if (function.returnType == Type.VOID) {
+                    count(b, i, 0);
+                } else {
+                    count(b, i, 1);
+                    all(b, i, function.returnType);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // outer is inner or one of the functions inner is declared in
+    private static boolean encloses(Function outer, Function inner) {
+        for (Function f = inner; f != null; f = f.parent) {
+            if (f == outer)
+                return true;
+        }
+        return false;
+    }
+
+    private void count(Block b, Instruction i, int expected) {
+        if (i.operands.size() != expected)
+            problem(b, i, i.operands.size()+" operands, not "+expected);
+    }
+
+    private void all(Block b, Instruction i, Type type) {
+        Set<Value> seen = Collections.newSetFromMap(new IdentityHashMap<Value, Boolean>());
+        for (Value v : i.operands) {
+            if (v != null && v.type != type && seen.add(v))
+                problem(b, i, "operand "+v+" is "+v.type+", not "+type);
+        }
+    }
+
+    private void result(Block b, Instruction i, Type type) {
+        if (i.type != type)
+            problem(b, i, "is "+i.type+", not "+type);
+    }
+}
@@ -0,0 +1,115 @@
+package compiler.lexer;
+
+/**
+ * Int array with a movable gap, used for the per-token and per-line tables of
+ * an editable {@link TokenStream}. In a relative array the values after the
+ * gap are stored minus a base (the text length), so inserting or removing
+ * text in front of them shifts them without touching each entry.
+ */
+class GapIntArray {
+
+    private int[] values;
+    private int gapStart;
+    private int gapEnd;
+    private final boolean relative;
+
+    GapIntArray(int capacity, boolean relative) {
+        values = new int[Math.max(capacity, 16)];
+        gapStart = 0;
+        gapEnd = values.length;
+        this.relative = relative;
+    }
+
+    int size() {
+        return values.length - (gapEnd-gapStart);
+    }
+
+    /**
+     * Index of the first entry after the gap, which is also where insert()
+     * puts the next value.
+     */
+    int gap() {
+        return gapStart;
+    }
+
+    int get(int index, int base) {
+        if (index < gapStart)
+            return values[index];
+        if (relative)
+            return values[index + gapEnd-gapStart] + base;
+        return values[index + gapEnd-gapStart];
+    }
+
+    void moveGap(int to, int base) {
+        int shift = relative ? base : 0;
+
+        while (gapStart > to) {
+            gapStart--;
+            gapEnd--;
+            values[gapEnd] = values[gapStart] - shift;
+        }
+        while (gapStart < to) {
+            values[gapStart] = values[gapEnd] + shift;
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    /**
+     * Adds an entry in front of the gap.
+     */
+    void insert(int value) {
+        reserve(1);
+        values[gapStart++] = value;
+    }
+
+    /**
+     * Adds entries [from, to) of other in front of the gap, they have to be in
+     * front of other's gap.
+     */
+    void insertAll(GapIntArray other, int from, int to) {
+        reserve(to-from);
+        System.arraycopy(other.values, from, values, gapStart, to-from);
+        gapStart += to-from;
+    }
+
+    /**
+     * Adds count entries in front of the gap, to be filled with setAll().
+     */
+    void insertBlank(int count) {
+        reserve(count);
+        gapStart += count;
+    }
+
+    /**
+     * Overwrites the entries from index on with entries [from, to) of other,
+     * all of them have to be in front of the gaps.
+     */
+    void setAll(int index, GapIntArray other, int from, int to) {
+        System.arraycopy(other.values, from, values, index, to-from);
+    }
+
+    /**
+     * Grows the gap to at least count entries.
+     */
+    void reserve(int count) {
+        if (gapEnd-gapStart >= count)
+            return;
+
+        int after = values.length-gapEnd;
+        int[] grown = new int[Math.max(values.length*2, values.length+count)];
+
+        System.arraycopy(values, 0, grown, 0, gapStart);
+        System.arraycopy(values, gapEnd, grown, grown.length-after, after);
+
+        values = grown;
+        gapEnd = grown.length-after;
+    }
+
+    /**
+     * Drops the entry just after the gap.
+     */
+    void removeAfterGap() {
+        gapEnd++;
+    }
+}
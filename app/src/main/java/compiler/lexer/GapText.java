@@ -0,0 +1,92 @@
+package compiler.lexer;
+
+/**
+ * Editable text kept in a char array with a gap at the last edit, so a run of
+ * edits close to each other only moves the characters between them.
+ */
+public class GapText implements CharSequence {
+
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    public GapText(CharSequence text) {
+        int length = text.length();
+        chars = new char[length + length/8 + 16];
+        for (int i = 0; i < length; i++)
+            chars[i] = text.charAt(i);
+
+        gapStart = length;
+        gapEnd = chars.length;
+    }
+
+    public int length() {
+        return chars.length - (gapEnd-gapStart);
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length())
+            throw new IndexOutOfBoundsException("index "+index+", length "+length());
+
+        if (index < gapStart)
+            return chars[index];
+        return chars[index + gapEnd-gapStart];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end)
+            throw new IndexOutOfBoundsException("start "+start+", end "+end+", length "+length());
+
+        char[] out = new char[end-start];
+        for (int i = start; i < end; i++)
+            out[i-start] = charAt(i);
+        return new String(out);
+    }
+
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    /**
+     * Replaces removedLength characters at offset with text.
+     */
+    public void replace(int offset, int removedLength, CharSequence text) {
+        if (offset < 0 || removedLength < 0 || offset+removedLength > length())
+            throw new IndexOutOfBoundsException("offset "+offset+", removed "+removedLength+", length "+length());
+
+        moveGap(offset);
+        gapEnd += removedLength;
+
+        int inserted = text.length();
+        if (gapEnd-gapStart < inserted)
+            grow(inserted);
+
+        for (int i = 0; i < inserted; i++)
+            chars[gapStart++] = text.charAt(i);
+    }
+
+    private void moveGap(int to) {
+        if (to < gapStart) {
+            int count = gapStart-to;
+            System.arraycopy(chars, to, chars, gapEnd-count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (to > gapStart) {
+            int count = to-gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void grow(int needed) {
+        int after = chars.length-gapEnd;
+        char[] grown = new char[Math.max(chars.length*2, length()+needed+16)];
+
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, grown.length-after, after);
+
+        chars = grown;
+        gapEnd = grown.length-after;
+    }
+}
@@ -1,45 +1,52 @@
 package compiler.lexer;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import compiler.syntax.SymbolPool;
 import compiler.syntax.Type;
 
-public class Lexer {
-
-    private static final Pattern END;
-    private static final Pattern SPACE;
-    
-    static {
-        END = Pattern.compile("\\G\\z");
-        SPACE = Pattern.compile("\\G\\s+");
-    }
+public class Lexer implements TokenSource {
 
-    private final Matcher input;
+    // the parser never looks more than 3 tokens ahead (see Expressions.Statement)
+    private static final int LOOKAHEAD = 4;
 
-    private int line;
-    private int index;
+    private final CharSequence text;
+    private final TokenScanner input;
+    private final SymbolPool symbols;
 
-    private List<Token> tokenCache;
+    // ring buffer of tokens that have been scanned but not taken by next()
+    private final Token[] tokenCache;
+    private int cacheStart;
+    private int cacheSize;
 
-    public Lexer(String input) {
-        if (input.endsWith("\n"))
-            this.input = END.matcher(input);
-        else
-            this.input = END.matcher(input+"\n");
-        
-        tokenCache = new ArrayList<Token>();
-        line = 1;
-        index = 0;
+    public Lexer(CharSequence input) {
+        this(input, new SymbolPool());
+    }
+    public Lexer(CharSequence input, SymbolPool symbols) {
+        this.text = SourceText.withFinalNewline(input);
+        this.input = new TokenScanner(text);
+        this.symbols = symbols;
+
+        tokenCache = new Token[LOOKAHEAD];
+        cacheStart = 0;
+        cacheSize = 0;
     }
 
     public Token next() {
-        if (tokenCache.size() > 0)
-            return tokenCache.remove(0);
-        else
-            return nextToken(false);
+        if (cacheSize == 0)
+            return nextToken();
+
+        Token out = tokenCache[cacheStart];
+        tokenCache[cacheStart] = null;
+        cacheStart = (cacheStart+1) % LOOKAHEAD;
+        cacheSize--;
+
+        return out;
+    }
+
+    public Token peek() {
+        if (nextType() == null)
+            return null;
+
+        return tokenCache[cacheStart];
     }
 
     public Type nextType() {
@@ -49,69 +56,38 @@ public class Lexer {
     public Type nextType(int lookAheadCount) {
         if (lookAheadCount < 1)
             return null;
+        if (lookAheadCount > LOOKAHEAD)
+            throw new IllegalArgumentException("Cannot look ahead more than "+LOOKAHEAD+" tokens");
 
-        if (tokenCache.size() < lookAheadCount) {
-            int max = lookAheadCount-tokenCache.size();
-            for (int i = 0; i < max; i++)
-                tokenCache.add(nextToken(true));
+        while (cacheSize < lookAheadCount) {
+            tokenCache[(cacheStart+cacheSize) % LOOKAHEAD] = nextToken();
+            cacheSize++;
         }
 
-        return tokenCache.get(lookAheadCount-1).type;
+        Token out = tokenCache[(cacheStart+lookAheadCount-1) % LOOKAHEAD];
+        return out == null ? null : out.type;
     }
 
-    private Token nextToken(boolean cache) {
+    private Token nextToken() {
         // TODO: empty line with spaces will not add a new line
-        // Inc line count
-        input.usePattern(Type.NEWLINE.getPattern());
-        if (input.find()) {
-            int prevIndex = index;
-            line++;
-            index = 0;
-            return new Token(Type.NEWLINE, new int[] {line-1, prevIndex});
-        }
-
-        // Skip spaces
-        input.usePattern(SPACE);
-        if (input.find())
-            index += input.group().length();
-
-        // Comments
-        input.usePattern(Type.LINECOMMENT.getPattern());
-        if (input.find())
-            line++;
-
-        input.usePattern(Type.BLOCKCOMMENT.getPattern());
-        if (input.find())
-            line += newLineCount(input.group());
-        
-        for (Type t : Type.getAllOf()) {
-            input.usePattern(t.getPattern());
-            if (input.find()) {
-                String group = input.group();
-                int prevIndex = index;
-                index += group.length();
-                return new Token(t, group, new int[] {line, prevIndex});
-            }
-        }
+        Type t = input.scan();
 
         // No match
-        return null;
+        if (t == null)
+            return null;
+
+        if (t == Type.ID)
+            return new Token(t, symbols.intern(text, input.getStart(), input.getStart()+input.getLength(), input.getHash()), new int[] {input.getLine(), input.getIndex()});
+
+        return new Token(t, input.getValue(), new int[] {input.getLine(), input.getIndex()});
     }
 
     public boolean hasNext() {
-        tokenCache.add(nextToken(true));
-        return tokenCache.get(tokenCache.size()-1) != null;
+        return nextType() != null;
     }
 
-    private int newLineCount(String comment) {
-        int out = 0;
-
-        for (int i = 0; i < comment.length(); i++) {
-            if (comment.charAt(i) == '\n')
-                out++;
-        }
-
-        return out;
+    public SymbolPool getSymbols() {
+        return symbols;
     }
     
 }
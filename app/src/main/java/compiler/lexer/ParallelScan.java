@@ -0,0 +1,224 @@
+package compiler.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import compiler.syntax.Type;
+
+/**
+ * Scans a {@link TokenStream} in chunks on a ForkJoinPool.
+ *
+ * The input is cut just after line breaks and every chunk is scanned as if a
+ * token started there. A token only depends on where its scan starts, so once
+ * the real scan coming from the previous chunk reaches one of the scan starts
+ * of a chunk, the rest of that chunk is right. A chunk that starts inside a
+ * block comment or string gets a few tokens scanned again on the joining
+ * thread, until the two line up.
+ *
+ * Positions come from the line start table, which the chunks also fill in,
+ * so no line or index state has to be carried from one chunk to the next.
+ */
+final class ParallelScan {
+
+    // smaller inputs are not worth the forking
+    static final int MIN_CHUNK = 1 << 16;
+
+    private ParallelScan() {}
+
+    static void scan(TokenStream out, CharSequence source, CharSequence input, ForkJoinPool pool) {
+        List<Chunk> chunks = split(source, input, pool.getParallelism()*4);
+        List<ForkJoinTask<?>> scans = new ArrayList<>(chunks.size());
+        for (Chunk c : chunks)
+            scans.add(ForkJoinTask.adapt(c::scan));
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(scans)));
+
+        // enough unless join() has to scan a lot again, the arrays grow then
+        int count = 0;
+        for (Chunk c : chunks) {
+            count += c.count();
+            out.appendLineStarts(c.lineStarts);
+        }
+        out.reserve(count);
+
+        join(out, input, chunks);
+
+        // copy the tokens taken from each chunk into their place
+        List<ForkJoinTask<?>> copies = new ArrayList<>(chunks.size());
+        for (Chunk c : chunks) {
+            if (c.taken < c.count())
+                copies.add(ForkJoinTask.adapt(() -> c.copyTo(out)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(copies)));
+    }
+
+    private static List<Chunk> split(CharSequence source, CharSequence input, int count) {
+        final int length = input.length();
+        count = Math.max(Math.min(count, length/MIN_CHUNK), 1);
+
+        List<Chunk> out = new ArrayList<>(count);
+        int start = 0;
+        for (int i = 1; i < count; i++) {
+            int end = Math.max((int)((long)length*i/count), start);
+            while (end < length && input.charAt(end) != '\n')
+                end++;
+            end++;
+
+            if (end >= length)
+                break;
+
+            out.add(new Chunk(source, input, start, end));
+            start = end;
+        }
+
+        // the last chunk scans until the stream ends
+        out.add(new Chunk(source, input, start, Integer.MAX_VALUE));
+        return out;
+    }
+
+    /**
+     * Appends the chunks' tokens to out in order, scanning again on this
+     * thread wherever a chunk's guess of where its tokens start was wrong.
+     * The tokens that are taken from a chunk are left blank and only marked
+     * in the chunk with taken and index.
+     */
+    private static void join(TokenStream out, CharSequence input, List<Chunk> chunks) {
+        int pos = 0;
+        TokenScanner scanner = null;
+
+        for (Chunk c : chunks) {
+            if (pos >= c.end)
+                continue;
+
+            int m = 0;
+            while (true) {
+                while (m <= c.count() && c.scanStart(m) < pos)
+                    m++;
+                if (m <= c.count() && c.scanStart(m) == pos)
+                    break;
+
+                if (scanner == null || scanner.getPos() != pos)
+                    scanner = new TokenScanner(input, pos);
+
+                Type t = scanner.scan();
+                if (t == null)
+                    return;
+
+                out.append(t.ordinal(), scanner.getStart(), TokenStream.scannedLength(scanner), scanner.getExamined());
+                pos = scanner.getPos();
+
+                if (pos >= c.end)
+                    break;
+            }
+            if (pos >= c.end)
+                continue;
+
+            // lined up at token m
+            c.taken = m;
+            c.index = out.size();
+            out.appendBlank(c.count()-m, c.farFrom(m));
+
+            if (c.stuck)
+                return;
+            pos = c.scanStart(c.count());
+        }
+    }
+
+    private static class Chunk {
+        private final CharSequence source;
+        private final CharSequence input;
+
+        // scans starting in [start, end)
+        final int start;
+        final int end;
+
+        final GapIntArray types;
+        final GapIntArray starts;
+        final GapIntArray lengths;
+        final GapIntArray examined;
+        // indexes of the far tokens
+        final GapIntArray far;
+        // the last scan gave no token
+        boolean stuck;
+
+        // tokens from taken on go to index in the stream
+        int taken;
+        int index;
+
+        final GapIntArray lineStarts;
+
+        Chunk(CharSequence source, CharSequence input, int start, int end) {
+            this.source = source;
+            this.input = input;
+            this.start = start;
+            this.end = end;
+
+            int capacity = (Math.min(end, input.length())-start)/4;
+            types = new GapIntArray(capacity, false);
+            starts = new GapIntArray(capacity, false);
+            lengths = new GapIntArray(capacity, false);
+            examined = new GapIntArray(capacity, false);
+            far = new GapIntArray(0, false);
+            lineStarts = new GapIntArray(capacity/8, false);
+
+            taken = Integer.MAX_VALUE;
+        }
+
+        int count() {
+            return types.size();
+        }
+
+        /**
+         * Where the scan of token m started, count() for the scan after the
+         * last token.
+         */
+        int scanStart(int m) {
+            if (m == 0)
+                return start;
+            return starts.get(m-1, 0) + Math.abs(lengths.get(m-1, 0));
+        }
+
+        // far tokens from m on
+        int farFrom(int m) {
+            int out = 0;
+            for (int i = far.size()-1; i >= 0 && far.get(i, 0) >= m; i--)
+                out++;
+            return out;
+        }
+
+        void copyTo(TokenStream out) {
+            out.setAll(index, types, starts, lengths, examined, taken, count());
+        }
+
+        // scans from start until a scan starts at or past end
+        void scan() {
+            TokenScanner scanner = new TokenScanner(input, start);
+            while (scanner.getPos() < end) {
+                Type t = scanner.scan();
+                if (t == null) {
+                    stuck = true;
+                    break;
+                }
+
+                int length = TokenStream.scannedLength(scanner);
+                if (TokenStream.isFarScan(scanner.getStart()+Math.abs(length), scanner.getExamined()))
+                    far.insert(count());
+
+                types.insert(t.ordinal());
+                starts.insert(scanner.getStart());
+                lengths.insert(length);
+                examined.insert(scanner.getExamined());
+            }
+
+            // same rule as TokenStream.addLineStarts, chunks start after a '\n'
+            // so a "\r\n" is never split
+            final int length = source.length();
+            for (int i = start; i < Math.min(end, length); i++) {
+                char c = source.charAt(i);
+                if (c == '\n' || (c == '\r' && (i+1 == length || source.charAt(i+1) != '\n')))
+                    lineStarts.insert(i+1);
+            }
+        }
+    }
+}
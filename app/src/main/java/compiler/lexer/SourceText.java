@@ -0,0 +1,99 @@
+package compiler.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CharSequence views used to hand source text to the lexer without copying it.
+ */
+public final class SourceText {
+
+    private SourceText() {}
+
+    /**
+     * The text itself if it already ends with a line break, otherwise a view
+     * that reads one extra '\n' past its end.
+     */
+    public static CharSequence withFinalNewline(CharSequence text) {
+        int length = text.length();
+        if (length > 0 && text.charAt(length-1) == '\n')
+            return text;
+
+        return new NewlineTerminated(text);
+    }
+
+    /**
+     * Reads the bytes as chars one to one, only valid for ASCII text.
+     */
+    public static CharSequence ascii(ByteBuffer bytes) {
+        return new AsciiBytes(bytes, 0, bytes.limit());
+    }
+
+    private static class NewlineTerminated implements CharSequence {
+        private final CharSequence text;
+
+        NewlineTerminated(CharSequence text) {
+            this.text = text;
+        }
+
+        public int length() {
+            return text.length()+1;
+        }
+
+        public char charAt(int index) {
+            if (index == text.length())
+                return '\n';
+            return text.charAt(index);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            if (end <= text.length())
+                return text.subSequence(start, end);
+
+            StringBuilder sb = new StringBuilder(end-start);
+            sb.append(text, Math.min(start, text.length()), text.length());
+            if (start <= text.length())
+                sb.append('\n');
+            return sb.toString();
+        }
+
+        public String toString() {
+            return text+"\n";
+        }
+    }
+
+    private static class AsciiBytes implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        AsciiBytes(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("index "+index+", length "+length);
+            return (char)bytes.get(offset+index);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end)
+                throw new IndexOutOfBoundsException("start "+start+", end "+end+", length "+length);
+            return new AsciiBytes(bytes, offset+start, end-start);
+        }
+
+        public String toString() {
+            byte[] out = new byte[length];
+            for (int i = 0; i < length; i++)
+                out[i] = bytes.get(offset+i);
+            return new String(out, StandardCharsets.US_ASCII);
+        }
+    }
+}
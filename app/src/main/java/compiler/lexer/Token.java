@@ -1,5 +1,6 @@
 package compiler.lexer;
 
+import compiler.syntax.Symbol;
 import compiler.syntax.Type;
 
 public class Token {
@@ -7,10 +8,13 @@ public class Token {
     public Type type;
     public String value;
     public int[] index;
+    // interned name of an ID, null for other tokens
+    public Symbol symbol;
 
     public Token(Token other) {
         this.type = other.type;
         this.value = other.value;
+        this.symbol = other.symbol;
     }
 
     public Token(Type type, int[] index) { this(type, "", index); }
@@ -19,6 +23,10 @@ public class Token {
         this.value = value;
         this.index = index;
     }
+    public Token(Type type, Symbol symbol, int[] index) {
+        this(type, symbol.name, index);
+        this.symbol = symbol;
+    }
 
     public String toString() {
         StringBuilder sb = new StringBuilder();
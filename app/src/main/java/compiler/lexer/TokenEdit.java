@@ -0,0 +1,22 @@
+package compiler.lexer;
+
+/**
+ * Tokens replaced by {@link TokenStream#edit}: removedTokens old tokens from
+ * firstToken on were replaced by insertedTokens new ones, everything after
+ * them is unchanged apart from its offsets.
+ */
+public class TokenEdit {
+    public int firstToken;
+    public int removedTokens;
+    public int insertedTokens;
+
+    public TokenEdit(int firstToken, int removedTokens, int insertedTokens) {
+        this.firstToken = firstToken;
+        this.removedTokens = removedTokens;
+        this.insertedTokens = insertedTokens;
+    }
+
+    public String toString() {
+        return "("+firstToken+", -"+removedTokens+", +"+insertedTokens+")";
+    }
+}
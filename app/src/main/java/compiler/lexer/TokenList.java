@@ -0,0 +1,82 @@
+package compiler.lexer;
+
+import java.util.List;
+
+import compiler.syntax.SymbolPool;
+import compiler.syntax.Type;
+
+/**
+ * Tokens that were already scanned, or a range of them. Several TokenLists
+ * can read the same list from different threads.
+ */
+public class TokenList implements TokenSource {
+    private final List<Token> tokens;
+    private final int end;
+    private final SymbolPool symbols;
+
+    // next token taken by next()
+    private int cursor;
+
+    public TokenList(List<Token> tokens, SymbolPool symbols) {
+        this(tokens, 0, tokens.size(), symbols);
+    }
+    /**
+     * Reads tokens [from, to) of the list.
+     */
+    public TokenList(List<Token> tokens, int from, int to, SymbolPool symbols) {
+        this.tokens = tokens;
+        this.end = to;
+        this.symbols = symbols;
+        cursor = from;
+    }
+
+    /**
+     * Index in the list of the next token.
+     */
+    public int getPosition() {
+        return cursor;
+    }
+
+    public void setPosition(int position) {
+        if (position < 0 || position > end)
+            throw new IndexOutOfBoundsException("position "+position+", end "+end);
+        cursor = position;
+    }
+
+    public Token next() {
+        if (cursor >= end)
+            return null;
+
+        return tokens.get(cursor++);
+    }
+
+    public Token peek() {
+        if (cursor >= end)
+            return null;
+
+        return tokens.get(cursor);
+    }
+
+    public Type nextType() {
+        return nextType(1);
+    }
+
+    public Type nextType(int lookAheadCount) {
+        if (lookAheadCount < 1)
+            return null;
+
+        int token = cursor+lookAheadCount-1;
+        if (token >= end)
+            return null;
+
+        return tokens.get(token).type;
+    }
+
+    public boolean hasNext() {
+        return cursor < end;
+    }
+
+    public SymbolPool getSymbols() {
+        return symbols;
+    }
+}
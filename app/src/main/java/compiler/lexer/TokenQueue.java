@@ -0,0 +1,154 @@
+package compiler.lexer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import compiler.syntax.SymbolPool;
+import compiler.syntax.Type;
+
+/**
+ * Tokens handed over from another thread through a bounded queue. A lexer
+ * thread takes tokens from a source and puts them in the queue in batches,
+ * blocking while it is full, and the reading side blocks while it is empty.
+ *
+ * Only one thread may read. close() stops the lexer thread if the reader
+ * gives up before the end.
+ */
+public class TokenQueue implements TokenSource, AutoCloseable {
+    // put after the last batch
+    private static final Token[] END = new Token[0];
+
+    private final BlockingQueue<Token[]> queue;
+    private final SymbolPool symbols;
+    private final Thread lexer;
+    // thrown on the lexer thread, rethrown to the reader at the end
+    private volatile RuntimeException failure;
+
+    // tokens taken from the queue and not read yet, from index on
+    private Token[] buffer;
+    private int index;
+    private boolean ended;
+
+    /**
+     * Starts a thread taking tokens from source, at most batches batches of
+     * batchSize tokens are waiting at a time.
+     */
+    public TokenQueue(TokenSource source, int batchSize, int batches) {
+        queue = new ArrayBlockingQueue<Token[]>(batches);
+        symbols = source.getSymbols();
+
+        buffer = END;
+        index = 0;
+        ended = false;
+
+        lexer = new Thread(() -> {
+            try {
+                Token[] batch = new Token[batchSize];
+                int size = 0;
+
+                for (Token t = source.next(); t != null; t = source.next()) {
+                    batch[size++] = t;
+                    if (size == batchSize) {
+                        queue.put(batch);
+                        batch = new Token[batchSize];
+                        size = 0;
+                    }
+                }
+
+                if (size > 0) {
+                    Token[] last = new Token[size];
+                    System.arraycopy(batch, 0, last, 0, size);
+                    queue.put(last);
+                }
+            } catch (InterruptedException e) {
+                // closed, nobody is reading any more
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }, "lexer");
+        lexer.setDaemon(true);
+        lexer.start();
+    }
+
+    public Token next() {
+        if (!fill(1))
+            return null;
+
+        Token out = buffer[index];
+        buffer[index++] = null;
+        return out;
+    }
+
+    public Token peek() {
+        if (!fill(1))
+            return null;
+
+        return buffer[index];
+    }
+
+    public Type nextType() {
+        return nextType(1);
+    }
+
+    public Type nextType(int lookAheadCount) {
+        if (lookAheadCount < 1 || !fill(lookAheadCount))
+            return null;
+
+        return buffer[index+lookAheadCount-1].type;
+    }
+
+    public boolean hasNext() {
+        return fill(1);
+    }
+
+    public SymbolPool getSymbols() {
+        return symbols;
+    }
+
+    public void close() {
+        lexer.interrupt();
+    }
+
+    /**
+     * Takes batches until count tokens are buffered, false if the tokens run
+     * out first.
+     */
+    private boolean fill(int count) {
+        while (buffer.length-index < count && !ended) {
+            Token[] batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for tokens", e);
+            }
+
+            if (batch == END) {
+                ended = true;
+                if (failure != null)
+                    throw failure;
+                break;
+            }
+
+            if (index == buffer.length) {
+                buffer = batch;
+            } else {
+                // lookahead past the end of a batch, rare
+                Token[] joined = new Token[buffer.length-index+batch.length];
+                System.arraycopy(buffer, index, joined, 0, buffer.length-index);
+                System.arraycopy(batch, 0, joined, buffer.length-index, batch.length);
+                buffer = joined;
+            }
+            index = 0;
+        }
+
+        return buffer.length-index >= count;
+    }
+}
@@ -0,0 +1,454 @@
+package compiler.lexer;
+
+import compiler.syntax.Type;
+
+/**
+ * Single pass scanner over the source text. Each token is classified with one
+ * walk over its characters instead of trying the pattern of every {@link Type}:
+ * operators and punctuation go through a transition table built from
+ * {@link Type#getLiteral()}, the rest are hand coded states. Words are
+ * scanned whole and then looked up in a perfect hash table of the reserved
+ * words, so "intx" is one ID.
+ *
+ * Line and index bookkeeping is the same as the old regex lexer, comments
+ * included, so positions in error messages do not change.
+ */
+public class TokenScanner {
+
+    private static final int ASCII = 128;
+
+    // transition table for the fixed tokens that are not words, state 0 is
+    // the start state
+    private static final int[][] transitions;
+    private static final Type[] accepting;
+
+    // reserved words, at keywordIndex() of their String hash code
+    private static final Type[] keywords;
+    private static final int keywordMultiplier;
+
+    static {
+        int states = 1;
+        int words = 0;
+        for (Type t : Type.values()) {
+            if (t.getLiteral() == null)
+                continue;
+
+            if (isIdStart(t.getLiteral().charAt(0)))
+                words++;
+            else
+                states += t.getLiteral().length();
+        }
+
+        transitions = new int[states][ASCII];
+        accepting = new Type[states];
+
+        int used = 1;
+        for (Type t : Type.values()) {
+            String literal = t.getLiteral();
+            if (literal == null || isIdStart(literal.charAt(0)))
+                continue;
+
+            int state = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                if (transitions[state][c] == 0)
+                    transitions[state][c] = used++;
+                state = transitions[state][c];
+            }
+
+            // first declared type wins, like the old in-order pattern search
+            if (accepting[state] == null)
+                accepting[state] = t;
+        }
+
+        // smallest table without collisions, trying multipliers spread over
+        // the int range
+        int size = Integer.highestOneBit(Math.max(words, 1))*2;
+        int tries = 0;
+        int multiplier = 0x9E3779B9;
+        while (keywordTable(size, multiplier) == null) {
+            multiplier += 0x9E3779B9*2;
+            if (++tries == 1 << 16) {
+                if (size >= 1 << 12)
+                    throw new IllegalStateException("no perfect hash for the reserved words");
+                tries = 0;
+                size *= 2;
+            }
+        }
+
+        keywords = keywordTable(size, multiplier);
+        keywordMultiplier = multiplier;
+    }
+
+    private final CharSequence input;
+
+    private int pos;
+    private int line;
+    private int index;
+
+    // last scanned token
+    private int start;
+    private int valueEnd;
+    private int tokenLine;
+    private int tokenIndex;
+    // String hash code of the last ID or reserved word
+    private int hash;
+    // one past the last character the scan looked at, input length + 1 if it
+    // depended on where the input ends
+    private int examined;
+
+    public TokenScanner(CharSequence input) {
+        this(input, 0);
+    }
+    /**
+     * Starts scanning at pos, which must be where an earlier scan of the same
+     * text stopped. Line and index are then counted from that point.
+     */
+    public TokenScanner(CharSequence input, int pos) {
+        this.input = input;
+        this.pos = pos;
+        line = 1;
+        index = 0;
+    }
+
+    /**
+     * Scans the next token, returning its type or null at the end of the
+     * input. Text no token matches is returned as an ERROR token, and
+     * scanning goes on after it. The token's text and position are read with
+     * the getters.
+     */
+    public Type scan() {
+        examined = pos;
+
+        // Inc line count
+        if (isNewline(peek(pos))) {
+            start = pos;
+            valueEnd = pos;
+            tokenLine = line;
+            tokenIndex = index;
+
+            pos = newlineEnd(pos);
+            line++;
+            index = 0;
+            return Type.NEWLINE;
+        }
+
+        // Skip spaces
+        int spaceStart = pos;
+        while (isSpace(peek(pos)))
+            pos++;
+        index += pos - spaceStart;
+
+        // Comments
+        int commentEnd = lineCommentEnd(pos);
+        if (commentEnd != -1) {
+            pos = commentEnd;
+            line++;
+        }
+
+        commentEnd = blockCommentEnd(pos);
+        if (commentEnd != -1) {
+            line += newlineCount(pos, commentEnd);
+            pos = commentEnd;
+        }
+
+        start = pos;
+        tokenLine = line;
+        tokenIndex = index;
+
+        Type type = match();
+        if (type == null)
+            return null;
+
+        index += valueEnd - start;
+        pos = valueEnd;
+        return type;
+    }
+
+    /**
+     * Matches one token at pos without consuming it, leaving its end in
+     * valueEnd.
+     */
+    private Type match() {
+        int c = peek(pos);
+
+        if (c == '/') {
+            valueEnd = blockCommentEnd(pos);
+            if (valueEnd != -1)
+                return Type.BLOCKCOMMENT;
+
+            valueEnd = lineCommentEnd(pos);
+            if (valueEnd != -1)
+                return Type.LINECOMMENT;
+
+            // The old regex lexer skipped to the end of an unterminated
+            // comment or string, where a failed search had left \G. That text
+            // is one ERROR token.
+            if (startsWith(pos, '/', '/') && lineEnd(pos+2) > pos+2) {
+                valueEnd = lineEnd(pos+2);
+                return Type.ERROR;
+            }
+        }
+
+        if (isDigit(c)) {
+            int i = digitsEnd(pos);
+            if (peek(i) == '.' && isDigit(peek(i+1))) {
+                valueEnd = digitsEnd(i+1);
+                return Type.FLOAT;
+            }
+
+            valueEnd = i;
+            return Type.INT;
+        }
+
+        if (c == '"') {
+            int i = pos+1;
+            while (peek(i) != -1 && peek(i) != '"' && !isLineTerminator(peek(i)))
+                i++;
+
+            if (peek(i) == '"') {
+                valueEnd = i+1;
+                return Type.STR;
+            }
+
+            // unterminated, see above
+            if (i > pos+1 && isNewline(peek(i))) {
+                start = i;
+                valueEnd = newlineEnd(i);
+                return Type.NEWLINE;
+            }
+            valueEnd = i;
+            return Type.ERROR;
+        }
+
+        // fixed tokens, longest match
+        Type fixed = null;
+        int state = 0;
+        for (int i = pos; ; i++) {
+            int f = peek(i);
+            if (f < 0 || f >= ASCII || transitions[state][f] == 0)
+                break;
+
+            state = transitions[state][f];
+            if (accepting[state] != null) {
+                fixed = accepting[state];
+                valueEnd = i+1;
+            }
+        }
+        if (fixed != null)
+            return fixed;
+
+        if (isNewline(c)) {
+            valueEnd = newlineEnd(pos);
+            return Type.NEWLINE;
+        }
+
+        if (isIdStart(c)) {
+            // same hash as String.hashCode()
+            int hash = c;
+            int i = pos+1;
+            for (int d = peek(i); isIdStart(d) || isDigit(d); d = peek(++i))
+                hash = 31*hash + d;
+
+            valueEnd = i;
+            this.hash = hash;
+            return word(pos, i, hash);
+        }
+
+        if (c == -1)
+            return null;
+
+        // No match, one character is an ERROR token, or both halves of a
+        // surrogate pair
+        valueEnd = pos+1;
+        if (Character.isHighSurrogate((char)c) && Character.isLowSurrogate((char)peek(pos+1)))
+            valueEnd = pos+2;
+        return Type.ERROR;
+    }
+
+    /**
+     * Reserved word type of the word in [from, to) with the given hash, ID if
+     * it is not one
+     */
+    private Type word(int from, int to, int hash) {
+        Type t = keywords[keywordIndex(hash, keywordMultiplier, keywords.length)];
+        if (t == null || t.getLiteral().length() != to-from)
+            return Type.ID;
+
+        String literal = t.getLiteral();
+        for (int i = 0; i < literal.length(); i++) {
+            if (input.charAt(from+i) != literal.charAt(i))
+                return Type.ID;
+        }
+        return t;
+    }
+
+    // table of the reserved words, null if two of them collide
+    private static Type[] keywordTable(int size, int multiplier) {
+        Type[] out = new Type[size];
+
+        for (Type t : Type.values()) {
+            String literal = t.getLiteral();
+            if (literal == null || !isIdStart(literal.charAt(0)))
+                continue;
+
+            int i = keywordIndex(literal.hashCode(), multiplier, size);
+            if (out[i] != null)
+                return null;
+            out[i] = t;
+        }
+
+        return out;
+    }
+
+    // multiplicative hash, size is a power of two
+    private static int keywordIndex(int hash, int multiplier, int size) {
+        return (hash*multiplier) >>> (32 - Integer.numberOfTrailingZeros(size));
+    }
+
+    public String getValue() {
+        return input.subSequence(start, valueEnd).toString();
+    }
+
+    /**
+     * String hash code of the last token's text if it was an ID.
+     */
+    public int getHash() {
+        return hash;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getLength() {
+        return valueEnd - start;
+    }
+
+    public int getLine() {
+        return tokenLine;
+    }
+
+    public int getIndex() {
+        return tokenIndex;
+    }
+
+    /**
+     * Where the next scan starts.
+     */
+    public int getPos() {
+        return pos;
+    }
+
+    /**
+     * One past the last character the last scan looked at, or the input
+     * length + 1 if the result depended on where the input ends. Editing
+     * the text at or after this point cannot change the scanned token.
+     */
+    public int getExamined() {
+        return examined;
+    }
+
+    // character at i or -1 past the end, recording how far the scan looked
+    private int peek(int i) {
+        if (i >= input.length()) {
+            examined = input.length()+1;
+            return -1;
+        }
+
+        if (i >= examined)
+            examined = i+1;
+        return input.charAt(i);
+    }
+
+    /**
+     * "//" up to and including the line break, -1 if there is no comment at i
+     */
+    private int lineCommentEnd(int i) {
+        if (!startsWith(i, '/', '/'))
+            return -1;
+
+        i = lineEnd(i+2);
+        if (isNewline(peek(i)))
+            return newlineEnd(i);
+
+        return -1;
+    }
+
+    /**
+     * "/*" up to the first closing star slash plus any following line breaks,
+     * -1 if there is no closed comment at i
+     */
+    private int blockCommentEnd(int i) {
+        if (!startsWith(i, '/', '*'))
+            return -1;
+
+        for (i += 2; peek(i+1) != -1; i++) {
+            if (peek(i) == '*' && peek(i+1) == '/') {
+                i += 2;
+                while (isNewline(peek(i)))
+                    i++;
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean startsWith(int i, char first, char second) {
+        return peek(i) == first && peek(i+1) == second;
+    }
+
+    // first line terminator at or after i
+    private int lineEnd(int i) {
+        while (peek(i) != -1 && !isLineTerminator(peek(i)))
+            i++;
+        return i;
+    }
+
+    private int newlineEnd(int i) {
+        if (peek(i) == '\r' && peek(i+1) == '\n')
+            return i+2;
+        return i+1;
+    }
+
+    private int digitsEnd(int i) {
+        while (isDigit(peek(i)))
+            i++;
+        return i;
+    }
+
+    private int newlineCount(int from, int to) {
+        int out = 0;
+
+        for (int i = from; i < to; i++) {
+            if (input.charAt(i) == '\n')
+                out++;
+        }
+
+        return out;
+    }
+
+    private static boolean isNewline(int c) {
+        return c == '\n' || c == '\r';
+    }
+
+    // characters that end a regex "."
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // regex "\s"
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // regex "[A-z]", which also takes [ \ ] ^ _ `
+    private static boolean isIdStart(int c) {
+        return c >= 'A' && c <= 'z';
+    }
+}
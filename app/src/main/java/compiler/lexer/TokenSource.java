@@ -0,0 +1,35 @@
+package compiler.lexer;
+
+import compiler.syntax.SymbolPool;
+import compiler.syntax.Type;
+
+/**
+ * Token input for the parser, either scanned on demand by {@link Lexer} or
+ * read from a prescanned {@link TokenStream}.
+ */
+public interface TokenSource {
+    /**
+     * Takes the next token, null at the end of the input.
+     */
+    Token next();
+
+    /**
+     * The next token without taking it, null at the end of the input.
+     */
+    Token peek();
+
+    Type nextType();
+
+    /**
+     * Type of the token lookAheadCount tokens ahead without taking it, null
+     * past the end of the input.
+     */
+    Type nextType(int lookAheadCount);
+
+    boolean hasNext();
+
+    /**
+     * Pool the ID tokens' symbols are interned in.
+     */
+    SymbolPool getSymbols();
+}
@@ -0,0 +1,435 @@
+package compiler.lexer;
+
+import java.util.concurrent.ForkJoinPool;
+
+import compiler.syntax.SymbolPool;
+import compiler.syntax.Type;
+
+/**
+ * Whole-file token list kept as parallel int arrays (type ordinal, start
+ * offset, length) instead of one {@link Token} per token. Lexemes are only
+ * cut out of the source when asked for, and line/column are looked up in a
+ * table of line start offsets built once, so positions are the real source
+ * positions.
+ *
+ * The stream can be edited in place with {@link #edit}, which rescans only
+ * around the changed text.
+ *
+ * Large inputs can be scanned in parallel by passing a ForkJoinPool, the
+ * resulting stream is the same as a sequential scan.
+ */
+public class TokenStream implements TokenSource {
+
+    private static final Type[] TYPES = Type.values();
+
+    // A scan normally looks at most a few characters past where it stops
+    // (the keyword table, "1." before a digit). Scans that looked further
+    // are "far" and tracked separately by edit().
+    private static final int LOOKAHEAD = 8;
+
+    // text as given and with its final line break
+    private CharSequence source;
+    private CharSequence input;
+
+    // per token, offsets relative to the input length after the gap
+    private final GapIntArray types;
+    private final GapIntArray starts;
+    // length of the token text, or -(line break length) for a NEWLINE
+    // without text
+    private final GapIntArray lengths;
+    // one past the last character looked at to scan the token
+    private final GapIntArray examined;
+
+    private int farTokens;
+
+    // offsets just past each line break, relative to the source length after
+    // the gap
+    private final GapIntArray lineStarts;
+
+    // next token taken by next()
+    private int cursor;
+
+    // the token get() built last, so peek() and then next() build it once
+    private int builtIndex;
+    private Token built;
+
+    private final SymbolPool symbols;
+
+    public TokenStream(CharSequence input) {
+        this(input, null, new SymbolPool());
+    }
+    public TokenStream(CharSequence input, ForkJoinPool pool) {
+        this(input, pool, new SymbolPool());
+    }
+
+    /**
+     * Scans input in chunks on pool, or on the calling thread if pool is null
+     * or input is too small to split. IDs are interned in symbols as they
+     * are read.
+     */
+    public TokenStream(CharSequence input, ForkJoinPool pool, SymbolPool symbols) {
+        this.source = input;
+        this.symbols = symbols;
+        this.input = SourceText.withFinalNewline(input);
+
+        // rough guess, grown as needed
+        int capacity = this.input.length()/4 + 16;
+        types = new GapIntArray(capacity, false);
+        starts = new GapIntArray(capacity, true);
+        lengths = new GapIntArray(capacity, false);
+        examined = new GapIntArray(capacity, true);
+        farTokens = 0;
+
+        lineStarts = new GapIntArray(capacity/8, true);
+        lineStarts.insert(0);
+
+        if (pool != null && this.input.length() >= 2*ParallelScan.MIN_CHUNK) {
+            ParallelScan.scan(this, source, this.input, pool);
+        } else {
+            scanAll(new TokenScanner(this.input), 0, Integer.MAX_VALUE);
+            addLineStarts(0, source.length());
+        }
+
+        cursor = 0;
+        builtIndex = -1;
+    }
+
+    public int size() {
+        return types.size();
+    }
+
+    public Type getType(int token) {
+        return TYPES[types.get(token, 0)];
+    }
+
+    public int getStart(int token) {
+        return starts.get(token, input.length());
+    }
+
+    public int getLength(int token) {
+        return Math.max(lengths.get(token, 0), 0);
+    }
+
+    public String getValue(int token) {
+        int length = getLength(token);
+        if (length == 0)
+            return "";
+
+        // fixed tokens share their literal instead of copying the source
+        String literal = getType(token).getLiteral();
+        if (literal != null)
+            return literal;
+
+        int start = getStart(token);
+        return input.subSequence(start, start+length).toString();
+    }
+
+    /**
+     * {line, column} of the token, line counted from 1 and column from 0
+     */
+    public int[] getPosition(int token) {
+        int offset = getStart(token);
+        int line = lastAtOrBefore(lineStarts, source.length(), offset);
+
+        return new int[] {line+1, offset-lineStarts.get(line, source.length())};
+    }
+
+    public Token get(int token) {
+        if (token == builtIndex)
+            return built;
+
+        if (getType(token) == Type.ID) {
+            int start = getStart(token);
+            built = new Token(Type.ID, symbols.intern(input, start, start+getLength(token)), getPosition(token));
+        } else {
+            built = new Token(getType(token), getValue(token), getPosition(token));
+        }
+        builtIndex = token;
+        return built;
+    }
+
+    /**
+     * Index of the next token taken by next().
+     */
+    public int getPosition() {
+        return cursor;
+    }
+
+    public void setPosition(int position) {
+        if (position < 0 || position > size())
+            throw new IndexOutOfBoundsException("position "+position+", size "+size());
+        cursor = position;
+    }
+
+    public Token next() {
+        if (cursor >= size())
+            return null;
+
+        return get(cursor++);
+    }
+
+    public Token peek() {
+        if (cursor >= size())
+            return null;
+
+        return get(cursor);
+    }
+
+    public Type nextType() {
+        return nextType(1);
+    }
+
+    public Type nextType(int lookAheadCount) {
+        if (lookAheadCount < 1)
+            return null;
+
+        int token = cursor+lookAheadCount-1;
+        if (token >= size())
+            return null;
+
+        return getType(token);
+    }
+
+    public boolean hasNext() {
+        return cursor < size();
+    }
+
+    public SymbolPool getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Replaces removedLength characters at offset with insertedText and
+     * rescans from the last token the edit could have changed until the new
+     * tokens line up with the old ones again. Takes the stream back to its
+     * first token.
+     */
+    public TokenEdit edit(int offset, int removedLength, CharSequence insertedText) {
+        final int oldLength = source.length();
+        final int oldInputLength = input.length();
+        final int editEnd = offset+removedLength;
+
+        if (offset < 0 || removedLength < 0 || editEnd > oldLength)
+            throw new IndexOutOfBoundsException("offset "+offset+", removed "+removedLength+", length "+oldLength);
+
+        // copied once, edited in place after that
+        if (!(source instanceof GapText))
+            source = new GapText(source);
+
+        // first token whose scan looked at the edited text
+        int first = lastAtOrBefore(offset);
+        for (int i = first-1; i >= 0 && scanEnd(i)+LOOKAHEAD > offset; i--) {
+            if (examined.get(i, oldInputLength) > offset)
+                first = i;
+        }
+        for (int i = 0; farTokens > 0 && i < first; i++) {
+            if (isFar(i, oldInputLength)) {
+                first = i;
+                break;
+            }
+        }
+        int scanFrom = first == 0 ? 0 : scanEnd(first-1);
+
+        // old tokens from here on are read shifted by the edit
+        moveTokenGap(first, oldInputLength);
+        removeLineStarts(offset, editEnd, oldLength);
+
+        ((GapText)source).replace(offset, removedLength, insertedText);
+        input = SourceText.withFinalNewline(source);
+
+        addLineStarts(offset, offset+insertedText.length());
+
+        // The old scans that start past the edit read the same text as
+        // before, unless the end of the text (and so its final line break)
+        // was edited.
+        int resyncFrom = editEnd == oldLength ? Integer.MAX_VALUE : offset+insertedText.length();
+
+        int before = size();
+        scanAll(new TokenScanner(input, scanFrom), scanFrom + input.length()-oldInputLength, resyncFrom);
+
+        cursor = 0;
+        builtIndex = -1;
+
+        int inserted = types.gap()-first;
+        return new TokenEdit(first, before-size()+inserted, inserted);
+    }
+
+    /**
+     * Scans tokens into the gap. Old tokens after the gap, the first of which
+     * was scanned from oldScanStart, are dropped as the scan passes them, and
+     * scanning stops early once it reaches the start of an old scan at or
+     * past resyncFrom.
+     */
+    private void scanAll(TokenScanner scanner, int oldScanStart, int resyncFrom) {
+        final int inputLength = input.length();
+
+        while (true) {
+            int pos = scanner.getPos();
+
+            while (types.gap() < size() && (oldScanStart < pos || oldScanStart < resyncFrom)) {
+                int token = types.gap();
+                oldScanStart = scanEnd(token);
+                if (isFar(token, inputLength))
+                    farTokens--;
+
+                types.removeAfterGap();
+                starts.removeAfterGap();
+                lengths.removeAfterGap();
+                examined.removeAfterGap();
+            }
+
+            if (oldScanStart == pos && pos >= resyncFrom)
+                return;
+
+            Type t = scanner.scan();
+            if (t == null) {
+                while (types.gap() < size()) {
+                    if (isFar(types.gap(), inputLength))
+                        farTokens--;
+
+                    types.removeAfterGap();
+                    starts.removeAfterGap();
+                    lengths.removeAfterGap();
+                    examined.removeAfterGap();
+                }
+                return;
+            }
+
+            append(t.ordinal(), scanner.getStart(), scannedLength(scanner), scanner.getExamined());
+        }
+    }
+
+    /**
+     * Adds a token in front of the gap.
+     */
+    void append(int type, int start, int length, int examined) {
+        types.insert(type);
+        starts.insert(start);
+        lengths.insert(length);
+        this.examined.insert(examined);
+
+        if (isFar(types.gap()-1, input.length()))
+            farTokens++;
+    }
+
+    // room for count more tokens
+    void reserve(int count) {
+        types.reserve(count);
+        starts.reserve(count);
+        lengths.reserve(count);
+        examined.reserve(count);
+    }
+
+    /**
+     * Adds count tokens to be filled in with setAll(), far of which are far.
+     */
+    void appendBlank(int count, int far) {
+        types.insertBlank(count);
+        starts.insertBlank(count);
+        lengths.insertBlank(count);
+        examined.insertBlank(count);
+        farTokens += far;
+    }
+
+    /**
+     * Overwrites the tokens from index on with tokens [from, to) of tables
+     * filled in the same way as this stream's, with absolute offsets. Ranges
+     * that do not overlap can be set from different threads.
+     */
+    void setAll(int index, GapIntArray types, GapIntArray starts, GapIntArray lengths, GapIntArray examined, int from, int to) {
+        this.types.setAll(index, types, from, to);
+        this.starts.setAll(index, starts, from, to);
+        this.lengths.setAll(index, lengths, from, to);
+        this.examined.setAll(index, examined, from, to);
+    }
+
+    void appendLineStarts(GapIntArray lineStarts) {
+        this.lineStarts.insertAll(lineStarts, 0, lineStarts.size());
+    }
+
+    // value for the lengths table of the token just scanned
+    static int scannedLength(TokenScanner scanner) {
+        int length = scanner.getLength();
+        if (length == 0)
+            length = scanner.getStart()-scanner.getPos();
+        return length;
+    }
+
+    private int scanEnd(int token) {
+        return getStart(token) + Math.abs(lengths.get(token, 0));
+    }
+
+    private boolean isFar(int token, int inputLength) {
+        return isFarScan(scanEnd(token), examined.get(token, inputLength));
+    }
+
+    static boolean isFarScan(int scanEnd, int examined) {
+        return examined > scanEnd+LOOKAHEAD;
+    }
+
+    /**
+     * Last token whose scan started at or before offset, size() for the scan
+     * that ended the stream.
+     */
+    private int lastAtOrBefore(int offset) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low+high+1) >>> 1;
+            if (scanEnd(mid-1) <= offset)
+                low = mid;
+            else
+                high = mid-1;
+        }
+        return low;
+    }
+
+    // last entry of a sorted array that is at or before value
+    private static int lastAtOrBefore(GapIntArray array, int base, int value) {
+        int low = 0;
+        int high = array.size()-1;
+        while (low < high) {
+            int mid = (low+high+1) >>> 1;
+            if (array.get(mid, base) <= value)
+                low = mid;
+            else
+                high = mid-1;
+        }
+        return low;
+    }
+
+    private void moveTokenGap(int to, int inputLength) {
+        types.moveGap(to, inputLength);
+        starts.moveGap(to, inputLength);
+        lengths.moveGap(to, inputLength);
+        examined.moveGap(to, inputLength);
+    }
+
+    /**
+     * Drops the line starts that depend on the characters in [from, to), that
+     * is every start in [from, to] apart from the one at 0.
+     */
+    private void removeLineStarts(int from, int to, int length) {
+        int line = lastAtOrBefore(lineStarts, length, from);
+        if (lineStarts.get(line, length) < Math.max(from, 1))
+            line++;
+
+        lineStarts.moveGap(line, length);
+        while (lineStarts.gap() < lineStarts.size() && lineStarts.get(lineStarts.gap(), length) <= to)
+            lineStarts.removeAfterGap();
+    }
+
+    /**
+     * Adds the line starts that depend on the characters in [from, to), the
+     * gap has to be at the first line start past from.
+     */
+    private void addLineStarts(int from, int to) {
+        final int length = source.length();
+
+        for (int i = Math.max(from-1, 0); i < to; i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || (c == '\r' && (i+1 == length || source.charAt(i+1) != '\n')))
+                lineStarts.insert(i+1);
+        }
+    }
+}
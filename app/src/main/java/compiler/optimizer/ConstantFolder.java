@@ -0,0 +1,389 @@
+package compiler.optimizer;
+
+import java.util.List;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.ForParts;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolver;
+import compiler.syntax.Arithmetic;
+import compiler.syntax.Type;
+
+/**
+ * Folds constant subtrees of a parsed program into literals and applies the
+ * algebraic identities that hold for every value, changing the tree in
+ * place. Works bottom up, so 60 * 60 * 24 becomes one IntLiteral and
+ * z * 1 + 0 becomes z when z is an int.
+ *
+ * Everything is worked out as the interpreters would: an expression is int
+ * unless an operand is float, ints wrap, floats are Java floats. An int
+ * division by zero is left for the run to fail on. An identity only drops
+ * an operand of the same type as the whole expression, since i * 1.0 is a
+ * float even though i is not. It only drops a function call or an int
+ * division where the run would not have got to it either (false && f()).
+ *
+ * Conditions that fold to a literal decide their statement: if (true) loses
+ * its else, if (false) becomes its else or goes, and while (false) goes.
+ */
+public class ConstantFolder {
+    private final Resolution res;
+
+    private ConstantFolder(ASTNode<?> program) {
+        res = Resolver.resolve(program);
+    }
+
+    /**
+     * Folds program, returns how many nodes that removed from it.
+     */
+    public static int fold(ASTNode<?> program) {
+        int before = size(program);
+        new ConstantFolder(program).children(program);
+        return before - size(program);
+    }
+
+    /**
+     * Nodes in a tree, a node used in two places is counted twice.
+     */
+    public static int size(ASTNode<?> node) {
+        int out = 1;
+        for (Object branch : node.branches) {
+            if (branch instanceof ASTNode<?>)
+                out += size((ASTNode<?>)branch);
+        }
+        return out;
+    }
+
+    /* statements */
+
+    private void children(ASTNode<?> node) {
+        List<Object> branches = branches(node);
+        for (int i = 0; i < branches.size(); i++) {
+            if (!(branches.get(i) instanceof ASTNode<?>))
+                continue;
+
+            ASTNode<?> folded = simplify((ASTNode<?>)branches.get(i));
+            if (folded != null) {
+                branches.set(i, folded);
+            } else {
+                // a statement that never runs
+                branches.remove(i);
+                i--;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Object> branches(ASTNode<?> node) {
+        return (List<Object>)node.branches;
+    }
+
+    /**
+     * What node becomes, null for a statement that can go.
+     */
+    private ASTNode<?> simplify(ASTNode<?> node) {
+        if (node.name.equals("Error"))
+            return node;
+        children(node);
+
+        switch (node.name) {
+            case "IfStatement":
+                return ifStatement(node);
+            case "WhileExpression":
+                return isFalse((ASTNode<?>)node.fst()) ? null : node;
+            case "ForStatement":
+                return forStatement(node);
+            case "Factor":
+                return negate(node);
+            case "BinaryExpression":
+            case "Term":
+            case "Exp":
+                return arithmetic(node);
+            case "BoolFactor":
+                return not(node);
+            case "BoolExpression":
+                return logic(node);
+            case "BoolTerm":
+                return compare(node);
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * BoolExpression BlockStatementList (IfStatement | BlockStatementList)?,
+     * an else if that went is already gone
+     */
+    private ASTNode<?> ifStatement(ASTNode<?> node) {
+        ASTNode<?> condition = (ASTNode<?>)node.fst();
+        List<Object> branches = branches(node);
+
+        if (isTrue(condition)) {
+            while (branches.size() > 2)
+                branches.remove(2);
+            return node;
+        }
+        if (!isFalse(condition))
+            return node;
+
+        if (branches.size() < 3)
+            return null;
+
+        ASTNode<?> otherwise = (ASTNode<?>)node.thrd();
+        if (otherwise.name.equals("IfStatement"))
+            return otherwise;
+
+        // the else block keeps its own scope behind if (true)
+        branches.set(0, bool(true));
+        branches.set(1, otherwise);
+        branches.remove(2);
+        return node;
+    }
+
+    // the declaration is in the scope around the loop, so it stays
+    private ASTNode<?> forStatement(ASTNode<?> node) {
+        ForParts parts = new ForParts(node);
+        if (parts.condition != null && isFalse(parts.condition))
+            return parts.declaration;
+        return node;
+    }
+
+    /* expressions */
+
+    private ASTNode<?> negate(ASTNode<?> node) {
+        ASTNode<?> operand = (ASTNode<?>)node.fst();
+        if (operand.name.equals("IntLiteral"))
+            return number(-(Integer)operand.fst());
+        if (operand.name.equals("FloatLiteral"))
+            return number(-(Float)operand.fst());
+        // -(-x)
+        if (operand.name.equals("Factor"))
+            return (ASTNode<?>)operand.fst();
+        return node;
+    }
+
+    private ASTNode<?> arithmetic(ASTNode<?> node) {
+        ASTNode<?> a = (ASTNode<?>)node.fst();
+        ASTNode<?> b = (ASTNode<?>)node.snd();
+        Type type = res.typeOf(node);
+        Type op = node.operator;
+
+        if (isNumber(a) && isNumber(b)) {
+            Object value;
+            if (type == Type.INT_ID)
+                value = intOperation(op, (Integer)a.fst(), (Integer)b.fst());
+            else
+                value = floatOperation(op, toFloat(a), toFloat(b));
+            if (value != null)
+                return number(value);
+        }
+
+        // identities, keeping the type
+        boolean keepA = res.typeOf(a) == type;
+        boolean keepB = res.typeOf(b) == type;
+        switch (op) {
+            case PLUS:
+                // x + 0.0 is not x for x = -0.0
+                if (type == Type.INT_ID && is(b, 0))
+                    return a;
+                if (type == Type.INT_ID && is(a, 0))
+                    return b;
+                break;
+            case MINUS:
+                if (keepA && is(b, 0))
+                    return a;
+                // 0.0 - x is not -x for x = 0.0
+                if (type == Type.INT_ID && is(a, 0))
+                    return new ASTNode<ASTNode<?>>("Factor", Type.MINUS, b);
+                break;
+            case MUL:
+                if (keepA && is(b, 1))
+                    return a;
+                if (keepB && is(a, 1))
+                    return b;
+                // x * 0.0 is not 0.0 for x = -1.0 or NaN
+                if (type == Type.INT_ID && (is(b, 0) && isPure(a) || is(a, 0) && isPure(b)))
+                    return number(0);
+                break;
+            case DIV:
+                if (keepA && is(b, 1))
+                    return a;
+                break;
+            case EXP:
+                if (keepA && is(b, 1))
+                    return a;
+                // 0 ** 0 and NaN ** 0 are 1 too
+                if (is(b, 0) && isPure(a))
+                    return type == Type.INT_ID ? number(1) : number(1f);
+                break;
+            default:
+                break;
+        }
+        return node;
+    }
+
+    // null where the run should fail instead
+    private static Integer intOperation(Type op, int a, int b) {
+        switch (op) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case MUL:
+                return a * b;
+            case DIV:
+                return b == 0 ? null : a / b;
+            case EXP:
+                return Arithmetic.power(a, b);
+            default:
+                return null;
+        }
+    }
+
+    private static Float floatOperation(Type op, float a, float b) {
+        switch (op) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case MUL:
+                return a * b;
+            case DIV:
+                return a / b;
+            case EXP:
+                return Arithmetic.power(a, b);
+            default:
+                return null;
+        }
+    }
+
+    private ASTNode<?> not(ASTNode<?> node) {
+        ASTNode<?> operand = (ASTNode<?>)node.fst();
+        if (isTrue(operand) || isFalse(operand))
+            return bool(isFalse(operand));
+        // !!x
+        if (operand.name.equals("BoolFactor"))
+            return (ASTNode<?>)operand.fst();
+        return node;
+    }
+
+    private ASTNode<?> logic(ASTNode<?> node) {
+        ASTNode<?> a = (ASTNode<?>)node.fst();
+        ASTNode<?> b = (ASTNode<?>)node.snd();
+        // what decides it: true for ||, false for &&
+        boolean decides = node.operator == Type.OR;
+
+        // b never runs
+        if (isBool(a, decides))
+            return a;
+        if (isBool(a, !decides))
+            return b;
+        if (isBool(b, !decides))
+            return a;
+        if (isBool(b, decides) && isPure(a))
+            return b;
+        return node;
+    }
+
+    private ASTNode<?> compare(ASTNode<?> node) {
+        ASTNode<?> a = (ASTNode<?>)node.fst();
+        ASTNode<?> b = (ASTNode<?>)node.snd();
+        Type op = node.operator;
+
+        if (a.name.equals("IntLiteral") && b.name.equals("IntLiteral")) {
+            int x = (Integer)a.fst();
+            int y = (Integer)b.fst();
+            return bool(compare(op, Integer.compare(x, y), x == y));
+        }
+        if (isNumber(a) && isNumber(b)) {
+            float x = toFloat(a);
+            float y = toFloat(b);
+            // NaN is neither less, greater nor equal
+            if (Float.isNaN(x) || Float.isNaN(y))
+                return bool(false);
+            return bool(compare(op, x < y ? -1 : (x > y ? 1 : 0), x == y));
+        }
+        if (op != Type.EQUIVALENT)
+            return node;
+
+        if ((isTrue(a) || isFalse(a)) && (isTrue(b) || isFalse(b)))
+            return bool(isTrue(a) == isTrue(b));
+        if (a.name.equals("StringLiteral") && b.name.equals("StringLiteral"))
+            return bool(a.fst().equals(b.fst()));
+        return node;
+    }
+
+    private static boolean compare(Type op, int order, boolean equal) {
+        switch (op) {
+            case EQUIVALENT:
+                return equal;
+            case LESS:
+                return order < 0;
+            case GREATER:
+                return order > 0;
+            case LESS_EQUAL:
+                return order <= 0;
+            default:
+                return order >= 0;
+        }
+    }
+
+    /* nodes */
+
+    private static ASTNode<?> number(Object value) {
+        if (value instanceof Integer)
+            return new ASTNode<Integer>("IntLiteral", Type.INT, (Integer)value);
+        return new ASTNode<Float>("FloatLiteral", Type.FLOAT, (Float)value);
+    }
+
+    private static ASTNode<?> bool(boolean value) {
+        Type literal = value ? Type.TRUE : Type.FALSE;
+        return new ASTNode<Type>("TrueFalseLiteral", literal, literal);
+    }
+
+    private static boolean isNumber(ASTNode<?> node) {
+        return node.name.equals("IntLiteral") || node.name.equals("FloatLiteral");
+    }
+
+    private static float toFloat(ASTNode<?> literal) {
+        Object value = literal.fst();
+        return value instanceof Integer ? (Integer)value : (Float)value;
+    }
+
+    // an int or float literal equal to value, 0 is not -0.0
+    private static boolean is(ASTNode<?> node, int value) {
+        if (node.name.equals("IntLiteral"))
+            return (Integer)node.fst() == value;
+        if (node.name.equals("FloatLiteral"))
+            return Float.floatToRawIntBits((Float)node.fst()) == Float.floatToRawIntBits(value);
+        return false;
+    }
+
+    private static boolean isTrue(ASTNode<?> node) {
+        return isBool(node, true);
+    }
+
+    private static boolean isFalse(ASTNode<?> node) {
+        return isBool(node, false);
+    }
+
+    private static boolean isBool(ASTNode<?> node, boolean value) {
+        return node.name.equals("TrueFalseLiteral") && node.operator == (value ? Type.TRUE : Type.FALSE);
+    }
+
+    private boolean isPure(ASTNode<?> node) {
+        return isPure(res, node);
+    }
+
+    // no calls and no int division, so nothing happens but the value
+    static boolean isPure(Resolution res, ASTNode<?> node) {
+        if (node.name.equals("FunctionCall"))
+            return false;
+        if (node.operator == Type.DIV && res.typeOf(node) == Type.INT_ID)
+            return false;
+        for (Object branch : node.branches) {
+            if (branch instanceof ASTNode<?> && !isPure(res, (ASTNode<?>)branch))
+                return false;
+        }
+        return true;
+    }
+}
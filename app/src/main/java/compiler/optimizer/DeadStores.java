@@ -0,0 +1,219 @@
+package compiler.optimizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolution.Slot;
+import compiler.semantics.Resolver;
+
+/**
+ * Removes assignments whose value no run reads, and declarations of
+ * variables nothing reads or writes any more. A store is dead if the
+ * variable is never read, or if it is written again, returned from or goes
+ * out of scope before the next statement of the same list that reads it.
+ *
+ * Only stores of a value with no effects go (see ConstantFolder), and top
+ * level variables are the program's output, so they are only dropped where
+ * they are written again. Nothing outside its function reads a variable
+ * that is not captured, so calls in between do not keep its stores alive.
+ * Parameters keep their declarations, calls still pass them.
+ */
+public class DeadStores {
+    private final ASTNode<?> program;
+    private final Resolution res;
+    // variables some assignment still writes
+    private final Set<Local> written;
+    private int removed;
+
+    private DeadStores(ASTNode<?> program) {
+        this.program = program;
+        res = Resolver.resolve(program);
+        written = Collections.newSetFromMap(new IdentityHashMap<Local, Boolean>());
+    }
+
+    /**
+     * Removes the dead stores of program, returns how many assignments and
+     * declared variables that took out.
+     */
+    public static int remove(ASTNode<?> program) {
+        DeadStores d = new DeadStores(program);
+        d.overwritten(program);
+        d.unread(program);
+        d.declarations(program);
+        return d.removed;
+    }
+
+    /* stores written again before they are read */
+
+    private void overwritten(ASTNode<?> node) {
+        if (node.name.equals("Error"))
+            return;
+
+        if (node.name.equals("StatementList") || node.name.equals("BlockStatementList")) {
+            List<Object> statements = ConstantFolder.branches(node);
+            for (int i = 0; i < statements.size(); i++) {
+                if (isOverwritten(node, statements, i)) {
+                    statements.remove(i);
+                    i--;
+                    removed++;
+                }
+            }
+        }
+
+        for (Object branch : node.branches) {
+            if (branch instanceof ASTNode<?>)
+                overwritten((ASTNode<?>)branch);
+        }
+    }
+
+    private boolean isOverwritten(ASTNode<?> list, List<Object> statements, int i) {
+        ASTNode<?> store = (ASTNode<?>)statements.get(i);
+        Local local = target(store);
+        if (local == null || local.captured)
+            return false;
+
+        for (int j = i+1; j < statements.size(); j++) {
+            ASTNode<?> next = (ASTNode<?>)statements.get(j);
+            if (reads(next, local))
+                return false;
+            // str += does nothing, so it does not overwrite
+            if (target(next) == local && next.branches.size() > 1)
+                return true;
+            if (next.name.equals("ReturnStatement"))
+                return local.scope != program;
+        }
+
+        // the end of the variable's scope, a function body shares the
+        // function's
+        return local.scope == list
+            || local.scope.name.equals("FunctionDeclaration") && local.scope.branches.get(local.scope.branches.size()-1) == list;
+    }
+
+    /**
+     * The variable an AssignStatement of a value with no effects writes,
+     * null for other statements.
+     */
+    private Local target(ASTNode<?> statement) {
+        if (!statement.name.equals("AssignStatement"))
+            return null;
+        if (statement.branches.size() > 1 && !ConstantFolder.isPure(res, (ASTNode<?>)statement.snd()))
+            return null;
+
+        Slot slot = res.getSlot((ASTNode<?>)statement.fst());
+        return slot == null ? null : slot.local;
+    }
+
+    // the target of x = ... is not read, x += ... reads it in its
+    // BinaryExpression, which is the same node
+    private boolean reads(ASTNode<?> node, Local local) {
+        if (node.name.equals("Error"))
+            return true;
+        if (node.name.equals("Identifier")) {
+            Slot slot = res.getSlot(node);
+            return slot != null && slot.local == local && local.declaration != node;
+        }
+
+        int first = node.name.equals("AssignStatement") ? 1 : 0;
+        for (int i = first; i < node.branches.size(); i++) {
+            Object branch = node.branches.get(i);
+            if (branch instanceof ASTNode<?> && reads((ASTNode<?>)branch, local))
+                return true;
+        }
+        return false;
+    }
+
+    /* stores of variables nothing reads */
+
+    private boolean isUnread(Local local) {
+        return local != null && local.reads == 0 && local.scope != program;
+    }
+
+    private void unread(ASTNode<?> node) {
+        if (node.name.equals("Error"))
+            return;
+
+        List<Object> branches = ConstantFolder.branches(node);
+        for (int i = 0; i < branches.size(); i++) {
+            if (!(branches.get(i) instanceof ASTNode<?>))
+                continue;
+
+            ASTNode<?> branch = (ASTNode<?>)branches.get(i);
+            if (!branch.name.equals("AssignStatement")) {
+                unread(branch);
+                continue;
+            }
+
+            Local local = target(branch);
+            if (isUnread(local)) {
+                branches.remove(i);
+                i--;
+                removed++;
+            } else {
+                Slot slot = res.getSlot((ASTNode<?>)branch.fst());
+                if (slot != null)
+                    written.add(slot.local);
+            }
+        }
+    }
+
+    private void declarations(ASTNode<?> node) {
+        if (node.name.equals("Error"))
+            return;
+
+        List<Object> branches = ConstantFolder.branches(node);
+        for (int i = 0; i < branches.size(); i++) {
+            if (!(branches.get(i) instanceof ASTNode<?>))
+                continue;
+
+            ASTNode<?> branch = (ASTNode<?>)branches.get(i);
+            // parameters stay
+            if (!branch.name.equals("DeclareStatement") || node.name.equals("FunctionDeclaration")) {
+                declarations(branch);
+            } else if (declaration(branch)) {
+                branches.remove(i);
+                i--;
+            }
+        }
+    }
+
+    /**
+     * VarTypeLiteral Identifier, then more declared Identifiers or the
+     * value of the first one. Takes the dead variables out, true if none
+     * are left.
+     */
+    private boolean declaration(ASTNode<?> node) {
+        List<Object> branches = ConstantFolder.branches(node);
+        ASTNode<?> last = (ASTNode<?>)branches.get(branches.size()-1);
+
+        if (branches.size() == 3 && !isDeclared(last)) {
+            if (!isDead((ASTNode<?>)node.snd()) || !ConstantFolder.isPure(res, last))
+                return false;
+            removed++;
+            return true;
+        }
+
+        for (int i = branches.size()-1; i >= 1; i--) {
+            if (isDead((ASTNode<?>)branches.get(i))) {
+                branches.remove(i);
+                removed++;
+            }
+        }
+        return branches.size() == 1;
+    }
+
+    private boolean isDeclared(ASTNode<?> branch) {
+        Slot slot = res.getSlot(branch);
+        return slot != null && slot.local.declaration == branch;
+    }
+
+    // a declared Identifier of a variable nothing reads or writes
+    private boolean isDead(ASTNode<?> identifier) {
+        Local local = res.getSlot(identifier).local;
+        return isUnread(local) && !written.contains(local);
+    }
+}
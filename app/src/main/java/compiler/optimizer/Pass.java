@@ -0,0 +1,13 @@
+package compiler.optimizer;
+
+/**
+ * A transformation of a whole program, done in place. T is what the program
+ * is held in: a syntax tree, or the SSA form of compiler.ir.
+ */
+public interface Pass<T> {
+    /**
+     * Changes program, returns how many changes that made, 0 when there was
+     * nothing left to do.
+     */
+    int run(T program);
+}
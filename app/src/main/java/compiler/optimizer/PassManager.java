@@ -0,0 +1,133 @@
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import compiler.parser.grammars.ast.ASTNode;
+
+/**
+ * Runs passes over a program in the order they were added, round after
+ * round until a round changes nothing. One pass often leaves work for
+ * another: folding if (false) { f() } away can leave f uncalled.
+ *
+ * Keeps, for every pass, how often it ran, the changes it made, the nodes
+ * those removed and the time it took. What a node is comes from the size
+ * function the manager is made with.
+ */
+public class PassManager<T> {
+    // a safety net, every pass so far only ever removes nodes
+    public static final int MAX_ROUNDS = 20;
+
+    private final ToIntFunction<T> size;
+    private final List<Stats<T>> passes;
+    private int rounds;
+
+    public PassManager(ToIntFunction<T> size) {
+        this.size = size;
+        passes = new ArrayList<Stats<T>>();
+    }
+
+    /**
+     * The passes of an optimization level. 0 runs none, 1 the ones that
+     * only look at a node and its children, 2 adds the ones that need the
+     * whole program. Levels above 2 are 2.
+     */
+    public static PassManager<ASTNode<?>> forLevel(int level) {
+        PassManager<ASTNode<?>> out = new PassManager<ASTNode<?>>(ConstantFolder::size);
+        if (level >= 1) {
+            out.add("constant folding", ConstantFolder::fold);
+            out.add("unreachable code", UnreachableCode::remove);
+        }
+        if (level >= 2) {
+            out.add("dead stores", DeadStores::remove);
+            out.add("uncalled functions", UncalledFunctions::remove);
+        }
+        return out;
+    }
+
+    public PassManager<T> add(String name, Pass<T> pass) {
+        passes.add(new Stats<T>(name, pass));
+        return this;
+    }
+
+    /**
+     * Runs the passes on program to a fixed point, returns the changes
+     * they made.
+     */
+    public int run(T program) {
+        int total = 0;
+        for (int round = 0, changes = -1; changes != 0 && round < MAX_ROUNDS; round++, rounds++) {
+            changes = 0;
+            for (Stats<T> s : passes) {
+                int before = size.applyAsInt(program);
+
+                long start = System.nanoTime();
+                int made = s.pass.run(program);
+                s.nanos += System.nanoTime()-start;
+
+                s.runs++;
+                s.changes += made;
+                s.removed += before-size.applyAsInt(program);
+                changes += made;
+            }
+            total += changes;
+        }
+        return total;
+    }
+
+    public List<Stats<T>> getStats() {
+        return passes;
+    }
+
+    /**
+     * Rounds run so far, over every run. The last round of a run changed
+     * nothing unless it was round MAX_ROUNDS.
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * A line for every pass and one for them all.
+     */
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-20s %6s %8s %8s %10s%n", "pass", "runs", "changes", "removed", "ms"));
+
+        int changes = 0;
+        int removed = 0;
+        long nanos = 0;
+        for (Stats<T> s : passes) {
+            out.append(String.format("%-20s %6d %8d %8d %10.3f%n", s.name, s.runs, s.changes, s.removed, s.nanos/1e6));
+            changes += s.changes;
+            removed += s.removed;
+            nanos += s.nanos;
+        }
+        out.append(String.format("%-20s %6d %8d %8d %10.3f%n", "total", rounds, changes, removed, nanos/1e6));
+        return out.toString();
+    }
+
+    /**
+     * One pass and what it did. The nodes removed are counted by the
+     * manager, the same way for every pass.
+     */
+    public static class Stats<T> {
+        public final String name;
+        public final Pass<T> pass;
+
+        public int runs;
+        public int changes;
+        public int removed;
+        public long nanos;
+
+        public Stats(String name, Pass<T> pass) {
+            this.name = name;
+            this.pass = pass;
+        }
+
+        public String toString() {
+            return "("+name+", "+changes+", "+removed+")";
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package compiler.optimizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.semantics.Resolution;
+import compiler.semantics.Resolver;
+
+/**
+ * Removes the functions no run can call. A function is called if the top
+ * level calls it or a called function does, so one that only calls itself,
+ * or is only called from a function nothing calls, goes too.
+ */
+public class UncalledFunctions {
+    private final Resolution res;
+    // FunctionDeclarations reached so far
+    private final Set<ASTNode<?>> called;
+
+    private UncalledFunctions(ASTNode<?> program) {
+        res = Resolver.resolve(program);
+        called = Collections.newSetFromMap(new IdentityHashMap<ASTNode<?>, Boolean>());
+    }
+
+    /**
+     * Removes the uncalled functions of program, returns how many.
+     */
+    public static int remove(ASTNode<?> program) {
+        UncalledFunctions u = new UncalledFunctions(program);
+        u.calls(program);
+        return u.sweep(program);
+    }
+
+    // what code outside of function declarations calls
+    private void calls(ASTNode<?> node) {
+        if (node.name.equals("FunctionDeclaration") || node.name.equals("Error"))
+            return;
+
+        if (node.name.equals("FunctionCall")) {
+            ASTNode<?> declaration = res.getFunction((ASTNode<?>)node.fst());
+            if (declaration != null && called.add(declaration)) {
+                // the name is the second branch, past it are the parameters and body
+                for (int i = 2; i < declaration.branches.size(); i++)
+                    calls((ASTNode<?>)declaration.branches.get(i));
+            }
+        }
+
+        for (Object branch : node.branches) {
+            if (branch instanceof ASTNode<?>)
+                calls((ASTNode<?>)branch);
+        }
+    }
+
+    private int sweep(ASTNode<?> node) {
+        int removed = 0;
+        List<Object> branches = ConstantFolder.branches(node);
+        for (int i = 0; i < branches.size(); i++) {
+            if (!(branches.get(i) instanceof ASTNode<?>))
+                continue;
+
+            ASTNode<?> branch = (ASTNode<?>)branches.get(i);
+            if (branch.name.equals("FunctionDeclaration") && !called.contains(branch)) {
+                branches.remove(i);
+                i--;
+                removed++;
+            } else {
+                removed += sweep(branch);
+            }
+        }
+        return removed;
+    }
+}
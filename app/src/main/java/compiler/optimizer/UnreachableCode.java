@@ -0,0 +1,42 @@
+package compiler.optimizer;
+
+import java.util.List;
+
+import compiler.parser.grammars.ast.ASTNode;
+
+/**
+ * Removes the statements after a return. The parser only takes return at
+ * the top level of a function body, so that is the only place to look,
+ * and since everything has to be declared before it is used, nothing before
+ * the return can name what comes after it.
+ */
+public class UnreachableCode {
+    private UnreachableCode() {}
+
+    /**
+     * Removes the statements no run gets to, returns how many.
+     */
+    public static int remove(ASTNode<?> program) {
+        int removed = 0;
+        for (Object branch : program.branches) {
+            if (branch instanceof ASTNode<?>)
+                removed += remove((ASTNode<?>)branch);
+        }
+
+        if (!program.name.equals("FunctionDeclaration"))
+            return removed;
+
+        ASTNode<?> body = (ASTNode<?>)program.branches.get(program.branches.size()-1);
+        if (!body.name.equals("BlockStatementList"))
+            return removed;
+
+        List<Object> statements = ConstantFolder.branches(body);
+        for (int i = 0; i < statements.size()-1; i++) {
+            if (((ASTNode<?>)statements.get(i)).name.equals("ReturnStatement")) {
+                removed += statements.size()-1-i;
+                statements.subList(i+1, statements.size()).clear();
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,29 @@
+package compiler.parser;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * Told of each block Expressions.BlockStatementList parses, see
+ * {@link Parser#blocks}.
+ */
+public interface BlockListener {
+    /**
+     * Called before the first statement of a block with its scope, returns
+     * the scope to parse the block in.
+     */
+    SymbolTable enter(SymbolTable t, Type[] returnType);
+
+    /**
+     * Called after each statement of the block with its node, null for an
+     * empty statement.
+     */
+    void statement(ASTNode<?> node);
+
+    /**
+     * Called with the node of the block once its statements are parsed, the
+     * next token is the RB that closes it.
+     */
+    void exit(ASTNode<?> block);
+}
@@ -0,0 +1,703 @@
+package compiler.parser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import compiler.exception.CompileException;
+import compiler.lexer.TokenEdit;
+import compiler.lexer.TokenStream;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.expressions.Expressions;
+import compiler.semantics.FuncData;
+import compiler.semantics.VarData;
+import compiler.syntax.Symbol;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * Keeps the tree of a source text up to date as it is edited, parsing again
+ * only the statements of the innermost block an edit is in.
+ *
+ * Every statement is kept with its first token, the scope in front of it,
+ * the declarations it made there and the blocks in it, and every block with
+ * its statements. A block's first token is kept from the first token of its
+ * statement, and its statements from the block, so an edit only moves what
+ * comes after it in the blocks around it.
+ *
+ * After an edit the statements of the innermost block holding the changed
+ * tokens are parsed again from the one the change could affect, in the
+ * scope that one had, until the parse lines up with the start of an old
+ * statement past the edit or with the RB closing the block. The old
+ * statements from there on are reused as they are, node and all, unless
+ * their declarations changed: a later statement that mentions a name whose
+ * declaration changed is parsed again too. The nodes from the block up to
+ * its top level statement are copied with the new block in place, and
+ * every other subtree is kept. If the parse does not end at the RB, or
+ * finds errors, the block around it is tried, and last the top level
+ * statements are parsed again the same way, which always works.
+ *
+ * The parse is in recovery mode with no cap on the errors, and the tree and
+ * errors are the same as a new Parser gives for a TokenStream of the whole
+ * text.
+ */
+public class IncrementalParser {
+    private final TokenStream tokens;
+    private final Parser p;
+    private final Recorder recorder;
+
+    // top level statements in order, empty statements too, so each one ends
+    // where the next starts
+    private List<Statement> statements;
+
+    private ASTNode<?> tree;
+    private int reparsed;
+
+    public IncrementalParser(CharSequence source) {
+        tokens = new TokenStream(source);
+        p = new Parser(tokens);
+        p.maxErrors = Integer.MAX_VALUE;
+        recorder = new Recorder();
+        p.blocks = recorder;
+
+        statements = new ArrayList<Statement>();
+        parse(0, 0, new TokenEdit(0, 0, 0));
+    }
+
+    public ASTNode<?> getTree() {
+        return tree;
+    }
+
+    public List<CompileException> getErrors() {
+        List<CompileException> out = new ArrayList<CompileException>();
+        for (Statement s : statements)
+            out.addAll(s.errors);
+        return out;
+    }
+
+    /**
+     * Statements parsed by the last edit (or the first parse), in blocks or
+     * at the top level.
+     */
+    public int getReparsed() {
+        return reparsed;
+    }
+
+    public TokenStream getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Replaces removedLength characters at offset with text and returns the
+     * new tree.
+     */
+    public ASTNode<?> edit(int offset, int removedLength, CharSequence text) {
+        TokenEdit e = tokens.edit(offset, removedLength, text);
+
+        int first = affected(statements, e.firstToken);
+
+        reparsed = 0;
+        try {
+            if (first < statements.size() && parseBlock(statements.get(first), e)) {
+                int next = first+1;
+                parse(next, next < statements.size() ? statements.get(next).start+e.insertedTokens-e.removedTokens : tokens.size(), e);
+            } else {
+                parse(first, first < statements.size() ? statements.get(first).start : 0, e);
+            }
+        } catch (RuntimeException ex) {
+            // the statements no longer match the tokens, start over next time
+            statements = new ArrayList<Statement>();
+            throw ex;
+        }
+        return tree;
+    }
+
+    /**
+     * Parses the top level statements from statement from, which starts at
+     * token pos, on, reusing the old statements after edit e.
+     */
+    private void parse(int from, int pos, TokenEdit e) {
+        final int editStart = e.firstToken;
+        final int removed = e.removedTokens;
+        final int shift = e.insertedTokens-removed;
+        final int editEnd = editStart+e.insertedTokens;
+
+        List<Statement> old = statements;
+        List<Statement> out = new ArrayList<Statement>(old.size()+16);
+        out.addAll(old.subList(0, Math.min(from, old.size())));
+
+        RecordingTable t = new RecordingTable(from < old.size() ? old.get(from).scope : new SymbolTable());
+        // t is behind while old statements are reused with nothing changed,
+        // their own scopes are still right then
+        boolean behind = false;
+
+        // net declarations of the old statements that were dropped and of the
+        // ones that were parsed again, names that differ were changed
+        Map<Symbol, Declaration> dropped = new LinkedHashMap<Symbol, Declaration>();
+        Map<Symbol, Declaration> parsed = new LinkedHashMap<Symbol, Declaration>();
+        Set<Symbol> changed = new HashSet<Symbol>();
+
+        int next = from;
+
+        while (pos < tokens.size()) {
+            while (next < old.size() && shifted(old.get(next).start, editStart, removed, shift) < pos)
+                put(dropped, old.get(next++).declarations, dropped, parsed, changed);
+
+            if (next < old.size() && pos >= editEnd && shifted(old.get(next).start, editStart, removed, shift) == pos) {
+                Statement s = old.get(next);
+                int end = next+1 < old.size() ? shifted(old.get(next+1).start, editStart, removed, shift) : tokens.size();
+
+                if (!mentions(pos, end, changed) && (s.errors.isEmpty() || tokens.getPosition(pos)[0] == s.line)) {
+                    s.start = pos;
+                    if (changed.isEmpty()) {
+                        behind = true;
+                    } else {
+                        s.scope = new SymbolTable(t);
+                        // the scopes kept in its blocks are out of date
+                        s.blocks = null;
+                        t.replay(s.declarations);
+                    }
+                    out.add(s);
+
+                    next++;
+                    pos = end;
+                    continue;
+                }
+            }
+
+            if (behind) {
+                t = new RecordingTable(old.get(next).scope);
+                behind = false;
+            }
+
+            Statement s = parse(t, pos, null);
+            out.add(s);
+            put(parsed, s.declarations, dropped, parsed, changed);
+
+            reparsed++;
+            pos = tokens.getPosition();
+        }
+
+        statements = out;
+
+        List<ASTNode<?>> nodes = new ArrayList<ASTNode<?>>(out.size());
+        for (Statement s : out) {
+            if (s.node != null)
+                nodes.add(s.node);
+        }
+
+        // Expressions.Program
+        tree = new ASTNode<ASTNode<?>>(
+            "Program", Type.BLANK,
+            new ASTNode<ASTNode<?>>(
+                "StatementList", Type.BLANK, nodes
+            )
+        );
+    }
+
+    /**
+     * Parses again only the statements of the innermost block of top around
+     * edit e, or of the one around that if they do not parse cleanly, and
+     * puts the new block in top. False, with top as it was, if no block
+     * holds the edit or none of them parses cleanly.
+     */
+    private boolean parseBlock(Statement top, TokenEdit e) {
+        if (!top.errors.isEmpty())
+            return false;
+
+        final int editStart = e.firstToken;
+        final int editEnd = editStart+e.removedTokens;
+
+        // the blocks around the edit, outermost first, the statements they
+        // are in and their first tokens before the edit
+        List<Block> blocks = new ArrayList<Block>();
+        List<Statement> owners = new ArrayList<Statement>();
+        List<Integer> starts = new ArrayList<Integer>();
+
+        Statement owner = top;
+        int ownerStart = top.start;
+        while (owner.blocks != null) {
+            Block in = null;
+            for (Block b : owner.blocks) {
+                if (ownerStart+b.start <= editStart && editEnd <= ownerStart+b.start+b.end) {
+                    in = b;
+                    break;
+                }
+            }
+            if (in == null)
+                break;
+
+            int start = ownerStart+in.start;
+            blocks.add(in);
+            owners.add(owner);
+            starts.add(start);
+
+            if (in.statements.isEmpty())
+                break;
+            owner = in.statements.get(find(in.statements, editStart-start));
+            ownerStart = start+owner.start;
+        }
+
+        for (int level = blocks.size()-1; level >= 0; level--) {
+            Block old = blocks.get(level);
+            Block replacement = parse(old, starts.get(level), e);
+            if (replacement == null)
+                continue;
+
+            // the new block in place of the old one, and everything after it
+            // moved, in each block out to the top level
+            int shift = e.insertedTokens-e.removedTokens;
+            // the old node on the way up and its copy
+            ASTNode<?> from = old.node;
+            ASTNode<?> to = replacement.node;
+            for (int i = level; i >= 0; i--) {
+                Block b = blocks.get(i);
+                if (i == level) {
+                    b.end = replacement.end;
+                    b.statements = replacement.statements;
+                    b.node = to;
+                } else {
+                    b.end += shift;
+                    for (int j = b.statements.indexOf(owners.get(i+1))+1; j < b.statements.size(); j++)
+                        b.statements.get(j).start += shift;
+
+                    ASTNode<?> node = replace(b.node, from, to);
+                    from = b.node;
+                    to = node;
+                    b.node = node;
+                }
+
+                Statement s = owners.get(i);
+                for (int j = s.blocks.indexOf(b)+1; j < s.blocks.size(); j++)
+                    s.blocks.get(j).start += shift;
+
+                ASTNode<?> node = replace(s.node, from, to);
+                from = s.node;
+                to = node;
+                s.node = node;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses the statements of block b, whose first token is start, again
+     * from the one edit e could affect, until the parse lines up with an old
+     * statement past the edit or with the RB of b. Returns b with the new
+     * statements, or null if the parse does not end at that RB or there are
+     * errors; b itself is left as it is.
+     */
+    private Block parse(Block b, int start, TokenEdit e) {
+        final int editStart = e.firstToken;
+        final int removed = e.removedTokens;
+        final int shift = e.insertedTokens-removed;
+        final int editEnd = editStart+e.insertedTokens;
+        final int close = shifted(start+b.end, editStart, removed, shift);
+
+        List<Statement> old = b.statements;
+        int from = affected(old, editStart-start);
+        List<Statement> out = new ArrayList<Statement>(old.size()+4);
+        out.addAll(old.subList(0, Math.min(from, old.size())));
+
+        RecordingTable t = new RecordingTable(from < old.size() ? old.get(from).scope : b.scope);
+        boolean behind = false;
+
+        Map<Symbol, Declaration> dropped = new LinkedHashMap<Symbol, Declaration>();
+        Map<Symbol, Declaration> parsed = new LinkedHashMap<Symbol, Declaration>();
+        Set<Symbol> changed = new HashSet<Symbol>();
+
+        int count = 0;
+        int next = from;
+        int pos = from < old.size() ? start+old.get(from).start : start;
+
+        while (pos != close) {
+            // the block closes somewhere else
+            if (pos > close || tokens.getType(pos) == Type.RB)
+                return null;
+
+            while (next < old.size() && shifted(start+old.get(next).start, editStart, removed, shift) < pos)
+                put(dropped, old.get(next++).declarations, dropped, parsed, changed);
+
+            if (next < old.size() && pos >= editEnd && shifted(start+old.get(next).start, editStart, removed, shift) == pos) {
+                Statement s = old.get(next);
+                int end = next+1 < old.size() ? shifted(start+old.get(next+1).start, editStart, removed, shift) : close;
+
+                if (!mentions(pos, end, changed)) {
+                    Statement moved = new Statement(s, pos-start);
+                    if (changed.isEmpty()) {
+                        behind = true;
+                    } else {
+                        moved.scope = new SymbolTable(t);
+                        moved.blocks = null;
+                        t.replay(s.declarations);
+                    }
+                    out.add(moved);
+
+                    next++;
+                    pos = end;
+                    continue;
+                }
+            }
+
+            if (behind) {
+                t = new RecordingTable(old.get(next).scope);
+                behind = false;
+            }
+
+            Statement s = parse(t, pos, b);
+            if (!s.errors.isEmpty())
+                return null;
+            s.start = pos-start;
+            out.add(s);
+            put(parsed, s.declarations, dropped, parsed, changed);
+
+            count++;
+            pos = tokens.getPosition();
+        }
+
+        List<ASTNode<?>> nodes = new ArrayList<ASTNode<?>>(out.size());
+        for (Statement s : out) {
+            if (s.node != null)
+                nodes.add(s.node);
+        }
+
+        Block replacement = new Block(b.start, b.returnType);
+        replacement.scope = b.scope;
+        replacement.end = close-start;
+        replacement.statements = out;
+        // Expressions.BlockStatementList
+        replacement.node = new ASTNode<ASTNode<?>>(
+            "BlockStatementList", Type.BLANK,
+            nodes
+        );
+
+        reparsed += count;
+        return replacement;
+    }
+
+    // one statement as in Expressions.StatementList, or as in
+    // Expressions.BlockStatementList when it is in block in
+    private Statement parse(RecordingTable t, int pos, Block in) {
+        Statement out = new Statement(pos);
+        out.scope = new SymbolTable(t);
+
+        tokens.setPosition(pos);
+        p.errors = new ArrayList<CompileException>();
+        t.declarations = out.declarations;
+        recorder.start(out, pos);
+
+        try {
+            if (in == null)
+                out.node = Expressions.Statement(p, t);
+            else
+                out.node = Expressions.BlockStatement(p, t, in.returnType);
+        } catch (CompileException e) {
+            try {
+                out.node = p.recover(e, false);
+            } catch (CompileException unreachable) {
+                // only thrown when not recovering
+            }
+        }
+
+        recorder.start(null, 0);
+        t.declarations = null;
+        out.errors = p.errors;
+        if (!out.errors.isEmpty())
+            out.line = tokens.getPosition(pos)[0];
+
+        return out;
+    }
+
+    // index of the last statement starting at or before token, 0 if none
+    // does
+    private static int find(List<Statement> statements, int token) {
+        int low = 0;
+        int high = statements.size()-1;
+        while (low < high) {
+            int mid = (low+high+1) >>> 1;
+            if (statements.get(mid).start <= token)
+                low = mid;
+            else
+                high = mid-1;
+        }
+        return low;
+    }
+
+    // Index of the first statement a change at token could affect. A
+    // statement can look two tokens past its start (isFunctionDeclaration),
+    // so that is the one holding the token two before the change, or the
+    // next one if it ends before the change.
+    private static int affected(List<Statement> statements, int token) {
+        int i = find(statements, token-2);
+        if (i+1 < statements.size() && statements.get(i).start < token-2 && statements.get(i+1).start <= token)
+            i++;
+        return i;
+    }
+
+    // copy of node with old, which is one of its branches or in a branch
+    // that is not a block, replaced by replacement, and the nodes on the way
+    // copied
+    private static ASTNode<?> replace(ASTNode<?> node, ASTNode<?> old, ASTNode<?> replacement) {
+        int index = -1;
+        ASTNode<?> branch = null;
+        for (int i = 0; i < node.branches.size() && index < 0; i++) {
+            if (node.branches.get(i) == old) {
+                index = i;
+                branch = replacement;
+            }
+        }
+        for (int i = 0; i < node.branches.size() && index < 0; i++) {
+            Object b = node.branches.get(i);
+            if (b instanceof ASTNode<?> && !((ASTNode<?>)b).name.equals("BlockStatementList")) {
+                branch = replace((ASTNode<?>)b, old, replacement);
+                if (branch != null)
+                    index = i;
+            }
+        }
+        if (index < 0)
+            return null;
+
+        List<Object> branches = new ArrayList<Object>(node.branches);
+        branches.set(index, branch);
+        return new ASTNode<Object>(node.name, node.operator, branches);
+    }
+
+    // new index of an old token, -1 for the removed ones
+    private static int shifted(int token, int editStart, int removed, int shift) {
+        if (token < editStart)
+            return token;
+        if (token < editStart+removed)
+            return -1;
+        return token+shift;
+    }
+
+    // whether an ID in tokens [from, to) is one of names
+    private boolean mentions(int from, int to, Set<Symbol> names) {
+        if (names.isEmpty())
+            return false;
+
+        for (int i = from; i < to; i++) {
+            if (tokens.getType(i) == Type.ID && names.contains(tokens.get(i).symbol))
+                return true;
+        }
+        return false;
+    }
+
+    // puts declarations in net, which is dropped or parsed, and keeps the
+    // names whose net declarations differ between the two in changed
+    private static void put(Map<Symbol, Declaration> net, List<Declaration> declarations,
+            Map<Symbol, Declaration> dropped, Map<Symbol, Declaration> parsed, Set<Symbol> changed) {
+        for (Declaration d : declarations) {
+            net.put(d.name, d);
+            if (Objects.equals(dropped.get(d.name), parsed.get(d.name)))
+                changed.remove(d.name);
+            else
+                changed.add(d.name);
+        }
+    }
+
+    private static class Statement {
+        // first token, from the first token of the block it is in, or from
+        // the start of the text at the top level
+        int start;
+        // null for an empty statement
+        ASTNode<?> node;
+        // scope in front of it
+        SymbolTable scope;
+        List<Declaration> declarations;
+        // blocks in it in order, null when the scopes kept in them may be
+        // out of date
+        List<Block> blocks;
+        // at the top level, and empty in blocks that are kept
+        List<CompileException> errors;
+        // line of the first token when there are errors, whose messages
+        // hold their line
+        int line;
+
+        Statement(int start) {
+            this.start = start;
+            declarations = new ArrayList<Declaration>();
+            blocks = new ArrayList<Block>();
+        }
+
+        // s moved to start
+        Statement(Statement s, int start) {
+            this.start = start;
+            node = s.node;
+            scope = s.scope;
+            declarations = s.declarations;
+            blocks = s.blocks;
+            errors = s.errors;
+            line = s.line;
+        }
+    }
+
+    /**
+     * The statements of a blockstatementlist.
+     */
+    private static class Block {
+        // first token, from the first token of the statement it is in
+        int start;
+        // the RB closing it, from start
+        int end;
+        // what a return gives in a function body, otherwise null
+        final Type[] returnType;
+        // scope in front of the first statement
+        SymbolTable scope;
+        // empty statements too
+        List<Statement> statements;
+        // BlockStatementList
+        ASTNode<?> node;
+
+        Block(int start, Type[] returnType) {
+            this.start = start;
+            this.returnType = returnType;
+            statements = new ArrayList<Statement>();
+        }
+    }
+
+    /**
+     * Keeps the blocks of the statement being parsed, with a RecordingTable
+     * for each so the declarations of their statements are kept too.
+     */
+    private class Recorder implements BlockListener {
+        // statement being parsed and its first token
+        private Statement statement;
+        private int start;
+
+        // blocks being parsed, innermost last
+        private final List<Open> open = new ArrayList<Open>();
+
+        void start(Statement statement, int start) {
+            this.statement = statement;
+            this.start = start;
+            open.clear();
+        }
+
+        public SymbolTable enter(SymbolTable t, Type[] returnType) {
+            int pos = tokens.getPosition();
+
+            Statement owner = statement;
+            int ownerStart = start;
+            if (!open.isEmpty()) {
+                Open in = open.get(open.size()-1);
+                owner = in.next;
+                ownerStart = in.start+in.next.start;
+            }
+
+            Open out = new Open(new Block(pos-ownerStart, returnType), pos, new RecordingTable(t));
+            out.block.scope = new SymbolTable(out.table);
+            owner.blocks.add(out.block);
+            out.next(pos);
+            open.add(out);
+
+            return out.table;
+        }
+
+        public void statement(ASTNode<?> node) {
+            Open in = open.get(open.size()-1);
+            in.next.node = node;
+            in.block.statements.add(in.next);
+            in.next(tokens.getPosition());
+        }
+
+        public void exit(ASTNode<?> block) {
+            Open in = open.remove(open.size()-1);
+            in.table.declarations = null;
+            in.block.end = tokens.getPosition()-in.start;
+            in.block.node = block;
+        }
+    }
+
+    // a block being parsed
+    private static class Open {
+        final Block block;
+        // its first token
+        final int start;
+        final RecordingTable table;
+        // statement being parsed in it
+        Statement next;
+
+        Open(Block block, int start, RecordingTable table) {
+            this.block = block;
+            this.start = start;
+            this.table = table;
+        }
+
+        void next(int pos) {
+            next = new Statement(pos-start);
+            next.scope = new SymbolTable(table);
+            table.declarations = next.declarations;
+        }
+    }
+
+    /**
+     * A variable or function put in the scope of a block.
+     */
+    private static class Declaration {
+        final Symbol name;
+        final VarData var;
+        final FuncData func;
+
+        Declaration(Symbol name, VarData var, FuncData func) {
+            this.name = name;
+            this.var = var;
+            this.func = func;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Declaration))
+                return false;
+
+            Declaration other = (Declaration)o;
+            if (name != other.name || (var == null) != (other.var == null))
+                return false;
+            if (var != null)
+                return var.type == other.var.type;
+            return func.type == other.func.type && func.args.equals(other.func.args);
+        }
+
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    /**
+     * Scope of a block that adds what is put in it to declarations. The
+     * scopes of the blocks in it get their own, so only the declarations
+     * made in this one are kept.
+     */
+    private static class RecordingTable extends SymbolTable {
+        List<Declaration> declarations;
+
+        RecordingTable(SymbolTable copy) {
+            super(copy);
+        }
+
+        public void vput(Symbol var, VarData data) {
+            super.vput(var, data);
+            if (declarations != null)
+                declarations.add(new Declaration(var, data, null));
+        }
+
+        public void fput(Symbol func, FuncData data) {
+            super.fput(func, data);
+            if (declarations != null)
+                declarations.add(new Declaration(func, null, data));
+        }
+
+        void replay(List<Declaration> declarations) {
+            for (Declaration d : declarations) {
+                if (d.var != null)
+                    super.vput(d.name, d.var);
+                else
+                    super.fput(d.name, d.func);
+            }
+        }
+    }
+}
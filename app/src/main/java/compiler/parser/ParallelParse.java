@@ -0,0 +1,200 @@
+package compiler.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import compiler.exception.CompileException;
+import compiler.lexer.Token;
+import compiler.lexer.TokenList;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.expressions.Expressions;
+import compiler.syntax.SymbolPool;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * Parses the bodies of top level function declarations on a ForkJoinPool.
+ *
+ * A pre-pass matches braces to find the body of each top level function.
+ * The top level statements and function signatures are then parsed in order
+ * on the calling thread, which defines each function and takes the scope
+ * its body sees at the same point a sequential parse would, and the bodies
+ * are skipped and parsed as tasks.
+ *
+ * If anything goes wrong the whole program is parsed again sequentially, so
+ * errors are the same as well.
+ */
+final class ParallelParse {
+
+    private ParallelParse() {}
+
+    static ASTNode<?> parse(Parser p, List<Token> tokens, SymbolPool symbols, ForkJoinPool pool) throws CompileException {
+        HashMap<Integer, int[]> bodies = findBodies(tokens);
+
+        TokenList source = new TokenList(tokens, symbols);
+        p.l = source;
+
+        SymbolTable t = new SymbolTable();
+        List<ASTNode<?>> statements = new ArrayList<ASTNode<?>>();
+        List<Body> tasks = new ArrayList<Body>();
+
+        try {
+            // Expressions.StatementList, with the function bodies left out
+            while (source.hasNext()) {
+                int[] body = bodies.get(source.getPosition());
+                ASTNode<?> temp;
+
+                if (body != null && Expressions.isFunctionDeclaration(p)) {
+                    List<ASTNode<?>> out = new ArrayList<ASTNode<?>>();
+                    SymbolTable innerScope = Expressions.FunctionSignature(p, t, out);
+                    if (source.getPosition() != body[0])
+                        return sequential(p, tokens, symbols, tasks);
+
+                    Body task = new Body(tokens, body[0]+1, body[1], symbols, innerScope, out.get(0).operator);
+                    tasks.add(task);
+                    pool.execute(task);
+
+                    source.setPosition(body[1]);
+                    p.eat(Type.RB);
+                    p.eat(Type.NEWLINE);
+
+                    temp = new ASTNode<ASTNode<?>>(
+                        "FunctionDeclaration", Type.FUNC,
+                        out
+                    );
+                    task.declaration = out;
+                } else {
+                    temp = Expressions.Statement(p, t);
+                }
+
+                if (temp != null)
+                    statements.add(temp);
+            }
+        } catch (CompileException | RuntimeException e) {
+            return sequential(p, tokens, symbols, tasks);
+        }
+
+        for (Body task : tasks) {
+            task.join();
+            if (task.block == null)
+                return sequential(p, tokens, symbols, tasks);
+
+            task.declaration.add(task.block);
+        }
+
+        // Expressions.Program
+        return new ASTNode<ASTNode<?>>(
+            "Program", Type.BLANK,
+            new ASTNode<ASTNode<?>>(
+                "StatementList", Type.BLANK, statements
+            )
+        );
+    }
+
+    private static ASTNode<?> sequential(Parser p, List<Token> tokens, SymbolPool symbols, List<Body> tasks) throws CompileException {
+        for (Body task : tasks)
+            task.cancel(false);
+
+        p.l = new TokenList(tokens, symbols);
+        return Expressions.Program(p, new SymbolTable());
+    }
+
+    /**
+     * Bodies of the top level statements that look like function
+     * declarations, as {LB index, RB index} by the index of the statement's
+     * first token.
+     */
+    private static HashMap<Integer, int[]> findBodies(List<Token> tokens) {
+        HashMap<Integer, int[]> out = new HashMap<Integer, int[]>();
+        final int count = tokens.size();
+
+        int depth = 0;
+        boolean statementStart = true;
+        for (int i = 0; i < count; i++) {
+            Type type = tokens.get(i).type;
+
+            if (depth == 0 && statementStart && i+2 < count && tokens.get(i+2).type == Type.LPAREN
+                    && (type == Type.VOID || type.within(Type.getVarTypes()))) {
+                int lb = i;
+                while (lb < count && tokens.get(lb).type != Type.LB && tokens.get(lb).type != Type.NEWLINE)
+                    lb++;
+
+                int rb = lb < count && tokens.get(lb).type == Type.LB ? matchingBrace(tokens, lb) : -1;
+                if (rb != -1) {
+                    out.put(i, new int[] {lb, rb});
+                    i = rb;
+                    statementStart = false;
+                    continue;
+                }
+            }
+
+            if (type == Type.LB)
+                depth++;
+            else if (type == Type.RB)
+                depth = Math.max(depth-1, 0);
+
+            statementStart = depth == 0 && type == Type.NEWLINE;
+        }
+
+        return out;
+    }
+
+    // RB closing the LB at lb, -1 if there is none
+    private static int matchingBrace(List<Token> tokens, int lb) {
+        int depth = 0;
+
+        for (int i = lb; i < tokens.size(); i++) {
+            Type type = tokens.get(i).type;
+            if (type == Type.LB) {
+                depth++;
+            } else if (type == Type.RB) {
+                depth--;
+                if (depth == 0)
+                    return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static class Body extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Token> tokens;
+        // body tokens [from, rb), rb is the closing RB
+        private final int from;
+        private final int rb;
+        private final SymbolPool symbols;
+        private final SymbolTable scope;
+        private final Type returnType;
+
+        // branches of the FunctionDeclaration the block goes into
+        List<ASTNode<?>> declaration;
+        // null if the body did not parse on its own
+        ASTNode<?> block;
+
+        Body(List<Token> tokens, int from, int rb, SymbolPool symbols, SymbolTable scope, Type returnType) {
+            this.tokens = tokens;
+            this.from = from;
+            this.rb = rb;
+            this.symbols = symbols;
+            this.scope = scope;
+            this.returnType = returnType;
+        }
+
+        protected void compute() {
+            TokenList source = new TokenList(tokens, from, rb+1, symbols);
+
+            try {
+                ASTNode<?> out = Expressions.BlockStatementList(new Parser(source), scope, new Type[] {returnType});
+                if (source.getPosition() == rb)
+                    block = out;
+            } catch (CompileException | RuntimeException e) {
+                // parsed again sequentially
+            }
+        }
+    }
+}
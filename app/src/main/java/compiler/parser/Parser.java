@@ -1,7 +1,9 @@
 package compiler.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import compiler.exception.CompileException;
 import compiler.exception.parse.*;
@@ -9,22 +11,122 @@ import compiler.lexer.*;
 import compiler.syntax.SymbolTable;
 import compiler.syntax.Type;
 import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.ast.FlatAST;
 import compiler.parser.grammars.expressions.Expressions;
 
 public class Parser {
-    public String s;
-    public Lexer l;
+    public CharSequence s;
+    public TokenSource l;
 
-    public Parser(String s) {
+    // recovery mode, see parse(int)
+    public List<CompileException> errors;
+    public int maxErrors;
+
+    // told of every block parsed when set, see IncrementalParser
+    public BlockListener blocks;
+
+    // the last token eaten, for position()
+    private Token last;
+
+    public Parser(CharSequence s) {
         this.s = s;
     }
+    public Parser(TokenSource l) {
+        this.l = l;
+    }
 
     public ASTNode<?> parse() throws CompileException {
-        l = new Lexer(s);
+        if (s != null)
+            l = new Lexer(s);
 
         return Expressions.Program(this, new SymbolTable());
     }
 
+    /**
+     * Parses with the bodies of top level functions parsed in parallel on
+     * pool. The tree, or the error thrown, is the same as from parse().
+     */
+    public ASTNode<?> parse(ForkJoinPool pool) throws CompileException {
+        if (s != null)
+            l = new Lexer(s);
+
+        List<Token> tokens = new ArrayList<Token>();
+        for (Token token = l.next(); token != null; token = l.next())
+            tokens.add(token);
+
+        return ParallelParse.parse(this, tokens, l.getSymbols(), pool);
+    }
+
+    /**
+     * Parses into a {@link FlatAST}, the same tree parse() gives. Each top
+     * level statement is copied in as soon as it is parsed, so only one
+     * statement at a time is held as ASTNodes.
+     */
+    public FlatAST parseFlat() throws CompileException {
+        if (s != null)
+            l = new Lexer(s);
+
+        FlatAST out = new FlatAST(l.getSymbols());
+        List<Integer> statements = new ArrayList<Integer>();
+        Expressions.StatementList(this, new SymbolTable(), statement -> statements.add(out.add(statement)));
+
+        int[] children = new int[statements.size()];
+        for (int i = 0; i < children.length; i++)
+            children[i] = statements.get(i);
+
+        // Expressions.Program
+        out.add("Program", Type.BLANK, null, out.add("StatementList", Type.BLANK, null, children));
+        return out;
+    }
+
+    /**
+     * Parses in recovery mode: a statement that fails is replaced by an ERROR
+     * node and its exception is added to errors, then parsing goes on from
+     * the next statement. Once maxErrors errors have been kept the rest of
+     * the input is skipped.
+     */
+    public ASTNode<?> parse(int maxErrors) throws CompileException {
+        this.errors = new ArrayList<CompileException>();
+        this.maxErrors = maxErrors;
+
+        return parse();
+    }
+
+    /**
+     * Throws e, or in recovery mode records it and skips to the start of the
+     * next statement: past the next NEWLINE outside of braces, or up to the
+     * RB that closes the current block. Returns the node to put in place of
+     * the failed statement.
+     */
+    public ASTNode<CompileException> recover(CompileException e, boolean inBlock) throws CompileException {
+        if (errors == null)
+            throw e;
+
+        if (errors.size() < maxErrors)
+            errors.add(e);
+
+        if (errors.size() >= maxErrors) {
+            while (l.next() != null);
+        } else {
+            int depth = 0;
+            for (Type next = l.nextType(); next != null; next = l.nextType()) {
+                if (next == Type.RB) {
+                    if (depth == 0 && inBlock)
+                        break;
+                    depth = Math.max(depth-1, 0);
+                } else if (next == Type.LB) {
+                    depth++;
+                }
+
+                l.next();
+                if (next == Type.NEWLINE && depth == 0)
+                    break;
+            }
+        }
+
+        return new ASTNode<CompileException>("Error", Type.ERROR, e);
+    }
+
     public List<Token> eatMultiple(Type... type) throws CompileException {
         List<Token> out = new ArrayList<Token>();
 
@@ -39,9 +141,10 @@ public class Parser {
         return eat(type.toArray(array));
     }
     public Token eat(Type... type) throws CompileException {
-        Token token = l.next();
+        // left in place on a mismatch so recover() can see it
+        Token token = l.peek();
         if (token == null)
-            throw new EOFException(type+"");
+            throw new EOFException(Arrays.toString(type));
         
         boolean match = false;
         for (Type t:type) {
@@ -50,9 +153,35 @@ public class Parser {
         }
 
         if (!match)
-            throw new TokenTypeException(token.type, type, token.index);
-        
-        return token;
+            throw unexpected((Object[])type);
+
+        last = token;
+        return l.next();
+    }
+
+    /**
+     * The exception for a next token that is not what the grammar expects:
+     * an EOFException at the end of the input, an InvalidCharacterException
+     * for text the lexer could not match, otherwise a TokenTypeException.
+     */
+    public CompileException unexpected(Object... expected) {
+        Token token = l.peek();
+        if (token == null)
+            return new EOFException(expected.length == 1 ? String.valueOf(expected[0]) : Arrays.toString(expected));
+        if (token.type == Type.ERROR)
+            return new InvalidCharacterException(token.value, token.index);
+        return new TokenTypeException(token.type, expected, token.index);
+    }
+
+    /**
+     * Line and index of the next token for error messages, or of the last
+     * token eaten at the end of the input.
+     */
+    public int[] position() {
+        Token token = l.peek();
+        if (token != null)
+            return token.index;
+        return last == null ? new int[] {1, 0} : last.index;
     }
 
 }
\ No newline at end of file
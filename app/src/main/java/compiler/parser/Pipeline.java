@@ -0,0 +1,104 @@
+package compiler.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import compiler.exception.CompileException;
+import compiler.lexer.Lexer;
+import compiler.lexer.TokenQueue;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.parser.grammars.expressions.Expressions;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * Lexer, parser and whatever uses the statements running at the same time:
+ * the lexer thread feeds tokens to the parser thread through a
+ * {@link TokenQueue}, and every top level statement goes on to the calling
+ * thread through a second bounded queue as soon as it is parsed. Nothing
+ * waits for the whole file, and only as many tokens and statements as the
+ * queues hold are in flight.
+ */
+public class Pipeline {
+    // tokens per batch from the lexer, and batches waiting at most
+    public static final int TOKEN_BATCH = 256;
+    public static final int TOKEN_BATCHES = 16;
+    // parsed statements waiting at most
+    public static final int STATEMENTS = 16;
+
+    // put after the last statement
+    private static final ASTNode<?> END = new ASTNode<Object>("End", Type.BLANK);
+
+    /**
+     * Gives each top level statement of source to out, on this thread, as
+     * soon as it is parsed. With maxErrors above 0 the parse is in recovery
+     * mode as with {@link Parser#parse(int)} and the errors are returned,
+     * otherwise the first error is thrown after the statements before it.
+     */
+    public static List<CompileException> run(CharSequence source, int maxErrors, Consumer<ASTNode<?>> out) throws CompileException {
+        BlockingQueue<ASTNode<?>> statements = new ArrayBlockingQueue<ASTNode<?>>(STATEMENTS);
+        TokenQueue tokens = new TokenQueue(new Lexer(source), TOKEN_BATCH, TOKEN_BATCHES);
+
+        Parser p = new Parser(tokens);
+        if (maxErrors > 0) {
+            p.errors = new ArrayList<CompileException>();
+            p.maxErrors = maxErrors;
+        }
+
+        AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Thread parser = new Thread(() -> {
+            try {
+                Expressions.StatementList(p, new SymbolTable(), statement -> put(statements, statement));
+            } catch (CompileException | RuntimeException e) {
+                failure.set(e);
+            }
+
+            try {
+                statements.put(END);
+            } catch (InterruptedException e) {
+                // the reading side gave up
+            }
+        }, "parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        try {
+            for (ASTNode<?> statement = take(statements); statement != END; statement = take(statements))
+                out.accept(statement);
+        } finally {
+            // only needed if out threw, the threads are done otherwise
+            parser.interrupt();
+            tokens.close();
+        }
+
+        Exception e = failure.get();
+        if (e instanceof CompileException)
+            throw (CompileException)e;
+        if (e != null)
+            throw (RuntimeException)e;
+
+        return p.errors == null ? new ArrayList<CompileException>() : p.errors;
+    }
+
+    private static void put(BlockingQueue<ASTNode<?>> statements, ASTNode<?> statement) {
+        try {
+            statements.put(statement);
+        } catch (InterruptedException e) {
+            throw new CancellationException("statement consumer stopped");
+        }
+    }
+
+    private static ASTNode<?> take(BlockingQueue<ASTNode<?>> statements) {
+        try {
+            return statements.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for statements", e);
+        }
+    }
+}
@@ -56,7 +56,7 @@ public class ASTNode<E> {
     }
 
     public boolean isLeaf() {
-        return operator.within(Type.getLiterals());
+        return operator.within(Type.getLiterals()) || operator == Type.ERROR;
     }
 
     public E fst() {
@@ -0,0 +1,330 @@
+package compiler.parser.grammars.ast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import compiler.syntax.Symbol;
+import compiler.syntax.SymbolPool;
+import compiler.syntax.Type;
+
+/**
+ * AST kept in parallel int arrays instead of one {@link ASTNode} per node:
+ * kind (node name and operator), first child, next sibling and a payload.
+ * Int and float literals and identifiers are stored inline in the payload
+ * (value, float bits, symbol id), anything else (strings, errors) goes to a
+ * side table and the payload is its index.
+ *
+ * Nodes are added bottom up, children before their parent, so the last node
+ * added is the root. Walk it with indexes or a {@link Cursor}.
+ */
+public class FlatAST {
+    public static final int NONE = -1;
+
+    private static final Type[] TYPES = Type.values();
+
+    // kind = name index << NAME_SHIFT | operator ordinal
+    private static final int NAME_SHIFT = 8;
+
+    private int[] kinds;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] payload;
+    private int size;
+
+    private final List<String> names;
+    private final HashMap<String, Integer> nameIndexes;
+    private final List<Object> objects;
+
+    private final SymbolPool symbols;
+
+    public FlatAST(SymbolPool symbols) {
+        this(symbols, 64);
+    }
+    public FlatAST(SymbolPool symbols, int capacity) {
+        capacity = Math.max(capacity, 16);
+        kinds = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        payload = new int[capacity];
+        size = 0;
+
+        names = new ArrayList<String>();
+        nameIndexes = new HashMap<String, Integer>();
+        objects = new ArrayList<Object>();
+
+        this.symbols = symbols;
+    }
+
+    /**
+     * Copies tree into a new FlatAST. Identifiers have to be from symbols.
+     */
+    public static FlatAST of(ASTNode<?> tree, SymbolPool symbols) {
+        FlatAST out = new FlatAST(symbols);
+        out.add(tree);
+        return out;
+    }
+
+    /**
+     * Adds tree and returns the index of its root.
+     */
+    public int add(ASTNode<?> tree) {
+        List<Integer> children = new ArrayList<Integer>();
+        Object value = null;
+
+        for (Object branch : tree.branches) {
+            if (branch instanceof ASTNode<?>)
+                children.add(add((ASTNode<?>)branch));
+            else if (value == null)
+                value = branch;
+        }
+
+        int[] childArray = new int[children.size()];
+        for (int i = 0; i < childArray.length; i++)
+            childArray[i] = children.get(i);
+
+        return add(tree.name, tree.operator, value, childArray);
+    }
+
+    /**
+     * Adds a node over the given children, which must not have a parent yet.
+     * value is the leaf value (Integer, Float, Symbol, ...), or null.
+     */
+    public int add(String name, Type operator, Object value, int... children) {
+        if (size == kinds.length)
+            grow();
+
+        int node = size++;
+        kinds[node] = nameIndex(name) << NAME_SHIFT | operator.ordinal();
+        payload[node] = encode(operator, value);
+        nextSibling[node] = NONE;
+
+        firstChild[node] = children.length == 0 ? NONE : children[0];
+        for (int i = 0; i+1 < children.length; i++)
+            nextSibling[children[i]] = children[i+1];
+
+        return node;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The last node added, which is the root of the last tree added.
+     */
+    public int getRoot() {
+        return size-1;
+    }
+
+    public String getName(int node) {
+        return names.get(kinds[node] >>> NAME_SHIFT);
+    }
+
+    public Type getOperator(int node) {
+        return TYPES[kinds[node] & ((1 << NAME_SHIFT)-1)];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getInt(int node) {
+        return payload[node];
+    }
+
+    public float getFloat(int node) {
+        return Float.intBitsToFloat(payload[node]);
+    }
+
+    public Symbol getSymbol(int node) {
+        return symbols.get(payload[node]);
+    }
+
+    /**
+     * The leaf value as the ASTNode would hold it, null if there is none.
+     */
+    public Object getValue(int node) {
+        Type operator = getOperator(node);
+
+        if (operator == Type.INT)
+            return getInt(node);
+        if (operator == Type.FLOAT)
+            return getFloat(node);
+        if (operator == Type.ID)
+            return getSymbol(node);
+        if (payload[node] == NONE)
+            return null;
+        return objects.get(payload[node]);
+    }
+
+    public boolean isLeaf(int node) {
+        return getOperator(node).within(Type.getLiterals()) || getOperator(node) == Type.ERROR;
+    }
+
+    public Cursor cursor() {
+        return new Cursor(getRoot());
+    }
+
+    /**
+     * Same output as {@link ASTNode#printTree} for the tree this was made from.
+     */
+    public void printTree(StringBuilder buffer, String prefix, String branchPrefix) {
+        printTree(cursor(), buffer, prefix, branchPrefix);
+    }
+
+    private void printTree(Cursor c, StringBuilder buffer, String prefix, String branchPrefix) {
+        buffer.append(prefix);
+        buffer.append(c.getName());
+
+        if (c.isLeaf()) {
+            buffer.append(": ");
+            buffer.append(c.getValue());
+        } else if (c.getOperator() != Type.BLANK) {
+            buffer.append("<");
+            buffer.append(c.getOperator());
+            buffer.append(">");
+        }
+
+        buffer.append("\n");
+
+        if (c.firstChild()) {
+            do {
+                if (c.hasNextSibling())
+                    printTree(c, buffer, branchPrefix+"├── ", branchPrefix + "│   ");
+                else
+                    printTree(c, buffer, branchPrefix+"└── ", branchPrefix + "    ");
+            } while (c.nextSibling());
+
+            c.parent();
+        }
+    }
+
+    private int nameIndex(String name) {
+        Integer index = nameIndexes.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            nameIndexes.put(name, index);
+        }
+        return index;
+    }
+
+    private int encode(Type operator, Object value) {
+        if (value == null)
+            return NONE;
+
+        if (operator == Type.INT)
+            return (Integer)value;
+        if (operator == Type.FLOAT)
+            return Float.floatToRawIntBits((Float)value);
+        if (operator == Type.ID)
+            return ((Symbol)value).id;
+
+        objects.add(value);
+        return objects.size()-1;
+    }
+
+    private void grow() {
+        int capacity = kinds.length*2;
+
+        kinds = copy(kinds, capacity);
+        firstChild = copy(firstChild, capacity);
+        nextSibling = copy(nextSibling, capacity);
+        payload = copy(payload, capacity);
+    }
+
+    private int[] copy(int[] array, int capacity) {
+        int[] out = new int[capacity];
+        System.arraycopy(array, 0, out, 0, size);
+        return out;
+    }
+
+    /**
+     * Position in the tree that moves between parent, children and siblings,
+     * remembering the way back up.
+     */
+    public class Cursor {
+        private int node;
+        // ancestors of node, root first
+        private int[] parents;
+        private int depth;
+
+        private Cursor(int node) {
+            this.node = node;
+            parents = new int[16];
+            depth = 0;
+        }
+
+        public int getNode() {
+            return node;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Moves to the first child, false (not moving) if there is none.
+         */
+        public boolean firstChild() {
+            if (firstChild[node] == NONE)
+                return false;
+
+            if (depth == parents.length) {
+                int[] grown = new int[depth*2];
+                System.arraycopy(parents, 0, grown, 0, depth);
+                parents = grown;
+            }
+            parents[depth++] = node;
+            node = firstChild[node];
+            return true;
+        }
+
+        public boolean hasNextSibling() {
+            return depth > 0 && nextSibling[node] != NONE;
+        }
+
+        /**
+         * Moves to the next sibling, false (not moving) if there is none.
+         */
+        public boolean nextSibling() {
+            if (!hasNextSibling())
+                return false;
+
+            node = nextSibling[node];
+            return true;
+        }
+
+        /**
+         * Moves to the parent, false (not moving) at the root.
+         */
+        public boolean parent() {
+            if (depth == 0)
+                return false;
+
+            node = parents[--depth];
+            return true;
+        }
+
+        public String getName() {
+            return FlatAST.this.getName(node);
+        }
+
+        public Type getOperator() {
+            return FlatAST.this.getOperator(node);
+        }
+
+        public Object getValue() {
+            return FlatAST.this.getValue(node);
+        }
+
+        public boolean isLeaf() {
+            return FlatAST.this.isLeaf(node);
+        }
+    }
+}
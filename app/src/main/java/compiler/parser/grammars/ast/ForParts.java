@@ -0,0 +1,43 @@
+package compiler.parser.grammars.ast;
+
+/**
+ * The branches of a ForStatement node by what they are for. The parser
+ * builds it as
+ *
+ * DeclareStatement? BoolExpression? AssignStatement? BlockStatementList
+ *
+ * where the condition can be any bool expression node. The declaration is
+ * in the scope around the loop.
+ */
+public class ForParts {
+    // null when the loop leaves it out
+    public final ASTNode<?> declaration;
+    public final ASTNode<?> condition;
+    public final ASTNode<?> update;
+
+    public final ASTNode<?> body;
+
+    public ForParts(ASTNode<?> node) {
+        ASTNode<?> declaration = null;
+        ASTNode<?> condition = null;
+        ASTNode<?> update = null;
+        ASTNode<?> body = null;
+
+        for (Object branch : node.branches) {
+            ASTNode<?> child = (ASTNode<?>)branch;
+            if (child.name.equals("DeclareStatement"))
+                declaration = child;
+            else if (child.name.equals("AssignStatement"))
+                update = child;
+            else if (child.name.equals("BlockStatementList"))
+                body = child;
+            else
+                condition = child;
+        }
+
+        this.declaration = declaration;
+        this.condition = condition;
+        this.update = update;
+        this.body = body;
+    }
+}
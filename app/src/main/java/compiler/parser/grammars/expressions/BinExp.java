@@ -1,53 +1,27 @@
 package compiler.parser.grammars.expressions;
 
-import compiler.exception.parse.TokenTypeException;
 import compiler.exception.semantics.InvalidTypeException;
 import compiler.exception.CompileException;
 import compiler.parser.Parser;
 import compiler.parser.grammars.ast.ASTNode;
+import compiler.syntax.Symbol;
 import compiler.syntax.SymbolTable;
 import compiler.syntax.Type;
 
 // TODO: add type casting and make it so you can't assign float to int
 public class BinExp {
     /**
-     * binaryexpression := term addsuboperator binaryexpression
-     *                   | term
+     * binaryexpression := term (addsuboperator term)...
      */
     public static ASTNode<?> BinaryExpression(Parser p, SymbolTable t) throws CompileException {
-        ASTNode<?> temp = Term(p, t);
-
-        Type nextType = p.l.nextType();
-        // ADD|SUB binaryexpression
-        if (nextType.within(Type.PLUS, Type.MINUS)) {
-            p.eat(nextType);
-            return new ASTNode<ASTNode<?>>(
-                "BinaryExpression", nextType,
-                temp, BinaryExpression(p, t)
-            );
-        }
-
-        return temp;
+        return Precedence.climb(p, t, BinExp::Factor, Precedence.ADD, Precedence.EXP);
     }
 
     /**
-     * term := exp muldivoperator term
-     *       | exp
+     * term := exp (muldivoperator exp)...
      */
     public static ASTNode<?> Term(Parser p, SymbolTable t) throws CompileException {
-        ASTNode<?> temp = Exp(p, t);
-
-        Type nextType = p.l.nextType();
-        // MUL|DIV term
-        if (nextType.within(Type.MUL, Type.DIV)) {
-            p.eat(nextType);
-            return new ASTNode<ASTNode<?>>(
-                "Term", nextType,
-                temp, Term(p, t)
-            );
-        }
-
-        return temp;
+        return Precedence.climb(p, t, BinExp::Factor, Precedence.MUL, Precedence.EXP);
     }
 
     /**
@@ -55,17 +29,7 @@ public class BinExp {
      *      | factor
      */
     public static ASTNode<?> Exp(Parser p, SymbolTable t) throws CompileException {
-        ASTNode<?> temp = Factor(p, t);
-
-        if (p.l.nextType() == Type.EXP) {
-            p.eat(Type.EXP);
-            return new ASTNode<ASTNode<?>>(
-                "Exp", Type.EXP,
-                temp, Exp(p, t)
-            );
-        }
-    
-        return temp;
+        return Precedence.climb(p, t, BinExp::Factor, Precedence.EXP, Precedence.EXP);
     }
 
     /**
@@ -90,7 +54,7 @@ public class BinExp {
         }
 
         // numberliteral
-        if (nextType.within(Type.INT, Type.FLOAT)) {
+        if (nextType != null && nextType.within(Type.INT, Type.FLOAT)) {
             if (preceedingMinus)
                 return new ASTNode<ASTNode<?>>(
                     name, Type.MINUS,
@@ -109,11 +73,11 @@ public class BinExp {
                 assignType = temp.operator;
             } else {
                 temp = Values.Variable(p, t);
-                assignType = t.vget((String)temp.fst()).type;
+                assignType = t.vget((Symbol)temp.fst()).type;
             }
 
             if (!assignType.within(Type.INT_ID, Type.FLOAT_ID))
-                throw new InvalidTypeException(p.l.next().index, assignType, Type.INT, Type.FLOAT);
+                throw new InvalidTypeException(p.position(), assignType, Type.INT, Type.FLOAT);
 
             if (preceedingMinus)
                 return new ASTNode<ASTNode<?>>(
@@ -137,7 +101,7 @@ public class BinExp {
                 return temp;
         }
         
-        throw new TokenTypeException(nextType, "Variable, NumberLiteral, (BinaryExpression)", p.l.next().index);
+        throw p.unexpected("Variable, NumberLiteral, (BinaryExpression)");
     }
 
 }
@@ -8,41 +8,18 @@ import compiler.syntax.Type;
 
 public class BoolExp {
     /**
-     * boolexpression := boolterm andoroperator boolexpression
-     *                 | boolterm
+     * boolexpression := boolandexpression (OR boolandexpression)...
+     * boolandexpression := boolterm (AND boolterm)...
      */
     public static ASTNode<?> BoolExpression(Parser p, SymbolTable t) throws CompileException {
-        ASTNode<?> temp = BoolTerm(p, t);
-
-        Type nextType = p.l.nextType();
-        if (nextType.within(Type.AND, Type.OR)) {
-            p.eat(nextType);
-            return new ASTNode<ASTNode<?>>(
-                "BoolExpression", nextType,
-                temp, BoolExpression(p, t)
-            );
-        }
-
-        return temp;
+        return Precedence.climb(p, t, BoolExp::BoolFactor, Precedence.OR, Precedence.COMPARE);
     }
 
     /**
-     * boolterm := boolfactor compareoperator boolterm
-     *           | boolfactor
+     * boolterm := boolfactor (compareoperator boolfactor)...
      */
     public static ASTNode<?> BoolTerm(Parser p, SymbolTable t) throws CompileException {
-        ASTNode<?> temp = BoolFactor(p, t);
-
-        Type nextType = p.l.nextType();
-        if (nextType.within(Type.EQUIVALENT, Type.GREATER, Type.LESS, Type.GREATER_EQUAL, Type.LESS_EQUAL)) {
-            p.eat(nextType);
-            return new ASTNode<ASTNode<?>>(
-                "BoolTerm", nextType,
-                temp, BoolTerm(p, t)
-            );
-        }
-
-        return temp;
+        return Precedence.climb(p, t, BoolExp::BoolFactor, Precedence.COMPARE, Precedence.COMPARE);
     }
 
     /**
@@ -73,7 +50,7 @@ public class BoolExp {
         }
 
         // truefalseliteral
-        if (nextType.within(Type.TRUE, Type.FALSE))
+        if (nextType != null && nextType.within(Type.TRUE, Type.FALSE))
             return Values.TrueFalseLiteral(p);
 
         // variable
@@ -2,10 +2,12 @@ package compiler.parser.grammars.expressions;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import compiler.exception.semantics.InvalidTypeException;
 import compiler.exception.semantics.ReturnArgCountException;
 import compiler.exception.CompileException;
+import compiler.syntax.Symbol;
 import compiler.syntax.SymbolTable;
 import compiler.syntax.Type;
 import compiler.parser.Parser;
@@ -26,17 +28,33 @@ public class Expressions {
      */
     public static ASTNode<ASTNode<?>> StatementList(Parser p, SymbolTable t) throws CompileException {
         List<ASTNode<?>> statements = new ArrayList<ASTNode<?>>();
-        while (p.l.hasNext()) {
-            ASTNode<?> temp = Statement(p, t);
-            if (temp != null)
-                statements.add(temp);
-        }
+        StatementList(p, t, statements::add);
 
         return new ASTNode<ASTNode<?>>(
             "StatementList", Type.BLANK, statements
         );
     }
 
+    /**
+     * statementlist := statement...
+     *
+     * Gives each statement to out as soon as it is parsed instead of
+     * building the list.
+     */
+    public static void StatementList(Parser p, SymbolTable t, Consumer<ASTNode<?>> out) throws CompileException {
+        while (p.l.hasNext()) {
+            ASTNode<?> temp;
+            try {
+                temp = Statement(p, t);
+            } catch (CompileException e) {
+                temp = p.recover(e, false);
+            }
+
+            if (temp != null)
+                out.accept(temp);
+        }
+    }
+
     /**
      * statement :=     ifstatement
      *                | declarestatement
@@ -56,10 +74,10 @@ public class Expressions {
         if (nextType == Type.IF)
             out = IfStatement(p, t);
         // functiondeclaration
-        else if ((nextType == Type.VOID || nextType.within(Type.getVarTypes())) && p.l.nextType(3) == Type.LPAREN)
+        else if (isFunctionDeclaration(p))
             out = FunctionDeclaration(p, t);
         // declarestatement
-        else if (nextType.within(Type.getVarTypes()))
+        else if (nextType != null && nextType.within(Type.getVarTypes()))
             out = DeclareStatement(p, t);
         else if (nextType == Type.ID) {
             if (p.l.nextType(2) == Type.LPAREN)
@@ -86,15 +104,33 @@ public class Expressions {
     }
     
     /**
-     * functiondeclaration :=     vartypeliteral
-     *                          | VOID
-     *                       FUNC
-     *                            declarestatement...
-     *                       RPAREN LB blockstatementlist RB
+     * functiondeclaration := functionsignature LB blockstatementlist RB
      */
     public static ASTNode<ASTNode<?>> FunctionDeclaration(Parser p, SymbolTable t) throws CompileException {
         List<ASTNode<?>> out = new ArrayList<ASTNode<?>>();
 
+        SymbolTable innerScope = FunctionSignature(p, t, out);
+        p.eat(Type.LB);
+        out.add(BlockStatementList(p, innerScope, new Type[] {out.get(0).operator}));
+        p.eat(Type.RB);
+
+        return new ASTNode<ASTNode<?>>(
+            "FunctionDeclaration", Type.FUNC,
+            out
+        );
+    }
+
+    /**
+     * functionsignature :=     vartypeliteral
+     *                        | VOID
+     *                      FUNC
+     *                          declarestatement...
+     *                      RPAREN
+     *
+     * Defines the function in t and adds the nodes to out, returns the scope
+     * of the function body.
+     */
+    public static SymbolTable FunctionSignature(Parser p, SymbolTable t, List<ASTNode<?>> out) throws CompileException {
         // TODO: add support for returning tuples
         out.add(Values.ReturnTypeLiteral(p));
         out.add(Values.Function(p, t, out.get(0).operator));
@@ -105,7 +141,7 @@ public class Expressions {
         Type nextType = p.l.nextType();
         while (nextType != Type.RPAREN) {
             ASTNode<String> type = Values.VarTypeLiteral(p);
-            ASTNode<String> var = Values.Variable(p, innerScope, type.operator);
+            ASTNode<Symbol> var = Values.Variable(p, innerScope, type.operator);
 
             out.add(new ASTNode<ASTNode<?>>(
                 "DeclareStatement", Type.EQUAL,
@@ -116,15 +152,14 @@ public class Expressions {
             if (nextType != Type.RPAREN)
                 p.eat(Type.COMMA);
         }
-        
-        p.eatMultiple(Type.RPAREN, Type.LB);
-        out.add(BlockStatementList(p, innerScope, new Type[] {out.get(0).operator}));
-        p.eat(Type.RB);
 
-        return new ASTNode<ASTNode<?>>(
-            "FunctionDeclaration", Type.FUNC,
-            out
-        );
+        p.eat(Type.RPAREN);
+        return innerScope;
+    }
+
+    public static boolean isFunctionDeclaration(Parser p) {
+        Type nextType = p.l.nextType();
+        return nextType != null && (nextType == Type.VOID || nextType.within(Type.getVarTypes())) && p.l.nextType(3) == Type.LPAREN;
     }
     
     /**
@@ -143,7 +178,7 @@ public class Expressions {
         p.eat(Type.LPAREN);
 
         Type nextType = p.l.nextType();
-        String name = (String)out.get(0).fst();
+        Symbol name = (Symbol)out.get(0).fst();
         int argCount = t.fget(name).args.size();
 
         // TODO: check function type, add functions to vardata
@@ -167,25 +202,47 @@ public class Expressions {
      * blockstatementlist := statement... RB
      */
     public static ASTNode<ASTNode<?>> BlockStatementList(Parser p, SymbolTable t, Type[] returnType) throws CompileException {
+        if (p.blocks != null)
+            t = p.blocks.enter(t, returnType);
+
         List<ASTNode<?>> statements = new ArrayList<ASTNode<?>>();
         Type nextType = p.l.nextType();
-        while (nextType != Type.RB) {
-            ASTNode<?> temp;
-            if (returnType != null && nextType == Type.RETURN)
-                temp = ReturnStatement(p, t, returnType);
-            else
-                temp = Statement(p, t);
+        while (nextType != Type.RB && nextType != null) {
+            ASTNode<?> temp = BlockStatement(p, t, returnType);
 
             if (temp != null)
                 statements.add(temp);
+            if (p.blocks != null)
+                p.blocks.statement(temp);
 
             nextType = p.l.nextType();
         }
 
-        return new ASTNode<ASTNode<?>>(
+        ASTNode<ASTNode<?>> out = new ASTNode<ASTNode<?>>(
             "BlockStatementList", Type.BLANK,
             statements
         );
+        if (p.blocks != null)
+            p.blocks.exit(out);
+
+        return out;
+    }
+
+    /**
+     * blockstatement :=     returnstatement
+     *                     | statement
+     *
+     * A returnstatement only where returnType is given, in the body of a
+     * function.
+     */
+    public static ASTNode<?> BlockStatement(Parser p, SymbolTable t, Type[] returnType) throws CompileException {
+        try {
+            if (returnType != null && p.l.nextType() == Type.RETURN)
+                return ReturnStatement(p, t, returnType);
+            return Statement(p, t);
+        } catch (CompileException e) {
+            return p.recover(e, true);
+        }
     }
 
     /**
@@ -205,7 +262,7 @@ public class Expressions {
         Type nextType = p.l.nextType();
         for (int var = 1; var <= returnType.length; var++) {
             if (var > returnType.length)
-                throw new ReturnArgCountException(p.l.next().index, returnType.length, var);
+                throw new ReturnArgCountException(p.position(), returnType.length, var);
             
             out.add(Literal(p, t, returnType[var-1]));
             
@@ -343,7 +400,7 @@ public class Expressions {
         // variable
         out.add(Values.Variable(p, t));
 
-        Type varType = t.vget((String)out.get(0).fst()).type;
+        Type varType = t.vget((Symbol)out.get(0).fst()).type;
         Type nextType = p.l.nextType();
         // EQUALS
         if (nextType == Type.EQUAL) {
@@ -393,11 +450,11 @@ public class Expressions {
                 assignType = temp.operator;
             } else {
                 temp = Values.Variable(p, t);
-                assignType = t.vget((String)temp.fst()).type;
+                assignType = t.vget((Symbol)temp.fst()).type;
             }
 
             if (assignType != varType)
-                throw new InvalidTypeException(p.l.next().index, assignType, varType);
+                throw new InvalidTypeException(p.position(), assignType, varType);
             
             return temp;
         }
@@ -412,7 +469,7 @@ public class Expressions {
         else if (varType.within(Type.INT_ID, Type.FLOAT_ID))
             return BinExp.BinaryExpression(p, t);
         else
-            throw new InvalidTypeException(p.l.next().index, p.l.nextType(), varType);
+            throw new InvalidTypeException(p.position(), p.l.nextType(), varType);
     }
 
     /**
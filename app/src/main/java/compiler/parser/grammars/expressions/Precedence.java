@@ -0,0 +1,107 @@
+package compiler.parser.grammars.expressions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import compiler.exception.CompileException;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.syntax.SymbolTable;
+import compiler.syntax.Type;
+
+/**
+ * Precedence climbing for the binary operators, driven by a table of
+ * operator levels. Operators and operands are kept on explicit stacks, so a
+ * flat chain of any length is parsed without recursing once per operator.
+ *
+ * All operators are left associative apart from EXP.
+ */
+public class Precedence {
+    public static final int OR = 1;
+    public static final int AND = 2;
+    public static final int COMPARE = 3;
+    public static final int ADD = 4;
+    public static final int MUL = 5;
+    public static final int EXP = 6;
+
+    // operands between the operators, NumberLiteral, Variable, ...
+    public interface Operand {
+        ASTNode<?> parse(Parser p, SymbolTable t) throws CompileException;
+    }
+
+    // 0 for types that are not binary operators
+    private static final int[] levels = new int[Type.values().length];
+    // name of the node an operator makes, by level
+    private static final String[] names = new String[EXP+1];
+
+    static {
+        levels[Type.OR.ordinal()] = OR;
+        levels[Type.AND.ordinal()] = AND;
+        for (Type t : new Type[] { Type.EQUIVALENT, Type.GREATER, Type.LESS, Type.GREATER_EQUAL, Type.LESS_EQUAL })
+            levels[t.ordinal()] = COMPARE;
+        levels[Type.PLUS.ordinal()] = ADD;
+        levels[Type.MINUS.ordinal()] = ADD;
+        levels[Type.MUL.ordinal()] = MUL;
+        levels[Type.DIV.ordinal()] = MUL;
+        levels[Type.EXP.ordinal()] = EXP;
+
+        names[OR] = "BoolExpression";
+        names[AND] = "BoolExpression";
+        names[COMPARE] = "BoolTerm";
+        names[ADD] = "BinaryExpression";
+        names[MUL] = "Term";
+        names[EXP] = "Exp";
+    }
+
+    public static int level(Type t) {
+        return t == null ? 0 : levels[t.ordinal()];
+    }
+
+    /**
+     * operand (operator operand)... where the operators are those with a level
+     * in [minLevel, maxLevel]
+     */
+    public static ASTNode<?> climb(Parser p, SymbolTable t, Operand operand, int minLevel, int maxLevel) throws CompileException {
+        List<ASTNode<?>> operands = new ArrayList<ASTNode<?>>();
+        List<Type> operators = new ArrayList<Type>();
+
+        operands.add(operand.parse(p, t));
+
+        Type nextType = p.l.nextType();
+        while (level(nextType) >= minLevel && level(nextType) <= maxLevel) {
+            p.eat(nextType);
+
+            // everything on the stack that binds tighter goes first
+            while (!operators.isEmpty() && reducesBefore(operators.get(operators.size()-1), nextType))
+                reduce(operands, operators);
+
+            operators.add(nextType);
+            operands.add(operand.parse(p, t));
+
+            nextType = p.l.nextType();
+        }
+
+        while (!operators.isEmpty())
+            reduce(operands, operators);
+
+        return operands.get(0);
+    }
+
+    private static boolean reducesBefore(Type top, Type next) {
+        if (level(top) != level(next))
+            return level(top) > level(next);
+
+        return next != Type.EXP;
+    }
+
+    private static void reduce(List<ASTNode<?>> operands, List<Type> operators) {
+        Type operator = operators.remove(operators.size()-1);
+        ASTNode<?> right = operands.remove(operands.size()-1);
+        ASTNode<?> left = operands.remove(operands.size()-1);
+
+        operands.add(new ASTNode<ASTNode<?>>(
+            names[level(operator)], operator,
+            left, right
+        ));
+    }
+}
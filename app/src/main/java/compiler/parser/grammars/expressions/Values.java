@@ -13,6 +13,7 @@ import compiler.parser.Parser;
 import compiler.parser.grammars.ast.*;
 import compiler.semantics.FuncData;
 import compiler.semantics.VarData;
+import compiler.syntax.Symbol;
 import compiler.syntax.SymbolTable;
 import compiler.syntax.Type;
 
@@ -82,7 +83,7 @@ public class Values {
         if (nextType == null)
             throw new EOFException("Number");
         else
-            throw new TokenTypeException(nextType, "NumberLiteral", p.l.next().index);
+            throw p.unexpected("NumberLiteral");
     }
 
     /**
@@ -106,12 +107,12 @@ public class Values {
     /**
      * identifier := ID
      */
-    public static ASTNode<String> Variable(Parser p, SymbolTable scopeTable) throws CompileException {
+    public static ASTNode<Symbol> Variable(Parser p, SymbolTable scopeTable) throws CompileException {
         return Variable(p, scopeTable, null);
     }
-    public static ASTNode<String> Variable(Parser p, SymbolTable scopeTable, Type define) throws CompileException {
+    public static ASTNode<Symbol> Variable(Parser p, SymbolTable scopeTable, Type define) throws CompileException {
         Token name = p.eat(Type.ID);
-        boolean contains = scopeTable.vcontains(name.value);
+        boolean contains = scopeTable.vcontains(name.symbol);
 
         if (define == null && !contains)
             throw new UnknownIDException(name.index, name.value);
@@ -121,30 +122,30 @@ public class Values {
             throw new DuplicateIdException(name.index, name.value);
         
         if (define != null)
-            scopeTable.vput(name.value, new VarData(define));
+            scopeTable.vput(name.symbol, new VarData(define));
 
-        return new ASTNode<String>("Identifier", Type.ID, name.value);
+        return new ASTNode<Symbol>("Identifier", Type.ID, name.symbol);
     }
 
     /**
      * function := FUNC
      */
-    public static ASTNode<String> Function(Parser p, SymbolTable scopeTable) throws CompileException {
+    public static ASTNode<Symbol> Function(Parser p, SymbolTable scopeTable) throws CompileException {
         Token name = p.eat(Type.ID);
-        if (!scopeTable.fcontains(name.value))
+        if (!scopeTable.fcontains(name.symbol))
             throw new UnknownIDException(name.index, name.value);
 
-        return new ASTNode<String>("Function", Type.ID, name.value);
+        return new ASTNode<Symbol>("Function", Type.ID, name.symbol);
     }
-    public static ASTNode<String> Function(Parser p, SymbolTable scopeTable, Type define, Type... args) throws CompileException {
+    public static ASTNode<Symbol> Function(Parser p, SymbolTable scopeTable, Type define, Type... args) throws CompileException {
         Token name = p.eat(Type.ID);
 
-        if (scopeTable.fcontains(name.value)/*&& p.t.get(name).scope == scope*/)
+        if (scopeTable.fcontains(name.symbol)/*&& p.t.get(name).scope == scope*/)
             throw new DuplicateIdException(name.index, name.value);
         
-        scopeTable.fput(name.value, new FuncData(define, args));
+        scopeTable.fput(name.symbol, new FuncData(define, args));
         
-        return new ASTNode<String>("Function", Type.ID, name.value);
+        return new ASTNode<Symbol>("Function", Type.ID, name.symbol);
     }
 
 }
@@ -0,0 +1,160 @@
+package compiler.semantics;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.syntax.Symbol;
+import compiler.syntax.Type;
+
+/**
+ * What {@link Resolver} found out about a tree. Nodes are keyed by identity,
+ * so the maps only answer for the nodes of the tree that was resolved.
+ */
+public class Resolution {
+    // Identifier nodes, declarations and uses
+    public final IdentityHashMap<ASTNode<?>, Slot> slots;
+    // Program, FunctionDeclaration and block BlockStatementList nodes
+    public final IdentityHashMap<ASTNode<?>, Integer> frameSizes;
+    // Function nodes to the FunctionDeclaration they name
+    public final IdentityHashMap<ASTNode<?>, ASTNode<?>> functions;
+    // every variable, in declaration order
+    public final List<Local> locals;
+    // Identifier and Function nodes that name nothing in scope
+    public final List<ASTNode<?>> unresolved;
+
+    public Resolution() {
+        slots = new IdentityHashMap<ASTNode<?>, Slot>();
+        frameSizes = new IdentityHashMap<ASTNode<?>, Integer>();
+        functions = new IdentityHashMap<ASTNode<?>, ASTNode<?>>();
+        locals = new ArrayList<Local>();
+        unresolved = new ArrayList<ASTNode<?>>();
+    }
+
+    public Slot getSlot(ASTNode<?> identifier) {
+        return slots.get(identifier);
+    }
+
+    /**
+     * Number of variables the frame of a Program, FunctionDeclaration or
+     * block holds, 0 for other nodes.
+     */
+    public int getFrameSize(ASTNode<?> scope) {
+        Integer size = frameSizes.get(scope);
+        return size == null ? 0 : size;
+    }
+
+    public ASTNode<?> getFunction(ASTNode<?> function) {
+        return functions.get(function);
+    }
+
+    /**
+     * INT_ID, FLOAT_ID, BOOL_ID or STR_ID for an expression of the resolved
+     * tree, null for other nodes. Arithmetic is float as soon as one operand
+     * is.
+     */
+    public Type typeOf(ASTNode<?> expression) {
+        switch (expression.name) {
+            case "IntLiteral":
+                return Type.INT_ID;
+            case "FloatLiteral":
+                return Type.FLOAT_ID;
+            case "StringLiteral":
+                return Type.STR_ID;
+            case "TrueFalseLiteral":
+            case "BoolExpression":
+            case "BoolTerm":
+            case "BoolFactor":
+                return Type.BOOL_ID;
+            case "Identifier":
+                return getSlot(expression).local.type;
+            case "FunctionCall":
+                return expression.operator;
+            case "BinaryExpression":
+            case "Term":
+            case "Exp":
+            case "Factor":
+                for (Object branch : expression.branches) {
+                    if (typeOf((ASTNode<?>)branch) == Type.FLOAT_ID)
+                        return Type.FLOAT_ID;
+                }
+                return Type.INT_ID;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Variables used from inside a function other than the one (or the
+     * program) they belong to.
+     */
+    public List<Local> getCaptured() {
+        List<Local> out = new ArrayList<Local>();
+        for (Local l : locals) {
+            if (l.captured)
+                out.add(l);
+        }
+        return out;
+    }
+
+    /**
+     * Variables that are never read.
+     */
+    public List<Local> getUnused() {
+        List<Local> out = new ArrayList<Local>();
+        for (Local l : locals) {
+            if (l.reads == 0)
+                out.add(l);
+        }
+        return out;
+    }
+
+    /**
+     * Where a variable lives: depth frames up from the frame of the scope
+     * the name is used in, at index slot.
+     */
+    public static class Slot {
+        public final int depth;
+        public final int slot;
+        public final Local local;
+
+        public Slot(int depth, int slot, Local local) {
+            this.depth = depth;
+            this.slot = slot;
+            this.local = local;
+        }
+
+        public String toString() {
+            return "("+depth+", "+slot+")";
+        }
+    }
+
+    /**
+     * A declared variable.
+     */
+    public static class Local {
+        public final Symbol name;
+        public final Type type;
+        // Program, FunctionDeclaration or BlockStatementList it belongs to
+        public final ASTNode<?> scope;
+        public final int slot;
+        // the Identifier node that declares it
+        public final ASTNode<?> declaration;
+
+        public boolean captured;
+        public int reads;
+
+        public Local(Symbol name, Type type, ASTNode<?> scope, int slot, ASTNode<?> declaration) {
+            this.name = name;
+            this.type = type;
+            this.scope = scope;
+            this.slot = slot;
+            this.declaration = declaration;
+        }
+
+        public String toString() {
+            return "("+name+", "+type+", "+slot+")";
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package compiler.semantics;
+
+import java.util.HashMap;
+
+import compiler.parser.grammars.ast.ASTNode;
+import compiler.semantics.Resolution.Local;
+import compiler.semantics.Resolution.Slot;
+import compiler.syntax.Symbol;
+import compiler.syntax.Type;
+
+/**
+ * Name resolution over a finished tree: binds every Identifier to a frame
+ * slot, every Function to its declaration, and works out the frame sizes
+ * and which variables are captured or never read.
+ *
+ * Scopes are the same as the parser's symbol tables. The program and each
+ * function (parameters and body together) have a frame, and so does every
+ * other block. A for loop's variable belongs to the scope around the loop,
+ * where the parser declares it.
+ */
+public class Resolver {
+    private final Resolution out;
+    private Scope scope;
+
+    private Resolver() {
+        out = new Resolution();
+    }
+
+    public static Resolution resolve(ASTNode<?> program) {
+        Resolver r = new Resolver();
+
+        r.scope = new Scope(program, null, true);
+        r.visitChildren(program);
+        r.out.frameSizes.put(program, r.scope.size);
+
+        return r.out;
+    }
+
+    private void visit(ASTNode<?> node) {
+        switch (node.name) {
+            case "FunctionDeclaration":
+                functionDeclaration(node);
+                break;
+            case "DeclareStatement":
+                declareStatement(node);
+                break;
+            case "AssignStatement":
+                assignStatement(node);
+                break;
+            case "BlockStatementList":
+                block(node);
+                break;
+            case "Identifier":
+                variable(node, true);
+                break;
+            case "Function":
+                function(node);
+                break;
+            case "Error":
+                break;
+            default:
+                visitChildren(node);
+        }
+    }
+
+    private void visitChildren(ASTNode<?> node) {
+        for (Object branch : node.branches) {
+            if (branch instanceof ASTNode<?>)
+                visit((ASTNode<?>)branch);
+        }
+    }
+
+    /**
+     * ReturnTypeLiteral Function DeclareStatement... BlockStatementList, the
+     * function is defined before its parameters so the body can call it
+     */
+    private void functionDeclaration(ASTNode<?> node) {
+        ASTNode<?> name = (ASTNode<?>)node.branches.get(1);
+        scope.funcs.put((Symbol)name.fst(), node);
+        out.functions.put(name, node);
+
+        scope = new Scope(node, scope, true);
+        for (int i = 2; i < node.branches.size(); i++) {
+            ASTNode<?> branch = (ASTNode<?>)node.branches.get(i);
+
+            // the body shares the parameters' scope
+            if (i == node.branches.size()-1 && branch.name.equals("BlockStatementList"))
+                visitChildren(branch);
+            else
+                visit(branch);
+        }
+        out.frameSizes.put(node, scope.size);
+        scope = scope.parent;
+    }
+
+    /**
+     * VarTypeLiteral Identifier, then more Identifiers or the value. "int a,
+     * b" and "int a = b" give the same nodes, but the parser only accepts
+     * the second if b is in scope and the first if it is not.
+     */
+    private void declareStatement(ASTNode<?> node) {
+        Type type = ((ASTNode<?>)node.fst()).operator;
+
+        for (int i = 1; i < node.branches.size(); i++) {
+            ASTNode<?> branch = (ASTNode<?>)node.branches.get(i);
+
+            if (branch.name.equals("Identifier") && (i == 1 || lookup((Symbol)branch.fst()) == null))
+                declare(branch, type);
+            else
+                visit(branch);
+        }
+    }
+
+    // the target is written, not read, x++ reads it again in its BinaryExpression
+    private void assignStatement(ASTNode<?> node) {
+        variable((ASTNode<?>)node.fst(), false);
+
+        for (int i = 1; i < node.branches.size(); i++)
+            visit((ASTNode<?>)node.branches.get(i));
+    }
+
+    private void block(ASTNode<?> node) {
+        scope = new Scope(node, scope, false);
+        visitChildren(node);
+        out.frameSizes.put(node, scope.size);
+        scope = scope.parent;
+    }
+
+    private void declare(ASTNode<?> identifier, Type type) {
+        Symbol name = (Symbol)identifier.fst();
+        Local local = new Local(name, type, scope.node, scope.size++, identifier);
+
+        scope.vars.put(name, local);
+        out.locals.add(local);
+        out.slots.put(identifier, new Slot(0, local.slot, local));
+    }
+
+    private void variable(ASTNode<?> identifier, boolean read) {
+        Symbol name = (Symbol)identifier.fst();
+
+        int depth = 0;
+        for (Scope s = scope; s != null; s = s.parent, depth++) {
+            Local local = s.vars.get(name);
+            if (local == null)
+                continue;
+
+            if (read)
+                local.reads++;
+            if (s.function != scope.function)
+                local.captured = true;
+
+            out.slots.put(identifier, new Slot(depth, local.slot, local));
+            return;
+        }
+
+        out.unresolved.add(identifier);
+    }
+
+    private void function(ASTNode<?> function) {
+        Symbol name = (Symbol)function.fst();
+
+        for (Scope s = scope; s != null; s = s.parent) {
+            ASTNode<?> declaration = s.funcs.get(name);
+            if (declaration != null) {
+                out.functions.put(function, declaration);
+                return;
+            }
+        }
+
+        out.unresolved.add(function);
+    }
+
+    private Local lookup(Symbol name) {
+        for (Scope s = scope; s != null; s = s.parent) {
+            Local local = s.vars.get(name);
+            if (local != null)
+                return local;
+        }
+        return null;
+    }
+
+    private static class Scope {
+        final ASTNode<?> node;
+        final Scope parent;
+        // scope of the function (or program) this is in
+        final Scope function;
+
+        final HashMap<Symbol, Local> vars;
+        final HashMap<Symbol, ASTNode<?>> funcs;
+        int size;
+
+        Scope(ASTNode<?> node, Scope parent, boolean isFunction) {
+            this.node = node;
+            this.parent = parent;
+            this.function = isFunction ? this : parent.function;
+
+            vars = new HashMap<Symbol, Local>();
+            funcs = new HashMap<Symbol, ASTNode<?>>();
+            size = 0;
+        }
+    }
+}
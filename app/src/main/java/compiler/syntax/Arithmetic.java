@@ -0,0 +1,34 @@
+package compiler.syntax;
+
+/**
+ * What the arithmetic operators compute where Java has no operator of its
+ * own. The engines call these at run time and the optimizers when they
+ * fold constants, so a folded program gives what it would have run to.
+ */
+public final class Arithmetic {
+    private Arithmetic() {}
+
+    /**
+     * int **, negative exponents round towards 0 like 1 / base ** -exponent.
+     */
+    public static int power(int base, int exponent) {
+        if (exponent < 0)
+            return base == 1 ? 1 : (base == -1 ? (exponent % 2 == 0 ? 1 : -1) : 0);
+
+        int out = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0)
+                out *= base;
+            base *= base;
+            exponent >>= 1;
+        }
+        return out;
+    }
+
+    /**
+     * float **, computed in double and rounded once.
+     */
+    public static float power(float base, float exponent) {
+        return (float)Math.pow(base, exponent);
+    }
+}
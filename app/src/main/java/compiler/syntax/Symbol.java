@@ -0,0 +1,25 @@
+package compiler.syntax;
+
+/**
+ * An identifier, interned by a {@link SymbolPool}. There is one Symbol per
+ * distinct name in a pool, so symbols from the same pool are compared by
+ * identity and hashed by their id.
+ */
+public final class Symbol {
+    public final String name;
+    // dense, from 0 in the order the names were first seen
+    public final int id;
+
+    Symbol(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    public int hashCode() {
+        return id;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,120 @@
+package compiler.syntax;
+
+/**
+ * Immutable map from {@link Symbol} to value, a 32-way trie over the bits of
+ * the symbol id. put() copies only the path to the changed entry, so a map
+ * and every map made from it share all the rest, and keeping an old version
+ * around costs nothing.
+ *
+ * Symbol ids are distinct, so two keys always part ways within the 7 levels
+ * an int gives and no collision handling is needed.
+ */
+final class SymbolMap<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS)-1;
+
+    private static final SymbolMap<?> EMPTY = new SymbolMap<Object>(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private SymbolMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> SymbolMap<V> empty() {
+        return (SymbolMap<V>)EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Symbol key) {
+        final int id = key.id;
+
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = 1 << ((id >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0)
+                return null;
+
+            Object child = node.children[Integer.bitCount(node.bitmap & (bit-1))];
+            if (child instanceof Node) {
+                node = (Node)child;
+            } else {
+                Entry entry = (Entry)child;
+                return entry.key == key ? (V)entry.value : null;
+            }
+        }
+    }
+
+    boolean containsKey(Symbol key) {
+        return get(key) != null;
+    }
+
+    /**
+     * This map with key set to value, which must not be null.
+     */
+    SymbolMap<V> put(Symbol key, V value) {
+        boolean[] added = new boolean[1];
+        Node out = put(root, 0, new Entry(key, value), added);
+        return new SymbolMap<V>(out, added[0] ? size+1 : size);
+    }
+
+    private static Node put(Node node, int shift, Entry entry, boolean[] added) {
+        int bit = 1 << ((entry.key.id >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit-1));
+
+        if ((node.bitmap & bit) == 0) {
+            Object[] children = new Object[node.children.length+1];
+            System.arraycopy(node.children, 0, children, 0, index);
+            children[index] = entry;
+            System.arraycopy(node.children, index, children, index+1, node.children.length-index);
+
+            added[0] = true;
+            return new Node(node.bitmap | bit, children);
+        }
+
+        Object child = node.children[index];
+        Object replacement;
+        if (child instanceof Node) {
+            replacement = put((Node)child, shift+BITS, entry, added);
+        } else if (((Entry)child).key == entry.key) {
+            replacement = entry;
+        } else {
+            // two keys in one slot, push both a level down
+            Node split = put(new Node(0, new Object[0]), shift+BITS, (Entry)child, added);
+            replacement = put(split, shift+BITS, entry, added);
+        }
+
+        Object[] children = node.children.clone();
+        children[index] = replacement;
+        return new Node(node.bitmap, children);
+    }
+
+    private static final class Node {
+        // which of the 32 slots are used, children holds only those
+        final int bitmap;
+        // Node or Entry
+        final Object[] children;
+
+        Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+    }
+
+    private static final class Entry {
+        final Symbol key;
+        final Object value;
+
+        Entry(Symbol key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
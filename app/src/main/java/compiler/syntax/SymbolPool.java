@@ -0,0 +1,102 @@
+package compiler.syntax;
+
+/**
+ * Interns identifiers into {@link Symbol}s with dense ids. Names can be
+ * looked up straight from the source text, so an identifier that was seen
+ * before costs no new String.
+ *
+ * Not thread safe, one pool is shared by the lexer and parser of a
+ * compilation.
+ */
+public class SymbolPool {
+    // open addressing, size is a power of two
+    private Symbol[] table;
+    private Symbol[] byId;
+    private int size;
+
+    public SymbolPool() {
+        table = new Symbol[64];
+        byId = new Symbol[32];
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Symbol get(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("symbol "+id+", size "+size);
+        return byId[id];
+    }
+
+    public Symbol intern(String name) {
+        return intern(name, 0, name.length(), name.hashCode());
+    }
+
+    public Symbol intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31*hash + text.charAt(i);
+
+        return intern(text, start, end, hash);
+    }
+
+    /**
+     * Symbol for text[start, end), hash has to be the String hash code of it
+     */
+    public Symbol intern(CharSequence text, int start, int end, int hash) {
+        int mask = table.length-1;
+        int i = mix(hash) & mask;
+
+        for (Symbol s = table[i]; s != null; s = table[i]) {
+            if (s.name.hashCode() == hash && matches(s.name, text, start, end))
+                return s;
+            i = (i+1) & mask;
+        }
+
+        Symbol out = new Symbol(text.subSequence(start, end).toString(), size);
+        table[i] = out;
+
+        if (size == byId.length) {
+            Symbol[] grown = new Symbol[size*2];
+            System.arraycopy(byId, 0, grown, 0, size);
+            byId = grown;
+        }
+        byId[size++] = out;
+
+        // at most half full
+        if (size*2 > table.length)
+            rehash();
+
+        return out;
+    }
+
+    private void rehash() {
+        table = new Symbol[table.length*2];
+        int mask = table.length-1;
+
+        for (int id = 0; id < size; id++) {
+            int i = mix(byId[id].name.hashCode()) & mask;
+            while (table[i] != null)
+                i = (i+1) & mask;
+            table[i] = byId[id];
+        }
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end-start)
+            return false;
+
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start+i))
+                return false;
+        }
+        return true;
+    }
+
+    // folds the high bits in, the table index only uses the low ones
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,46 +1,47 @@
 package compiler.syntax;
 
-import java.util.HashMap;
-
 import compiler.semantics.FuncData;
 import compiler.semantics.VarData;
 
 public class SymbolTable {
     // TODO: note - vardata currently could be replaced with Type
-    private HashMap<String, VarData> vars;
-    private HashMap<String, FuncData> funcs;
+    // Immutable, so a copy shares them and only the puts made afterwards
+    // are its own. Entering a scope costs nothing however many symbols
+    // there are.
+    private SymbolMap<VarData> vars;
+    private SymbolMap<FuncData> funcs;
 
     public SymbolTable() {
-        vars = new HashMap<String, VarData>();
-        funcs = new HashMap<String, FuncData>();
+        vars = SymbolMap.empty();
+        funcs = SymbolMap.empty();
     }
     public SymbolTable(SymbolTable copy) {
-        this.vars = new HashMap<String, VarData>(copy.vars);
-        this.funcs = new HashMap<String, FuncData>(copy.funcs);
+        this.vars = copy.vars;
+        this.funcs = copy.funcs;
     }
 
-    public boolean vcontains(String var) {
-        return vars.keySet().contains(var);
+    public boolean vcontains(Symbol var) {
+        return vars.containsKey(var);
     }
     
-    public void vput(String var, VarData data) {
-        vars.put(var, data);
+    public void vput(Symbol var, VarData data) {
+        vars = vars.put(var, data);
     }
 
-    public VarData vget(String var) {
+    public VarData vget(Symbol var) {
         return vars.get(var);
     }
 
 
-    public boolean fcontains(String func) {
-        return funcs.keySet().contains(func);
+    public boolean fcontains(Symbol func) {
+        return funcs.containsKey(func);
     }
     
-    public void fput(String func, FuncData data) {
-        funcs.put(func, data);
+    public void fput(Symbol func, FuncData data) {
+        funcs = funcs.put(func, data);
     }
 
-    public FuncData fget(String var) {
+    public FuncData fget(Symbol var) {
         return funcs.get(var);
     }
 }
@@ -14,42 +14,42 @@ public enum Type {
     // https://stackoverflow.com/questions/171480/regex-grabbing-values-between-quotation-marks
     STR(    p("\"(.*?)\"")),
 
-    EQUIVALENT( p("(==)")),
-    LESS_EQUAL( p("(<=)")),
-    GREATER_EQUAL(  p("(>=)")),
-    LESS(   p("<")),
-    GREATER(p(">")),
+    EQUIVALENT( "=="),
+    LESS_EQUAL( "<="),
+    GREATER_EQUAL(  ">="),
+    LESS(   "<"),
+    GREATER(">"),
     // if (a =| 1, 3, 5) -> if a is equal to 1, 3, or 5
-    OR(     p("(\\|\\|)")),
-    AND(    p("(\\&\\&)")),
-    NOT(    p("!")),
-
-    EXP(    p("(\\*\\*)")),
-    EQUAL(  p("=")),
-    MUL(    p("\\*")),
-    DIV(    p("/")),
-    PLUS(   p("\\+")),
-    MINUS(  p("\\-")),
-
-    LPAREN( p("\\(")),
-    RPAREN( p("\\)")),
-    LB(     p("\\{")),
-    RB(     p("\\}")),
-    COMMA(  p(",")),
+    OR(     "||"),
+    AND(    "&&"),
+    NOT(    "!"),
+
+    EXP(    "**"),
+    EQUAL(  "="),
+    MUL(    "*"),
+    DIV(    "/"),
+    PLUS(   "+"),
+    MINUS(  "-"),
+
+    LPAREN( "("),
+    RPAREN( ")"),
+    LB(     "{"),
+    RB(     "}"),
+    COMMA(  ","),
     
     // reserved words
-    INT_ID( p("(int)")),
-    FLOAT_ID(p("(float)")),
-    STR_ID( p("(str)")),
-    BOOL_ID(p("(bool)")),
-    IF(     p("(if)")),
-    ELSE(   p("(else)")),
-    TRUE(   p("(true)")),
-    FALSE(  p("(false)")),
-    WHILE(  p("(while)")),
-    FOR(    p("(for)")),
-    VOID(   p("(void)")),
-    RETURN( p("(return)")),
+    INT_ID( "int"),
+    FLOAT_ID("float"),
+    STR_ID( "str"),
+    BOOL_ID("bool"),
+    IF(     "if"),
+    ELSE(   "else"),
+    TRUE(   "true"),
+    FALSE(  "false"),
+    WHILE(  "while"),
+    FOR(    "for"),
+    VOID(   "void"),
+    RETURN( "return"),
 
     NEWLINE(p("(\r\n|\r|\n)")),
 
@@ -57,7 +57,10 @@ public enum Type {
 
     // parsing types (do not match to anything)
     FUNC(p("a^")),
-    BLANK(p("a^"));
+    BLANK(p("a^")),
+    // text no token matches, and statements that did not parse, see
+    // TokenScanner.scan and Parser.recover
+    ERROR(p("a^"));
 
     private static final EnumSet<Type> allOf;
 
@@ -68,15 +71,25 @@ public enum Type {
     }
 
     private Pattern regex;
+    // exact text of fixed tokens (operators, punctuation, reserved words), null otherwise
+    private String literal;
 
     Type(Pattern regex) {
         this.regex = regex;
     }
+    Type(String literal) {
+        this(p(Pattern.quote(literal)));
+        this.literal = literal;
+    }
 
     public Pattern getPattern() {
         return regex;
     }
 
+    public String getLiteral() {
+        return literal;
+    }
+
     public static EnumSet<Type> getAllOf() {
         return allOf;
     }
@@ -0,0 +1,87 @@
+package compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import compiler.lexer.SourceText;
+
+public class ReaderTest {
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("reader", ".txt");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private String read(byte[] bytes) throws IOException {
+        Files.write(file, bytes);
+        return Reader.readFile(file.toString()).toString();
+    }
+
+    private String read(String text) throws IOException {
+        return read(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // what readFile returned before it mapped the file: every line of
+    // Scanner.nextLine followed by '\n'
+    private String scanLines(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder output = new StringBuilder();
+        try (Scanner reader = new Scanner(new File(file.toString()), "UTF-8")) {
+            while (reader.hasNextLine())
+                output.append(reader.nextLine()).append('\n');
+        }
+        return output.toString();
+    }
+
+    @Test
+    public void asciiIsReadAsIs() throws IOException {
+        assertEquals("int a = 1\n\nint b = 2", read("int a = 1\n\nint b = 2"));
+        assertEquals("", read(""));
+    }
+
+    @Test
+    public void lineBreaksBecomeNewlines() throws IOException {
+        assertEquals("a\nb\nc\n", read("a\r\nb\rc\r\n"));
+        assertEquals("a\nb\nc\nd\n\n", read("a\u0085b\u2028c\u2029d\r\r"));
+        assertEquals("\u00e9\n\n", read("\u00e9\r\n\n"));
+    }
+
+    @Test
+    public void sameLinesAsScanner() throws IOException {
+        String[] texts = {
+            "int a = 1\nint b = 2\n",
+            "int a = 1\r\nint b = 2",
+            "a\rb\r\n\r\nc",
+            "string s = \"\u00e9\"\u0085int i = 0\u2028\u2029float f = 1.0\r",
+            "\n\r\n\r",
+        };
+        for (String text : texts) {
+            String expected = scanLines(text);
+            assertEquals(expected, SourceText.withFinalNewline(read(text)).toString());
+        }
+    }
+
+    @Test
+    public void malformedUtf8IsAnError() {
+        byte[] bytes = { 'a', (byte) 0xC3, '\n' };
+        assertThrows(CharacterCodingException.class, () -> read(bytes));
+    }
+}
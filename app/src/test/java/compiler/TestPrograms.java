@@ -0,0 +1,25 @@
+package compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sample programs in the test resources, compiler/programs/<name>.txt.
+ */
+public class TestPrograms {
+    public static final String[] NAMES = { "statements", "nested", "tour" };
+
+    private TestPrograms() {}
+
+    public static String read(String name) {
+        try (InputStream in = TestPrograms.class.getResourceAsStream("programs/"+name+".txt")) {
+            if (in == null)
+                throw new IllegalArgumentException("No test program "+name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
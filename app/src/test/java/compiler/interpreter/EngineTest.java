@@ -0,0 +1,67 @@
+package compiler.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class EngineTest {
+    private static int recurse(int n) {
+        return recurse(n+1)+1;
+    }
+
+    @Test
+    public void stackOverflowIsExecutionException() {
+        ExecutionException e = assertThrows(ExecutionException.class,
+            () -> Engine.runOnBigStack(() -> recurse(0)));
+        assertEquals("Recursion too deep", e.getMessage());
+    }
+
+    @Test
+    public void runtimeExceptionIsRethrown() {
+        IllegalArgumentException thrown = new IllegalArgumentException();
+        assertSame(thrown, assertThrows(IllegalArgumentException.class,
+            () -> Engine.runOnBigStack(() -> { throw thrown; })));
+    }
+
+    @Test
+    public void errorIsRethrown() {
+        AssertionError thrown = new AssertionError("from the body");
+        assertSame(thrown, assertThrows(AssertionError.class,
+            () -> Engine.runOnBigStack(() -> { throw thrown; })));
+    }
+
+    @Test
+    public void interruptReachesTheBody() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread caller = new Thread(() -> {
+            try {
+                Engine.runOnBigStack(() -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(60_000);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                    }
+                    finished.countDown();
+                });
+            } catch (ExecutionException e) {
+                // the wait was interrupted
+            }
+        });
+
+        caller.start();
+        started.await();
+        caller.interrupt();
+        caller.join();
+        finished.await();
+        assertTrue(interrupted.get());
+    }
+}
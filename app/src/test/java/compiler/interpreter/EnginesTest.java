@@ -0,0 +1,76 @@
+package compiler.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import compiler.TestPrograms;
+import compiler.exception.CompileException;
+import compiler.ir.Lowering;
+import compiler.ir.Passes;
+import compiler.ir.Program;
+import compiler.optimizer.PassManager;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+
+/**
+ * Runs the sample programs on every engine at each optimization level and
+ * checks they all end with the globals of the Interpreter at -O0.
+ */
+public class EnginesTest {
+    private static final int MAX_LEVEL = 2;
+
+    interface Factory { Engine create(ASTNode<?> program, int level); }
+
+    private static final Map<String, Factory> ENGINES = new LinkedHashMap<String, Factory>();
+    static {
+        ENGINES.put("interpreter", (program, level) -> new Interpreter(program));
+        ENGINES.put("vm", (program, level) -> new VM(BytecodeCompiler.compile(program)));
+        ENGINES.put("tiered", (program, level) -> new VM(BytecodeCompiler.compile(program), true));
+        ENGINES.put("specializing", (program, level) -> new SpecializingInterpreter(program));
+        ENGINES.put("generic", (program, level) -> new SpecializingInterpreter(program, false));
+        ENGINES.put("ssa", (program, level) -> {
+            Program lowered = Lowering.lower(program);
+            Passes.forLevel(level).run(lowered);
+            return new SSAInterpreter(lowered);
+        });
+    }
+
+    // parsed fresh, the passes change the tree
+    private static ASTNode<?> parse(String name, int level) throws CompileException {
+        ASTNode<?> program = new Parser(TestPrograms.read(name)).parse();
+        PassManager.forLevel(level).run(program);
+        return program;
+    }
+
+    private static Map<String, Object> run(Engine engine) {
+        engine.run();
+        return engine.getGlobals();
+    }
+
+    @Test
+    public void enginesAgree() throws CompileException {
+        for (String name : TestPrograms.NAMES) {
+            Map<String, Object> expected = run(new Interpreter(parse(name, 0)));
+            assertFalse(name, expected.isEmpty());
+
+            for (int level = 0; level <= MAX_LEVEL; level++) {
+                for (Map.Entry<String, Factory> engine : ENGINES.entrySet()) {
+                    String where = name+" on "+engine.getKey()+" at -O"+level;
+                    assertEquals(where, expected, run(engine.getValue().create(parse(name, level), level)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tieredCompilesHotFunctions() throws CompileException {
+        VM vm = new VM(BytecodeCompiler.compile(parse("statements", 0)), true);
+        vm.run();
+        assertEquals("[fib]", vm.getCompiled().toString());
+    }
+}
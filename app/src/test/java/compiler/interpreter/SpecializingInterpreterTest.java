@@ -0,0 +1,122 @@
+package compiler.interpreter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.SpecializingInterpreter.Expr;
+import compiler.interpreter.SpecializingInterpreter.Literal;
+import compiler.interpreter.SpecializingInterpreter.Node;
+import compiler.parser.Parser;
+import compiler.syntax.Type;
+
+/**
+ * The language fixes the kind of every value, so no program the parser
+ * takes makes a specialized node see another kind. These build the nodes
+ * by hand around an operand that changes kind between runs.
+ */
+public class SpecializingInterpreterTest {
+    // gives its values in turn, the last one from then on
+    static final class Changing extends Expr {
+        private final Object[] values;
+        private int next;
+
+        Changing(Object... values) {
+            this.values = values;
+        }
+
+        Object execute(Frame f) {
+            Object out = values[next];
+            if (next < values.length-1)
+                next++;
+            return out;
+        }
+    }
+
+    // stands in for the statement the node hangs off
+    static final class Root extends Node {
+        Node child;
+
+        Root(Node child) {
+            this.child = adopt(child);
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            if (child == old)
+                child = replacement;
+        }
+    }
+
+    private static SpecializingInterpreter interpreter() throws CompileException {
+        return new SpecializingInterpreter(new Parser("int a = 1\n").parse());
+    }
+
+    @Test
+    public void binaryGoesBackToGeneric() throws CompileException {
+        SpecializingInterpreter si = interpreter();
+        Root root = new Root(si.new GenericBinary(Type.PLUS, new Changing(1, 2.5f), new Literal(1)));
+
+        assertEquals(2, ((Expr)root.child).execute(null));
+        assertTrue(root.child instanceof SpecializingInterpreter.IntAdd);
+        assertEquals(1, si.getSpecialized());
+        assertEquals(0, si.getDeoptimized());
+
+        assertEquals(3.5f, ((Expr)root.child).execute(null));
+        assertTrue(root.child instanceof SpecializingInterpreter.GenericBinary);
+        assertEquals(1, si.getDeoptimized());
+
+        // and specializes again for what it sees now
+        assertEquals(3.5f, ((Expr)root.child).execute(null));
+        assertTrue(root.child instanceof SpecializingInterpreter.FloatAdd);
+        assertEquals(2, si.getSpecialized());
+    }
+
+    @Test
+    public void rightOperandGoesBackToGeneric() throws CompileException {
+        SpecializingInterpreter si = interpreter();
+        Root root = new Root(si.new GenericBinary(Type.LESS, new Literal(2), new Changing(3, 1.5f)));
+
+        assertEquals(true, ((Expr)root.child).execute(null));
+        assertTrue(root.child instanceof SpecializingInterpreter.IntLess);
+
+        assertEquals(false, ((Expr)root.child).execute(null));
+        assertTrue(root.child instanceof SpecializingInterpreter.GenericBinary);
+        assertEquals(1, si.getDeoptimized());
+    }
+
+    @Test
+    public void writeGoesBackToGeneric() throws CompileException {
+        SpecializingInterpreter si = interpreter();
+        Frame frame = new Frame(1, false, null);
+        Root root = new Root(si.new GenericWrite(Type.INT_ID, 0, 0, new Changing(7, 2.75f)));
+
+        ((SpecializingInterpreter.Write)root.child).write(frame, frame);
+        assertEquals(7, frame.get(0, Type.INT_ID));
+        assertTrue(root.child instanceof SpecializingInterpreter.IntWrite);
+
+        // a float stored in an int is truncated
+        ((SpecializingInterpreter.Write)root.child).write(frame, frame);
+        assertEquals(2, frame.get(0, Type.INT_ID));
+        assertTrue(root.child instanceof SpecializingInterpreter.GenericWrite);
+        assertEquals(1, si.getDeoptimized());
+    }
+
+    @Test
+    public void widenedOperandTakesOutItsConversion() throws CompileException {
+        SpecializingInterpreter si = interpreter();
+        Root root = new Root(si.new GenericBinary(Type.MUL, new Changing(2, 0.5f), new Literal(3.0f)));
+
+        assertEquals(6.0f, ((Expr)root.child).execute(null));
+        SpecializingInterpreter.FloatMul mul = (SpecializingInterpreter.FloatMul)root.child;
+        assertTrue(mul.left instanceof SpecializingInterpreter.ToFloat);
+
+        // the float comes through the ToFloat, which steps aside
+        assertEquals(1.5f, ((Expr)root.child).execute(null));
+        assertSame(mul, root.child);
+        assertTrue(mul.left instanceof Changing);
+        assertEquals(1, si.getDeoptimized());
+    }
+}
@@ -0,0 +1,124 @@
+package compiler.ir;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.Interpreter;
+import compiler.interpreter.SSAInterpreter;
+import compiler.parser.Parser;
+
+public class InliningTest {
+    private static final String SMALL =
+        "int small() {\n"+
+        "    return 0 + g * 2\n"+
+        "}\n";
+
+    // a function of lines statements, each a few instructions
+    private static String big(int lines) {
+        StringBuilder out = new StringBuilder("int big() {\n    int r = g\n");
+        for (int i = 0; i < lines; i++)
+            out.append("    r = 0 + r * 3 + g\n");
+        return out.append("    return r\n}\n").toString();
+    }
+
+    // calls callee from the top level, calls times
+    private static String program(String functions, String callee, int calls) {
+        StringBuilder out = new StringBuilder("int g = 5\nint total = 0\n").append(functions);
+        for (int i = 0; i < calls; i++)
+            out.append("total = 0 + total + ").append(callee).append("()\n");
+        return out.toString();
+    }
+
+    private static Function function(Program program, String name) {
+        for (Function f : program.functions) {
+            if (f.name.equals(name))
+                return f;
+        }
+        return null;
+    }
+
+    private static int calls(Function f) {
+        int out = 0;
+        for (Block b : f.blocks) {
+            for (Instruction i : b.instructions) {
+                if (i.op == Op.CALL)
+                    out++;
+            }
+        }
+        return out;
+    }
+
+    // inlines, checks the SSA and that it still runs to the Interpreter's values
+    private static Program inline(String source) throws CompileException {
+        Program program = Lowering.lower(new Parser(source).parse());
+        CopyPropagation.run(program);
+        Inlining.run(program);
+        assertEquals(List.of(), Verifier.verify(program));
+
+        Interpreter interpreter = new Interpreter(new Parser(source).parse());
+        interpreter.run();
+        SSAInterpreter ssa = new SSAInterpreter(program);
+        ssa.run();
+        assertEquals(interpreter.getGlobals(), ssa.getGlobals());
+        return program;
+    }
+
+    @Test
+    public void smallFunctionsAreInlined() throws CompileException {
+        Program program = inline(program(SMALL, "small", 3));
+        Function main = program.functions.get(0);
+        assertEquals(0, calls(main));
+        assertEquals(3, main.inlined.size());
+        // nothing calls it any more
+        assertEquals(null, function(program, "small"));
+    }
+
+    @Test
+    public void largeFunctionsAreNot() throws CompileException {
+        Program lowered = Lowering.lower(new Parser(program(big(12), "big", 1)).parse());
+        CopyPropagation.run(lowered);
+        assertTrue(function(lowered, "big").size() > Inlining.MAX_SIZE);
+
+        Program program = inline(program(big(12), "big", 1));
+        assertEquals(1, calls(program.functions.get(0)));
+        assertTrue(program.functions.get(0).inlined.isEmpty());
+    }
+
+    @Test
+    public void growthStaysInBudget() throws CompileException {
+        Program program = inline(program(SMALL, "small", 200));
+        Function main = program.functions.get(0);
+        assertTrue(main.growth <= Inlining.MAX_GROWTH);
+        assertFalse(main.inlined.isEmpty());
+        // the calls past the budget stay calls
+        assertEquals(200, main.inlined.size()+calls(main));
+        assertTrue(calls(main) > 0);
+    }
+
+    @Test
+    public void recursiveFunctionsAreNot() throws CompileException {
+        String fib =
+            "int n = 10\n"+
+            "int fib() {\n"+
+            "    int k = n\n"+
+            "    int r = k\n"+
+            "    if (k > 1) {\n"+
+            "        n = 0 + k - 1\n"+
+            "        r = fib()\n"+
+            "        n = 0 + k - 2\n"+
+            "        r = 0 + r + fib()\n"+
+            "    }\n"+
+            "    return r\n"+
+            "}\n";
+        Program program = inline(program(fib, "fib", 1));
+        assertTrue(program.functions.get(0).inlined.isEmpty());
+        assertEquals(2, calls(function(program, "fib")));
+    }
+}
@@ -0,0 +1,93 @@
+package compiler.ir;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.Interpreter;
+import compiler.interpreter.SSAInterpreter;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+
+public class LoopInvariantsTest {
+    // the loop never runs, so neither may a / b
+    private static final String ZERO_TRIP =
+        "int a = 6\n"+
+        "int b = 0\n"+
+        "int n = 0\n"+
+        "int x = 1\n"+
+        "for (int i = 0, i < n, i++) {\n"+
+        "    x = 0 + a / b\n"+
+        "}\n";
+
+    private static final String NONZERO =
+        "int a = 6\n"+
+        "int n = 3\n"+
+        "int x = 1\n"+
+        "for (int i = 0, i < n, i++) {\n"+
+        "    x = 0 + a / 3\n"+
+        "}\n";
+
+    // with the copies taken out, as -O2 does first, so the phis of values
+    // the loop does not change are gone
+    private static Program lower(String source) throws CompileException {
+        Program program = Lowering.lower(new Parser(source).parse());
+        CopyPropagation.run(program);
+        return program;
+    }
+
+    private static Map<String, Object> interpret(String source) throws CompileException {
+        ASTNode<?> program = new Parser(source).parse();
+        Interpreter interpreter = new Interpreter(program);
+        interpreter.run();
+        return interpreter.getGlobals();
+    }
+
+    private static Map<String, Object> run(Program program) {
+        SSAInterpreter interpreter = new SSAInterpreter(program);
+        interpreter.run();
+        return interpreter.getGlobals();
+    }
+
+    // whether the int division of the top level is inside a loop
+    private static boolean divisionInLoop(Program program) {
+        Function main = program.functions.get(0);
+        List<Loops.Loop> loops = new Loops(main).loops;
+        assertEquals(1, loops.size());
+        for (Block b : main.blocks) {
+            for (Instruction i : b.instructions) {
+                if (i.op == Op.DIV)
+                    return loops.get(0).contains(b);
+            }
+        }
+        throw new AssertionError("no division in\n"+Printer.print(program));
+    }
+
+    @Test
+    public void divisionThatMayFailStaysInTheLoop() throws CompileException {
+        Program program = lower(ZERO_TRIP);
+        LoopInvariants.run(program);
+        assertTrue(Printer.print(program), divisionInLoop(program));
+        assertEquals(List.of(), Verifier.verify(program));
+        assertEquals(interpret(ZERO_TRIP), run(program));
+
+        program = lower(ZERO_TRIP);
+        Passes.forLevel(2).run(program);
+        assertEquals(interpret(ZERO_TRIP), run(program));
+    }
+
+    @Test
+    public void divisionThatCannotFailLeaves() throws CompileException {
+        Program program = lower(NONZERO);
+        assertTrue(LoopInvariants.run(program) > 0);
+        assertFalse(Printer.print(program), divisionInLoop(program));
+        assertEquals(List.of(), Verifier.verify(program));
+        assertEquals(interpret(NONZERO), run(program));
+    }
+}
@@ -0,0 +1,37 @@
+package compiler.ir;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import compiler.TestPrograms;
+import compiler.exception.CompileException;
+import compiler.optimizer.PassManager;
+import compiler.parser.Parser;
+
+public class PassesTest {
+    private static void assertVerifies(String where, Program program) {
+        List<String> problems = Verifier.verify(program);
+        assertEquals(where+"\n"+Printer.print(program), List.of(), problems);
+    }
+
+    // runs the passes of -O2 one at a time, in rounds like the manager
+    @Test
+    public void everyPassLeavesValidSSA() throws CompileException {
+        for (String name : TestPrograms.NAMES) {
+            Program program = Lowering.lower(new Parser(TestPrograms.read(name)).parse());
+            assertVerifies(name+" lowered", program);
+
+            List<PassManager.Stats<Program>> passes = Passes.forLevel(2).getStats();
+            for (int round = 0, changes = -1; changes != 0 && round < PassManager.MAX_ROUNDS; round++) {
+                changes = 0;
+                for (PassManager.Stats<Program> s : passes) {
+                    changes += s.pass.run(program);
+                    assertVerifies(name+" after "+s.name+" in round "+round, program);
+                }
+            }
+        }
+    }
+}
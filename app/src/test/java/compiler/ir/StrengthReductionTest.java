@@ -0,0 +1,72 @@
+package compiler.ir;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.Interpreter;
+import compiler.interpreter.SSAInterpreter;
+import compiler.parser.Parser;
+
+public class StrengthReductionTest {
+    // the exponent is a variable so the parser takes it, copies make it a
+    // constant
+    private static String power(String base, String type, String exponent) {
+        return type+" e = "+exponent+"\n"+
+            type+" y = "+base+" ** e\n";
+    }
+
+    private static Map<String, Object> interpret(String source) throws CompileException {
+        Interpreter interpreter = new Interpreter(new Parser(source).parse());
+        interpreter.run();
+        return interpreter.getGlobals();
+    }
+
+    private static int powers(Program program) {
+        int out = 0;
+        for (Function f : program.functions) {
+            for (Block b : f.blocks) {
+                for (Instruction i : b.instructions) {
+                    if (i.op == Op.POW)
+                        out++;
+                }
+            }
+        }
+        return out;
+    }
+
+    // reduces the power, checks whether it went and that the value is the same
+    private static void assertReduced(boolean reduced, String source) throws CompileException {
+        Program program = Lowering.lower(new Parser(source).parse());
+        CopyPropagation.run(program);
+        assertEquals(source, 1, powers(program));
+
+        assertEquals(source, reduced ? 1 : 0, StrengthReduction.run(program));
+        assertEquals(source, reduced ? 0 : 1, powers(program));
+        assertEquals(List.of(), Verifier.verify(program));
+
+        SSAInterpreter interpreter = new SSAInterpreter(program);
+        interpreter.run();
+        assertEquals(source, interpret(source), interpreter.getGlobals());
+    }
+
+    @Test
+    public void floatPowersOf0To2Only() throws CompileException {
+        for (String exponent : new String[] { "0.0", "1.0", "2.0" })
+            assertReduced(true, power("1.1", "float", exponent));
+        for (String exponent : new String[] { "3.0", "4.0", "0.5", "-1.0" })
+            assertReduced(false, power("1.1", "float", exponent));
+    }
+
+    @Test
+    public void intPowersUpToMaxExponent() throws CompileException {
+        for (int exponent = 0; exponent <= StrengthReduction.MAX_EXPONENT; exponent++)
+            assertReduced(true, power("7", "int", ""+exponent));
+        assertReduced(false, power("7", "int", ""+(StrengthReduction.MAX_EXPONENT+1)));
+        assertReduced(false, power("7", "int", "-1"));
+    }
+}
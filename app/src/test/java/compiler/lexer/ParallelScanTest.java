@@ -0,0 +1,100 @@
+package compiler.lexer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import compiler.TestPrograms;
+
+/**
+ * Compares TokenStreams scanned in parallel chunks with sequential scans of
+ * the same text.
+ */
+public class ParallelScanTest {
+    // put between the lines of the programs, so chunks start inside comments
+    // and strings and lines end in every way
+    private static final String[] BREAKS = {
+        "/* \"a\n\n */", "// b /* \"\n", "str s = \"/* c\"\n", "\r\n", "\r", "$", "/*", "*/", "\"",
+    };
+
+    // ends of those comments, the last two close them inside what a chunk
+    // that starts in the comment takes for a string or a line comment
+    private static final String[] CLOSES = { "*/", "s = \"*/ x\"\n", "// */\n" };
+
+    private static final long[] SEEDS = { 1, 2, 3 };
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    // lines of the sample programs in random order with breaks between
+    // them, until there are length characters
+    private static String generate(Random random, int length) {
+        List<String> lines = new ArrayList<String>();
+        for (String name : TestPrograms.NAMES) {
+            for (String line : TestPrograms.read(name).split("\n"))
+                lines.add(line+"\n");
+        }
+
+        StringBuilder out = new StringBuilder();
+        while (out.length() < length) {
+            out.append(lines.get(random.nextInt(lines.size())));
+            if (random.nextInt(100) == 0)
+                out.append(BREAKS[random.nextInt(BREAKS.length)]);
+            // a comment over many lines, longer than a chunk now and then
+            if (random.nextInt(50) == 0) {
+                out.append("/*");
+                for (int i = random.nextInt(random.nextInt(40) == 0 ? 10000 : 200); i > 0; i--)
+                    out.append("int y \"a // b\n");
+                out.append(CLOSES[random.nextInt(CLOSES.length)]);
+            }
+        }
+        return out.toString();
+    }
+
+    private static List<String> tokens(TokenStream stream) {
+        List<String> out = new ArrayList<String>();
+        for (int i = 0; i < stream.size(); i++)
+            out.add(stream.get(i)+" at "+stream.getStart(i)+"+"+stream.getLength(i));
+        return out;
+    }
+
+    @Test
+    public void sameAsSequential() {
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            String text = generate(random, 2*ParallelScan.MIN_CHUNK + random.nextInt(8*ParallelScan.MIN_CHUNK));
+
+            TokenStream sequential = new TokenStream(text);
+            TokenStream parallel = new TokenStream(text, pool);
+            assertEquals("seed "+seed, tokens(sequential), tokens(parallel));
+
+            // the far tokens are counted the same, so edits rescan as far
+            int offset = random.nextInt(text.length());
+            sequential.edit(offset, 0, "/*");
+            parallel.edit(offset, 0, "/*");
+            assertEquals("seed "+seed+", edit at "+offset, tokens(sequential), tokens(parallel));
+        }
+    }
+
+    @Test
+    public void smallInputIsScannedSequentially() {
+        String text = TestPrograms.read("statements");
+        assertEquals(tokens(new TokenStream(text)), tokens(new TokenStream(text, pool)));
+    }
+}
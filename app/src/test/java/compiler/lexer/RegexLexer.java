@@ -0,0 +1,116 @@
+package compiler.lexer;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import compiler.syntax.Type;
+
+/**
+ * The lexer from before TokenScanner, which tries the pattern of every Type
+ * in turn, kept as the reference the scanner is tested against. Two things
+ * changed since: reserved words are whole words, so a longer word is an ID,
+ * and text nothing matches is an ERROR token. This one stops there, the
+ * ERROR token has no text.
+ */
+class RegexLexer {
+
+    private static final Pattern SPACE = Pattern.compile("\\G\\s+");
+
+    private final Matcher input;
+    private final int length;
+
+    // end of the last match
+    private int pos;
+
+    private int line;
+    private int index;
+
+    private boolean stopped;
+
+    RegexLexer(String input) {
+        if (!input.endsWith("\n"))
+            input = input+"\n";
+        this.input = SPACE.matcher(input);
+        length = input.length();
+
+        pos = 0;
+        line = 1;
+        index = 0;
+    }
+
+    Token next() {
+        if (stopped)
+            return null;
+
+        // Inc line count
+        if (find(Type.NEWLINE.getPattern())) {
+            int prevIndex = index;
+            line++;
+            index = 0;
+            return new Token(Type.NEWLINE, new int[] {line-1, prevIndex});
+        }
+
+        // Skip spaces
+        if (find(SPACE))
+            index += input.group().length();
+
+        // Comments
+        if (find(Type.LINECOMMENT.getPattern()))
+            line++;
+
+        if (find(Type.BLOCKCOMMENT.getPattern()))
+            line += newLineCount(input.group());
+
+        for (Type t : Type.getAllOf()) {
+            if (!find(t.getPattern()))
+                continue;
+
+            String group = input.group();
+            if (isReserved(t)) {
+                // every reserved word matches ID as well
+                int start = input.start();
+                input.usePattern(Type.ID.getPattern());
+                input.find(start);
+                pos = input.end();
+                if (input.group().length() > group.length()) {
+                    t = Type.ID;
+                    group = input.group();
+                }
+            }
+
+            int prevIndex = index;
+            index += group.length();
+            return new Token(t, group, new int[] {line, prevIndex});
+        }
+
+        stopped = true;
+        if (pos == length)
+            return null;
+
+        return new Token(Type.ERROR, new int[] {line, index});
+    }
+
+    private boolean find(Pattern pattern) {
+        input.usePattern(pattern);
+        if (!input.find())
+            return false;
+
+        pos = input.end();
+        return true;
+    }
+
+    private static boolean isReserved(Type t) {
+        return t.getLiteral() != null && Character.isLetter(t.getLiteral().charAt(0));
+    }
+
+    private static int newLineCount(String comment) {
+        int out = 0;
+
+        for (int i = 0; i < comment.length(); i++) {
+            if (comment.charAt(i) == '\n')
+                out++;
+        }
+
+        return out;
+    }
+}
@@ -0,0 +1,90 @@
+package compiler.lexer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import compiler.TestPrograms;
+import compiler.syntax.Type;
+
+/**
+ * Compares the tokens of TokenScanner, read through Lexer, with those of
+ * the regex lexer it replaced.
+ */
+public class TokenScannerTest {
+    // pieces the random inputs are made of: reserved words and words that
+    // start with one, numbers, strings and comments cut short, line breaks
+    // of every kind and characters no token starts with
+    private static final String[] FRAGMENTS = {
+        "int", "integer", "if", "iffy", "x", "a1", "_b", "[", "`",
+        "1", "12", "1.5", "1.", "3.x", "\"s\"", "\"a\nb\"", "\"",
+        "==", "=", "<=", "<", ">=", ">", "||", "|", "&&", "&", "!",
+        "**", "*", "/", "+", "-", "(", ")", "{", "}", ",",
+        "\n", "\r\n", "\r", " ", "  ", "\t", "\f",
+        "// c\n", "// c", "/* c */", "/* a\n b */\n\n", "/*", "*/", "/**/", "/*/",
+        "@", ".", "\u2028", "\u0085",
+        "return", "while", "for", "void", "str", "bool", "float", "true", "false", "else", "x\n",
+    };
+
+    private static final long[] SEEDS = { 1, 2, 3 };
+    private static final int INPUTS = 20000;
+
+    private static void assertSameTokens(String input) {
+        RegexLexer expected = new RegexLexer(input);
+        Lexer actual = new Lexer(input);
+
+        for (int i = 0; ; i++) {
+            Token e = expected.next();
+            Token a = actual.next();
+            String where = "token "+i+" of \""+input+"\"";
+            if (e == null) {
+                assertNull(where, a);
+                return;
+            }
+
+            assertEquals(where, e.type, a == null ? null : a.type);
+            assertArrayEquals(where, e.index, a.index);
+            // the reference stops at the first ERROR
+            if (e.type == Type.ERROR)
+                return;
+            assertEquals(where, e.value, a.value);
+        }
+    }
+
+    @Test
+    public void programs() {
+        for (String name : TestPrograms.NAMES)
+            assertSameTokens(TestPrograms.read(name));
+    }
+
+    @Test
+    public void randomFragments() {
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            for (int n = 0; n < INPUTS; n++) {
+                StringBuilder input = new StringBuilder();
+                int length = random.nextInt(15);
+                for (int i = 0; i < length; i++)
+                    input.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                assertSameTokens(input.toString());
+            }
+        }
+    }
+
+    @Test
+    public void invalidCharacterIsOneToken() {
+        Lexer lexer = new Lexer("a $ b");
+
+        assertEquals(Type.ID, lexer.next().type);
+        Token error = lexer.next();
+        assertEquals(Type.ERROR, error.type);
+        assertEquals("$", error.value);
+        assertEquals(Type.ID, lexer.next().type);
+        assertEquals(Type.NEWLINE, lexer.next().type);
+        assertNull(lexer.next());
+    }
+}
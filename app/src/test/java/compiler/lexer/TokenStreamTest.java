@@ -0,0 +1,98 @@
+package compiler.lexer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import compiler.TestPrograms;
+
+/**
+ * Edits a TokenStream at random and compares it with a fresh scan of the
+ * edited text after each edit.
+ */
+public class TokenStreamTest {
+    // text inserted by the edits, with pieces that open or close comments
+    // and strings so that a rescan can run far past the edit
+    private static final String[] INSERTS = {
+        "", "", "x + 1\n", "int", "i", "1", ".5", " ", "\n", "\r", "\r\n",
+        "/*", "*/", "//", "\"", "{", "}", "=", "$", "while (b) {\n",
+    };
+
+    private static final long[] SEEDS = { 1, 2, 3 };
+    private static final int EDITS = 300;
+
+    // each token as text, with its type, value and position
+    private static List<String> tokens(TokenStream stream) {
+        List<String> out = new ArrayList<String>();
+        for (int i = 0; i < stream.size(); i++)
+            out.add(stream.get(i)+" at "+stream.getStart(i)+"+"+stream.getLength(i));
+        return out;
+    }
+
+    // type and value of each token from..to, which stay the same when an
+    // edit before them moves them
+    private static List<String> values(TokenStream stream, int from, int to) {
+        List<String> out = new ArrayList<String>();
+        for (int i = from; i < to; i++)
+            out.add(stream.getType(i)+":"+stream.getValue(i));
+        return out;
+    }
+
+    private static void assertEditsMatchScan(String program, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(program);
+        TokenStream stream = new TokenStream(program);
+
+        for (int n = 0; n < EDITS; n++) {
+            int offset = random.nextInt(text.length()+1);
+            int removed = Math.min(random.nextInt(10), text.length()-offset);
+            String inserted = INSERTS[random.nextInt(INSERTS.length)];
+            String where = "edit "+n+" of seed "+seed+", "+removed+" at "+offset+" by \""+inserted+"\"";
+
+            List<String> before = tokens(stream);
+            List<String> old = values(stream, 0, stream.size());
+            text.replace(offset, offset+removed, inserted);
+            TokenEdit edit = stream.edit(offset, removed, inserted);
+            List<String> after = tokens(stream);
+
+            assertEquals(where, tokens(new TokenStream(text.toString())), after);
+
+            // outside of what the edit says it replaced nothing changed
+            assertEquals(where, before.subList(0, edit.firstToken), after.subList(0, edit.firstToken));
+            assertEquals(where,
+                old.subList(edit.firstToken+edit.removedTokens, old.size()),
+                values(stream, edit.firstToken+edit.insertedTokens, stream.size()));
+        }
+    }
+
+    @Test
+    public void editsMatchScan() {
+        for (String name : TestPrograms.NAMES) {
+            for (long seed : SEEDS)
+                assertEditsMatchScan(TestPrograms.read(name), seed);
+        }
+    }
+
+    @Test
+    public void editsOfEmptyText() {
+        for (long seed : SEEDS)
+            assertEditsMatchScan("", seed);
+    }
+
+    @Test
+    public void editSetsPositionToStart() {
+        TokenStream stream = new TokenStream("int a = 1\n");
+        stream.next();
+        stream.next();
+        stream.edit(4, 1, "bb");
+
+        assertEquals(0, stream.getPosition());
+        assertEquals("bb", stream.get(1).value);
+        assertEquals(1, stream.get(1).index[0]);
+        assertEquals(4, stream.get(1).index[1]);
+    }
+}
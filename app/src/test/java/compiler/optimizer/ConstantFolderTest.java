@@ -0,0 +1,37 @@
+package compiler.optimizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.Interpreter;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+
+public class ConstantFolderTest {
+    private static final String POWERS =
+        "int a = 2 ** -1\n"+
+        "int b = -1 ** -3\n"+
+        "int c = 3 ** 40\n"+
+        "int d = (0 - 2) ** 5\n"+
+        "float e = 2.0 ** 0.5\n"+
+        "float f = 1.5 ** -2.0\n";
+
+    private static Map<String, Object> run(ASTNode<?> program) {
+        Interpreter interpreter = new Interpreter(program);
+        interpreter.run();
+        return interpreter.getGlobals();
+    }
+
+    @Test
+    public void foldedPowersMatchTheInterpreter() throws CompileException {
+        ASTNode<?> folded = new Parser(POWERS).parse();
+        assertTrue(ConstantFolder.fold(folded) > 0);
+
+        assertEquals(run(new Parser(POWERS).parse()), run(folded));
+    }
+}
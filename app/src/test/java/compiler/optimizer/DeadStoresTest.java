@@ -0,0 +1,82 @@
+package compiler.optimizer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import compiler.exception.CompileException;
+import compiler.interpreter.Interpreter;
+import compiler.parser.Parser;
+import compiler.parser.grammars.ast.ASTNode;
+
+public class DeadStoresTest {
+    // g = 5 is only read inside read()
+    private static final String GLOBAL_READ_BY_CALL =
+        "int g = 0\n"+
+        "int r = 0\n"+
+        "int read() {\n"+
+        "    return g\n"+
+        "}\n"+
+        "g = 5\n"+
+        "r = read()\n"+
+        "g = 7\n";
+
+    private static final String GLOBAL_READ_BY_CALL_IN_FUNCTION =
+        "int g = 0\n"+
+        "int r = 0\n"+
+        "int read() {\n"+
+        "    return g\n"+
+        "}\n"+
+        "void f() {\n"+
+        "    g = 3\n"+
+        "    r = read()\n"+
+        "    g = 4\n"+
+        "}\n"+
+        "f()\n";
+
+    private static final String LOCAL_READ_BY_NESTED_FUNCTION =
+        "int r = 0\n"+
+        "void f() {\n"+
+        "    int h = 0\n"+
+        "    int read() {\n"+
+        "        return h\n"+
+        "    }\n"+
+        "    h = 3\n"+
+        "    r = read()\n"+
+        "    h = 4\n"+
+        "}\n"+
+        "f()\n";
+
+    private static final String OVERWRITTEN =
+        "int g = 0\n"+
+        "int r = 0\n"+
+        "g = 5\n"+
+        "r = 1\n"+
+        "g = 7\n";
+
+    private static Map<String, Object> run(ASTNode<?> program) {
+        Interpreter interpreter = new Interpreter(program);
+        interpreter.run();
+        return interpreter.getGlobals();
+    }
+
+    private static void assertRemoves(int expected, String source) throws CompileException {
+        ASTNode<?> program = new Parser(source).parse();
+        assertEquals(expected, DeadStores.remove(program));
+        assertEquals(run(new Parser(source).parse()), run(program));
+    }
+
+    @Test
+    public void keepsStoresCallsRead() throws CompileException {
+        assertRemoves(0, GLOBAL_READ_BY_CALL);
+        assertRemoves(0, GLOBAL_READ_BY_CALL_IN_FUNCTION);
+        assertRemoves(0, LOCAL_READ_BY_NESTED_FUNCTION);
+    }
+
+    @Test
+    public void removesOverwrittenStores() throws CompileException {
+        assertRemoves(1, OVERWRITTEN);
+    }
+}
@@ -0,0 +1,178 @@
+package compiler.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import compiler.TestPrograms;
+import compiler.exception.CompileException;
+import compiler.lexer.TokenStream;
+import compiler.parser.grammars.ast.ASTNode;
+
+/**
+ * Edits text with an IncrementalParser and compares its tree and errors
+ * with a new parse of the whole text after every edit.
+ */
+public class IncrementalParserTest {
+    private static final long[] SEEDS = { 1, 2, 3 };
+    private static final int EDITS = 300;
+
+    private static final String[] INSERTS = {
+        "", "\n", "{", "}", "(", ")", " ", "int ", "x", "a", "c", "f0", "1", "2.5", " + 1", "*", ",", "\"", "/*", "*/",
+        "int x = 2\n", "    b = 1 + b\n", "float g = 1.0\n", "if (a > 1) {\n    a = 1\n}\n", "else {\n}\n",
+        "return 3\n", "int f0() {\n    return 1\n}\n", "for (int i = 0, i < 2, i++) {\n}\n", "while (x < 3) {\n"
+    };
+
+    private static String print(ASTNode<?> tree, List<CompileException> errors) {
+        StringBuilder out = new StringBuilder();
+        tree.printTree(out, "", "");
+        for (CompileException e : errors)
+            out.append(e).append('\n');
+        return out.toString();
+    }
+
+    private static void assertSameAsParse(String text, IncrementalParser incremental) {
+        Parser p = new Parser(new TokenStream(text));
+        String parsed;
+        try {
+            parsed = print(p.parse(Integer.MAX_VALUE), p.errors);
+        } catch (CompileException e) {
+            parsed = e.toString();
+        }
+        assertEquals(parsed, print(incremental.getTree(), incremental.getErrors()));
+    }
+
+    // the branches of the StatementList
+    private static List<?> statements(ASTNode<?> tree) {
+        return ((ASTNode<?>)tree.fst()).branches;
+    }
+
+    // the BlockStatementList of a function declaration
+    private static ASTNode<?> body(Object function) {
+        List<?> branches = ((ASTNode<?>)function).branches;
+        return (ASTNode<?>)branches.get(branches.size()-1);
+    }
+
+    @Test
+    public void randomEdits() {
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            for (String name : TestPrograms.NAMES) {
+                StringBuilder text = new StringBuilder(TestPrograms.read(name));
+                IncrementalParser incremental = new IncrementalParser(text.toString());
+
+                for (int i = 0; i < EDITS; i++) {
+                    int offset = random.nextInt(text.length()+1);
+                    int removed = Math.min(random.nextInt(4) == 0 ? random.nextInt(30) : random.nextInt(3), text.length()-offset);
+                    String inserted = INSERTS[random.nextInt(INSERTS.length)];
+
+                    text.replace(offset, offset+removed, inserted);
+                    incremental.edit(offset, removed, inserted);
+                    assertSameAsParse(text.toString(), incremental);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void editInBlockKeepsTheRest() {
+        String text = TestPrograms.read("nested");
+        IncrementalParser incremental = new IncrementalParser(text.toString());
+        ASTNode<?> before = incremental.getTree();
+
+        int offset = text.indexOf("b = 1 + d");
+        incremental.edit(offset+4, 1, "2");
+        assertSameAsParse(text.replace("b = 1 + d", "b = 2 + d"), incremental);
+        assertEquals(1, incremental.getReparsed());
+
+        // the function and the blocks down to the if statement are copies,
+        // everything beside them is the old node
+        List<?> old = statements(before);
+        List<?> now = statements(incremental.getTree());
+        assertSame(old.get(0), now.get(0));
+        assertNotSame(old.get(1), now.get(1));
+        for (int i = 2; i < old.size(); i++)
+            assertSame(old.get(i), now.get(i));
+
+        List<?> oldBody = body(old.get(1)).branches;
+        List<?> body = body(now.get(1)).branches;
+        assertSame(oldBody.get(0), body.get(0));
+        assertNotSame(oldBody.get(2), body.get(2));
+        assertSame(oldBody.get(3), body.get(3));
+    }
+
+    @Test
+    public void declarationsInBlock() {
+        StringBuilder text = new StringBuilder(TestPrograms.read("nested"));
+        IncrementalParser incremental = new IncrementalParser(text.toString());
+
+        // a new variable, then a statement using it
+        int offset = text.indexOf("        return c");
+        text.insert(offset, "        int e = c\n");
+        incremental.edit(offset, 0, "        int e = c\n");
+        assertSameAsParse(text.toString(), incremental);
+        assertEquals(1, incremental.getReparsed());
+
+        offset = text.indexOf("        return c");
+        text.insert(offset, "        e = 1 + e\n");
+        incremental.edit(offset, 0, "        e = 1 + e\n");
+        assertSameAsParse(text.toString(), incremental);
+        assertEquals(1, incremental.getReparsed());
+
+        // changing its type parses the statement using it again too
+        offset = text.indexOf("int e = c");
+        text.replace(offset, offset+9, "float e = 1.5");
+        incremental.edit(offset, 9, "float e = 1.5");
+        assertSameAsParse(text.toString(), incremental);
+        assertEquals(2, incremental.getReparsed());
+    }
+
+    @Test
+    public void blocksAfterEditMove() {
+        StringBuilder text = new StringBuilder(TestPrograms.read("nested"));
+        IncrementalParser incremental = new IncrementalParser(text.toString());
+        Object outer = statements(incremental.getTree()).get(1);
+
+        // lines added to the first branch move the ones after it, and the
+        // statements before the for statement are kept
+        for (int i = 0; i < 3; i++) {
+            int offset = text.indexOf("        f += 0.5\n");
+            text.insert(offset, "        f += 2\n");
+            incremental.edit(offset, 0, "        f += 2\n");
+            assertSameAsParse(text.toString(), incremental);
+            assertSame(outer, statements(incremental.getTree()).get(1));
+        }
+
+        int offset = text.indexOf("f = 0 + f * 10");
+        text.replace(offset+8, offset+9, "g");
+        incremental.edit(offset+8, 1, "g");
+        assertSameAsParse(text.toString(), incremental);
+
+        text.replace(offset+8, offset+9, "f");
+        incremental.edit(offset+8, 1, "f");
+        assertSameAsParse(text.toString(), incremental);
+        assertEquals(1, incremental.getReparsed());
+        assertSame(outer, statements(incremental.getTree()).get(1));
+    }
+
+    @Test
+    public void braceEditsFallBack() {
+        StringBuilder text = new StringBuilder(TestPrograms.read("nested"));
+        IncrementalParser incremental = new IncrementalParser(text.toString());
+
+        // closes the if early, and then opens it again
+        int offset = text.indexOf("            b = 1 + d");
+        text.insert(offset, "}\n");
+        incremental.edit(offset, 0, "}\n");
+        assertSameAsParse(text.toString(), incremental);
+
+        text.delete(offset, offset+2);
+        incremental.edit(offset, 2, "");
+        assertSameAsParse(text.toString(), incremental);
+    }
+}
@@ -0,0 +1,113 @@
+package compiler.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import compiler.TestPrograms;
+import compiler.exception.CompileException;
+import compiler.parser.grammars.ast.ASTNode;
+
+/**
+ * Compares trees parsed with the function bodies on a ForkJoinPool with
+ * trees parsed sequentially.
+ */
+public class ParallelParseTest {
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    // the tree as printed, or the error
+    private static String sequential(String source) {
+        try {
+            return print(new Parser(source).parse());
+        } catch (CompileException e) {
+            return e.toString();
+        }
+    }
+
+    private static String parallel(String source) {
+        try {
+            return print(new Parser(source).parse(pool));
+        } catch (CompileException e) {
+            return e.toString();
+        }
+    }
+
+    private static String print(ASTNode<?> tree) {
+        StringBuilder out = new StringBuilder();
+        tree.printTree(out, "", "");
+        return out.toString();
+    }
+
+    // functions functions, each reading a global declared before it and
+    // the one declared before that, with nested functions and loops
+    private static String functions(int functions) {
+        StringBuilder out = new StringBuilder("int g0 = 0\n");
+        for (int i = 1; i <= functions; i++) {
+            out.append("int g").append(i).append(" = ").append(i).append('\n')
+                .append("int f").append(i).append("() {\n")
+                .append("    int a = g").append(i-1).append('\n')
+                .append("    int inner() {\n")
+                .append("        return 0 + a * 2\n")
+                .append("    }\n")
+                .append("    while (a < 10) {\n")
+                .append("        a = 1 + inner()\n")
+                .append("    }\n")
+                .append("    return a\n")
+                .append("}\n");
+            if (i > 1)
+                out.append("g").append(i).append(" = f").append(i-1).append("()\n");
+        }
+        return out.toString();
+    }
+
+    private static void assertSameParse(String source) {
+        assertEquals(sequential(source), parallel(source));
+    }
+
+    @Test
+    public void programs() {
+        for (String name : TestPrograms.NAMES)
+            assertSameParse(TestPrograms.read(name));
+    }
+
+    @Test
+    public void manyFunctions() {
+        assertSameParse(functions(500));
+    }
+
+    @Test
+    public void errorInBody() {
+        String source = functions(50).replace("return 0 + a * 2", "return 0 + b * 2");
+        String error = parallel(source);
+
+        assertEquals(sequential(source), error);
+        assertEquals(true, error.startsWith("Unknown identifier \"b\""));
+    }
+
+    @Test
+    public void bodyUsesLaterGlobal() {
+        // g2 is only declared after f1, so f1 cannot see it
+        String source = functions(5).replace("int a = g0", "int a = g2");
+        assertSameParse(source);
+    }
+
+    @Test
+    public void unbalancedBraces() {
+        assertSameParse(functions(20)+"void h() {\n    int z = 1\n");
+        assertSameParse(functions(20)+"}\n");
+    }
+}
@@ -0,0 +1,104 @@
+package compiler.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import compiler.exception.CompileException;
+import compiler.exception.parse.InvalidCharacterException;
+import compiler.lexer.TokenStream;
+import compiler.parser.grammars.ast.ASTNode;
+
+public class RecoveryTest {
+    private static final String INVALID =
+        "int a = 1\n"+
+        "int b = zz\n"+
+        "int c = $\n"+
+        "int d = yy\n";
+
+    private static final String[] INVALID_ERRORS = {
+        "Unknown identifier \"zz\" at line 2, index 8, either out of scope or undefined",
+        "Invalid character '$' at line 3, index 8",
+        "Unknown identifier \"yy\" at line 4, index 8, either out of scope or undefined",
+    };
+
+    private static List<String> messages(List<CompileException> errors) {
+        List<String> out = new ArrayList<String>();
+        for (CompileException e : errors)
+            out.add(e.toString());
+        return out;
+    }
+
+    private static List<String> recover(String source) throws CompileException {
+        Parser p = new Parser(source);
+        p.parse(100);
+        return messages(p.errors);
+    }
+
+    @Test
+    public void invalidCharacterIsReportedAndSkipped() throws CompileException {
+        assertEquals(List.of(INVALID_ERRORS), recover(INVALID));
+    }
+
+    @Test
+    public void invalidCharacterInPipeline() throws CompileException {
+        List<ASTNode<?>> statements = new ArrayList<ASTNode<?>>();
+        List<CompileException> errors = Pipeline.run(INVALID, 100, statements::add);
+
+        assertEquals(List.of(INVALID_ERRORS), messages(errors));
+        assertEquals(4, statements.size());
+        assertEquals("DeclareStatement", statements.get(0).name);
+        for (int i = 1; i < 4; i++)
+            assertEquals("Error", statements.get(i).name);
+    }
+
+    @Test
+    public void invalidCharacterFromTokenStream() throws CompileException {
+        Parser p = new Parser(new TokenStream(INVALID));
+        p.parse(100);
+        assertEquals(List.of(INVALID_ERRORS), messages(p.errors));
+    }
+
+    @Test
+    public void invalidCharacterStopsPlainParse() {
+        try {
+            new Parser("int a = 1\nint b = a # 2\n").parse();
+            fail("parsed an invalid character");
+        } catch (CompileException e) {
+            assertTrue(e instanceof InvalidCharacterException);
+            assertEquals("Invalid character '#' at line 2, index 10", e.toString());
+        }
+    }
+
+    @Test
+    public void invalidCharacterInBlock() throws CompileException {
+        List<String> errors = recover(
+            "int a = 0\n"+
+            "while (a < 3) {\n"+
+            "    a = @\n"+
+            "    a++\n"+
+            "}\n"+
+            "int b = a\n");
+        assertEquals(List.of("Invalid character '@' at line 3, index 8"), errors);
+    }
+
+    @Test
+    public void invalidCharacterStartingStatement() throws CompileException {
+        List<String> errors = recover("int a = 1\n? a = 2\nint b = q\n");
+        assertEquals(List.of(
+            "Invalid character '?' at line 2, index 0",
+            "Unknown identifier \"q\" at line 3, index 8, either out of scope or undefined"), errors);
+    }
+
+    @Test
+    public void invalidCharacterInCondition() throws CompileException {
+        List<String> errors = recover("bool b = true\nif (b ~ b) {\n    int c = 1\n}\nint d = e\n");
+        assertEquals(2, errors.size());
+        assertEquals("Invalid character '~' at line 2, index 6", errors.get(0));
+    }
+}
@@ -0,0 +1,128 @@
+package compiler.parser.grammars.ast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import compiler.TestPrograms;
+import compiler.exception.CompileException;
+import compiler.parser.Parser;
+
+/**
+ * Copies parsed trees into FlatASTs, and parses straight into them, and
+ * compares what comes out with the ASTNode trees.
+ */
+public class FlatASTTest {
+    private static final String LITERALS =
+        "int big = 2147483647\n"+
+        "int small = 0 - 2147483647\n"+
+        "float f = 1.25\n"+
+        "float g = 0.0\n"+
+        "bool t = true\n"+
+        "str s = \"text\"\n";
+
+    private static final String ERRORS =
+        "int a = 1\n"+
+        "int b = zz\n"+
+        "int c = $\n"+
+        "int d = a\n";
+
+    private static String print(ASTNode<?> tree) {
+        StringBuilder out = new StringBuilder();
+        tree.printTree(out, "", "");
+        return out.toString();
+    }
+
+    private static String print(FlatAST tree) {
+        StringBuilder out = new StringBuilder();
+        tree.printTree(out, "", "");
+        return out.toString();
+    }
+
+    // walks both trees at once, the cursor at the node of tree
+    private static void assertSameTree(ASTNode<?> tree, FlatAST.Cursor c) {
+        assertEquals(tree.name, c.getName());
+        assertEquals(tree.operator, c.getOperator());
+        assertEquals(tree.isLeaf(), c.isLeaf());
+        if (tree.isLeaf())
+            assertEquals(tree.fst(), c.getValue());
+
+        boolean first = true;
+        for (Object branch : tree.branches) {
+            if (!(branch instanceof ASTNode<?>))
+                continue;
+
+            if (first)
+                assertTrue(c.firstChild());
+            else
+                assertTrue(c.nextSibling());
+            first = false;
+            assertSameTree((ASTNode<?>)branch, c);
+        }
+
+        if (!first) {
+            assertFalse(c.nextSibling());
+            c.parent();
+        } else {
+            assertFalse(c.firstChild());
+        }
+    }
+
+    private static void assertRoundTrip(Parser p, ASTNode<?> tree) {
+        FlatAST flat = FlatAST.of(tree, p.l.getSymbols());
+
+        assertEquals(print(tree), print(flat));
+        FlatAST.Cursor c = flat.cursor();
+        assertSameTree(tree, c);
+        assertEquals(0, c.getDepth());
+        assertEquals(flat.getRoot(), c.getNode());
+    }
+
+    @Test
+    public void programs() throws CompileException {
+        for (String name : TestPrograms.NAMES) {
+            Parser p = new Parser(TestPrograms.read(name));
+            assertRoundTrip(p, p.parse());
+        }
+    }
+
+    @Test
+    public void literalsStayExact() throws CompileException {
+        Parser p = new Parser(LITERALS);
+        assertRoundTrip(p, p.parse());
+    }
+
+    @Test
+    public void errorNodes() throws CompileException {
+        Parser p = new Parser(ERRORS);
+        assertRoundTrip(p, p.parse(100));
+    }
+
+    @Test
+    public void parseFlatSameAsParse() throws CompileException {
+        for (String name : TestPrograms.NAMES) {
+            String source = TestPrograms.read(name);
+            assertEquals(print(new Parser(source).parse()), print(new Parser(source).parseFlat()));
+        }
+        assertEquals(print(new Parser(LITERALS).parse()), print(new Parser(LITERALS).parseFlat()));
+    }
+
+    @Test
+    public void parseFlatSymbols() throws CompileException {
+        Parser p = new Parser("int a = 1\nint b = a\n");
+        FlatAST flat = p.parseFlat();
+
+        // the Identifier of the second DeclareStatement
+        FlatAST.Cursor c = flat.cursor();
+        c.firstChild();
+        c.firstChild();
+        c.nextSibling();
+        c.firstChild();
+        c.nextSibling();
+        assertEquals("Identifier", c.getName());
+        assertSame(p.l.getSymbols().intern("b"), c.getValue());
+    }
+}